@@ -0,0 +1,111 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.benchmark;
+
+import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.ElasticApmTracerBuilder;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+import org.stagemonitor.configuration.ConfigurationOptionProvider;
+import org.stagemonitor.configuration.ConfigurationRegistry;
+import org.stagemonitor.configuration.source.SimpleSource;
+
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of activating and deactivating spans, which includes the reference counting of the span and its transaction.
+ * <p>
+ * The transaction and spans are started on the benchmark thread, so that activations are counted for the owner thread.
+ * </p>
+ * <p>
+ * The {@code transactionResourceUsage} parameter shows the overhead of reading the CPU time and the allocated bytes of the
+ * thread when the transaction becomes active or inactive.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ActivationBenchmark extends AbstractBenchmark {
+
+    @Param({"false", "true"})
+    public boolean transactionResourceUsage;
+
+    private ElasticApmTracer tracer;
+    private TransactionImpl transaction;
+    private SpanImpl span;
+    private SpanImpl nestedSpan;
+
+    public static void main(String[] args) throws RunnerException {
+        run(ActivationBenchmark.class);
+    }
+
+    @Setup
+    public void setUp() {
+        tracer = new ElasticApmTracerBuilder()
+            .configurationRegistry(ConfigurationRegistry.builder()
+                .addConfigSource(new SimpleSource()
+                    .add(CoreConfigurationImpl.SERVICE_NAME, "benchmark")
+                    .add("transaction_resource_usage_metrics", Boolean.toString(transactionResourceUsage)))
+                .optionProviders(ServiceLoader.load(ConfigurationOptionProvider.class))
+                .build())
+            .buildAndStart();
+        transaction = tracer.startRootTransaction(null);
+        span = transaction.createSpan();
+        nestedSpan = span.createSpan();
+    }
+
+    @TearDown
+    public void tearDown() {
+        nestedSpan.end();
+        span.end();
+        transaction.end();
+        tracer.stop();
+    }
+
+    @Benchmark
+    public TransactionImpl activateTransaction() {
+        transaction.activate();
+        return transaction.deactivate();
+    }
+
+    /**
+     * Like a servlet, framework and client span, activating the spans of a request on the thread that handles it
+     */
+    @Benchmark
+    public TransactionImpl activateNestedSpans() {
+        transaction.activate();
+        span.activate();
+        nestedSpan.activate();
+        nestedSpan.deactivate();
+        span.deactivate();
+        return transaction.deactivate();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.benchmark;
+
+import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.ElasticApmTracerBuilder;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import io.undertow.Undertow;
+import io.undertow.server.handlers.BlockingHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.stagemonitor.configuration.ConfigurationOptionProvider;
+import org.stagemonitor.configuration.ConfigurationRegistry;
+import org.stagemonitor.configuration.source.SimpleSource;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from starting the agent until the data of the first AWS Lambda invocation has been flushed,
+ * which is what the agent adds to the cold start of a function.
+ * <p>
+ * Each fork measures a single invocation in a fresh JVM, so that class loading and JIT compilation are part of the result.
+ * A local HTTP server stands in for the Lambda extension.
+ * </p>
+ * <p>
+ * The agent only detects that it runs on AWS Lambda when the {@code AWS_LAMBDA_FUNCTION_NAME} environment variable is set,
+ * for example {@code AWS_LAMBDA_FUNCTION_NAME=benchmark java -jar apm-agent-benchmarks/target/benchmarks.jar AwsLambdaColdStartBenchmark}.
+ * </p>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 20)
+public class AwsLambdaColdStartBenchmark extends AbstractBenchmark {
+
+    @Param({"false", "true"})
+    public boolean awsLambdaFastStart;
+
+    private final byte[] buffer = new byte[32 * 1024];
+    private Undertow lambdaExtension;
+    private int port;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(AwsLambdaColdStartBenchmark.class.getSimpleName())
+            .build())
+            .run();
+    }
+
+    @Setup
+    public void setUp() {
+        String functionName = System.getenv("AWS_LAMBDA_FUNCTION_NAME");
+        if (functionName == null || functionName.isEmpty()) {
+            throw new IllegalStateException("The AWS_LAMBDA_FUNCTION_NAME environment variable has to be set to run this benchmark");
+        }
+        lambdaExtension = Undertow.builder()
+            .addHttpListener(0, "127.0.0.1")
+            .setHandler(new BlockingHandler(exchange -> {
+                if (exchange.getRequestPath().equals("/")) {
+                    exchange.getOutputStream().write("{\"version\":\"8.2.0\"}".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    try (InputStream is = exchange.getInputStream()) {
+                        while (is.read(buffer) != -1) {
+                            // discard the intake payload
+                        }
+                    }
+                }
+                exchange.setStatusCode(200).endExchange();
+            })).build();
+        lambdaExtension.start();
+        port = ((InetSocketAddress) lambdaExtension.getListenerInfo().get(0).getAddress()).getPort();
+    }
+
+    @TearDown
+    public void tearDown() {
+        lambdaExtension.stop();
+    }
+
+    @Benchmark
+    public long firstInvocation() {
+        ElasticApmTracer tracer = new ElasticApmTracerBuilder()
+            .configurationRegistry(ConfigurationRegistry.builder()
+                .addConfigSource(new SimpleSource()
+                    .add(CoreConfigurationImpl.SERVICE_NAME, "benchmark")
+                    .add("server_url", "http://127.0.0.1:" + port)
+                    .add("aws_lambda_fast_start", Boolean.toString(awsLambdaFastStart)))
+                .optionProviders(ServiceLoader.load(ConfigurationOptionProvider.class))
+                .build())
+            .buildAndStart();
+        TransactionImpl transaction = tracer.startRootTransaction(null);
+        tracer.completeMetaData("AWS Lambda", "1.0.0", "123456789012", "us-east-1");
+        transaction.withName("handleRequest").end();
+        tracer.flush();
+        long reported = tracer.getReporter().getReported();
+        tracer.stop();
+        return reported;
+    }
+}
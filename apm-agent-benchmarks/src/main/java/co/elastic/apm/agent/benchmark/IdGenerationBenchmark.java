@@ -0,0 +1,106 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.benchmark;
+
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.ElasticApmTracerBuilder;
+import co.elastic.apm.agent.impl.transaction.IdImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import co.elastic.apm.agent.tracer.dispatch.TextHeaderSetter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares generating random ids from {@link ThreadLocalRandom#nextBytes(byte[])} with the per-thread xoroshiro128++
+ * generator used by {@link IdImpl#setToRandomValue()}, and measures starting a root transaction including formatting
+ * its {@code traceparent} header.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IdGenerationBenchmark extends AbstractBenchmark {
+
+    private static final TextHeaderSetter<Map<String, String>> MAP_SETTER = new TextHeaderSetter<Map<String, String>>() {
+        @Override
+        public void setHeader(String headerName, String headerValue, Map<String, String> carrier) {
+            carrier.put(headerName, headerValue);
+        }
+    };
+
+    private final IdImpl traceId = IdImpl.new128BitId();
+    private final IdImpl spanId = IdImpl.new64BitId();
+    private final Map<String, String> headers = new HashMap<>();
+    private ElasticApmTracer tracer;
+
+    public static void main(String[] args) throws RunnerException {
+        run(IdGenerationBenchmark.class);
+    }
+
+    @Setup
+    public void setUp() {
+        tracer = new ElasticApmTracerBuilder().buildAndStart();
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracer.stop();
+    }
+
+    @Benchmark
+    public IdImpl threadLocalRandomBytes() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        traceId.setToRandomValue(random);
+        spanId.setToRandomValue(random);
+        return spanId;
+    }
+
+    @Benchmark
+    public IdImpl xoroshiroLongs() {
+        traceId.setToRandomValue();
+        spanId.setToRandomValue();
+        return spanId;
+    }
+
+    @Benchmark
+    public IdImpl timeOrderedTraceId() {
+        traceId.setToTimeOrderedRandomValue(System.currentTimeMillis());
+        spanId.setToRandomValue();
+        return spanId;
+    }
+
+    @Benchmark
+    public Map<String, String> rootTransactionWithTraceparent() {
+        TransactionImpl transaction = tracer.startRootTransaction(null);
+        transaction.propagateContext(headers, MAP_SETTER, null);
+        transaction.end();
+        return headers;
+    }
+}
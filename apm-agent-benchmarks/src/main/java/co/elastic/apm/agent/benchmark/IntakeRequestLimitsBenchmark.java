@@ -0,0 +1,133 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.benchmark;
+
+import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.ElasticApmTracerBuilder;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import co.elastic.apm.agent.report.Reporter;
+import io.undertow.Undertow;
+import io.undertow.server.handlers.BlockingHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+import org.stagemonitor.configuration.ConfigurationOptionProvider;
+import org.stagemonitor.configuration.ConfigurationRegistry;
+import org.stagemonitor.configuration.source.SimpleSource;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares fixed and adaptive intake request limits (see {@code adaptive_request_limits}) against a mock APM Server
+ * which takes {@code serverLatencyMillis} to respond to each request.
+ * <p>
+ * The benchmark creates transactions with spans as fast as possible, which puts the reporter under stress.
+ * Run it with the {@link co.elastic.apm.agent.benchmark.profiler.ReporterProfiler} (see {@link AbstractBenchmark#run(Class)})
+ * to compare the reported and dropped events per second and the number of requests the server received.
+ * With a slow server, the adaptive limits should lead to fewer requests and fewer dropped events.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IntakeRequestLimitsBenchmark extends AbstractBenchmark {
+
+    @Param({"false", "true"})
+    public boolean adaptiveRequestLimits;
+
+    @Param({"0", "50"})
+    public long serverLatencyMillis;
+
+    private final byte[] buffer = new byte[32 * 1024];
+    private Undertow server;
+    private ElasticApmTracer tracer;
+    private long receivedPayloads = 0;
+    private long receivedBytes = 0;
+
+    public static void main(String[] args) throws RunnerException {
+        run(IntakeRequestLimitsBenchmark.class);
+    }
+
+    @Setup
+    public void setUp() {
+        server = Undertow.builder()
+            .addHttpListener(0, "127.0.0.1")
+            .setHandler(new BlockingHandler(exchange -> {
+                if (exchange.getRequestPath().equals("/")) {
+                    exchange.getOutputStream().write("{\"version\":\"8.0.0\"}".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    receivedPayloads++;
+                    try (InputStream is = exchange.getInputStream()) {
+                        for (int n = 0; -1 != n; n = is.read(buffer)) {
+                            receivedBytes += n;
+                        }
+                    }
+                    System.getProperties().put("server.received.bytes", receivedBytes);
+                    System.getProperties().put("server.received.payloads", receivedPayloads);
+                    Thread.sleep(serverLatencyMillis);
+                }
+                exchange.setStatusCode(200).endExchange();
+            })).build();
+        server.start();
+        int port = ((InetSocketAddress) server.getListenerInfo().get(0).getAddress()).getPort();
+        tracer = new ElasticApmTracerBuilder()
+            .configurationRegistry(ConfigurationRegistry.builder()
+                .addConfigSource(new SimpleSource()
+                    .add(CoreConfigurationImpl.SERVICE_NAME, "benchmark")
+                    .add("server_url", "http://127.0.0.1:" + port)
+                    .add("metrics_interval", "0s")
+                    .add("adaptive_request_limits", Boolean.toString(adaptiveRequestLimits)))
+                .optionProviders(ServiceLoader.load(ConfigurationOptionProvider.class))
+                .build())
+            .buildAndStart();
+        System.getProperties().put(Reporter.class.getName(), tracer.getReporter());
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracer.stop();
+        server.stop();
+        System.getProperties().remove(Reporter.class.getName());
+    }
+
+    @Benchmark
+    public TransactionImpl transactionWithSpans() {
+        TransactionImpl transaction = tracer.startRootTransaction(null);
+        if (transaction == null) {
+            return null;
+        }
+        transaction.withName("GET /benchmark");
+        for (int i = 0; i < 3; i++) {
+            SpanImpl span = transaction.createSpan();
+            span.withName("SELECT FROM benchmark").withType("db").withSubtype("h2").end();
+        }
+        transaction.end();
+        return transaction;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.benchmark;
+
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.ElasticApmTracerBuilder;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import co.elastic.apm.agent.opentelemetry.tracing.OTelTracer;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares creating a db client span with a typical set of semantic convention attributes through the OpenTelemetry
+ * bridge with creating an equivalent span through the internal API.
+ * <p>
+ * The bridge tracer is used directly, without the agent instrumenting the OpenTelemetry API.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OTelSpanBenchmark extends AbstractBenchmark {
+
+    private static final AttributeKey<String> DB_SYSTEM = AttributeKey.stringKey("db.system");
+    private static final AttributeKey<String> DB_NAME = AttributeKey.stringKey("db.name");
+    private static final AttributeKey<String> DB_USER = AttributeKey.stringKey("db.user");
+    private static final AttributeKey<String> DB_STATEMENT = AttributeKey.stringKey("db.statement");
+    private static final AttributeKey<String> DB_OPERATION = AttributeKey.stringKey("db.operation");
+    private static final AttributeKey<String> DB_TABLE = AttributeKey.stringKey("db.sql.table");
+    private static final AttributeKey<String> NET_PEER_NAME = AttributeKey.stringKey("net.peer.name");
+    private static final AttributeKey<Long> NET_PEER_PORT = AttributeKey.longKey("net.peer.port");
+    private static final AttributeKey<String> CODE_NAMESPACE = AttributeKey.stringKey("code.namespace");
+    private static final AttributeKey<String> CODE_FUNCTION = AttributeKey.stringKey("code.function");
+    private static final AttributeKey<Long> CODE_LINENO = AttributeKey.longKey("code.lineno");
+    private static final AttributeKey<Long> THREAD_ID = AttributeKey.longKey("thread.id");
+    private static final AttributeKey<Boolean> CACHED = AttributeKey.booleanKey("app.cached");
+    private static final AttributeKey<Double> SAMPLE_RATE = AttributeKey.doubleKey("app.sample_rate");
+
+    private static final String STATEMENT = "SELECT id, name FROM customers WHERE id = ?";
+
+    private ElasticApmTracer tracer;
+    private Tracer otelTracer;
+    private TransactionImpl transaction;
+
+    public static void main(String[] args) throws RunnerException {
+        run(OTelSpanBenchmark.class);
+    }
+
+    @Setup
+    public void setUp() {
+        tracer = new ElasticApmTracerBuilder().buildAndStart();
+        otelTracer = new OTelTracer(tracer);
+        // the bridge uses the active span as parent when none is set explicitly
+        transaction = tracer.startRootTransaction(null).activate();
+    }
+
+    @TearDown
+    public void tearDown() {
+        transaction.deactivate().end();
+        tracer.stop();
+    }
+
+    @Benchmark
+    public Span otelApiSpan() {
+        Span span = otelTracer.spanBuilder("SELECT customers")
+            .setSpanKind(SpanKind.CLIENT)
+            .startSpan();
+        span.setAttribute(DB_SYSTEM, "postgresql");
+        span.setAttribute(DB_NAME, "shop");
+        span.setAttribute(DB_USER, "app");
+        span.setAttribute(DB_STATEMENT, STATEMENT);
+        span.setAttribute(DB_OPERATION, "SELECT");
+        span.setAttribute(DB_TABLE, "customers");
+        span.setAttribute(NET_PEER_NAME, "db.example.com");
+        span.setAttribute(NET_PEER_PORT, 5432L);
+        span.setAttribute(CODE_NAMESPACE, "com.example.CustomerRepository");
+        span.setAttribute(CODE_FUNCTION, "findById");
+        span.setAttribute(CODE_LINENO, 42L);
+        span.setAttribute(THREAD_ID, 1L);
+        span.setAttribute(CACHED, false);
+        span.setAttribute(SAMPLE_RATE, 0.5);
+        span.end();
+        return span;
+    }
+
+    @Benchmark
+    public SpanImpl nativeApiSpan() {
+        SpanImpl span = transaction.createSpan()
+            .withName("SELECT customers")
+            .withType("db")
+            .withSubtype("postgresql")
+            .withAction("query")
+            .asExit();
+        span.getContext().getDb()
+            .withType("postgresql")
+            .withInstance("shop")
+            .withUser("app")
+            .withStatement(STATEMENT);
+        span.getContext().getServiceTarget()
+            .withType("postgresql")
+            .withName("shop");
+        span.getContext().getDestination()
+            .withAddress("db.example.com")
+            .withPort(5432);
+        span.end();
+        return span;
+    }
+}
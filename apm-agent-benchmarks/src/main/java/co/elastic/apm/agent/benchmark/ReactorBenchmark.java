@@ -0,0 +1,52 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.benchmark;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public abstract class ReactorBenchmark extends AbstractMockApmServerBenchmark {
+
+    private static final int OPERATORS = 20;
+
+    public ReactorBenchmark(boolean apmEnabled) {
+        super(apmEnabled);
+    }
+
+    /**
+     * Assembles and subscribes to a chain of {@value #OPERATORS} operators,
+     * similar to what a WebFlux application does for each request.
+     */
+    protected Integer subscribeToFlux() {
+        Flux<Integer> flux = Flux.range(0, 10);
+        for (int i = 0; i < OPERATORS; i++) {
+            flux = flux.map(i -> i + 1);
+        }
+        return flux.blockLast();
+    }
+}
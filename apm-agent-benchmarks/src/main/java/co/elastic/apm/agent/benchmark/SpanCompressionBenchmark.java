@@ -0,0 +1,111 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.benchmark;
+
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.ElasticApmTracerBuilder;
+import co.elastic.apm.agent.impl.transaction.SpanCount;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures many threads ending compressible sibling exit spans of the same transaction,
+ * like parallel Redis or HTTP calls fanning out from a single request.
+ * <p>
+ * After each iteration, the share of spans which have been compressed is printed,
+ * as well as the number of spans which were reported uncompressed due to contention on the compression buffer.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpanCompressionBenchmark extends AbstractBenchmark {
+
+    private ElasticApmTracer tracer;
+    private volatile TransactionImpl transaction;
+
+    public static void main(String[] args) throws RunnerException {
+        run(SpanCompressionBenchmark.class);
+    }
+
+    @Setup
+    public void setUp() {
+        tracer = new ElasticApmTracerBuilder().buildAndStart();
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracer.stop();
+    }
+
+    @Setup(Level.Iteration)
+    public void startTransaction() {
+        transaction = tracer.startRootTransaction(null).withName("fan-out");
+    }
+
+    @TearDown(Level.Iteration)
+    public void endTransaction() {
+        SpanCount spanCount = transaction.getSpanCount();
+        int eligible = spanCount.getCompressionEligible().get();
+        System.out.printf("%ncompression ratio: %.4f, contended: %d of %d spans%n",
+            eligible > 0 ? (double) spanCount.getCompressed().get() / eligible : 0, spanCount.getCompressionContended().get(), eligible);
+        transaction.end();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void endSiblingSpansSingleThread() {
+        endSiblingSpan();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void endSiblingSpans() {
+        endSiblingSpan();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void endSiblingSpansManyThreads() {
+        endSiblingSpan();
+    }
+
+    private void endSiblingSpan() {
+        SpanImpl span = transaction.createSpan()
+            .asExit()
+            .withName("GET")
+            .withType("db")
+            .withSubtype("redis");
+        span.getContext().getServiceTarget().withType("redis");
+        span.end();
+    }
+}
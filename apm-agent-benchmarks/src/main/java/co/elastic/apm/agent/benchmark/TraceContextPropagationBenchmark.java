@@ -0,0 +1,171 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.benchmark;
+
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.ElasticApmTracerBuilder;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import co.elastic.apm.agent.tracer.dispatch.TextHeaderGetter;
+import co.elastic.apm.agent.tracer.dispatch.TextHeaderSetter;
+import co.elastic.apm.agent.tracer.dispatch.UTF8ByteHeaderGetter;
+import co.elastic.apm.agent.tracer.dispatch.UTF8ByteHeaderSetter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of injecting and extracting trace context headers into and from messaging-like carriers,
+ * for binary (as used by Kafka) and textual (as used by JMS and RabbitMQ) header values.
+ * <p>
+ * Run with {@code -prof gc} to see the allocations per operation.
+ * The {@code *Baseline} benchmarks create and end a span or transaction without any propagation.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TraceContextPropagationBenchmark extends AbstractBenchmark {
+
+    private ElasticApmTracer tracer;
+    private TransactionImpl transaction;
+    private final Map<String, byte[]> binaryHeaders = new HashMap<>();
+    private final Map<String, String> textHeaders = new HashMap<>();
+
+    public static void main(String[] args) throws RunnerException {
+        run(TraceContextPropagationBenchmark.class);
+    }
+
+    @Setup
+    public void setUp() {
+        tracer = new ElasticApmTracerBuilder().buildAndStart();
+        transaction = tracer.startRootTransaction(null);
+        transaction.propagateContext(binaryHeaders, BinaryAccessor.INSTANCE, null);
+        transaction.propagateContext(textHeaders, TextAccessor.INSTANCE, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        transaction.end();
+        tracer.stop();
+    }
+
+    @Benchmark
+    public SpanImpl produceBaseline() {
+        SpanImpl span = transaction.createSpan();
+        span.end();
+        return span;
+    }
+
+    @Benchmark
+    public SpanImpl produceBinary() {
+        SpanImpl span = transaction.createSpan();
+        span.propagateContext(binaryHeaders, BinaryAccessor.INSTANCE, null);
+        span.end();
+        return span;
+    }
+
+    @Benchmark
+    public SpanImpl produceText() {
+        SpanImpl span = transaction.createSpan();
+        span.propagateContext(textHeaders, TextAccessor.INSTANCE, null);
+        span.end();
+        return span;
+    }
+
+    @Benchmark
+    public TransactionImpl consumeBaseline() {
+        TransactionImpl child = tracer.startRootTransaction(null);
+        child.end();
+        return child;
+    }
+
+    @Benchmark
+    public TransactionImpl consumeBinary() {
+        TransactionImpl child = tracer.startChildTransaction(binaryHeaders, BinaryAccessor.INSTANCE, null);
+        child.end();
+        return child;
+    }
+
+    @Benchmark
+    public TransactionImpl consumeText() {
+        TransactionImpl child = tracer.startChildTransaction(textHeaders, TextAccessor.INSTANCE, null);
+        child.end();
+        return child;
+    }
+
+    private static class BinaryAccessor implements UTF8ByteHeaderGetter<Map<String, byte[]>>, UTF8ByteHeaderSetter<Map<String, byte[]>> {
+
+        private static final BinaryAccessor INSTANCE = new BinaryAccessor();
+
+        @Nullable
+        @Override
+        public byte[] getFirstHeader(String headerName, Map<String, byte[]> carrier) {
+            return carrier.get(headerName);
+        }
+
+        @Override
+        public <S> void forEach(String headerName, Map<String, byte[]> carrier, S state, HeaderConsumer<byte[], S> consumer) {
+            byte[] value = carrier.get(headerName);
+            if (value != null) {
+                consumer.accept(value, state);
+            }
+        }
+
+        @Override
+        public void setHeader(String headerName, byte[] headerValue, Map<String, byte[]> carrier) {
+            carrier.put(headerName, headerValue);
+        }
+    }
+
+    private static class TextAccessor implements TextHeaderGetter<Map<String, String>>, TextHeaderSetter<Map<String, String>> {
+
+        private static final TextAccessor INSTANCE = new TextAccessor();
+
+        @Nullable
+        @Override
+        public String getFirstHeader(String headerName, Map<String, String> carrier) {
+            return carrier.get(headerName);
+        }
+
+        @Override
+        public <S> void forEach(String headerName, Map<String, String> carrier, S state, HeaderConsumer<String, S> consumer) {
+            String value = carrier.get(headerName);
+            if (value != null) {
+                consumer.accept(value, state);
+            }
+        }
+
+        @Override
+        public void setHeader(String headerName, String headerValue, Map<String, String> carrier) {
+            carrier.put(headerName, headerValue);
+        }
+    }
+}
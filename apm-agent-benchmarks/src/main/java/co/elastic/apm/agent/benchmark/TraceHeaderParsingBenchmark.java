@@ -0,0 +1,138 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.benchmark;
+
+import co.elastic.apm.agent.impl.baggage.BaggageImpl;
+import co.elastic.apm.agent.impl.baggage.W3CBaggagePropagation;
+import co.elastic.apm.agent.impl.baggage.otel.Parser;
+import co.elastic.apm.agent.impl.transaction.TraceState;
+import co.elastic.apm.agent.tracer.dispatch.TextHeaderGetter;
+import co.elastic.apm.agent.tracer.dispatch.UTF8ByteHeaderSetter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.RunnerException;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing incoming {@code baggage} and {@code tracestate} headers and encoding the outgoing ones,
+ * for header sizes typically sent by upstream services and gateways.
+ * <p>
+ * As the same header values are parsed over and over again, the parsed representations are served from a cache.
+ * {@link #parseBaggageUncached()} parses the header without the cache as a baseline.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TraceHeaderParsingBenchmark extends AbstractBenchmark {
+
+    /**
+     * The carrier is the header value itself
+     */
+    private static final TextHeaderGetter<String> HEADER_GETTER = new TextHeaderGetter<String>() {
+        @Override
+        public String getFirstHeader(String headerName, String carrier) {
+            return carrier;
+        }
+
+        @Override
+        public <S> void forEach(String headerName, String carrier, S state, HeaderConsumer<String, S> consumer) {
+            consumer.accept(carrier, state);
+        }
+    };
+
+    private static final UTF8ByteHeaderSetter<byte[][]> HEADER_SETTER = new UTF8ByteHeaderSetter<byte[][]>() {
+        @Override
+        public void setHeader(String headerName, byte[] headerValue, byte[][] carrier) {
+            carrier[0] = headerValue;
+        }
+    };
+
+    @Param({"small", "medium", "large"})
+    public String headerSize;
+
+    private String baggageHeader;
+    private String tracestateHeader;
+    private final TraceState traceState = new TraceState();
+    private final byte[][] outgoingHeader = new byte[1][];
+
+    public static void main(String[] args) throws RunnerException {
+        run(TraceHeaderParsingBenchmark.class);
+    }
+
+    @Setup
+    public void setUp() {
+        if ("small".equals(headerSize)) {
+            baggageHeader = "user.id=42";
+            tracestateHeader = "es=s:0.5";
+        } else if ("medium".equals(headerSize)) {
+            baggageHeader = "user.id=42,tenant=acme,session.id=5f2b8c1e9a;ttl=60,region=eu-west-1";
+            tracestateHeader = "es=s:0.5,congo=t61rcWkgMzE,rojo=00f067aa0ba902b7";
+        } else {
+            StringBuilder baggage = new StringBuilder();
+            StringBuilder tracestate = new StringBuilder("es=s:0.5");
+            for (int i = 0; i < 24; i++) {
+                if (i > 0) {
+                    baggage.append(',');
+                }
+                baggage.append("key").append(i).append("=value%20").append(i).append(";meta=").append(i);
+                tracestate.append(",vendor").append(i).append("=opaque-value-").append(i);
+            }
+            baggageHeader = baggage.toString();
+            tracestateHeader = tracestate.toString();
+        }
+    }
+
+    @Benchmark
+    public BaggageImpl parseBaggage() {
+        BaggageImpl.Builder builder = BaggageImpl.EMPTY.toBuilder();
+        W3CBaggagePropagation.parse(baggageHeader, HEADER_GETTER, builder);
+        return builder.build();
+    }
+
+    @Benchmark
+    public BaggageImpl parseBaggageUncached() {
+        BaggageImpl.Builder builder = BaggageImpl.EMPTY.toBuilder();
+        new Parser(baggageHeader).parseInto(builder);
+        return builder.build();
+    }
+
+    @Benchmark
+    @Nullable
+    public byte[] parseAndPropagateBaggage() {
+        W3CBaggagePropagation.propagate(parseBaggage(), outgoingHeader, HEADER_SETTER);
+        return outgoingHeader[0];
+    }
+
+    @Benchmark
+    @Nullable
+    public byte[] parseAndPropagateTracestate() {
+        traceState.resetState();
+        traceState.addTextHeader(tracestateHeader);
+        return traceState.toUtf8Header();
+    }
+}
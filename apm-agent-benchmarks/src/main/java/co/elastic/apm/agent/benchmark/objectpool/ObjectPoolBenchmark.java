@@ -24,6 +24,7 @@ import co.elastic.apm.agent.impl.ElasticApmTracerBuilder;
 import co.elastic.apm.agent.impl.transaction.TransactionImpl;
 import co.elastic.apm.agent.objectpool.ObservableObjectPool;
 import co.elastic.apm.agent.objectpool.impl.QueueBasedObjectPool;
+import co.elastic.apm.agent.objectpool.impl.StripedObjectPool;
 import co.elastic.apm.agent.objectpool.impl.ThreadLocalObjectPool;
 import org.agrona.concurrent.ManyToManyConcurrentArrayQueue;
 import org.jctools.queues.MpmcArrayQueue;
@@ -50,6 +51,7 @@ public class ObjectPoolBenchmark extends AbstractBenchmark {
     private ObservableObjectPool<TransactionImpl> threadLocalObjectPool;
     private ObservableObjectPool<TransactionImpl> jctoolsQueueObjectPool;
     private ObservableObjectPool<TransactionImpl> jctoolsAtomicQueueObjectPool;
+    private ObservableObjectPool<TransactionImpl> stripedObjectPool;
 
     public static void main(String[] args) throws RunnerException {
         run(ObjectPoolBenchmark.class);
@@ -63,11 +65,14 @@ public class ObjectPoolBenchmark extends AbstractBenchmark {
         jctoolsAtomicQueueObjectPool = QueueBasedObjectPool.ofRecyclable(new MpmcAtomicArrayQueue<>(256), true, () -> new TransactionImpl(tracer));
         agronaQueueObjectPool = QueueBasedObjectPool.ofRecyclable(new ManyToManyConcurrentArrayQueue<>(256), true, () -> new TransactionImpl(tracer));
         threadLocalObjectPool = new ThreadLocalObjectPool<>(64, true, () -> new TransactionImpl(tracer));
+        stripedObjectPool = StripedObjectPool.ofRecyclable(1024, () -> new TransactionImpl(tracer));
     }
 
     @TearDown
     public void tearDown() {
         System.out.println("Objects created by agronaQueueObjectPool: " + agronaQueueObjectPool.getGarbageCreated());
+        System.out.printf("stripedObjectPool hits: %d, steals: %d, misses: %d%n",
+            stripedObjectPool.getHits(), stripedObjectPool.getSteals(), stripedObjectPool.getMisses());
     }
 
     //    @Benchmark
@@ -76,12 +81,40 @@ public class ObjectPoolBenchmark extends AbstractBenchmark {
         return new TransactionImpl(tracer);
     }
 
+    @Benchmark
+    @Threads(1)
+    public TransactionImpl testJctoolsAtomicQueueObjectPoolSingleThread() {
+        return createAndRecycle(jctoolsAtomicQueueObjectPool);
+    }
+
     @Benchmark
     @Threads(8)
     public TransactionImpl testJctoolsAtomicQueueObjectPool() {
-        TransactionImpl transaction = jctoolsAtomicQueueObjectPool.createInstance();
-        jctoolsAtomicQueueObjectPool.recycle(transaction);
-        return transaction;
+        return createAndRecycle(jctoolsAtomicQueueObjectPool);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public TransactionImpl testJctoolsAtomicQueueObjectPoolManyThreads() {
+        return createAndRecycle(jctoolsAtomicQueueObjectPool);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public TransactionImpl testStripedObjectPoolSingleThread() {
+        return createAndRecycle(stripedObjectPool);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public TransactionImpl testStripedObjectPool() {
+        return createAndRecycle(stripedObjectPool);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public TransactionImpl testStripedObjectPoolManyThreads() {
+        return createAndRecycle(stripedObjectPool);
     }
 
     //    @Benchmark
@@ -116,4 +149,9 @@ public class ObjectPoolBenchmark extends AbstractBenchmark {
         return transaction;
     }
 
+    private static TransactionImpl createAndRecycle(ObservableObjectPool<TransactionImpl> pool) {
+        TransactionImpl transaction = pool.createInstance();
+        pool.recycle(transaction);
+        return transaction;
+    }
 }
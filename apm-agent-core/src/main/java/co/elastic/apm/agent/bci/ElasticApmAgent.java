@@ -32,9 +32,11 @@ import co.elastic.apm.agent.bci.bytebuddy.RootPackageCustomLocator;
 import co.elastic.apm.agent.sdk.bytebuddy.SimpleMethodSignatureOffsetMappingFactory;
 import co.elastic.apm.agent.bci.classloading.ExternalPluginClassLoader;
 import co.elastic.apm.agent.bci.modules.ModuleOpener;
+import co.elastic.apm.agent.bci.virtualfield.VirtualFieldInjector;
 import co.elastic.apm.agent.common.ThreadUtils;
 import co.elastic.apm.agent.common.util.SystemStandardOutputLogger;
 import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
+import co.elastic.apm.agent.configuration.ServerlessConfigurationImpl;
 import co.elastic.apm.agent.impl.ElasticApmTracer;
 import co.elastic.apm.agent.impl.ElasticApmTracerBuilder;
 import co.elastic.apm.agent.tracer.GlobalTracer;
@@ -120,6 +122,8 @@ public class ElasticApmAgent {
 
     private static boolean ancientBytecodeInstrumentationEnabled;
 
+    private static boolean pluginClassLoaderSharingEnabled;
+
     private static final InstrumentationStats instrumentationStats = new InstrumentationStats();
 
     @Nullable
@@ -127,6 +131,22 @@ public class ElasticApmAgent {
     @Nullable
     private static ResettableClassFileTransformer resettableClassFileTransformer;
     private static final List<ResettableClassFileTransformer> dynamicClassFileTransformers = new ArrayList<>();
+    @Nullable
+    private static LazyPluginActivator lazyPluginActivator;
+    /**
+     * The packages of the plugins that are listed in the {@link PluginActivationManifest} and that are not loaded on startup
+     */
+    private static final Set<String> lazyPluginPackages = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static final Set<String> activatedPluginPackages = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static final List<ResettableClassFileTransformer> lazyPluginTransformers = new ArrayList<>();
+    @Nullable
+    private static ResettableClassFileTransformer virtualFieldTransformer;
+    /**
+     * Shared by all agent builders, including the one of the {@link VirtualFieldInjector},
+     * so that types resolved by one of them don't need to be parsed again by the others
+     */
+    @Nullable
+    private static LruTypePoolCache typePoolCache;
     private static final WeakMap<Class<?>, Set<Collection<Class<? extends ElasticApmInstrumentation>>>> dynamicallyInstrumentedClasses = WeakConcurrent.buildMap();
     @Nullable
     private static File agentJarFile;
@@ -162,21 +182,83 @@ public class ElasticApmAgent {
             // server log appender requires buffering log events before the config and reporter are ready.
             .withLifecycleListener(ApmServerLogAppender.getInstance().getInitListener())
             .build();
-        initInstrumentation(tracer, instrumentation, premain);
+        initInstrumentation(tracer, instrumentation, premain, true);
         tracer.start(premain);
     }
 
     public static void initInstrumentation(ElasticApmTracer tracer, Instrumentation instrumentation) {
-        initInstrumentation(tracer, instrumentation, false);
+        initInstrumentation(tracer, instrumentation, false, false);
     }
 
-    private static void initInstrumentation(ElasticApmTracer tracer, Instrumentation instrumentation, boolean premain) {
-        if (!tracer.getConfig(CoreConfigurationImpl.class).isEnabled()) {
+    private static void initInstrumentation(ElasticApmTracer tracer, Instrumentation instrumentation, boolean premain, boolean lazyPluginActivationSupported) {
+        CoreConfigurationImpl coreConfig = tracer.getConfig(CoreConfigurationImpl.class);
+        if (!coreConfig.isEnabled()) {
             return;
         }
         GlobalTracer.init(tracer);
+        LazyPluginActivator activator = null;
+        if (lazyPluginActivationSupported && (coreConfig.isLazyPluginActivation()
+            || tracer.getConfig(ServerlessConfigurationImpl.class).isAwsLambdaFastStart())) {
+            activator = createLazyPluginActivator(instrumentation);
+        }
         // ensure classes can be instrumented before LifecycleListeners use them by starting the tracer after initializing instrumentation
         initInstrumentation(tracer, instrumentation, loadInstrumentations(tracer), premain);
+        if (activator != null) {
+            activator.install();
+        }
+    }
+
+    @Nullable
+    private static synchronized LazyPluginActivator createLazyPluginActivator(Instrumentation instrumentation) {
+        PluginActivationManifest manifest = PluginActivationManifest.read(getAgentClassLoader());
+        if (manifest.isEmpty()) {
+            return null;
+        }
+        LazyPluginActivator activator = new LazyPluginActivator(instrumentation, manifest.getActivationPrefixesByPluginPackage(),
+            getAgentClassLoader(), new LazyPluginActivator.Callback() {
+            @Override
+            public void activate(String pluginPackage) {
+                activatePlugin(pluginPackage);
+            }
+        });
+        lazyPluginPackages.addAll(manifest.getActivationPrefixesByPluginPackage().keySet());
+        // the libraries of these plugins are already in use, load them on startup
+        activatedPluginPackages.addAll(activator.removePluginsOfLoadedClasses(instrumentation.getAllLoadedClasses()));
+        LoggerFactory.getLogger(ElasticApmAgent.class).debug("Deferring the activation of plugins {}", activator.getPendingPluginPackages());
+        lazyPluginActivator = activator;
+        return activator;
+    }
+
+    /**
+     * Loads and installs the instrumentations of a plugin that has not been loaded on startup, see {@link LazyPluginActivator}.
+     */
+    private static synchronized void activatePlugin(String pluginPackage) {
+        if (instrumentation == null || lazyPluginActivator == null || !activatedPluginPackages.add(pluginPackage)) {
+            return;
+        }
+        Logger logger = getLogger();
+        ElasticApmTracer tracer = GlobalTracer.get().require(ElasticApmTracer.class);
+        List<ElasticApmInstrumentation> instrumentations = DependencyInjectingServiceLoader.load(ElasticApmInstrumentation.class,
+            Collections.singletonList(getAgentClassLoader()), inPluginPackage(pluginPackage), tracer);
+        for (ElasticApmInstrumentation apmInstrumentation : instrumentations) {
+            mapInstrumentationCL2adviceClassName(
+                apmInstrumentation.getAdviceClassName(),
+                PrivilegedActionUtils.getClassLoader(apmInstrumentation.getClass()));
+        }
+        // re-iterating, as classes of the library may still be loaded while the already loaded ones are retransformed
+        AgentBuilder agentBuilder = initAgentBuilder(tracer, instrumentation, instrumentations, logger,
+            AgentBuilder.DescriptionStrategy.Default.POOL_ONLY, false, RedefinitionStrategy.DiscoveryStrategy.Reiterating.INSTANCE);
+        lazyPluginTransformers.add(agentBuilder.installOn(instrumentation));
+        logger.debug("Activated plugin {} with {} instrumentations", pluginPackage, instrumentations.size());
+    }
+
+    private static DependencyInjectingServiceLoader.ImplementationFilter inPluginPackage(final String pluginPackage) {
+        return new DependencyInjectingServiceLoader.ImplementationFilter() {
+            @Override
+            public boolean accept(String implementationClassName) {
+                return PluginActivationManifest.getPluginPackage(implementationClassName).equals(pluginPackage);
+            }
+        };
     }
 
     @Nonnull
@@ -184,7 +266,15 @@ public class ElasticApmAgent {
         List<ClassLoader> pluginClassLoaders = new ArrayList<>();
         pluginClassLoaders.add(PrivilegedActionUtils.getClassLoader(ElasticApmAgent.class));
         pluginClassLoaders.addAll(createExternalPluginClassLoaders(tracer.getConfig(CoreConfigurationImpl.class).getPluginsDir()));
-        final List<ElasticApmInstrumentation> instrumentations = DependencyInjectingServiceLoader.load(ElasticApmInstrumentation.class, pluginClassLoaders, tracer);
+        final List<ElasticApmInstrumentation> instrumentations = DependencyInjectingServiceLoader.load(ElasticApmInstrumentation.class, pluginClassLoaders,
+            new DependencyInjectingServiceLoader.ImplementationFilter() {
+                @Override
+                public boolean accept(String implementationClassName) {
+                    String pluginPackage = PluginActivationManifest.getPluginPackage(implementationClassName);
+                    // plugins that are activated lazily are only loaded once they have been activated
+                    return !lazyPluginPackages.contains(pluginPackage) || activatedPluginPackages.contains(pluginPackage);
+                }
+            }, tracer);
         for (MethodMatcher traceMethod : tracer.getConfig(CoreConfigurationImpl.class).getTraceMethods()) {
             instrumentations.add(new TraceMethodInstrumentation(tracer, traceMethod));
         }
@@ -238,6 +328,7 @@ public class ElasticApmAgent {
             return;
         }
         ancientBytecodeInstrumentationEnabled = coreConfig.isInstrumentAncientBytecode();
+        pluginClassLoaderSharingEnabled = coreConfig.isSharePluginClassLoaders();
         String bytecodeDumpPath = coreConfig.getBytecodeDumpPath();
         if (bytecodeDumpPath != null) {
             bytecodeDumpPath = bytecodeDumpPath.trim();
@@ -287,7 +378,8 @@ public class ElasticApmAgent {
             return;
         }
         // POOL_ONLY because we don't want to cause eager linking on startup as the class path may not be complete yet
-        AgentBuilder agentBuilder = initAgentBuilder(tracer, instrumentation, instrumentations, logger, AgentBuilder.DescriptionStrategy.Default.POOL_ONLY, premain);
+        AgentBuilder agentBuilder = initAgentBuilder(tracer, instrumentation, instrumentations, logger, AgentBuilder.DescriptionStrategy.Default.POOL_ONLY,
+            premain, RedefinitionStrategy.DiscoveryStrategy.SinglePass.INSTANCE);
 
         // Warmup Byte Buddy and agent's invokedynamic linkage paths on the attaching thread before installing it
         if (tracer.getConfig(CoreConfigurationImpl.class).shouldWarmupByteBuddy()) {
@@ -296,6 +388,16 @@ public class ElasticApmAgent {
                 .warmUp(Instrumented.class);
         }
 
+        if (coreConfig.isVirtualFieldInjectionEnabled()) {
+            List<ElasticApmInstrumentation> includedInstrumentations = new ArrayList<>();
+            for (ElasticApmInstrumentation apmInstrumentation : instrumentations) {
+                if (isIncluded(apmInstrumentation, coreConfig)) {
+                    includedInstrumentations.add(apmInstrumentation);
+                }
+            }
+            virtualFieldTransformer = VirtualFieldInjector.install(ElasticApmAgent.instrumentation, includedInstrumentations, coreConfig,
+                getPoolStrategy(coreConfig.isTypePoolCacheEnabled()));
+        }
         resettableClassFileTransformer = agentBuilder.installOn(ElasticApmAgent.instrumentation);
         for (ConfigurationOption<?> instrumentationOption : coreConfig.getInstrumentationOptions()) {
             //noinspection Convert2Lambda
@@ -318,7 +420,7 @@ public class ElasticApmAgent {
             return executor.submit(new Runnable() {
                 @Override
                 public void run() {
-                    doReInitInstrumentation(loadInstrumentations(tracer));
+                    reInitInstrumentation(tracer);
                 }
             });
         } finally {
@@ -326,6 +428,34 @@ public class ElasticApmAgent {
         }
     }
 
+    private static synchronized void reInitInstrumentation(ElasticApmTracer tracer) {
+        // the instrumentations of lazily activated plugins become part of the main transformer
+        resetLazyPluginTransformers();
+        doReInitInstrumentation(loadInstrumentations(tracer));
+    }
+
+    @Nullable
+    private static Exception resetLazyPluginTransformers() {
+        Exception exception = null;
+        for (ResettableClassFileTransformer transformer : lazyPluginTransformers) {
+            try {
+                transformer.reset(instrumentation, RedefinitionStrategy.RETRANSFORMATION);
+            } catch (Exception e) {
+                if (exception != null) {
+                    exception.addSuppressed(e);
+                } else {
+                    exception = e;
+                }
+            }
+        }
+        lazyPluginTransformers.clear();
+        return exception;
+    }
+
+    public static boolean isPluginClassLoaderSharingEnabled() {
+        return pluginClassLoaderSharingEnabled;
+    }
+
     public static boolean areModulesSupported() {
         return ModuleOpener.areModulesSupported();
     }
@@ -341,21 +471,23 @@ public class ElasticApmAgent {
     static synchronized void doReInitInstrumentation(Iterable<ElasticApmInstrumentation> instrumentations) {
         Logger logger = getLogger();
         logger.info("Re initializing instrumentation");
-        AgentBuilder agentBuilder = initAgentBuilder(GlobalTracer.get().require(ElasticApmTracer.class), instrumentation, instrumentations, logger, AgentBuilder.DescriptionStrategy.Default.POOL_ONLY, false);
+        AgentBuilder agentBuilder = initAgentBuilder(GlobalTracer.get().require(ElasticApmTracer.class), instrumentation, instrumentations, logger,
+            AgentBuilder.DescriptionStrategy.Default.POOL_ONLY, false, RedefinitionStrategy.DiscoveryStrategy.SinglePass.INSTANCE);
 
         resettableClassFileTransformer = agentBuilder.patchOn(instrumentation, resettableClassFileTransformer);
     }
 
     private static AgentBuilder initAgentBuilder(ElasticApmTracer tracer, Instrumentation instrumentation,
                                                  Iterable<ElasticApmInstrumentation> instrumentations, Logger logger,
-                                                 AgentBuilder.DescriptionStrategy descriptionStrategy, boolean premain) {
+                                                 AgentBuilder.DescriptionStrategy descriptionStrategy, boolean premain,
+                                                 RedefinitionStrategy.DiscoveryStrategy discoveryStrategy) {
         final CoreConfigurationImpl coreConfiguration = tracer.getConfig(CoreConfigurationImpl.class);
         ElasticApmAgent.instrumentation = instrumentation;
         final ByteBuddy byteBuddy = new ByteBuddy()
             .with(TypeValidation.of(logger.isDebugEnabled()))
             .with(FailSafeDeclaredMethodsCompiler.INSTANCE);
         AgentBuilder agentBuilder = getAgentBuilder(
-            byteBuddy, coreConfiguration, logger, descriptionStrategy, premain, coreConfiguration.isTypePoolCacheEnabled()
+            byteBuddy, coreConfiguration, logger, descriptionStrategy, premain, coreConfiguration.isTypePoolCacheEnabled(), discoveryStrategy
         );
         int numberOfAdvices = 0;
         for (final ElasticApmInstrumentation advice : instrumentations) {
@@ -658,6 +790,11 @@ public class ElasticApmAgent {
             }
             resettableClassFileTransformer = null;
         }
+        if (virtualFieldTransformer != null) {
+            // classes that already have the fields keep them, removing fields from loaded classes is not possible
+            instrumentation.removeTransformer(virtualFieldTransformer);
+            virtualFieldTransformer = null;
+        }
         dynamicallyInstrumentedClasses.clear();
         for (ResettableClassFileTransformer transformer : dynamicClassFileTransformers) {
             try {
@@ -671,15 +808,43 @@ public class ElasticApmAgent {
             }
         }
         dynamicClassFileTransformers.clear();
+        if (lazyPluginActivator != null) {
+            lazyPluginActivator.uninstall();
+            lazyPluginActivator = null;
+        }
+        Exception lazyPluginException = resetLazyPluginTransformers();
+        if (lazyPluginException != null) {
+            if (exception != null) {
+                exception.addSuppressed(lazyPluginException);
+            } else {
+                exception = lazyPluginException;
+            }
+        }
+        lazyPluginPackages.clear();
+        activatedPluginPackages.clear();
         instrumentation = null;
+        // the eviction job of the cache has been discarded together with the agent scheduler when stopping the tracer
+        typePoolCache = null;
         IndyPluginClassLoaderFactory.clear();
         adviceClassName2instrumentationClassLoader.clear();
         pluginPackages2pluginClassLoaderCustomizations.clear();
     }
 
+    private static synchronized AgentBuilder.PoolStrategy getPoolStrategy(boolean useTypePoolCache) {
+        // ReaderMode.FAST as we don't need to read method parameter names
+        if (!useTypePoolCache) {
+            return AgentBuilder.PoolStrategy.Default.FAST;
+        }
+        if (typePoolCache == null) {
+            typePoolCache = new LruTypePoolCache(TypePool.Default.ReaderMode.FAST).scheduleEntryEviction();
+        }
+        return typePoolCache;
+    }
+
     private static AgentBuilder getAgentBuilder(final ByteBuddy byteBuddy, final CoreConfigurationImpl coreConfiguration, final Logger logger,
                                                 final AgentBuilder.DescriptionStrategy descriptionStrategy, final boolean premain,
-                                                final boolean useTypePoolCache) {
+                                                final boolean useTypePoolCache,
+                                                final RedefinitionStrategy.DiscoveryStrategy discoveryStrategy) {
         AgentBuilder.LocationStrategy locationStrategy = AgentBuilder.LocationStrategy.ForClassLoader.WEAK;
         if (agentJarFile != null) {
             try {
@@ -702,6 +867,7 @@ public class ElasticApmAgent {
             .with(RedefinitionStrategy.RETRANSFORMATION)
             // when runtime attaching, only retransform up to 100 classes at once and sleep 100ms in-between as retransformation causes a stop-the-world pause
             .with(premain ? RedefinitionStrategy.BatchAllocator.ForTotal.INSTANCE : RedefinitionStrategy.BatchAllocator.ForFixedSize.ofSize(100))
+            .with(discoveryStrategy)
             .with(premain ? RedefinitionStrategy.Listener.NoOp.INSTANCE : RedefinitionStrategy.Listener.Pausing.of(100, TimeUnit.MILLISECONDS))
             .with(new RedefinitionStrategy.Listener.Adapter() {
                 @Override
@@ -714,10 +880,7 @@ public class ElasticApmAgent {
             .with(descriptionStrategy)
             .with(locationStrategy)
             .with(new ErrorLoggingListener())
-            // ReaderMode.FAST as we don't need to read method parameter names
-            .with(useTypePoolCache
-                ? new LruTypePoolCache(TypePool.Default.ReaderMode.FAST).scheduleEntryEviction()
-                : AgentBuilder.PoolStrategy.Default.FAST)
+            .with(getPoolStrategy(useTypePoolCache))
             .ignore(any(), isReflectionClassLoader())
             .or(any(), classLoaderWithName("org.codehaus.groovy.runtime.callsite.CallSiteClassLoader"))
             .or(nameStartsWith("org.aspectj."))
@@ -831,7 +994,8 @@ public class ElasticApmAgent {
             .with(TypeValidation.of(logger.isDebugEnabled()))
             .with(FailSafeDeclaredMethodsCompiler.INSTANCE);
         AgentBuilder agentBuilder = getAgentBuilder(
-            byteBuddy, config, logger, AgentBuilder.DescriptionStrategy.Default.POOL_ONLY, false, false
+            byteBuddy, config, logger, AgentBuilder.DescriptionStrategy.Default.POOL_ONLY, false, false,
+            RedefinitionStrategy.DiscoveryStrategy.SinglePass.INSTANCE
         );
         for (Class<? extends ElasticApmInstrumentation> instrumentationClass : instrumentationClasses) {
             ElasticApmInstrumentation apmInstrumentation = instantiate(instrumentationClass);
@@ -66,6 +66,8 @@ import static net.bytebuddy.matcher.ElementMatchers.named;
  * to dispatch {@linkplain Advice.OnMethodEnter#inline() non-inlined advices} via an invokedynamic (indy) instruction.
  * The target method is linked to a dynamically created plugin class loader that is specific to an instrumentation plugin
  * and the class loader of the instrumented method.
+ * Class loaders that resolve the types the plugin refers to to the same classes, like the web applications of an application server,
+ * share a plugin class loader (see {@link IndyPluginClassLoaderFactory#getSharedTargetClassLoader}).
  * <p>
  * The first invocation of an {@code INVOKEDYNAMIC} causes the JVM to dynamically link a {@link CallSite}.
  * In this case, it will use the {@link #bootstrap} method to do that.
@@ -489,7 +491,8 @@ public class IndyBootstrap {
                     // if config classes would be loaded from the plugin CL,
                     // tracer.getConfig(Config.class) would return null when called from an advice as the classes are not the same
                     .or(nameContains("Config").and(hasSuperType(is(ConfigurationOptionProvider.class)))),
-                allowOtelLookupFromParent);
+                allowOtelLookupFromParent,
+                ElasticApmAgent.isPluginClassLoaderSharingEnabled());
             if (ElasticApmAgent.areModulesSupported() && !requiredModuleOpens.isEmpty()) {
                 boolean success = addRequiredModuleOpens(requiredModuleOpens, targetClassLoader, pluginClassLoader);
                 if (!success) {
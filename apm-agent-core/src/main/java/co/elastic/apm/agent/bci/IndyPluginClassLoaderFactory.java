@@ -19,12 +19,20 @@
 package co.elastic.apm.agent.bci;
 
 import co.elastic.apm.agent.bci.classloading.IndyPluginClassLoader;
+import co.elastic.apm.agent.sdk.internal.util.PrivilegedActionUtils;
 import co.elastic.apm.agent.sdk.logging.Logger;
 import co.elastic.apm.agent.sdk.logging.LoggerFactory;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.dynamic.ClassFileLocator;
 import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.pool.TypePool;
+import net.bytebuddy.utility.OpenedClassReader;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
@@ -32,9 +40,11 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
 
 public class IndyPluginClassLoaderFactory {
@@ -43,26 +53,34 @@ public class IndyPluginClassLoaderFactory {
 
     private static final Map<ClassLoader, Map<Collection<String>, WeakReference<ClassLoader>>> alreadyInjected = new WeakHashMap<ClassLoader, Map<Collection<String>, WeakReference<ClassLoader>>>();
 
+    /**
+     * The names of the types the classes of a plugin refer to, excluding the classes of the plugin itself.
+     * The key is the list of the plugin classes, which identifies a plugin.
+     */
+    private static final Map<Collection<String>, Set<String>> referencedTypes = new HashMap<>();
+
     /**
      * Creates an isolated CL that has two parents: the target class loader and the agent CL.
      * The agent class loader is an isolated CL that is a child of the bootstrap CL.
+     * <p>
+     * If {@code shareAcrossClassLoaders} is set, the plugin CL is created as a child of the class loader that defines the
+     * types the plugin refers to, rather than as a child of the target class loader.
+     * This way, all class loaders that resolve these types to the same classes share a plugin CL,
+     * see {@link #getSharedTargetClassLoader}.
+     * </p>
      */
     public synchronized static ClassLoader getOrCreatePluginClassLoader(@Nullable ClassLoader targetClassLoader,
                                                                         List<String> classesToInject,
                                                                         ClassLoader agentClassLoader,
                                                                         ClassFileLocator classFileLocator,
                                                                         ElementMatcher<? super TypeDescription> exclusionMatcher,
-                                                                        boolean allowOtelClassesFromAgentCl) throws Exception {
+                                                                        boolean allowOtelClassesFromAgentCl,
+                                                                        boolean shareAcrossClassLoaders) throws Exception {
         classesToInject = new ArrayList<>(classesToInject);
 
-        Map<Collection<String>, WeakReference<ClassLoader>> injectedClasses = getOrCreateInjectedClasses(targetClassLoader);
-        if (injectedClasses.containsKey(classesToInject)) {
-            ClassLoader pluginClassLoader = injectedClasses.get(classesToInject).get();
-            if (pluginClassLoader == null) {
-                injectedClasses.remove(classesToInject);
-            } else {
-                return pluginClassLoader;
-            }
+        ClassLoader pluginClassLoader = getAlreadyInjected(targetClassLoader, classesToInject);
+        if (pluginClassLoader != null) {
+            return pluginClassLoader;
         }
 
         List<String> classesToInjectCopy = new ArrayList<>(classesToInject.size());
@@ -80,16 +98,170 @@ public class IndyPluginClassLoaderFactory {
                 classesToInjectCopy.add(className);
             }
         }
-        logger.debug("Creating plugin class loader for {} containing {}", targetClassLoader, classesToInjectCopy);
 
         Map<String, byte[]> typeDefinitions = getTypeDefinitions(classesToInjectCopy, classFileLocator);
+        ClassLoader parentClassLoader = targetClassLoader;
+        if (shareAcrossClassLoaders && targetClassLoader != null) {
+            parentClassLoader = getSharedTargetClassLoader(targetClassLoader, getReferencedTypes(classesToInject, typeDefinitions),
+                agentClassLoader, allowOtelClassesFromAgentCl);
+            if (parentClassLoader != targetClassLoader) {
+                pluginClassLoader = getAlreadyInjected(parentClassLoader, classesToInject);
+                if (pluginClassLoader != null) {
+                    logger.debug("Sharing plugin class loader {} of {} with {}", pluginClassLoader, parentClassLoader, targetClassLoader);
+                    getOrCreateInjectedClasses(targetClassLoader).put(classesToInject, new WeakReference<>(pluginClassLoader));
+                    return pluginClassLoader;
+                }
+            }
+        }
+        logger.debug("Creating plugin class loader for {} containing {}", parentClassLoader, classesToInjectCopy);
+
         // child first semantics are important here as the plugin CL contains classes that are also present in the agent CL
-        ClassLoader pluginClassLoader = new IndyPluginClassLoader(targetClassLoader, agentClassLoader, typeDefinitions, allowOtelClassesFromAgentCl);
-        injectedClasses.put(classesToInject, new WeakReference<>(pluginClassLoader));
+        pluginClassLoader = new IndyPluginClassLoader(parentClassLoader, agentClassLoader, typeDefinitions, allowOtelClassesFromAgentCl);
+        getOrCreateInjectedClasses(parentClassLoader).put(classesToInject, new WeakReference<>(pluginClassLoader));
+        if (parentClassLoader != targetClassLoader) {
+            getOrCreateInjectedClasses(targetClassLoader).put(classesToInject, new WeakReference<>(pluginClassLoader));
+        }
 
         return pluginClassLoader;
     }
 
+    @Nullable
+    private static ClassLoader getAlreadyInjected(@Nullable ClassLoader targetClassLoader, List<String> classesToInject) {
+        Map<Collection<String>, WeakReference<ClassLoader>> injectedClasses = getOrCreateInjectedClasses(targetClassLoader);
+        WeakReference<ClassLoader> pluginClassLoaderRef = injectedClasses.get(classesToInject);
+        if (pluginClassLoaderRef == null) {
+            return null;
+        }
+        ClassLoader pluginClassLoader = pluginClassLoaderRef.get();
+        if (pluginClassLoader == null) {
+            injectedClasses.remove(classesToInject);
+        }
+        return pluginClassLoader;
+    }
+
+    /**
+     * Determines the class loader that defines the types of the target class loader the plugin classes refer to.
+     * <p>
+     * For example, the web applications of an application server typically get the Servlet API from a common class loader.
+     * If all referenced types that are not provided by the agent or the bootstrap class loader are defined by the same
+     * class loader, or its ancestors, a plugin CL that is a child of this class loader resolves them to the same classes
+     * as a plugin CL that is a child of the target class loader.
+     * Creating the plugin CL as a child of the defining class loader means the plugin classes are only loaded (and JIT-compiled)
+     * once for all web applications, and it doesn't keep any of the web application class loaders alive.
+     * </p>
+     * <p>
+     * If the types are defined by class loaders of different branches of the hierarchy, or if they resolve to different
+     * classes through the defining class loader, the target class loader is returned, which means the plugin CL is not shared.
+     * </p>
+     *
+     * @return the class loader the plugin CL should be a child of,
+     * {@code null} if the plugin only refers to types of the agent or bootstrap class loader
+     */
+    @Nullable
+    static ClassLoader getSharedTargetClassLoader(ClassLoader targetClassLoader, Set<String> referencedTypes,
+                                                  ClassLoader agentClassLoader, boolean allowOtelClassesFromAgentCl) {
+        try {
+            ClassLoader lookup = IndyPluginClassLoader.createParent(targetClassLoader, agentClassLoader, allowOtelClassesFromAgentCl);
+            Map<String, Class<?>> resolvedTypes = new HashMap<>();
+            ClassLoader sharedClassLoader = null;
+            for (String type : referencedTypes) {
+                Class<?> resolved = loadClass(lookup, type);
+                resolvedTypes.put(type, resolved);
+                if (resolved == null) {
+                    continue;
+                }
+                ClassLoader definingClassLoader = PrivilegedActionUtils.getClassLoader(resolved);
+                if (definingClassLoader == null || isSelfOrAncestor(definingClassLoader, agentClassLoader)) {
+                    // resolves to the same class regardless of the target class loader
+                    continue;
+                }
+                if (sharedClassLoader == null || isSelfOrAncestor(sharedClassLoader, definingClassLoader)) {
+                    sharedClassLoader = definingClassLoader;
+                } else if (!isSelfOrAncestor(definingClassLoader, sharedClassLoader)) {
+                    return targetClassLoader;
+                }
+            }
+            if (sharedClassLoader == targetClassLoader) {
+                return targetClassLoader;
+            }
+            ClassLoader sharedLookup = IndyPluginClassLoader.createParent(sharedClassLoader, agentClassLoader, allowOtelClassesFromAgentCl);
+            for (Map.Entry<String, Class<?>> resolvedType : resolvedTypes.entrySet()) {
+                if (loadClass(sharedLookup, resolvedType.getKey()) != resolvedType.getValue()) {
+                    logger.debug("Not sharing plugin class loader of {}, {} resolves to a different class through {}",
+                        targetClassLoader, resolvedType.getKey(), sharedClassLoader);
+                    return targetClassLoader;
+                }
+            }
+            return sharedClassLoader;
+        } catch (Throwable e) {
+            logger.debug("Not sharing plugin class loader of {}: {}", targetClassLoader, e.toString());
+            return targetClassLoader;
+        }
+    }
+
+    @Nullable
+    private static Class<?> loadClass(ClassLoader classLoader, String name) {
+        try {
+            return classLoader.loadClass(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static boolean isSelfOrAncestor(ClassLoader ancestor, @Nullable ClassLoader classLoader) {
+        for (ClassLoader current = classLoader; current != null; current = current.getParent()) {
+            if (current == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> getReferencedTypes(List<String> classesToInject, Map<String, byte[]> typeDefinitions) {
+        Set<String> types = referencedTypes.get(classesToInject);
+        if (types == null) {
+            types = collectReferencedTypes(typeDefinitions);
+            referencedTypes.put(classesToInject, types);
+        }
+        return types;
+    }
+
+    /**
+     * Collects the names of all types the provided classes refer to in their constant pool and their signatures,
+     * excluding the provided classes themselves, and types of the {@code java.} packages.
+     */
+    static Set<String> collectReferencedTypes(Map<String, byte[]> typeDefinitions) {
+        final Set<String> types = new HashSet<>();
+        Remapper collector = new Remapper(OpenedClassReader.ASM_API) {
+            @Override
+            public String map(String internalName) {
+                String type = internalName.replace('/', '.');
+                if (!type.startsWith("java.")) {
+                    types.add(type);
+                }
+                return internalName;
+            }
+        };
+        ClassVisitor noop = new ClassVisitor(OpenedClassReader.ASM_API) {
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                return new FieldVisitor(OpenedClassReader.ASM_API) {
+                };
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return new MethodVisitor(OpenedClassReader.ASM_API) {
+                };
+            }
+        };
+        for (byte[] classFile : typeDefinitions.values()) {
+            OpenedClassReader.of(classFile).accept(new ClassRemapper(noop, collector), ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+        types.removeAll(typeDefinitions.keySet());
+        return types;
+    }
+
     private static Map<Collection<String>, WeakReference<ClassLoader>> getOrCreateInjectedClasses(@Nullable ClassLoader targetClassLoader) {
         Map<Collection<String>, WeakReference<ClassLoader>> injectedClasses = alreadyInjected.get(targetClassLoader);
         if (injectedClasses == null) {
@@ -101,6 +273,7 @@ public class IndyPluginClassLoaderFactory {
 
     public synchronized static void clear() {
         alreadyInjected.clear();
+        referencedTypes.clear();
     }
 
     private static Map<String, byte[]> getTypeDefinitions(List<String> helperClassNames, ClassFileLocator classFileLocator) throws IOException {
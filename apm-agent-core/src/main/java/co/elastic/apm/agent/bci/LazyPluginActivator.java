@@ -0,0 +1,220 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.bci;
+
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.util.ExecutorUtils;
+
+import javax.annotation.Nullable;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Activates the plugins listed in the {@link PluginActivationManifest} when the first class with one of their activation
+ * prefixes is loaded.
+ * <p>
+ * This transformer does not transform any class, it only looks at the names of the classes being loaded.
+ * The activation itself, which loads the instrumentations of the plugin and installs them,
+ * happens on a background thread, as installing a transformer while a class is being transformed is not possible.
+ * The classes that have been loaded in the meantime, including the class that triggered the activation,
+ * are instrumented by retransforming them when the instrumentations of the plugin are installed.
+ * </p>
+ */
+class LazyPluginActivator implements ClassFileTransformer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LazyPluginActivator.class);
+    private static final long DEFAULT_CLASS_LOADED_TIMEOUT_MILLIS = 1000;
+    private static final long CLASS_LOADED_POLL_INTERVAL_MILLIS = 10;
+
+    private final Instrumentation instrumentation;
+    private final Callback callback;
+    /**
+     * The activation prefixes in the internal name format, for example {@code com/datastax/driver/core/}
+     */
+    private final String[] activationPrefixes;
+    /**
+     * The plugin package that corresponds to the activation prefix at the same index
+     */
+    private final String[] pluginPackages;
+    private final Set<String> pendingPluginPackages;
+    @Nullable
+    private final ClassLoader agentClassLoader;
+    private final ThreadPoolExecutor executor;
+    private final long classLoadedTimeoutMillis;
+
+    LazyPluginActivator(Instrumentation instrumentation, Map<String, Set<String>> activationPrefixesByPluginPackage,
+                        @Nullable ClassLoader agentClassLoader, Callback callback) {
+        this(instrumentation, activationPrefixesByPluginPackage, agentClassLoader, callback, DEFAULT_CLASS_LOADED_TIMEOUT_MILLIS);
+    }
+
+    LazyPluginActivator(Instrumentation instrumentation, Map<String, Set<String>> activationPrefixesByPluginPackage,
+                        @Nullable ClassLoader agentClassLoader, Callback callback, long classLoadedTimeoutMillis) {
+        this.instrumentation = instrumentation;
+        this.classLoadedTimeoutMillis = classLoadedTimeoutMillis;
+        this.callback = callback;
+        this.agentClassLoader = agentClassLoader;
+        this.pendingPluginPackages = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        List<String> prefixes = new ArrayList<>();
+        List<String> packages = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> entry : activationPrefixesByPluginPackage.entrySet()) {
+            pendingPluginPackages.add(entry.getKey());
+            for (String prefix : entry.getValue()) {
+                prefixes.add(prefix.replace('.', '/'));
+                packages.add(entry.getKey());
+            }
+        }
+        this.activationPrefixes = prefixes.toArray(new String[0]);
+        this.pluginPackages = packages.toArray(new String[0]);
+        this.executor = ExecutorUtils.createSingleThreadDaemonPool("plugin-activation", Math.max(1, pendingPluginPackages.size()));
+    }
+
+    /**
+     * Removes the plugins that have a class with one of their activation prefixes among the provided, already loaded, classes
+     * from the pending plugins, so that they can be loaded on startup.
+     *
+     * @param loadedClasses the classes that have already been loaded
+     * @return the packages of the plugins which should be loaded on startup
+     */
+    Set<String> removePluginsOfLoadedClasses(Class<?>[] loadedClasses) {
+        Set<String> pluginPackagesToLoad = new TreeSet<>();
+        for (Class<?> loadedClass : loadedClasses) {
+            if (pendingPluginPackages.isEmpty()) {
+                break;
+            }
+            if (loadedClass.getClassLoader() == agentClassLoader && agentClassLoader != null) {
+                continue;
+            }
+            String internalName = loadedClass.getName().replace('.', '/');
+            for (int i = 0; i < activationPrefixes.length; i++) {
+                if (internalName.startsWith(activationPrefixes[i]) && pendingPluginPackages.remove(pluginPackages[i])) {
+                    pluginPackagesToLoad.add(pluginPackages[i]);
+                }
+            }
+        }
+        return pluginPackagesToLoad;
+    }
+
+    Set<String> getPendingPluginPackages() {
+        return Collections.unmodifiableSet(pendingPluginPackages);
+    }
+
+    void install() {
+        if (!pendingPluginPackages.isEmpty()) {
+            instrumentation.addTransformer(this, false);
+        }
+    }
+
+    void uninstall() {
+        instrumentation.removeTransformer(this);
+        executor.shutdownNow();
+    }
+
+    @Nullable
+    @Override
+    public byte[] transform(@Nullable ClassLoader loader, @Nullable String className, @Nullable Class<?> classBeingRedefined,
+                            @Nullable ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (className == null || classBeingRedefined != null || (loader == agentClassLoader && loader != null)) {
+            return null;
+        }
+        for (int i = 0; i < activationPrefixes.length; i++) {
+            if (className.startsWith(activationPrefixes[i]) && pendingPluginPackages.remove(pluginPackages[i])) {
+                activateAsync(pluginPackages[i], className.replace('/', '.'), loader);
+            }
+        }
+        return null;
+    }
+
+    private void activateAsync(final String pluginPackage, final String triggerClassName, @Nullable final ClassLoader classLoader) {
+        logger.debug("Activating plugin {} as {} is being loaded", pluginPackage, triggerClassName);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    awaitClassLoaded(triggerClassName, classLoader);
+                    try {
+                        callback.activate(pluginPackage);
+                    } catch (Exception e) {
+                        logger.error("Failed to activate plugin " + pluginPackage, e);
+                    }
+                    if (pendingPluginPackages.isEmpty()) {
+                        logger.debug("All plugins have been activated");
+                        instrumentation.removeTransformer(LazyPluginActivator.this);
+                        executor.shutdown();
+                    }
+                }
+            });
+        } catch (Exception e) {
+            // the executor has been shut down
+            logger.debug("Not activating plugin {}: {}", pluginPackage, e.getMessage());
+        }
+    }
+
+    /**
+     * The class that triggered the activation is being loaded on another thread.
+     * Waits until it's loaded, so that it's retransformed when the instrumentations of the plugin are installed.
+     * <p>
+     * The class must not be looked up by name, as that would load it on this thread while it's still being defined on the
+     * other thread, which fails with a duplicate class definition for class loaders that define classes directly.
+     * Instead, the classes of the class loader are polled until the class appears or the timeout elapses.
+     * </p>
+     */
+    private void awaitClassLoaded(String className, @Nullable ClassLoader classLoader) {
+        long deadline = System.currentTimeMillis() + classLoadedTimeoutMillis;
+        try {
+            while (!isLoaded(className, classLoader)) {
+                if (System.currentTimeMillis() >= deadline) {
+                    logger.debug("{} has not been loaded within {}ms, activating anyway", className, classLoadedTimeoutMillis);
+                    return;
+                }
+                Thread.sleep(CLASS_LOADED_POLL_INTERVAL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            // the activator is being uninstalled
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isLoaded(String className, @Nullable ClassLoader classLoader) {
+        for (Class<?> loadedClass : instrumentation.getInitiatedClasses(classLoader)) {
+            if (loadedClass.getName().equals(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    interface Callback {
+        /**
+         * Loads and installs the instrumentations of the plugin.
+         *
+         * @param pluginPackage the package of the plugin's instrumentations
+         */
+        void activate(String pluginPackage);
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.bci;
+
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.ElasticApmTracerBuilder;
+import co.elastic.apm.agent.sdk.ElasticApmInstrumentation;
+import co.elastic.apm.agent.sdk.bytebuddy.CustomElementMatchers;
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.tracer.GlobalTracer;
+import co.elastic.apm.agent.util.DependencyInjectingServiceLoader;
+import net.bytebuddy.matcher.ElementMatcher;
+import net.bytebuddy.matcher.NameMatcher;
+import net.bytebuddy.matcher.StringMatcher;
+import net.bytebuddy.matcher.StringSetMatcher;
+import org.stagemonitor.configuration.ConfigurationOptionProvider;
+import org.stagemonitor.configuration.ConfigurationRegistry;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Lists the class name prefixes of the libraries that the plugins target, so that the instrumentations of a plugin can be loaded
+ * when the first class that has one of these prefixes is loaded, instead of on startup (see {@link LazyPluginActivator}).
+ * <p>
+ * The manifest is generated when building the agent via {@link #main(String[])}, which loads all instrumentations and derives
+ * the prefixes from their {@link ElasticApmInstrumentation#getClassLoaderMatcher() class loader matchers}
+ * ({@link CustomElementMatchers#classLoaderCanLoadClass(String)}) and their
+ * {@link ElasticApmInstrumentation#getTypeMatcherPreFilter() type pre-filters} ({@code nameStartsWith}, {@code named}).
+ * A plugin is identified by the package of its instrumentation classes.
+ * Plugins for which the prefixes can't be derived for every instrumentation, or which declare virtual fields,
+ * are not listed in the manifest and are always loaded on startup.
+ * </p>
+ */
+public class PluginActivationManifest {
+
+    static final String RESOURCE_NAME = "co/elastic/apm/agent/bci/plugin-activation.properties";
+
+    private static final Logger logger = LoggerFactory.getLogger(PluginActivationManifest.class);
+
+    private final Map<String, Set<String>> activationPrefixesByPluginPackage;
+
+    PluginActivationManifest(Map<String, Set<String>> activationPrefixesByPluginPackage) {
+        this.activationPrefixesByPluginPackage = activationPrefixesByPluginPackage;
+    }
+
+    /**
+     * @return the class name prefixes, in the binary name format, by plugin package
+     */
+    public Map<String, Set<String>> getActivationPrefixesByPluginPackage() {
+        return activationPrefixesByPluginPackage;
+    }
+
+    public boolean isEmpty() {
+        return activationPrefixesByPluginPackage.isEmpty();
+    }
+
+    static String getPluginPackage(String instrumentationClassName) {
+        int lastDot = instrumentationClassName.lastIndexOf('.');
+        return lastDot == -1 ? "" : instrumentationClassName.substring(0, lastDot);
+    }
+
+    /**
+     * Reads the manifest that has been generated when building the agent.
+     *
+     * @return the manifest, which is empty if the agent has been built without it
+     */
+    public static PluginActivationManifest read(ClassLoader classLoader) {
+        Map<String, Set<String>> activationPrefixes = new TreeMap<>();
+        try (InputStream inputStream = classLoader.getResourceAsStream(RESOURCE_NAME)) {
+            if (inputStream == null) {
+                logger.debug("No plugin activation manifest found");
+                return new PluginActivationManifest(activationPrefixes);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                int separator = line.indexOf('=');
+                if (line.isEmpty() || line.startsWith("#") || separator == -1) {
+                    continue;
+                }
+                Set<String> prefixes = new TreeSet<>();
+                for (String prefix : line.substring(separator + 1).split(",")) {
+                    if (!prefix.trim().isEmpty()) {
+                        prefixes.add(prefix.trim());
+                    }
+                }
+                if (!prefixes.isEmpty()) {
+                    activationPrefixes.put(line.substring(0, separator).trim(), prefixes);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read the plugin activation manifest, loading all plugins on startup", e);
+            activationPrefixes.clear();
+        }
+        return new PluginActivationManifest(activationPrefixes);
+    }
+
+    void write(Writer writer) throws IOException {
+        writer.write("# Generated when building the agent, see " + PluginActivationManifest.class.getName() + "\n");
+        writer.write("# <plugin package>=<class name prefixes that activate the plugin>\n");
+        for (Map.Entry<String, Set<String>> entry : activationPrefixesByPluginPackage.entrySet()) {
+            StringBuilder line = new StringBuilder(entry.getKey()).append('=');
+            boolean first = true;
+            for (String prefix : entry.getValue()) {
+                if (!first) {
+                    line.append(',');
+                }
+                line.append(prefix);
+                first = false;
+            }
+            writer.write(line.append('\n').toString());
+        }
+    }
+
+    /**
+     * Derives the manifest from the provided instrumentations.
+     */
+    static PluginActivationManifest of(Iterable<? extends ElasticApmInstrumentation> instrumentations) {
+        Map<String, Set<String>> activationPrefixes = new TreeMap<>();
+        Set<String> eagerPluginPackages = new HashSet<>();
+        for (ElasticApmInstrumentation instrumentation : instrumentations) {
+            String pluginPackage = getPluginPackage(instrumentation.getClass().getName());
+            if (eagerPluginPackages.contains(pluginPackage)) {
+                continue;
+            }
+            Set<String> prefixes = getActivationPrefixes(instrumentation);
+            if (prefixes == null) {
+                eagerPluginPackages.add(pluginPackage);
+                activationPrefixes.remove(pluginPackage);
+                continue;
+            }
+            Set<String> pluginPrefixes = activationPrefixes.get(pluginPackage);
+            if (pluginPrefixes == null) {
+                pluginPrefixes = new TreeSet<>();
+                activationPrefixes.put(pluginPackage, pluginPrefixes);
+            }
+            pluginPrefixes.addAll(prefixes);
+        }
+        return new PluginActivationManifest(activationPrefixes);
+    }
+
+    /**
+     * Returns the class name prefixes of which at least one class has to be loaded before the instrumentation can apply,
+     * or {@code null} if they can't be determined.
+     */
+    @Nullable
+    static Set<String> getActivationPrefixes(ElasticApmInstrumentation instrumentation) {
+        if (!instrumentation.getVirtualFields().isEmpty()) {
+            // the fields have to be added when the class is loaded, which requires the instrumentation to be known upfront
+            return null;
+        }
+        Set<String> prefixes = new TreeSet<>();
+        Set<String> classLoaderPrefixes = getRequiredPrefixes(instrumentation.getClassLoaderMatcher());
+        if (classLoaderPrefixes != null) {
+            prefixes.addAll(classLoaderPrefixes);
+        }
+        Set<String> typePrefixes = getRequiredPrefixes(instrumentation.getTypeMatcherPreFilter());
+        if (typePrefixes != null) {
+            prefixes.addAll(typePrefixes);
+        }
+        if (classLoaderPrefixes == null && typePrefixes == null) {
+            return null;
+        }
+        return prefixes;
+    }
+
+    /**
+     * Returns a set of class name prefixes of which one has to be loaded for the matcher to match, or {@code null} if unknown.
+     * For a class loader matcher that requires a class to be loadable, this is the package of that class.
+     * For a type name matcher, this is the name, or the name prefix, of the type.
+     */
+    @Nullable
+    private static Set<String> getRequiredPrefixes(ElementMatcher<?> matcher) {
+        try {
+            if (matcher instanceof CustomElementMatchers.ClassLoaderCanLoadClassMatcher) {
+                String className = ((CustomElementMatchers.ClassLoaderCanLoadClassMatcher) matcher).getClassName();
+                return Collections.singleton(getPluginPackage(className) + ".");
+            } else if (matcher instanceof NameMatcher) {
+                return getRequiredPrefixes((ElementMatcher<?>) getField(matcher, NameMatcher.class, "matcher"));
+            } else if (matcher instanceof StringMatcher) {
+                String mode = getField(matcher, StringMatcher.class, "mode").toString();
+                if (mode.equals("EQUALS_FULLY") || mode.equals("STARTS_WITH")) {
+                    return getNonEmptyPrefixes(Collections.singleton((String) getField(matcher, StringMatcher.class, "value")));
+                }
+            } else if (matcher instanceof StringSetMatcher) {
+                return getNonEmptyPrefixes((Collection<?>) getField(matcher, StringSetMatcher.class, "values"));
+            } else if (matcher instanceof ElementMatcher.Junction.Conjunction) {
+                // all of the matchers have to match, so it's enough if the prefixes of one of them are known
+                Set<String> prefixes = null;
+                for (Object nested : (List<?>) getField(matcher, ElementMatcher.Junction.Conjunction.class, "matchers")) {
+                    Set<String> nestedPrefixes = getRequiredPrefixes((ElementMatcher<?>) nested);
+                    if (nestedPrefixes != null) {
+                        if (prefixes == null) {
+                            prefixes = new TreeSet<>();
+                        }
+                        prefixes.addAll(nestedPrefixes);
+                    }
+                }
+                return prefixes;
+            } else if (matcher instanceof ElementMatcher.Junction.Disjunction) {
+                // any of the matchers may match, so the prefixes of all of them have to be known
+                Set<String> prefixes = new TreeSet<>();
+                for (Object nested : (List<?>) getField(matcher, ElementMatcher.Junction.Disjunction.class, "matchers")) {
+                    Set<String> nestedPrefixes = getRequiredPrefixes((ElementMatcher<?>) nested);
+                    if (nestedPrefixes == null) {
+                        return null;
+                    }
+                    prefixes.addAll(nestedPrefixes);
+                }
+                return prefixes.isEmpty() ? null : prefixes;
+            }
+        } catch (Exception e) {
+            logger.debug("Can't determine the prefixes of matcher {}: {}", matcher, e.getMessage());
+        }
+        return null;
+    }
+
+    @Nullable
+    private static Set<String> getNonEmptyPrefixes(Collection<?> values) {
+        Set<String> prefixes = new TreeSet<>();
+        for (Object value : values) {
+            if (value.toString().isEmpty()) {
+                // matches any class
+                return null;
+            }
+            prefixes.add(value.toString());
+        }
+        return prefixes.isEmpty() ? null : prefixes;
+    }
+
+    private static Object getField(Object target, Class<?> declaringClass, String name) throws Exception {
+        Field field = declaringClass.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(target);
+    }
+
+    /**
+     * Generates the manifest for all instrumentations on the class path, invoked when building the agent.
+     *
+     * @param args the file to write the manifest to
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: PluginActivationManifest <output file>");
+        }
+        ElasticApmTracer tracer = new ElasticApmTracerBuilder()
+            .configurationRegistry(ConfigurationRegistry.builder()
+                .optionProviders(ServiceLoader.load(ConfigurationOptionProvider.class, PluginActivationManifest.class.getClassLoader()))
+                .build())
+            .build();
+        GlobalTracer.init(tracer);
+        try {
+            List<ElasticApmInstrumentation> instrumentations = DependencyInjectingServiceLoader.load(ElasticApmInstrumentation.class, tracer);
+            File file = new File(args[0]);
+            File parent = file.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Can't create directory " + parent);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                of(instrumentations).write(writer);
+            }
+        } finally {
+            tracer.stop();
+            GlobalTracer.setNoop();
+        }
+    }
+}
@@ -43,7 +43,7 @@ public class IndyPluginClassLoader extends ByteArrayClassLoader.ChildFirst {
 
     public IndyPluginClassLoader(@Nullable ClassLoader targetClassLoader, ClassLoader agentClassLoader, Map<String, byte[]> typeDefinitions, boolean allowOtelClassesFromAgentCl) {
         // See getResource on why we're using PersistenceHandler.LATENT over PersistenceHandler.MANIFEST
-        super(getParent(targetClassLoader, agentClassLoader, allowOtelClassesFromAgentCl),
+        super(createParent(targetClassLoader, agentClassLoader, allowOtelClassesFromAgentCl),
             true,
             typeDefinitions,
             PrivilegedActionUtils.getProtectionDomain(agentClassLoader.getClass()), // inherit protection domain from agent CL
@@ -52,7 +52,16 @@ public class IndyPluginClassLoader extends ByteArrayClassLoader.ChildFirst {
     }
 
 
-    private static ClassLoader getParent(@Nullable ClassLoader targetClassLoader, ClassLoader agentClassLoader, boolean allowOtelClassesFromAgentCl) {
+    /**
+     * Creates the class loader that plugin class loaders delegate to for classes they don't define themselves.
+     * This can also be used to check which classes the plugin classes would resolve to, without creating a plugin class loader.
+     *
+     * @param targetClassLoader           the class loader of the instrumented class
+     * @param agentClassLoader            the agent class loader
+     * @param allowOtelClassesFromAgentCl whether OpenTelemetry classes may be loaded from the agent class loader
+     * @return the parent class loader for the plugin class loader
+     */
+    public static ClassLoader createParent(@Nullable ClassLoader targetClassLoader, ClassLoader agentClassLoader, boolean allowOtelClassesFromAgentCl) {
         if (targetClassLoader == null) {
             // the MultipleParentClassLoader doesn't support null values
             // the agent class loader already has the bootstrap class loader as the parent
@@ -0,0 +1,129 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.bci.virtualfield;
+
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.sdk.virtualfield.VirtualField;
+import co.elastic.apm.agent.sdk.weakconcurrent.WeakConcurrent;
+import co.elastic.apm.agent.sdk.weakconcurrent.WeakMap;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+
+/**
+ * Stores the value in a synthetic field that has been added by {@link VirtualFieldInjector} when the class has been loaded.
+ * <p>
+ * For classes that don't have the field, for example because they have been loaded before the agent was started,
+ * or because they are hidden or lambda classes that can't be transformed, the value is stored in a {@link WeakMap}.
+ * </p>
+ */
+class VirtualFieldImpl<T, F> implements VirtualField<T, F> {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualFieldImpl.class);
+
+    private static final Field NO_FIELD;
+
+    static {
+        try {
+            NO_FIELD = VirtualFieldImpl.class.getDeclaredField("NO_FIELD");
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final String fieldName;
+    private final WeakMap<T, F> fallback = WeakConcurrent.buildMap();
+    private final ClassValue<Field> fields = new ClassValue<Field>() {
+        @Override
+        protected Field computeValue(Class<?> type) {
+            return lookupField(type);
+        }
+    };
+
+    VirtualFieldImpl(String typeName, String fieldTypeName) {
+        this.fieldName = getFieldName(typeName, fieldTypeName);
+    }
+
+    static String getFieldName(String typeName, String fieldTypeName) {
+        return "$elasticApm$" + (typeName + "$" + fieldTypeName).replace('.', '$');
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public F get(T object) {
+        Field field = fields.get(object.getClass());
+        if (field == NO_FIELD) {
+            return fallback.get(object);
+        }
+        try {
+            return (F) field.get(object);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void set(T object, @Nullable F value) {
+        Field field = fields.get(object.getClass());
+        if (field == NO_FIELD) {
+            if (value == null) {
+                fallback.remove(object);
+            } else {
+                fallback.put(object, value);
+            }
+            return;
+        }
+        try {
+            field.set(object, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void remove(T object) {
+        set(object, null);
+    }
+
+    /**
+     * @return the number of values that are stored in the weak map, because the class of the object does not have the field
+     */
+    int getFallbackSize() {
+        return fallback.approximateSize();
+    }
+
+    private Field lookupField(Class<?> type) {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            try {
+                Field field = current.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException ignore) {
+                // the field may have been added to a super class
+            } catch (RuntimeException e) {
+                // InaccessibleObjectException (Java 9+) or SecurityException
+                logger.debug("Can't access virtual field {} of {}, falling back to a weak map: {}", fieldName, type.getName(), e.getMessage());
+                return NO_FIELD;
+            }
+        }
+        return NO_FIELD;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.bci.virtualfield;
+
+import co.elastic.apm.agent.bci.bytebuddy.ErrorLoggingListener;
+import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
+import co.elastic.apm.agent.sdk.ElasticApmInstrumentation;
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.sdk.virtualfield.VirtualFieldDeclaration;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.agent.builder.ResettableClassFileTransformer;
+import net.bytebuddy.description.NamedElement;
+import net.bytebuddy.description.modifier.FieldManifestation;
+import net.bytebuddy.description.modifier.FieldPersistence;
+import net.bytebuddy.description.modifier.SyntheticState;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.scaffold.TypeValidation;
+import net.bytebuddy.matcher.ElementMatcher;
+import net.bytebuddy.utility.JavaModule;
+
+import javax.annotation.Nullable;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static co.elastic.apm.agent.bci.bytebuddy.CustomElementMatchers.anyMatch;
+import static net.bytebuddy.matcher.ElementMatchers.any;
+import static net.bytebuddy.matcher.ElementMatchers.hasSuperType;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+import static net.bytebuddy.matcher.ElementMatchers.nameStartsWith;
+import static net.bytebuddy.matcher.ElementMatchers.none;
+
+/**
+ * Adds the {@linkplain ElasticApmInstrumentation#getVirtualFields() declared virtual fields} as synthetic fields to classes
+ * when they are loaded.
+ * <p>
+ * Adding fields is a class format change which is not supported when retransforming or redefining already loaded classes.
+ * Therefore, this transformer is registered separately from the main agent transformer, as a non-retransforming transformer.
+ * The JVM retains the output of non-retransforming transformers when classes are retransformed later on,
+ * so that the fields survive the instrumentation of the main agent transformer.
+ * Classes that have been loaded before the agent started don't get the fields and use the weak map fallback of {@link VirtualFieldImpl}.
+ * </p>
+ */
+public class VirtualFieldInjector {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualFieldInjector.class);
+
+    private VirtualFieldInjector() {
+    }
+
+    /**
+     * Installs a transformer that adds the virtual fields declared by the provided instrumentations.
+     * <p>
+     * As this transformer sees every class that is loaded, the types are pre-filtered by the
+     * {@linkplain ElasticApmInstrumentation#getClassLoaderMatcher() class loader matchers} and
+     * {@linkplain ElasticApmInstrumentation#getTypeMatcherPreFilter() type name pre-filters} of the instrumentations declaring a field,
+     * before resolving their super types.
+     * Classes that don't pass the pre-filters aren't instrumented by the declaring instrumentations either,
+     * or fall back to the weak map in case a field is accessed nonetheless.
+     * </p>
+     *
+     * @param poolStrategy the pool strategy of the main agent builder, so that type resolutions are cached across both transformers
+     * @return the installed transformer, or {@code null} if no virtual fields are declared
+     */
+    @Nullable
+    public static ResettableClassFileTransformer install(Instrumentation instrumentation, Iterable<ElasticApmInstrumentation> instrumentations,
+                                                        CoreConfigurationImpl coreConfiguration, AgentBuilder.PoolStrategy poolStrategy) {
+        Map<VirtualFieldDeclaration, List<ElasticApmInstrumentation>> declarations = new LinkedHashMap<>();
+        for (ElasticApmInstrumentation apmInstrumentation : instrumentations) {
+            for (VirtualFieldDeclaration declaration : apmInstrumentation.getVirtualFields()) {
+                List<ElasticApmInstrumentation> declaringInstrumentations = declarations.get(declaration);
+                if (declaringInstrumentations == null) {
+                    declaringInstrumentations = new ArrayList<>();
+                    declarations.put(declaration, declaringInstrumentations);
+                }
+                declaringInstrumentations.add(apmInstrumentation);
+            }
+        }
+        if (declarations.isEmpty()) {
+            return null;
+        }
+        logger.debug("Injecting virtual fields {}", declarations.keySet());
+        AgentBuilder agentBuilder = new AgentBuilder.Default(new ByteBuddy().with(TypeValidation.DISABLED))
+            .with(AgentBuilder.RedefinitionStrategy.DISABLED)
+            .with(AgentBuilder.TypeStrategy.Default.REDEFINE)
+            .with(AgentBuilder.DescriptionStrategy.Default.POOL_ONLY)
+            .with(poolStrategy)
+            .with(new ErrorLoggingListener())
+            .ignore(nameStartsWith("co.elastic.apm."))
+            .or(nameStartsWith("net.bytebuddy."))
+            .or(nameStartsWith("java."))
+            .or(anyMatch(coreConfiguration.getDefaultClassesExcludedFromInstrumentation()))
+            .or(anyMatch(coreConfiguration.getClassesExcludedFromInstrumentation()));
+        for (Map.Entry<VirtualFieldDeclaration, List<ElasticApmInstrumentation>> entry : declarations.entrySet()) {
+            VirtualFieldDeclaration declaration = entry.getKey();
+            ElementMatcher.Junction<ClassLoader> classLoaderMatcher = any();
+            if (coreConfiguration.isClassLoadingMatchingPreFilter()) {
+                classLoaderMatcher = none();
+                for (ElasticApmInstrumentation apmInstrumentation : entry.getValue()) {
+                    classLoaderMatcher = classLoaderMatcher.or(apmInstrumentation.getClassLoaderMatcher());
+                }
+            }
+            ElementMatcher.Junction<NamedElement> typeMatcherPreFilter = any();
+            if (coreConfiguration.isTypeMatchingWithNamePreFilter()) {
+                typeMatcherPreFilter = none();
+                for (ElasticApmInstrumentation apmInstrumentation : entry.getValue()) {
+                    typeMatcherPreFilter = typeMatcherPreFilter.or(apmInstrumentation.getTypeMatcherPreFilter());
+                }
+            }
+            agentBuilder = agentBuilder
+                .type(new ImplementationMatcher(declaration.getTypeName(), classLoaderMatcher, typeMatcherPreFilter))
+                .transform(new FieldTransformer(VirtualFieldImpl.getFieldName(declaration.getTypeName(), declaration.getFieldTypeName())));
+        }
+        return agentBuilder.installOn(instrumentation);
+    }
+
+    /**
+     * Matches concrete classes loaded by a non-bootstrap class loader that implement or extend the declared type.
+     * The super types are only resolved for types that pass the class loader matcher and the type name pre-filter.
+     */
+    private static class ImplementationMatcher implements AgentBuilder.RawMatcher {
+
+        private final ElementMatcher<ClassLoader> classLoaderMatcher;
+        private final ElementMatcher<NamedElement> typeMatcherPreFilter;
+        private final ElementMatcher<TypeDescription> superTypeMatcher;
+
+        private ImplementationMatcher(String typeName, ElementMatcher<ClassLoader> classLoaderMatcher, ElementMatcher<NamedElement> typeMatcherPreFilter) {
+            this.classLoaderMatcher = classLoaderMatcher;
+            this.typeMatcherPreFilter = typeMatcherPreFilter;
+            superTypeMatcher = hasSuperType(named(typeName));
+        }
+
+        @Override
+        public boolean matches(TypeDescription typeDescription, @Nullable ClassLoader classLoader, @Nullable JavaModule module,
+                               @Nullable Class<?> classBeingRedefined, ProtectionDomain protectionDomain) {
+            if (classBeingRedefined != null || classLoader == null) {
+                return false;
+            }
+            if (!classLoaderMatcher.matches(classLoader) || !typeMatcherPreFilter.matches(typeDescription)) {
+                return false;
+            }
+            try {
+                return !typeDescription.isInterface() && !typeDescription.isSynthetic() && superTypeMatcher.matches(typeDescription);
+            } catch (Exception ignore) {
+                // could be because of a missing type
+                return false;
+            }
+        }
+    }
+
+    private static class FieldTransformer implements AgentBuilder.Transformer {
+
+        private final String fieldName;
+
+        private FieldTransformer(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder, TypeDescription typeDescription,
+                                                @Nullable ClassLoader classLoader, @Nullable JavaModule module, ProtectionDomain protectionDomain) {
+            if (!typeDescription.getDeclaredFields().filter(named(fieldName)).isEmpty()) {
+                return builder;
+            }
+            // private and transient so that neither the default serialVersionUID nor the serialized form change
+            return builder.defineField(fieldName, Object.class, Visibility.PRIVATE, FieldManifestation.VOLATILE,
+                FieldPersistence.TRANSIENT, SyntheticState.SYNTHETIC);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.bci.virtualfield;
+
+import co.elastic.apm.agent.sdk.virtualfield.VirtualField;
+import co.elastic.apm.agent.sdk.virtualfield.VirtualFields;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class VirtualFieldProviderImpl implements VirtualFields.VirtualFieldProvider {
+
+    /**
+     * Keyed by type names rather than by classes so that all plugin class loaders share the same field for a given declaration.
+     */
+    private static final ConcurrentMap<String, VirtualFieldImpl<?, ?>> virtualFields = new ConcurrentHashMap<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, F> VirtualField<T, F> find(Class<T> type, Class<F> fieldType) {
+        String key = VirtualFieldImpl.getFieldName(type.getName(), fieldType.getName());
+        VirtualFieldImpl<?, ?> virtualField = virtualFields.get(key);
+        if (virtualField == null) {
+            VirtualFieldImpl<?, ?> newVirtualField = new VirtualFieldImpl<>(type.getName(), fieldType.getName());
+            virtualField = virtualFields.putIfAbsent(key, newVirtualField);
+            if (virtualField == null) {
+                virtualField = newVirtualField;
+            }
+        }
+        return (VirtualField<T, F>) virtualField;
+    }
+}
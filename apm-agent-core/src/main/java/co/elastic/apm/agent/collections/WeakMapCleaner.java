@@ -20,11 +20,12 @@ package co.elastic.apm.agent.collections;
 
 import co.elastic.apm.agent.tracer.AbstractLifecycleListener;
 import co.elastic.apm.agent.tracer.Tracer;
+import co.elastic.apm.agent.util.AgentScheduler;
 import co.elastic.apm.agent.util.ExecutorUtils;
 import co.elastic.apm.agent.sdk.logging.Logger;
 import co.elastic.apm.agent.sdk.logging.LoggerFactory;
 
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import javax.annotation.Nullable;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -34,21 +35,21 @@ public class WeakMapCleaner extends AbstractLifecycleListener implements Runnabl
 
     private static final Logger logger = LoggerFactory.getLogger(WeakMapCleaner.class);
 
-    private final ScheduledThreadPoolExecutor scheduler;
-
-    public WeakMapCleaner() {
-        this.scheduler = ExecutorUtils.createSingleThreadSchedulingDaemonPool("weak-map-cleaner");
-    }
+    @Nullable
+    private AgentScheduler.ScheduledTask scheduledTask;
 
     @Override
     public void start(Tracer tracer) {
-        scheduler.scheduleWithFixedDelay(this, 1, 1, TimeUnit.SECONDS);
+        scheduledTask = ExecutorUtils.getAgentScheduler().scheduleWithFixedDelay("weak-map-cleaner", this, 1, 1, TimeUnit.SECONDS);
     }
 
     @Override
     public void stop() throws Exception {
-        scheduler.shutdownNow();
-        scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        AgentScheduler.ScheduledTask task = scheduledTask;
+        if (task != null) {
+            task.cancel();
+            scheduledTask = null;
+        }
     }
 
     @Override
@@ -68,6 +68,8 @@ public class ApmServerConfigurationSource extends AbstractConfigurationSource im
     private volatile Map<String, String> config = Collections.emptyMap();
     @Nullable
     private volatile ThreadPoolExecutor threadPool;
+    @Nullable
+    private volatile Tracer tracer;
 
     public ApmServerConfigurationSource(DslJsonSerializer payloadSerializer, ApmServerClient apmServerClient) {
         this(payloadSerializer, apmServerClient, LoggerFactory.getLogger(ApmServerConfigurationSource.class));
@@ -118,6 +120,7 @@ public class ApmServerConfigurationSource extends AbstractConfigurationSource im
 
     @Override
     public void start(final Tracer tracer) {
+        this.tracer = tracer;
         threadPool = ExecutorUtils.createSingleThreadDaemonPool("remote-config-poller", 1);
         threadPool.execute(new Runnable() {
             @Override
@@ -254,6 +257,26 @@ public class ApmServerConfigurationSource extends AbstractConfigurationSource im
     public void resume() {
     }
 
+    /**
+     * Stops polling, as the connection to the APM Server can't be part of the checkpoint
+     */
+    @Override
+    public void beforeCheckpoint() {
+        ThreadPoolExecutor threadPool = this.threadPool;
+        if (threadPool != null) {
+            ExecutorUtils.shutdownAndWaitTermination(threadPool);
+            this.threadPool = null;
+        }
+    }
+
+    @Override
+    public void afterRestore() {
+        Tracer tracer = this.tracer;
+        if (tracer != null && threadPool == null) {
+            start(tracer);
+        }
+    }
+
     @Override
     public void stop() {
         if (this.threadPool != null) {
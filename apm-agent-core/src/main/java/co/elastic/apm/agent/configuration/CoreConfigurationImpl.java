@@ -25,6 +25,8 @@ import co.elastic.apm.agent.matcher.MethodMatcher;
 import co.elastic.apm.agent.matcher.MethodMatcherValueConverter;
 import co.elastic.apm.agent.sdk.logging.Logger;
 import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.tracer.configuration.ByteValue;
+import co.elastic.apm.agent.tracer.configuration.ByteValueConverter;
 import co.elastic.apm.agent.tracer.configuration.CoreConfiguration;
 import co.elastic.apm.agent.tracer.configuration.ListValueConverter;
 import co.elastic.apm.agent.tracer.configuration.RegexValidator;
@@ -251,6 +253,44 @@ public class CoreConfigurationImpl extends ConfigurationOptionProvider implement
         .dynamic(true)
         .buildWithDefault(500);
 
+    private final ConfigurationOption<Boolean> tailSamplingEnabled = ConfigurationOption.booleanOption()
+        .key("tail_sampling_enabled")
+        .configurationCategory(CORE_CATEGORY)
+        .tags("performance", "added[1.57.0]", "experimental")
+        .description("When enabled, the spans of transactions that are not sampled according to\n" +
+            "<<config-transaction-sample-rate, `transaction_sample_rate`>> are kept in a bounded buffer until the transaction ends.\n" +
+            "If the transaction failed or took longer than <<config-tail-sampling-duration-threshold, `tail_sampling_duration_threshold`>>,\n" +
+            "the transaction and its buffered spans are reported as if they were sampled.\n" +
+            "Otherwise, the buffered spans are discarded.\n" +
+            "\n" +
+            "This allows to use a low sample rate while still capturing slow and failed requests.\n" +
+            "Only transactions which start a new trace are subject to tail sampling.\n" +
+            "As the sampling decision has already been propagated to downstream services when the transaction ends,\n" +
+            "the reported traces of tail-sampled transactions do not contain the downstream transactions.\n" +
+            "Also note that only the skeleton of non-sampled spans is recorded, without context information such as database statements.\n" +
+            "Promoted transactions and spans are reported with a `sample_rate` of `0`, so that they don't add to the throughput extrapolated from the sampled transactions.")
+        .dynamic(true)
+        .buildWithDefault(false);
+
+    private final ConfigurationOption<TimeDuration> tailSamplingDurationThreshold = TimeDurationValueConverter.durationOption("ms")
+        .key("tail_sampling_duration_threshold")
+        .configurationCategory(CORE_CATEGORY)
+        .tags("performance", "added[1.57.0]", "experimental")
+        .description("If <<config-tail-sampling-enabled, `tail_sampling_enabled`>> is set, non-sampled transactions which take at least this long are reported\n" +
+            "together with their buffered spans.")
+        .dynamic(true)
+        .buildWithDefault(TimeDuration.of("500ms"));
+
+    private final ConfigurationOption<Integer> tailSamplingMaxBufferedSpans = ConfigurationOption.integerOption()
+        .key("tail_sampling_max_buffered_spans")
+        .configurationCategory(CORE_CATEGORY)
+        .tags("performance", "added[1.57.0]", "experimental")
+        .description("If <<config-tail-sampling-enabled, `tail_sampling_enabled`>> is set, limits the amount of spans buffered per non-sampled transaction.\n" +
+            "Spans exceeding this limit are dropped right away.")
+        .addValidator(isInRange(0, Integer.MAX_VALUE))
+        .dynamic(true)
+        .buildWithDefault(100);
+
     private final ConfigurationOption<Integer> longFieldMaxLength = ConfigurationOption.integerOption()
         .key("long_field_max_length")
         .configurationCategory(CORE_CATEGORY)
@@ -435,6 +475,21 @@ public class CoreConfigurationImpl extends ConfigurationOptionProvider implement
         .dynamic(true)
         .buildWithDefault(EventType.OFF);
 
+    private final ConfigurationOption<ByteValue> captureBodyMemoryLimit = ByteValueConverter.byteOption()
+        .key("capture_body_memory_limit")
+        .configurationCategory(CORE_CATEGORY)
+        .tags("performance", "added[1.57.0]")
+        .description("The maximum amount of heap memory used for buffering captured request bodies at any given time.\n" +
+            "This limit is shared by all concurrently captured bodies, including the ones of HTTP client spans.\n" +
+            "When the limit is reached, request bodies are not captured or are truncated until memory is freed up\n" +
+            "by reporting the events which hold the bodies.\n" +
+            "\n" +
+            "This bounds the heap impact of <<config-capture-body>> on high-traffic endpoints.\n" +
+            "\n" +
+            "Allowed byte units are `b`, `kb` and `mb`. `1kb` is equal to `1024b`.")
+        .dynamic(false)
+        .buildWithDefault(ByteValue.of("16mb"));
+
     private final ConfigurationOption<Boolean> captureHeaders = ConfigurationOption.booleanOption()
         .key("capture_headers")
         .configurationCategory(CORE_CATEGORY)
@@ -473,6 +528,34 @@ public class CoreConfigurationImpl extends ConfigurationOptionProvider implement
         .tags("added[1.35.0]")
         .buildWithDefault(false);
 
+    private final ConfigurationOption<Boolean> sharePluginClassLoaders = ConfigurationOption.booleanOption()
+        .key("share_plugin_class_loaders")
+        .configurationCategory(CORE_CATEGORY)
+        .tags("added[1.57.0]", "performance", "experimental")
+        .description("Each instrumentation plugin is loaded by a dedicated class loader per class loader of the instrumented classes.\n" +
+            "When set to true, the plugin class loaders are shared across application class loaders if the types the plugin refers to\n" +
+            "resolve to the same classes, for example if the web applications of an application server get the Servlet API from a\n" +
+            "common class loader. This avoids loading the classes of a plugin, and their JIT-compiled code, for each web application,\n" +
+            "which reduces the metaspace usage. If the types resolve to different classes, the plugin class loader is not shared.\n" +
+            "Types that a plugin only refers to by name, for example through `Class.forName`, and the static state of plugin classes are not\n" +
+            "taken into account, which means that they are shared across application class loaders as well.")
+        .dynamic(false)
+        .buildWithDefault(false);
+
+    private final ConfigurationOption<Boolean> lazyPluginActivation = ConfigurationOption.booleanOption()
+        .key("lazy_plugin_activation")
+        .configurationCategory(CORE_CATEGORY)
+        .tags("performance", "added[1.57.0]", "experimental")
+        .description("When set to true, the instrumentations of a plugin are only loaded when a class of the library the plugin targets\n" +
+            "is loaded for the first time, instead of loading the instrumentations of all plugins on startup.\n" +
+            "This reduces the startup time and the memory usage of applications that only use a few of the supported libraries.\n" +
+            "The classes of the library that are loaded before the plugin is activated are instrumented through retransformation,\n" +
+            "which means that the first few operations right after the library is first used may not be captured.\n" +
+            "Plugins that declare virtual fields, or which can't tell which library they target, are always loaded on startup.\n" +
+            "This option only applies when the agent is started with `-javaagent` or attached at runtime.")
+        .dynamic(false)
+        .buildWithDefault(false);
+
     private final ConfigurationOption<Boolean> warmupByteBuddy = ConfigurationOption.booleanOption()
         .key("warmup_byte_buddy")
         .configurationCategory(CORE_CATEGORY)
@@ -514,6 +597,15 @@ public class CoreConfigurationImpl extends ConfigurationOptionProvider implement
             "is available somewhere in the classpath where it never gets loaded unless this matching is applied.")
         .buildWithDefault(true);
 
+    private final ConfigurationOption<Boolean> virtualFieldInjection = ConfigurationOption.booleanOption()
+        .key("enable_virtual_field_injection")
+        .configurationCategory(CORE_CATEGORY)
+        .tags("internal")
+        .description("When enabled, adds the virtual fields declared by instrumentations as synthetic fields to classes when they are loaded.\n" +
+            "When disabled, virtual fields are always backed by a weak map.")
+        .dynamic(false)
+        .buildWithDefault(true);
+
     private final ConfigurationOption<Boolean> contextPropagationOnly = ConfigurationOption.booleanOption()
         .key("context_propagation_only")
         .configurationCategory(CORE_CATEGORY)
@@ -714,6 +806,22 @@ public class CoreConfigurationImpl extends ConfigurationOptionProvider implement
         .description("Disables the collection of breakdown metrics (`span.self_time`)")
         .buildWithDefault(true);
 
+    private final ConfigurationOption<Boolean> transactionResourceUsage = ConfigurationOption.booleanOption()
+        .key("transaction_resource_usage_metrics")
+        .tags("added[1.57.0]")
+        .configurationCategory(CORE_CATEGORY)
+        .description("Measures the CPU time and the heap bytes allocated by the threads a transaction is active on, " +
+            "including the threads the transaction has been propagated to, like executor threads.\n" +
+            "The totals are reported per transaction name and type as the `transaction.cpu_time` and `transaction.allocated_bytes` metrics.\n" +
+            "\n" +
+            "The measurements are taken when a transaction becomes active or inactive on a thread. " +
+            "Work done after the transaction has been ended, but before it has been deactivated, is not included.\n" +
+            "\n" +
+            "Enabling this option also enables thread CPU time measurement in the JVM, if it is not enabled already.\n" +
+            "Reading the CPU time and the allocated bytes of a thread can add in the order of a microsecond to each activation and deactivation of a transaction, which is why this option is disabled by default.")
+        .dynamic(true)
+        .buildWithDefault(false);
+
     private final ConfigurationOption<String> configFileLocation = ConfigurationOption.stringOption()
         .key(CONFIG_FILE)
         .tags("added[1.8.0]")
@@ -763,6 +871,22 @@ public class CoreConfigurationImpl extends ConfigurationOptionProvider implement
         .dynamic(true)
         .buildWithDefault(false);
 
+    private final ConfigurationOption<Boolean> timeOrderedTraceIds = ConfigurationOption.booleanOption()
+        .key("time_ordered_trace_ids")
+        .tags("added[1.57.0]")
+        .configurationCategory(CORE_CATEGORY)
+        .description("When enabled, the first 48 bits of the ids of new traces contain the milliseconds since epoch at which\n" +
+            "the trace has been started, the remaining 80 bits are random.\n" +
+            "Storage systems which index traces by their id benefit from ids of recent traces being close to each other.\n" +
+            "\n" +
+            "The random part is kept on the right side of the id, as recommended by the\n" +
+            "https://www.w3.org/TR/trace-context-1/#trace-id[W3C Trace Context] specification,\n" +
+            "so that sampling decisions based on the trace id are not affected.\n" +
+            "\n" +
+            "NOTE: The start time of a trace can be derived from its id when this option is enabled.")
+        .dynamic(true)
+        .buildWithDefault(false);
+
     private final ConfigurationOption<Integer> tracestateHeaderSizeLimit = ConfigurationOption.integerOption()
         .key("tracestate_header_size_limit")
         .tags("added[1.14.0]")
@@ -948,6 +1072,18 @@ public class CoreConfigurationImpl extends ConfigurationOptionProvider implement
         return transactionMaxSpans.get();
     }
 
+    public boolean isTailSamplingEnabled() {
+        return tailSamplingEnabled.get();
+    }
+
+    public TimeDuration getTailSamplingDurationThreshold() {
+        return tailSamplingDurationThreshold.get();
+    }
+
+    public int getTailSamplingMaxBufferedSpans() {
+        return tailSamplingMaxBufferedSpans.get();
+    }
+
     public int getLongFieldMaxLength() {
         return longFieldMaxLength.get();
     }
@@ -1012,6 +1148,10 @@ public class CoreConfigurationImpl extends ConfigurationOptionProvider implement
         return captureBody.get();
     }
 
+    public long getCaptureBodyMemoryLimit() {
+        return captureBodyMemoryLimit.get().getBytes();
+    }
+
     @Override
     public boolean isCaptureHeaders() {
         return captureHeaders.get();
@@ -1025,6 +1165,14 @@ public class CoreConfigurationImpl extends ConfigurationOptionProvider implement
         return instrumentAncientBytecode.get();
     }
 
+    public boolean isSharePluginClassLoaders() {
+        return sharePluginClassLoaders.get();
+    }
+
+    public boolean isLazyPluginActivation() {
+        return lazyPluginActivation.get();
+    }
+
     public boolean shouldWarmupByteBuddy() {
         return warmupByteBuddy.get();
     }
@@ -1046,6 +1194,10 @@ public class CoreConfigurationImpl extends ConfigurationOptionProvider implement
         return classLoadingMatchingPreFilter.get();
     }
 
+    public boolean isVirtualFieldInjectionEnabled() {
+        return virtualFieldInjection.get();
+    }
+
     public List<WildcardMatcher> getClassesExcludedFromInstrumentation() {
         return classesExcludedFromInstrumentation.get();
     }
@@ -1078,6 +1230,10 @@ public class CoreConfigurationImpl extends ConfigurationOptionProvider implement
         return breakdownMetrics.get();
     }
 
+    public boolean isTransactionResourceUsageEnabled() {
+        return transactionResourceUsage.get();
+    }
+
     public boolean isElasticTraceparentHeaderEnabled() {
         return useElasticTraceparentHeader.get();
     }
@@ -1086,6 +1242,10 @@ public class CoreConfigurationImpl extends ConfigurationOptionProvider implement
         return disableOutgoingTraceContextHeaders.get();
     }
 
+    public boolean isTimeOrderedTraceIds() {
+        return timeOrderedTraceIds.get();
+    }
+
     public int getTracestateSizeLimit() {
         return tracestateHeaderSizeLimit.get();
     }
@@ -20,6 +20,8 @@ package co.elastic.apm.agent.configuration;
 
 import co.elastic.apm.agent.tracer.configuration.ListValueConverter;
 import co.elastic.apm.agent.tracer.configuration.MetricsConfiguration;
+import co.elastic.apm.agent.tracer.configuration.TimeDuration;
+import co.elastic.apm.agent.tracer.configuration.TimeDurationValueConverter;
 import org.stagemonitor.configuration.ConfigurationOption;
 import org.stagemonitor.configuration.ConfigurationOptionProvider;
 import org.stagemonitor.configuration.converter.DoubleValueConverter;
@@ -105,6 +107,47 @@ public class MetricsConfigurationImpl extends ConfigurationOptionProvider implem
         .dynamic(false)
         .buildWithDefault(false);
 
+    private final ConfigurationOption<Boolean> spanCompressionMetricsEnabled = ConfigurationOption.booleanOption()
+        .key("agent_span_compression_metrics")
+        .configurationCategory(METRICS_CATEGORY)
+        .description("Enables metrics which capture how effective span compression is, " +
+            "including the ratio of compression-eligible spans which have been compressed.")
+        .tags("added[1.57.0]")
+        .dynamic(false)
+        .buildWithDefault(false);
+
+    private final ConfigurationOption<Boolean> jfrRuntimeEventsEnabled = ConfigurationOption.booleanOption()
+        .key("jfr_runtime_events")
+        .configurationCategory(METRICS_CATEGORY)
+        .description("Enables the collection of JVM runtime events through the JDK Flight Recorder event streaming API, available as of Java 14.\n" +
+            "The durations of GC pauses, safepoints, contended monitor enters, thread parks and socket and file I/O are reported as histograms.\n" +
+            "\n" +
+            "Thread-specific events which take longer than <<config-jfr-runtime-events-span-threshold, `jfr_runtime_events_span_threshold`>> " +
+            "are additionally reported as spans of the sampled transaction or span that has been active on the thread at the time.")
+        .tags("added[1.57.0]", "experimental")
+        .dynamic(false)
+        .buildWithDefault(false);
+
+    private final ConfigurationOption<TimeDuration> jfrRuntimeEventsThreshold = TimeDurationValueConverter.durationOption("ms")
+        .key("jfr_runtime_events_threshold")
+        .configurationCategory(METRICS_CATEGORY)
+        .description("If <<config-jfr-runtime-events, `jfr_runtime_events`>> is enabled, " +
+            "contended monitor enters, thread parks and socket and file I/O events which are shorter than this threshold are not recorded.\n" +
+            "Lower values give a more complete picture at the cost of a higher overhead.")
+        .tags("added[1.57.0]", "experimental")
+        .dynamic(false)
+        .buildWithDefault(TimeDuration.of("10ms"));
+
+    private final ConfigurationOption<TimeDuration> jfrRuntimeEventsSpanThreshold = TimeDurationValueConverter.durationOption("ms")
+        .key("jfr_runtime_events_span_threshold")
+        .configurationCategory(METRICS_CATEGORY)
+        .description("If <<config-jfr-runtime-events, `jfr_runtime_events`>> is enabled, " +
+            "thread-specific runtime events which take at least this long are reported as spans, " +
+            "if a sampled transaction or span has been active on the thread when the event started.")
+        .tags("added[1.57.0]", "experimental")
+        .dynamic(true)
+        .buildWithDefault(TimeDuration.of("100ms"));
+
     @Override
     public boolean isDedotCustomMetrics() {
         return dedotCustomMetrics.get();
@@ -122,6 +165,22 @@ public class MetricsConfigurationImpl extends ConfigurationOptionProvider implem
         return overheadMetricsEnabled.get();
     }
 
+    public boolean isSpanCompressionMetricsEnabled() {
+        return spanCompressionMetricsEnabled.get();
+    }
+
+    public boolean isJfrRuntimeEventsEnabled() {
+        return jfrRuntimeEventsEnabled.get();
+    }
+
+    public TimeDuration getJfrRuntimeEventsThreshold() {
+        return jfrRuntimeEventsThreshold.get();
+    }
+
+    public TimeDuration getJfrRuntimeEventsSpanThreshold() {
+        return jfrRuntimeEventsSpanThreshold.get();
+    }
+
     @Override
     public List<Double> getCustomMetricsHistogramBoundaries() {
         return customMetricsHistogramBoundaries.get();
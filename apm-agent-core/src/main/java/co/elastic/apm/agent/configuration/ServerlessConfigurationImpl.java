@@ -50,6 +50,19 @@ public class ServerlessConfigurationImpl extends ConfigurationOptionProvider imp
             "For serverless functions, APM data is written in a synchronous way, thus, blocking the termination of the function util data is written or the specified timeout is reached.")
         .buildWithDefault(1000L);
 
+    private final ConfigurationOption<Boolean> awsLambdaFastStart = ConfigurationOption.booleanOption()
+        .key("aws_lambda_fast_start")
+        .tags("performance", "added[1.57.0]", "experimental")
+        .configurationCategory(SERVERLESS_CATEGORY)
+        .description("When set to true and running within an AWS Lambda function, the agent reduces its impact on the cold start of the function:\n" +
+            "\n" +
+            "* Events are serialized on the thread of the function and sent to the Lambda extension with a single request when the invocation ends, instead of using a background reporter thread.\n" +
+            "* The version of the Lambda extension is not queried, the agent assumes the minimum APM Server version that supports AWS Lambda (8.2), which means that features requiring a more recent version, like log sending, are disabled.\n" +
+            "* Metadata is derived from the environment variables of the function without starting discovery threads and central configuration is not polled.\n" +
+            "* Plugins are activated when the library they target is first used, like with <<config-lazy-plugin-activation,`lazy_plugin_activation`>>. The function handler is still instrumented on startup.")
+        .dynamic(false)
+        .buildWithDefault(false);
+
 
     @Override
     public String getAwsLambdaHandler() {
@@ -66,4 +79,11 @@ public class ServerlessConfigurationImpl extends ConfigurationOptionProvider imp
         return runsOnAwsLambda;
     }
 
+    /**
+     * @return {@code true} if the agent runs within an AWS Lambda function and {@link #awsLambdaFastStart} is enabled
+     */
+    public boolean isAwsLambdaFastStart() {
+        return runsOnAwsLambda && awsLambdaFastStart.get();
+    }
+
 }
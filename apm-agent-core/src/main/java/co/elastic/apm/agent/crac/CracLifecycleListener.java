@@ -0,0 +1,122 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.crac;
+
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.tracer.AbstractLifecycleListener;
+import co.elastic.apm.agent.tracer.Tracer;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Registers the tracer as a CRaC (Coordinated Restore at Checkpoint) resource, so that it is notified before a checkpoint of the JVM
+ * is taken and after the JVM has been restored.
+ * <p>
+ * JVMs which support CRaC provide the {@code jdk.crac} API, while runtimes like AWS Lambda SnapStart provide the {@code org.crac} API.
+ * As the agent does not depend on either of them, the resource is a {@link Proxy} which is registered via reflection.
+ * </p>
+ *
+ * @see ElasticApmTracer#beforeCheckpoint()
+ * @see ElasticApmTracer#afterRestore()
+ */
+public class CracLifecycleListener extends AbstractLifecycleListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(CracLifecycleListener.class);
+
+    private static final String[] CRAC_PACKAGES = {"jdk.crac", "org.crac"};
+
+    /**
+     * CRaC contexts may only hold a weak reference to the registered resources
+     */
+    @Nullable
+    private Object resource;
+
+    @Override
+    public void init(Tracer tracer) {
+        ElasticApmTracer elasticApmTracer = tracer.require(ElasticApmTracer.class);
+        ClassLoader systemClassLoader = ClassLoader.getSystemClassLoader();
+        for (String cracPackage : CRAC_PACKAGES) {
+            try {
+                resource = register(cracPackage, systemClassLoader, elasticApmTracer);
+                logger.debug("Registered the tracer as a {} resource", cracPackage);
+                return;
+            } catch (ClassNotFoundException ignore) {
+                // this CRaC API is not available
+            } catch (Exception e) {
+                logger.warn("Failed to register the tracer as a " + cracPackage + " resource", e);
+            }
+        }
+    }
+
+    /**
+     * Registers a resource that forwards the checkpoint and restore notifications to the tracer to the global CRaC context.
+     *
+     * @param cracPackage the package of the CRaC API, which contains the {@code Core}, {@code Context} and {@code Resource} types
+     * @param classLoader the class loader to load the CRaC API from
+     * @param tracer      the tracer to notify
+     * @return the registered resource
+     * @throws ClassNotFoundException if the CRaC API is not available
+     * @throws Exception              if the resource could not be registered
+     */
+    static Object register(String cracPackage, @Nullable ClassLoader classLoader, ElasticApmTracer tracer) throws Exception {
+        Class<?> core = Class.forName(cracPackage + ".Core", true, classLoader);
+        Class<?> context = Class.forName(cracPackage + ".Context", false, classLoader);
+        Class<?> resourceType = Class.forName(cracPackage + ".Resource", false, classLoader);
+        Object globalContext = core.getMethod("getGlobalContext").invoke(null);
+        Object resource = Proxy.newProxyInstance(resourceType.getClassLoader(), new Class<?>[]{resourceType}, new TracerResource(tracer));
+        context.getMethod("register", resourceType).invoke(globalContext, resource);
+        return resource;
+    }
+
+    private static class TracerResource implements InvocationHandler {
+
+        private final ElasticApmTracer tracer;
+
+        private TracerResource(ElasticApmTracer tracer) {
+            this.tracer = tracer;
+        }
+
+        @Override
+        @Nullable
+        public Object invoke(Object proxy, Method method, @Nullable Object[] args) {
+            String name = method.getName();
+            if (name.equals("beforeCheckpoint")) {
+                tracer.beforeCheckpoint();
+                return null;
+            } else if (name.equals("afterRestore")) {
+                tracer.afterRestore();
+                return null;
+            } else if (name.equals("equals")) {
+                return args != null && proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("toString")) {
+                return "Elastic APM tracer resource";
+            }
+            // methods added to the Resource interface in later versions of the API
+            logger.debug("Ignoring unknown CRaC resource method {}", method);
+            return null;
+        }
+    }
+}
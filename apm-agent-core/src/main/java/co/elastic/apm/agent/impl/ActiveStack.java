@@ -21,6 +21,7 @@ package co.elastic.apm.agent.impl;
 import co.elastic.apm.agent.impl.transaction.AbstractSpanImpl;
 import co.elastic.apm.agent.impl.transaction.TraceStateImpl;
 import co.elastic.apm.agent.impl.transaction.TraceStateWrapper;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
 import co.elastic.apm.agent.sdk.logging.Logger;
 import co.elastic.apm.agent.sdk.logging.LoggerFactory;
 
@@ -59,9 +60,29 @@ class ActiveStack {
 
     private final EmptyTraceState emptyContext;
 
-    ActiveStack(int stackMaxDepth, EmptyTraceState emptyContextForTracer) {
+    private final ThreadResourceUsage resourceUsage;
+
+    /**
+     * The transaction whose resource usage on this thread is currently measured, or {@code null}.
+     * The measurement starts when the first context of a transaction is activated on this thread and ends when that
+     * context is deactivated, so that nested activations of the transaction or its spans are not counted twice.
+     */
+    @Nullable
+    private TransactionImpl measuredTransaction;
+
+    /**
+     * The size of the stack after the context which started the resource usage measurement has been activated.
+     */
+    private int measuredDepth;
+
+    private long cpuTimeAtActivation;
+
+    private long allocatedBytesAtActivation;
+
+    ActiveStack(int stackMaxDepth, EmptyTraceState emptyContextForTracer, ThreadResourceUsage resourceUsage) {
         this.stackMaxDepth = stackMaxDepth;
         this.emptyContext = emptyContextForTracer;
+        this.resourceUsage = resourceUsage;
     }
 
     /**
@@ -95,13 +116,16 @@ class ActiveStack {
             return false;
         }
 
-        context.incrementReferences();
+        context.incrementActivationReferences();
         AbstractSpanImpl<?> span = context.getSpan();
         if (span != null) {
             triggerActivationListeners(span, true, activationListeners);
         }
 
         activeContextStack.push(context);
+        if (measuredTransaction == null) {
+            startResourceUsageMeasurement(context.getTransaction());
+        }
         return true;
     }
 
@@ -119,6 +143,11 @@ class ActiveStack {
         activeContextStack.remove();
 
         try {
+            if (measuredTransaction != null && activeContextStack.size() < measuredDepth) {
+                // the measured transaction is guaranteed to not be recycled yet, as the context which started the measurement
+                // is either the one being deactivated or one of its children, which hold a reference to it
+                stopResourceUsageMeasurement(measuredTransaction);
+            }
             assertIsActive(context, activeContext, assertionsEnabled);
 
             AbstractSpanImpl<?> span = context.getSpan();
@@ -126,11 +155,31 @@ class ActiveStack {
                 triggerActivationListeners(span, false, activationListeners);
             }
         } finally {
-            context.decrementReferences();
+            context.decrementActivationReferences();
         }
         return true;
     }
 
+    private void startResourceUsageMeasurement(@Nullable TransactionImpl transaction) {
+        if (transaction == null || !transaction.isResourceUsageCaptured()) {
+            return;
+        }
+        measuredTransaction = transaction;
+        measuredDepth = activeContextStack.size();
+        cpuTimeAtActivation = resourceUsage.getCurrentThreadCpuTime();
+        allocatedBytesAtActivation = resourceUsage.getCurrentThreadAllocatedBytes();
+    }
+
+    private void stopResourceUsageMeasurement(TransactionImpl transaction) {
+        long cpuTime = resourceUsage.getCurrentThreadCpuTime();
+        long allocatedBytes = resourceUsage.getCurrentThreadAllocatedBytes();
+        transaction.addResourceUsage(
+            cpuTime != ThreadResourceUsage.UNSUPPORTED ? cpuTime - cpuTimeAtActivation : ThreadResourceUsage.UNSUPPORTED,
+            allocatedBytes != ThreadResourceUsage.UNSUPPORTED ? allocatedBytes - allocatedBytesAtActivation : ThreadResourceUsage.UNSUPPORTED);
+        measuredTransaction = null;
+        measuredDepth = 0;
+    }
+
     private void triggerActivationListeners(AbstractSpanImpl<?> span, boolean isActivate, List<ActivationListener> activationListeners) {
         for (int i = 0, size = activationListeners.size(); i < size; i++) {
             ActivationListener listener = activationListeners.get(i);
@@ -31,6 +31,7 @@ import co.elastic.apm.agent.configuration.ServerlessConfigurationImpl;
 import co.elastic.apm.agent.impl.error.RedactedException;
 import co.elastic.apm.agent.impl.metadata.FaaSMetaDataExtension;
 import co.elastic.apm.agent.impl.metadata.Framework;
+import co.elastic.apm.agent.impl.metadata.MetaData;
 import co.elastic.apm.agent.impl.metadata.MetaDataFuture;
 import co.elastic.apm.agent.impl.metadata.NameAndIdField;
 import co.elastic.apm.agent.impl.metadata.ServiceFactory;
@@ -53,6 +54,7 @@ import co.elastic.apm.agent.impl.sampling.Sampler;
 import co.elastic.apm.agent.impl.stacktrace.StacktraceConfigurationImpl;
 import co.elastic.apm.agent.logging.LoggingConfigurationImpl;
 import co.elastic.apm.agent.metrics.MetricRegistry;
+import co.elastic.apm.agent.metrics.builtin.SpanCompressionMetrics;
 import co.elastic.apm.agent.objectpool.ObservableObjectPool;
 import co.elastic.apm.agent.objectpool.ObjectPoolFactoryImpl;
 import co.elastic.apm.agent.report.ApmServerClient;
@@ -86,6 +88,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -132,13 +135,15 @@ public class ElasticApmTracer implements Tracer {
 
     private final EmptyTraceState emptyContext;
 
+    private final ThreadResourceUsage threadResourceUsage = new ThreadResourceUsage();
+
     private final ThreadLocal<ActiveStack> activeStack = new ThreadLocal<ActiveStack>() {
         @Override
         protected ActiveStack initialValue() {
             //We allow transactionMaxSpan activation plus a constant minimum of 16 to account for
             // * the activation of the transaction itself
             // * account for baggage updates, which also count towards the depth
-            return new ActiveStack(ACTIVATION_STACK_BASE_SIZE + transactionMaxSpans, emptyContext);
+            return new ActiveStack(ACTIVATION_STACK_BASE_SIZE + transactionMaxSpans, emptyContext, threadResourceUsage);
         }
     };
 
@@ -147,6 +152,8 @@ public class ElasticApmTracer implements Tracer {
     private final SpanConfiguration spanConfiguration;
     private final List<ActivationListener> activationListeners;
     private final MetricRegistry metricRegistry;
+    @Nullable
+    private final SpanCompressionMetrics spanCompressionMetrics;
 
     private final UniversalProfilingIntegration profilingIntegration;
     private final ScheduledThreadPoolExecutor sharedPool;
@@ -163,8 +170,12 @@ public class ElasticApmTracer implements Tracer {
     private volatile TracerState tracerState = TracerState.UNINITIALIZED;
     private volatile boolean currentlyUnderStress = false;
     private volatile boolean recordingConfigOptionSet;
-    private final String ephemeralId;
+    private volatile String ephemeralId;
     private final MetaDataFuture metaDataFuture;
+    /**
+     * Whether the tracer has been running when a checkpoint of the JVM has been taken
+     */
+    private boolean resumeAfterRestore;
 
     static {
         checkClassloader();
@@ -248,6 +259,8 @@ public class ElasticApmTracer implements Tracer {
         // span links pool allows for 10X the maximum allowed span links per span
         spanLinkPool = poolFactory.createSpanLinkPool(AbstractSpanImpl.MAX_ALLOWED_SPAN_LINKS * 10, this);
 
+        spanCompressionMetrics = createSpanCompressionMetrics(configurationRegistry.getConfig(MetricsConfigurationImpl.class), metricRegistry);
+
         profilingCorrelationStackTraceIdPool = poolFactory.createRecyclableObjectPool(maxPooledElements, new Allocator<IdImpl>() {
             @Override
             public IdImpl createInstance() {
@@ -277,6 +290,19 @@ public class ElasticApmTracer implements Tracer {
         profilingIntegration = new UniversalProfilingIntegration();
     }
 
+    @Nullable
+    private static SpanCompressionMetrics createSpanCompressionMetrics(MetricsConfigurationImpl metricsConfiguration, MetricRegistry metricRegistry) {
+        if (!metricsConfiguration.isSpanCompressionMetricsEnabled()) {
+            return null;
+        }
+        SpanCompressionMetrics metrics = new SpanCompressionMetrics(metricRegistry);
+        if (!metrics.isAnyMetricEnabled()) {
+            return null;
+        }
+        metricRegistry.addMetricsProvider(metrics);
+        return metrics;
+    }
+
     @Override
     @Nullable
     public TransactionImpl startRootTransaction(@Nullable ClassLoader initiatingClassLoader) {
@@ -575,6 +601,10 @@ public class ElasticApmTracer implements Tracer {
 
         if (!span.isSampled()) {
             TransactionImpl transaction = span.getTransaction();
+            if (transaction != null && transaction.bufferTailSampledSpan(span)) {
+                // the span is reported or dropped when the transaction ends
+                return;
+            }
             if (transaction != null) {
                 transaction.captureDroppedSpan(span);
             }
@@ -632,7 +662,17 @@ public class ElasticApmTracer implements Tracer {
         return profilingCorrelationStackTraceIdPool.createInstance();
     }
 
+    /**
+     * @return whether the CPU time or the allocated bytes of application threads can be measured on this JVM
+     */
+    public boolean isThreadResourceUsageSupported() {
+        return threadResourceUsage.isCpuTimeSupported() || threadResourceUsage.isAllocatedBytesSupported();
+    }
+
     public void recycle(TransactionImpl transaction) {
+        if (spanCompressionMetrics != null) {
+            spanCompressionMetrics.onTransactionRecycled(transaction.getSpanCount());
+        }
         transactionPool.recycle(transaction);
     }
 
@@ -678,6 +718,8 @@ public class ElasticApmTracer implements Tracer {
         } catch (Exception e) {
             logger.warn("Suppressed exception while calling stop()", e);
         }
+        // only after closing the reporter, as flushing it may still schedule a request timeout
+        ExecutorUtils.shutdownAgentScheduler();
         //Shutting down logging resets the log level to OFF - subsequent tests in the class will get no log output, hence the guard
         if (!assertionsEnabled) {
             LoggingConfigurationImpl.shutdown();
@@ -858,6 +900,70 @@ public class ElasticApmTracer implements Tracer {
         logger.info("Tracer switched to RUNNING state");
     }
 
+    /**
+     * Prepares the agent for a checkpoint of the JVM, for example with CRaC (Coordinated Restore at Checkpoint).
+     * <p>
+     * The tracer is paused, the {@link LifecycleListener}s close their files and connections and the reporter is flushed,
+     * which ends the current request to the APM Server.
+     * </p>
+     */
+    public synchronized void beforeCheckpoint() {
+        if (tracerState == TracerState.STOPPED) {
+            return;
+        }
+        logger.info("Preparing the tracer for a checkpoint");
+        resumeAfterRestore = tracerState == TracerState.RUNNING;
+        if (resumeAfterRestore) {
+            pause();
+        }
+        for (LifecycleListener lifecycleListener : lifecycleListeners) {
+            try {
+                lifecycleListener.beforeCheckpoint();
+            } catch (Exception e) {
+                logger.warn("Suppressed exception while calling beforeCheckpoint()", e);
+            }
+        }
+        if (tracerState != TracerState.UNINITIALIZED) {
+            long flushTimeout = getConfig(ServerlessConfigurationImpl.class).getDataFlushTimeout();
+            try {
+                if (!reporter.flush(flushTimeout, TimeUnit.MILLISECONDS, false)) {
+                    logger.warn("Events have not been flushed within {} milliseconds before the checkpoint", flushTimeout);
+                }
+            } catch (Exception e) {
+                logger.warn("Suppressed exception while flushing before the checkpoint", e);
+            }
+        }
+    }
+
+    /**
+     * Refreshes the state which must not be shared by the JVMs that are restored from the same checkpoint and resumes the tracer
+     * if it has been running before the checkpoint.
+     * <p>
+     * The random id generators are re-seeded and the metadata is discovered again with a new ephemeral id,
+     * as the restored JVM may run on another host.
+     * </p>
+     */
+    public synchronized void afterRestore() {
+        if (tracerState == TracerState.STOPPED) {
+            return;
+        }
+        IdImpl.reseedRandomValues();
+        ephemeralId = UUID.randomUUID().toString();
+        metaDataFuture.replaceWith(MetaData.create(configurationRegistry, ephemeralId));
+        for (LifecycleListener lifecycleListener : lifecycleListeners) {
+            try {
+                lifecycleListener.afterRestore();
+            } catch (Exception e) {
+                logger.warn("Suppressed exception while calling afterRestore()", e);
+            }
+        }
+        logger.info("Tracer restored from a checkpoint");
+        if (resumeAfterRestore && tracerState == TracerState.PAUSED && recordingConfigOptionSet && !currentlyUnderStress) {
+            resume();
+        }
+        resumeAfterRestore = false;
+    }
+
     @Override
     public boolean isRunning() {
         return tracerState == TracerState.RUNNING;
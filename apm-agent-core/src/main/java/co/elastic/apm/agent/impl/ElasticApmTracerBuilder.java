@@ -23,9 +23,11 @@ import co.elastic.apm.agent.configuration.ApmServerConfigurationSource;
 import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
 import co.elastic.apm.agent.configuration.MetricsConfigurationImpl;
 import co.elastic.apm.agent.configuration.PrefixingConfigurationSourceWrapper;
+import co.elastic.apm.agent.configuration.ServerlessConfigurationImpl;
 import co.elastic.apm.agent.configuration.source.ConfigSources;
 import co.elastic.apm.agent.configuration.source.SystemPropertyConfigurationSource;
 import co.elastic.apm.agent.context.ClosableLifecycleListenerAdapter;
+import co.elastic.apm.agent.impl.context.BodyBufferPool;
 import co.elastic.apm.agent.impl.metadata.MetaData;
 import co.elastic.apm.agent.impl.metadata.MetaDataFuture;
 import co.elastic.apm.agent.logging.LoggingConfigurationImpl;
@@ -41,6 +43,7 @@ import co.elastic.apm.agent.report.serialize.SerializationConstants;
 import co.elastic.apm.agent.sdk.logging.Logger;
 import co.elastic.apm.agent.sdk.logging.LoggerFactory;
 import co.elastic.apm.agent.tracer.LifecycleListener;
+import co.elastic.apm.agent.util.AgentScheduler;
 import co.elastic.apm.agent.util.DependencyInjectingServiceLoader;
 import co.elastic.apm.agent.util.ExecutorUtils;
 import org.stagemonitor.configuration.ConfigurationOptionProvider;
@@ -54,7 +57,6 @@ import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class ElasticApmTracerBuilder {
@@ -158,6 +160,7 @@ public class ElasticApmTracerBuilder {
         }
 
         SerializationConstants.init(configurationRegistry.getConfig(CoreConfigurationImpl.class));
+        BodyBufferPool.init(configurationRegistry.getConfig(CoreConfigurationImpl.class));
 
         MetaDataFuture metaDataFuture = MetaData.create(configurationRegistry, ephemeralId);
         DslJsonSerializer payloadSerializer = new DslJsonSerializer(
@@ -166,6 +169,10 @@ public class ElasticApmTracerBuilder {
             metaDataFuture
         );
 
+        if (addApmServerConfigSource && configurationRegistry.getConfig(ServerlessConfigurationImpl.class).isAwsLambdaFastStart()) {
+            // fetching the central configuration through the Lambda extension would delay the first invocation
+            addApmServerConfigSource = false;
+        }
         if (addApmServerConfigSource) {
             // adding remote configuration source last will make it highest priority
             ApmServerConfigurationSource configurationSource = new ApmServerConfigurationSource(payloadSerializer, apmServerClient);
@@ -196,8 +203,7 @@ public class ElasticApmTracerBuilder {
     }
 
     private LifecycleListener scheduleReloadAtRate(final ConfigurationRegistry configurationRegistry, final int rate, TimeUnit seconds) {
-        final ScheduledThreadPoolExecutor configurationReloader = ExecutorUtils.createSingleThreadSchedulingDaemonPool("configuration-reloader");
-        configurationReloader.scheduleAtFixedRate(new Runnable() {
+        final AgentScheduler.ScheduledTask configurationReloader = ExecutorUtils.getAgentScheduler().scheduleAtFixedRate("configuration-reloader", new Runnable() {
             @Override
             public void run() {
                 logger.debug("Beginning scheduled configuration reload (interval is {} sec)...", rate);
@@ -208,7 +214,7 @@ public class ElasticApmTracerBuilder {
         return ClosableLifecycleListenerAdapter.of(new Closeable() {
             @Override
             public void close() {
-                configurationReloader.shutdown();
+                configurationReloader.cancel();
             }
         });
     }
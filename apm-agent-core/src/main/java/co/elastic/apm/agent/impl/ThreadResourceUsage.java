@@ -0,0 +1,191 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.impl;
+
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.util.JmxUtils;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Reads the CPU time and the allocated heap bytes of the current thread.
+ * <p>
+ * The allocated bytes are only exposed through the HotSpot specific {@code com.sun.management.ThreadMXBean}.
+ * Instead of invoking the method reflectively, like {@link co.elastic.apm.agent.metrics.builtin.AgentOverheadMetrics} does
+ * for the agent threads, it is invoked through a {@link MethodHandle}, which avoids boxing the result.
+ * {@code getCurrentThreadAllocatedBytes()}, available as of Java 14, is preferred over {@code getThreadAllocatedBytes(long)}
+ * as the latter has to look up the thread by its id.
+ * </p>
+ * <p>
+ * The {@link ThreadMXBean} is only accessed once {@link #isCpuTimeSupported()} or {@link #isAllocatedBytesSupported()}
+ * are called, which happens when a transaction is started while {@code transaction_resource_usage_metrics} is enabled.
+ * That way, thread CPU time measurement is not enabled in the JVM unless the feature is used.
+ * </p>
+ */
+class ThreadResourceUsage {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadResourceUsage.class);
+
+    static final long UNSUPPORTED = -1L;
+
+    private final ThreadMXBean threadBean;
+
+    private volatile boolean initialized;
+
+    private boolean cpuTimeSupported;
+
+    /**
+     * {@code long getCurrentThreadAllocatedBytes()}, bound to {@link #threadBean}
+     */
+    @Nullable
+    private MethodHandle getCurrentThreadAllocatedBytes;
+
+    /**
+     * {@code long getThreadAllocatedBytes(long threadId)}, bound to {@link #threadBean},
+     * only used if {@link #getCurrentThreadAllocatedBytes} is not available
+     */
+    @Nullable
+    private MethodHandle getThreadAllocatedBytes;
+
+    ThreadResourceUsage() {
+        this(ManagementFactory.getThreadMXBean());
+    }
+
+    ThreadResourceUsage(ThreadMXBean threadBean) {
+        this.threadBean = threadBean;
+    }
+
+    private void ensureInitialized() {
+        if (!initialized) {
+            initialize();
+        }
+    }
+
+    private synchronized void initialize() {
+        if (initialized) {
+            return;
+        }
+        cpuTimeSupported = enableCpuTimeMeasurement(threadBean);
+        if (isAllocatedMemorySupported(threadBean)) {
+            getCurrentThreadAllocatedBytes = lookupAllocatedBytesMethod(threadBean, "getCurrentThreadAllocatedBytes",
+                MethodType.methodType(long.class));
+            if (getCurrentThreadAllocatedBytes == null) {
+                getThreadAllocatedBytes = lookupAllocatedBytesMethod(threadBean, "getThreadAllocatedBytes",
+                    MethodType.methodType(long.class, long.class), long.class);
+            }
+        }
+        if (getCurrentThreadAllocatedBytes == null && getThreadAllocatedBytes == null) {
+            logger.debug("Thread allocation measurement is not supported by this JVM");
+        }
+        initialized = true;
+    }
+
+    private static boolean enableCpuTimeMeasurement(ThreadMXBean threadBean) {
+        try {
+            if (!threadBean.isCurrentThreadCpuTimeSupported()) {
+                logger.debug("Thread CPU time measurement is not supported by this JVM");
+                return false;
+            }
+            if (!threadBean.isThreadCpuTimeEnabled()) {
+                threadBean.setThreadCpuTimeEnabled(true);
+            }
+            return true;
+        } catch (Exception e) {
+            logger.debug("Failed to enable thread CPU time measurement", e);
+            return false;
+        }
+    }
+
+    private static boolean isAllocatedMemorySupported(ThreadMXBean threadBean) {
+        Method isSupported = JmxUtils.getThreadMBeanMethod(threadBean, "isThreadAllocatedMemorySupported");
+        if (isSupported == null) {
+            return false;
+        }
+        try {
+            return (Boolean) isSupported.invoke(threadBean);
+        } catch (Exception e) {
+            logger.debug("Failed to check whether thread allocation measurement is supported", e);
+            return false;
+        }
+    }
+
+    @Nullable
+    private static MethodHandle lookupAllocatedBytesMethod(ThreadMXBean threadBean, String methodName, MethodType type, Class<?>... parameterTypes) {
+        Method method = JmxUtils.getThreadMBeanMethod(threadBean, methodName, parameterTypes);
+        if (method == null) {
+            return null;
+        }
+        try {
+            return MethodHandles.publicLookup()
+                .unreflect(method)
+                .bindTo(threadBean)
+                .asType(type);
+        } catch (Exception e) {
+            logger.debug("Failed to look up {}", methodName, e);
+            return null;
+        }
+    }
+
+    boolean isCpuTimeSupported() {
+        ensureInitialized();
+        return cpuTimeSupported;
+    }
+
+    boolean isAllocatedBytesSupported() {
+        ensureInitialized();
+        return getCurrentThreadAllocatedBytes != null || getThreadAllocatedBytes != null;
+    }
+
+    /**
+     * @return the CPU time of the current thread in nanoseconds, or {@link #UNSUPPORTED}
+     */
+    long getCurrentThreadCpuTime() {
+        if (!initialized || !cpuTimeSupported) {
+            return UNSUPPORTED;
+        }
+        return threadBean.getCurrentThreadCpuTime();
+    }
+
+    /**
+     * @return the number of bytes allocated in the heap by the current thread, or {@link #UNSUPPORTED}
+     */
+    long getCurrentThreadAllocatedBytes() {
+        if (!initialized) {
+            return UNSUPPORTED;
+        }
+        try {
+            if (getCurrentThreadAllocatedBytes != null) {
+                return (long) getCurrentThreadAllocatedBytes.invokeExact();
+            }
+            if (getThreadAllocatedBytes != null) {
+                return (long) getThreadAllocatedBytes.invokeExact(Thread.currentThread().getId());
+            }
+            return UNSUPPORTED;
+        } catch (Throwable throwable) {
+            return UNSUPPORTED;
+        }
+    }
+}
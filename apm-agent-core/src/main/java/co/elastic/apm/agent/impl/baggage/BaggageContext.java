@@ -61,6 +61,20 @@ public class BaggageContext extends TraceStateImpl<BaggageContext> {
         }
     }
 
+    @Override
+    public void incrementActivationReferences() {
+        if (span != null) {
+            span.incrementActivationReferences();
+        }
+    }
+
+    @Override
+    public void decrementActivationReferences() {
+        if (span != null) {
+            span.decrementActivationReferences();
+        }
+    }
+
     public static BaggageContext.Builder createBuilder(TraceStateImpl<?> parent) {
         return new Builder(parent);
     }
@@ -195,6 +195,12 @@ public class BaggageImpl implements Baggage {
         private Map<String, String> baggage;
         private Map<String, String> baggageMetadata;
 
+        /**
+         * A baggage whose (unmodifiable) maps have been taken over as-is by {@link #putAll(BaggageImpl)}.
+         */
+        @Nullable
+        private BaggageImpl adopted;
+
         private boolean buildCalled;
 
         public Builder put(String key, @Nullable String value) {
@@ -215,6 +221,36 @@ public class BaggageImpl implements Baggage {
             return this;
         }
 
+        /**
+         * Adds all entries of the provided baggage, overriding existing entries with the same key.
+         * <p>
+         * If this builder is based on an empty baggage and has not been modified yet, the provided instance is taken over
+         * without copying. In that case, {@link #build()} returns the provided instance, including its cached serialized header,
+         * unless further modifications are done.
+         * </p>
+         *
+         * @param other the baggage to add
+         * @return this builder
+         */
+        public Builder putAll(BaggageImpl other) {
+            if (buildCalled) {
+                throw new IllegalStateException("build() was already called!");
+            }
+            if (other.isEmpty()) {
+                return this;
+            }
+            if (parent.isEmpty() && baggage == parent.baggage && baggageMetadata == parent.baggageMetadata) {
+                baggage = other.baggage;
+                baggageMetadata = other.baggageMetadata;
+                adopted = other;
+                return this;
+            }
+            for (String key : other.keys()) {
+                put(key, other.get(key), other.getMetadata(key));
+            }
+            return this;
+        }
+
         /**
          * Builds the resulting baggage.
          * If no modifications were done, the returned instance might be the same as the parent baggage.
@@ -224,6 +260,9 @@ public class BaggageImpl implements Baggage {
          */
         public BaggageImpl build() {
             buildCalled = true;
+            if (adopted != null && baggage == adopted.baggage && baggageMetadata == adopted.baggageMetadata) {
+                return adopted;
+            }
             boolean anyModifications = false;
             if (baggage != parent.baggage) {
                 anyModifications = true;
@@ -242,7 +281,7 @@ public class BaggageImpl implements Baggage {
 
         private void setBaggageValue(String key, @Nullable String value) {
             if (!Objects.equals(baggage.get(key), value)) {
-                if (baggage == parent.baggage) {
+                if (baggage == parent.baggage || isAdopted(baggage)) {
                     baggage = new LinkedHashMap<>(baggage);
                 }
                 if (value == null) {
@@ -255,7 +294,7 @@ public class BaggageImpl implements Baggage {
 
         private void setBaggageMetadata(String key, @Nullable String metadata) {
             if (!Objects.equals(baggageMetadata.get(key), metadata)) {
-                if (baggageMetadata == parent.baggageMetadata) {
+                if (baggageMetadata == parent.baggageMetadata || isAdopted(baggageMetadata)) {
                     baggageMetadata = new LinkedHashMap<>(baggageMetadata);
                 }
                 if (metadata == null) {
@@ -265,5 +304,9 @@ public class BaggageImpl implements Baggage {
                 }
             }
         }
+
+        private boolean isAdopted(Map<String, String> map) {
+            return adopted != null && (map == adopted.baggage || map == adopted.baggageMetadata);
+        }
     }
 }
@@ -26,6 +26,7 @@ import co.elastic.apm.agent.tracer.dispatch.TextHeaderGetter;
 import co.elastic.apm.agent.tracer.dispatch.TextHeaderSetter;
 import co.elastic.apm.agent.tracer.dispatch.UTF8ByteHeaderGetter;
 import co.elastic.apm.agent.tracer.dispatch.UTF8ByteHeaderSetter;
+import co.elastic.apm.agent.util.HeaderValueCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,15 +41,34 @@ public class W3CBaggagePropagation {
 
     public static final String BAGGAGE_HEADER_NAME = "baggage";
 
+    /**
+     * The W3C specification limits the baggage header to 8192 bytes.
+     */
+    private static final int MAX_CACHED_HEADER_LENGTH = 8192;
+
+    /**
+     * Caches the immutable baggage parsed from incoming header values.
+     * If an incoming baggage is propagated as-is, the cached instance also provides the already serialized outgoing header.
+     */
+    private static final HeaderValueCache<BaggageImpl> PARSED_HEADER_CACHE = new HeaderValueCache<>(256, MAX_CACHED_HEADER_LENGTH);
+
     private static final HeaderGetter.HeaderConsumer<String, BaggageImpl.Builder> STRING_PARSING_CONSUMER = new HeaderGetter.HeaderConsumer<String, BaggageImpl.Builder>() {
         @Override
         public void accept(@Nullable String headerValue, BaggageImpl.Builder state) {
             if (headerValue != null) {
-                try {
-                    new Parser(headerValue).parseInto(state);
-                } catch (Exception e) {
-                    logger.error("Failed to parse baggage header: {}", headerValue, e);
+                BaggageImpl parsed = PARSED_HEADER_CACHE.get(headerValue);
+                if (parsed == null) {
+                    BaggageImpl.Builder builder = BaggageImpl.builder();
+                    try {
+                        new Parser(headerValue).parseInto(builder);
+                        parsed = builder.build();
+                        PARSED_HEADER_CACHE.put(headerValue, parsed);
+                    } catch (Exception e) {
+                        logger.error("Failed to parse baggage header: {}", headerValue, e);
+                        parsed = builder.build();
+                    }
                 }
+                state.putAll(parsed);
             }
         }
     };
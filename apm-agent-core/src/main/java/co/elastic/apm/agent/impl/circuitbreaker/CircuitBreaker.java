@@ -21,25 +21,27 @@ package co.elastic.apm.agent.impl.circuitbreaker;
 import co.elastic.apm.agent.tracer.AbstractLifecycleListener;
 import co.elastic.apm.agent.impl.ElasticApmTracer;
 import co.elastic.apm.agent.tracer.Tracer;
+import co.elastic.apm.agent.util.AgentScheduler;
 import co.elastic.apm.agent.util.ExecutorUtils;
 import co.elastic.apm.agent.sdk.logging.Logger;
 import co.elastic.apm.agent.sdk.logging.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class CircuitBreaker extends AbstractLifecycleListener {
 
     private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
 
-    private final ThreadPoolExecutor threadPool;
     private final ElasticApmTracer tracer;
     private final CircuitBreakerConfiguration circuitBreakerConfiguration;
     private final long pollInterval;
 
     private boolean isCurrentlyUnderStress = false;
+    @Nullable
+    private AgentScheduler.ScheduledTask pollingTask;
 
     private final List<StressMonitor> stressMonitors = new CopyOnWriteArrayList<>();
 
@@ -47,7 +49,6 @@ public class CircuitBreaker extends AbstractLifecycleListener {
         this.tracer = tracer;
         circuitBreakerConfiguration = tracer.getConfig(CircuitBreakerConfiguration.class);
         pollInterval = circuitBreakerConfiguration.getStressMonitoringPollingIntervalMillis();
-        threadPool = ExecutorUtils.createSingleThreadDaemonPool("circuit-breaker", 1);
     }
 
     @Override
@@ -56,12 +57,12 @@ public class CircuitBreaker extends AbstractLifecycleListener {
         loadGCStressMonitor(tracer);
         loadSystemCpuStressMonitor(tracer);
 
-        threadPool.execute(new Runnable() {
+        pollingTask = ExecutorUtils.getAgentScheduler().scheduleWithFixedDelay("circuit-breaker", new Runnable() {
             @Override
             public void run() {
                 pollStressMonitors();
             }
-        });
+        }, 0, pollInterval, TimeUnit.MILLISECONDS);
     }
 
     private void loadGCStressMonitor(Tracer tracer) {
@@ -81,37 +82,29 @@ public class CircuitBreaker extends AbstractLifecycleListener {
     }
 
     private void pollStressMonitors() {
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                if (circuitBreakerConfiguration.isCircuitBreakerEnabled()) {
-                    if (isCurrentlyUnderStress) {
-                        if (isStressRelieved()) {
-                            logger.info("All registered stress monitors indicate that the stress has been relieved");
-                            isCurrentlyUnderStress = false;
-                            tracer.onStressRelieved();
-                        }
-                    } else if (isUnderStress()) {
-                        isCurrentlyUnderStress = true;
-                        tracer.onStressDetected();
+        try {
+            if (circuitBreakerConfiguration.isCircuitBreakerEnabled()) {
+                if (isCurrentlyUnderStress) {
+                    if (isStressRelieved()) {
+                        logger.info("All registered stress monitors indicate that the stress has been relieved");
+                        isCurrentlyUnderStress = false;
+                        tracer.onStressRelieved();
                     }
-                } else if (isCurrentlyUnderStress) {
-                    // to support dynamic disablement under current stress
-                    isCurrentlyUnderStress = false;
-                    tracer.onStressRelieved();
+                } else if (isUnderStress()) {
+                    isCurrentlyUnderStress = true;
+                    tracer.onStressDetected();
                 }
-            } catch (Throwable throwable) {
-                // Catch all errors, otherwise the thread will terminate
-                logger.error("Error occurred during Circuit Breaker polling", throwable);
-            }
-            try {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("Scheduling next stress monitor polling in {}s", pollInterval);
-                }
-                TimeUnit.MILLISECONDS.sleep(pollInterval);
-            } catch (InterruptedException e) {
-                logger.info("Stopping the Circuit Breaker thread.");
-                Thread.currentThread().interrupt();
+            } else if (isCurrentlyUnderStress) {
+                // to support dynamic disablement under current stress
+                isCurrentlyUnderStress = false;
+                tracer.onStressRelieved();
             }
+        } catch (Throwable throwable) {
+            // Catch all errors, a failing stress monitor should not prevent subsequent polls
+            logger.error("Error occurred during Circuit Breaker polling", throwable);
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("Scheduling next stress monitor polling in {}ms", pollInterval);
         }
     }
 
@@ -155,6 +148,18 @@ public class CircuitBreaker extends AbstractLifecycleListener {
 
     @Override
     public void stop() {
-        this.threadPool.shutdownNow();
+        AgentScheduler.ScheduledTask task = pollingTask;
+        if (task != null) {
+            logger.info("Stopping the Circuit Breaker.");
+            task.cancel();
+            pollingTask = null;
+        }
+        for (StressMonitor stressMonitor : stressMonitors) {
+            try {
+                stressMonitor.stop();
+            } catch (Exception e) {
+                logger.warn("Failed to stop " + stressMonitor.getClass().getName(), e);
+            }
+        }
     }
 }
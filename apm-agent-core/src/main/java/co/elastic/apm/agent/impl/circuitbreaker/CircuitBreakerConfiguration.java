@@ -79,6 +79,18 @@ public class CircuitBreakerConfiguration extends ConfigurationOptionProvider {
         .addValidator(isInRange(0d, 1d))
         .buildWithDefault(0.75);
 
+    private final ConfigurationOption<TimeDuration> gcPauseStressThreshold = TimeDurationValueConverter.durationOption("ms")
+        .key("stress_monitor_gc_pause_threshold")
+        .configurationCategory(CIRCUIT_BREAKER_CATEGORY)
+        .tags("performance", "added[1.57.0]")
+        .description("The GC pause duration used by the GC monitor to detect stress. \n" +
+            "If any garbage collection pause between two polls takes at least this long, the monitor considers this as a stress state, \n" +
+            "regardless of the heap usage. In order to determine that the stress state is over, there must not be a pause \n" +
+            "crossing this threshold between two polls, in addition to the heap usage being below `stress_monitor_gc_relief_threshold`. \n" +
+            "Set to `0ms` to only rely on the heap usage.")
+        .dynamic(true)
+        .buildWithDefault(TimeDuration.of("1s"));
+
     private final ConfigurationOption<TimeDuration> cpuStressDurationThreshold = TimeDurationValueConverter.durationOption("m")
         .key("stress_monitor_cpu_duration_threshold")
         .configurationCategory(CIRCUIT_BREAKER_CATEGORY)
@@ -117,6 +129,39 @@ public class CircuitBreakerConfiguration extends ConfigurationOptionProvider {
         .addValidator(isInRange(0d, 1d))
         .buildWithDefault(0.80);
 
+    private final ConfigurationOption<Boolean> cpuThrottlingMonitoringEnabled = ConfigurationOption.booleanOption()
+        .key("stress_monitor_cpu_throttling_enabled")
+        .configurationCategory(CIRCUIT_BREAKER_CATEGORY)
+        .tags("performance", "added[1.57.0]")
+        .description("When enabled, the system CPU monitor also considers CPU throttling of the cgroup the JVM runs in as a stress signal. \n" +
+            "In containers with a CPU limit, the JVM can be throttled by the CFS bandwidth control long before the host CPU is saturated. \n" +
+            "The monitor calculates the ratio of throttled CFS periods between two polls. If this ratio crosses \n" +
+            "`stress_monitor_cpu_throttling_stress_threshold` for a duration of at least `stress_monitor_cpu_duration_threshold`, \n" +
+            "the monitor considers this as a stress state. This has no effect if the JVM does not run in a cgroup with a CPU limit.")
+        .dynamic(true)
+        .buildWithDefault(false);
+
+    private final ConfigurationOption<Double> cpuThrottlingStressThreshold = ConfigurationOption.doubleOption()
+        .key("stress_monitor_cpu_throttling_stress_threshold")
+        .configurationCategory(CIRCUIT_BREAKER_CATEGORY)
+        .tags("performance", "added[1.57.0]")
+        .description("The ratio of throttled CFS periods used by the system CPU monitor to detect CPU stress, \n" +
+            "if `stress_monitor_cpu_throttling_enabled` is set to `true`.")
+        .dynamic(true)
+        .addValidator(isInRange(0d, 1d))
+        .buildWithDefault(0.5);
+
+    private final ConfigurationOption<Double> cpuThrottlingReliefThreshold = ConfigurationOption.doubleOption()
+        .key("stress_monitor_cpu_throttling_relief_threshold")
+        .configurationCategory(CIRCUIT_BREAKER_CATEGORY)
+        .tags("performance", "added[1.57.0]")
+        .description("The ratio of throttled CFS periods used by the system CPU monitor to determine that the CPU stress has been relieved, \n" +
+            "if `stress_monitor_cpu_throttling_enabled` is set to `true`. Both the system CPU and the ratio of throttled periods \n" +
+            "need to be below their relief thresholds for a duration of at least `stress_monitor_cpu_duration_threshold`.")
+        .dynamic(true)
+        .addValidator(isInRange(0d, 1d))
+        .buildWithDefault(0.1);
+
     public boolean isCircuitBreakerEnabled() {
         return circuitBreakerEnabled.get();
     }
@@ -133,6 +178,10 @@ public class CircuitBreakerConfiguration extends ConfigurationOptionProvider {
         return gcReliefThreshold.get();
     }
 
+    public long getGcPauseStressThresholdMillis() {
+        return gcPauseStressThreshold.get().getMillis();
+    }
+
     public long getCpuStressDurationThresholdMillis() {
         return cpuStressDurationThreshold.get().getMillis();
     }
@@ -144,4 +193,16 @@ public class CircuitBreakerConfiguration extends ConfigurationOptionProvider {
     public double getSystemCpuReliefThreshold() {
         return systemCpuReliefThreshold.get();
     }
+
+    public boolean isCpuThrottlingMonitoringEnabled() {
+        return cpuThrottlingMonitoringEnabled.get();
+    }
+
+    public double getCpuThrottlingStressThreshold() {
+        return cpuThrottlingStressThreshold.get();
+    }
+
+    public double getCpuThrottlingReliefThreshold() {
+        return cpuThrottlingReliefThreshold.get();
+    }
 }
@@ -19,10 +19,12 @@
 package co.elastic.apm.agent.impl.circuitbreaker;
 
 import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.metrics.builtin.JvmGcPauseMetrics;
 import co.elastic.apm.agent.sdk.logging.Logger;
 import co.elastic.apm.agent.sdk.logging.LoggerFactory;
 import co.elastic.apm.agent.tracer.Tracer;
 
+import javax.annotation.Nullable;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryPoolMXBean;
 import java.lang.management.MemoryUsage;
@@ -35,10 +37,17 @@ class GCStressMonitor extends StressMonitor {
 
     private final List<MemoryPoolMXBean> heapMBeans = new ArrayList<>();
     private final StringBuilder latestStressDetectionInfo = new StringBuilder("No stress has been detected so far.");
+    @Nullable
+    private final JvmGcPauseMetrics gcPauseMetrics;
 
     GCStressMonitor(Tracer tracer) {
         super(tracer);
         discoverMBeans();
+        ElasticApmTracer apmTracer = tracer.probe(ElasticApmTracer.class);
+        gcPauseMetrics = apmTracer != null ? apmTracer.getLifecycleListener(JvmGcPauseMetrics.class) : null;
+        if (gcPauseMetrics == null) {
+            logger.debug("GC pauses are not available, the GC stress monitor only relies on the heap usage");
+        }
     }
 
     /**
@@ -62,7 +71,30 @@ class GCStressMonitor extends StressMonitor {
 
     @Override
     boolean isUnderStress() {
-        return isThresholdCrossed(circuitBreakerConfiguration.getGcStressThreshold(), true);
+        return isPauseThresholdCrossed(true) || isThresholdCrossed(circuitBreakerConfiguration.getGcStressThreshold(), true);
+    }
+
+    /**
+     * Checks whether the longest GC pause since the last poll has crossed the configured threshold.
+     * This resets the longest pause, so that each pause is only taken into account once.
+     */
+    private boolean isPauseThresholdCrossed(boolean updateStressInfoIfCrossed) {
+        if (gcPauseMetrics == null) {
+            return false;
+        }
+        long longestPauseMillis = gcPauseMetrics.getAndResetLongestPauseMillis();
+        long thresholdMillis = circuitBreakerConfiguration.getGcPauseStressThresholdMillis();
+        if (thresholdMillis <= 0 || longestPauseMillis < thresholdMillis) {
+            return false;
+        }
+        if (updateStressInfoIfCrossed) {
+            latestStressDetectionInfo.setLength(0);
+            latestStressDetectionInfo.append("The longest GC pause since the last poll has crossed the configured threshold of ")
+                .append(thresholdMillis).append("ms: ").append(longestPauseMillis).append("ms");
+        } else {
+            logger.debug("The longest GC pause since the last poll is over the threshold of {}ms: {}ms", thresholdMillis, longestPauseMillis);
+        }
+        return true;
     }
 
     private boolean isThresholdCrossed(double percentageThreshold, boolean updateStressInfoIfCrossed) {
@@ -112,7 +144,7 @@ class GCStressMonitor extends StressMonitor {
 
     @Override
     boolean isStressRelieved() {
-        return !isThresholdCrossed(circuitBreakerConfiguration.getGcReliefThreshold(), false);
+        return !isPauseThresholdCrossed(false) && !isThresholdCrossed(circuitBreakerConfiguration.getGcReliefThreshold(), false);
     }
 
     @Override
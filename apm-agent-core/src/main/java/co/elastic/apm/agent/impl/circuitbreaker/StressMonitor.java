@@ -38,4 +38,10 @@ abstract class StressMonitor {
      * @return free-text containing detailed info about the monitored state that lead to the latest stress detection
      */
     abstract String getStressDetectionInfo();
+
+    /**
+     * Releases the resources held by this monitor, called when the circuit breaker is stopped
+     */
+    void stop() {
+    }
 }
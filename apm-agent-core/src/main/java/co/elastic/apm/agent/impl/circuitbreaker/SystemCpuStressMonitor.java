@@ -18,6 +18,7 @@
  */
 package co.elastic.apm.agent.impl.circuitbreaker;
 
+import co.elastic.apm.agent.metrics.builtin.CgroupCpuStats;
 import co.elastic.apm.agent.tracer.Tracer;
 import co.elastic.apm.agent.util.JmxUtils;
 import co.elastic.apm.agent.sdk.logging.Logger;
@@ -45,6 +46,14 @@ public class SystemCpuStressMonitor extends StressMonitor {
     @Nullable
     private final Method systemCpuUsageMethod;
 
+    /**
+     * Resolved lazily, as monitoring the CPU throttling is disabled by default
+     */
+    @Nullable
+    private CgroupCpuStats cgroupCpuStats;
+    private boolean cgroupCpuStatsResolved;
+    private boolean stopped;
+
     SystemCpuStressMonitor(Tracer tracer) {
         super(tracer);
         operatingSystemBean = ManagementFactory.getOperatingSystemMXBean();
@@ -78,7 +87,8 @@ public class SystemCpuStressMonitor extends StressMonitor {
     }
 
     /**
-     * Reads the recent system CPU load, compares to thresholds and updates the state accordingly.
+     * Reads the recent system CPU load and, if enabled, the CPU throttling of the cgroup, compares to thresholds and
+     * updates the state accordingly.
      * This monitor can be in one of two states - either under detected stress or not.
      * The switch from a non-stress state to a stress state requires consecutive number of measurements that cross the
      * configured stress threshold. The switch from a stress state to a non-stress state requires consecutive
@@ -87,43 +97,123 @@ public class SystemCpuStressMonitor extends StressMonitor {
      * @throws IllegalAccessException if this class doesn't have the proper privileges to read from JMX
      */
     private void readAndCompareToThresholds() throws InvocationTargetException, IllegalAccessException {
+        double systemCpuValue = Double.NaN;
         Method mbeanMethodImpl = getGetSystemCpuLoadMethod();
         if (mbeanMethodImpl != null) {
-            double systemCpuValue = ((Number) mbeanMethodImpl.invoke(getOperatingSystemBean())).doubleValue();
-            if (!Double.isNaN(systemCpuValue) && !Double.isInfinite(systemCpuValue)) {
+            systemCpuValue = ((Number) mbeanMethodImpl.invoke(getOperatingSystemBean())).doubleValue();
+            if (isValid(systemCpuValue)) {
                 logger.debug("System CPU measurement: {}", systemCpuValue);
-                int cpuConsecutiveMeasurements = (int) (circuitBreakerConfiguration.getCpuStressDurationThresholdMillis() /
-                                        circuitBreakerConfiguration.getStressMonitoringPollingIntervalMillis());
-                if (systemCpuValue > circuitBreakerConfiguration.getSystemCpuStressThreshold()) {
-                    consecutiveMeasurementsAboveStressThreshold++;
-                    if (consecutiveMeasurementsAboveStressThreshold == cpuConsecutiveMeasurements) {
-                        // Change the state to indicate current stress
-                        currentlyUnderStress = true;
-                        latestStressDetectionInfo.setLength(0);
-                        latestStressDetectionInfo.append("Latest system CPU load value measured is ").append(systemCpuValue)
-                            .append(". This is the ").append(cpuConsecutiveMeasurements)
-                            .append("th consecutive measurement that crossed the configured stress threshold - ")
-                            .append(circuitBreakerConfiguration.getSystemCpuStressThreshold())
-                            .append(", which indicates this host is under CPU stress.");
-                    }
+            } else {
+                logger.debug("Latest measurement of system CPU load produced an invalid value: {}", systemCpuValue);
+            }
+        }
+        double throttledRatio = getCpuThrottlingRatio();
+        boolean validSystemCpu = isValid(systemCpuValue);
+        boolean validThrottling = isValid(throttledRatio);
+        if (!validSystemCpu && !validThrottling) {
+            return;
+        }
+
+        int cpuConsecutiveMeasurements = (int) (circuitBreakerConfiguration.getCpuStressDurationThresholdMillis() /
+                                circuitBreakerConfiguration.getStressMonitoringPollingIntervalMillis());
+        boolean systemCpuAboveStressThreshold = validSystemCpu && systemCpuValue > circuitBreakerConfiguration.getSystemCpuStressThreshold();
+        boolean throttlingAboveStressThreshold = validThrottling && throttledRatio > circuitBreakerConfiguration.getCpuThrottlingStressThreshold();
+        if (systemCpuAboveStressThreshold || throttlingAboveStressThreshold) {
+            consecutiveMeasurementsAboveStressThreshold++;
+            if (consecutiveMeasurementsAboveStressThreshold == cpuConsecutiveMeasurements) {
+                // Change the state to indicate current stress
+                currentlyUnderStress = true;
+                latestStressDetectionInfo.setLength(0);
+                if (systemCpuAboveStressThreshold) {
+                    latestStressDetectionInfo.append("Latest system CPU load value measured is ").append(systemCpuValue)
+                        .append(". This is the ").append(cpuConsecutiveMeasurements)
+                        .append("th consecutive measurement that crossed the configured stress threshold - ")
+                        .append(circuitBreakerConfiguration.getSystemCpuStressThreshold())
+                        .append(", which indicates this host is under CPU stress.");
                 } else {
-                    consecutiveMeasurementsAboveStressThreshold = 0;
+                    latestStressDetectionInfo.append("Latest ratio of throttled CPU periods measured is ").append(throttledRatio)
+                        .append(". This is the ").append(cpuConsecutiveMeasurements)
+                        .append("th consecutive measurement that crossed the configured stress threshold - ")
+                        .append(circuitBreakerConfiguration.getCpuThrottlingStressThreshold())
+                        .append(", which indicates this cgroup is under CPU stress.");
                 }
+            }
+        } else {
+            consecutiveMeasurementsAboveStressThreshold = 0;
+        }
 
-                if (systemCpuValue < circuitBreakerConfiguration.getSystemCpuReliefThreshold()) {
-                    consecutiveMeasurementsBelowReliefThreshold++;
-                    if (consecutiveMeasurementsBelowReliefThreshold == cpuConsecutiveMeasurements) {
-                        // Change the state to indicate we are currently not under stress
-                        currentlyUnderStress = false;
-                        logger.info("Latest system CPU load value measured is {}. This is {}th consecutive measurement that is below the configured relief threshold - {}",
-                            systemCpuValue, cpuConsecutiveMeasurements, circuitBreakerConfiguration.getSystemCpuReliefThreshold());
-                    }
+        boolean systemCpuBelowReliefThreshold = !validSystemCpu || systemCpuValue < circuitBreakerConfiguration.getSystemCpuReliefThreshold();
+        boolean throttlingBelowReliefThreshold = !validThrottling || throttledRatio < circuitBreakerConfiguration.getCpuThrottlingReliefThreshold();
+        if (systemCpuBelowReliefThreshold && throttlingBelowReliefThreshold) {
+            consecutiveMeasurementsBelowReliefThreshold++;
+            if (consecutiveMeasurementsBelowReliefThreshold == cpuConsecutiveMeasurements) {
+                // Change the state to indicate we are currently not under stress
+                currentlyUnderStress = false;
+                if (validThrottling) {
+                    logger.info("Latest system CPU load value measured is {} and the latest ratio of throttled CPU periods is {}. This is {}th consecutive measurement that is below the configured relief thresholds - {} and {}",
+                        systemCpuValue, throttledRatio, cpuConsecutiveMeasurements, circuitBreakerConfiguration.getSystemCpuReliefThreshold(),
+                        circuitBreakerConfiguration.getCpuThrottlingReliefThreshold());
                 } else {
-                    consecutiveMeasurementsBelowReliefThreshold = 0;
+                    logger.info("Latest system CPU load value measured is {}. This is {}th consecutive measurement that is below the configured relief threshold - {}",
+                        systemCpuValue, cpuConsecutiveMeasurements, circuitBreakerConfiguration.getSystemCpuReliefThreshold());
                 }
-            } else {
-                logger.debug("Latest measurement of system CPU load produced an invalid value: {}", systemCpuValue);
             }
+        } else {
+            consecutiveMeasurementsBelowReliefThreshold = 0;
+        }
+    }
+
+    private static boolean isValid(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+
+    /**
+     * @return the ratio of throttled CFS periods since the previous poll,
+     * or {@link Double#NaN} if throttling monitoring is disabled or the JVM does not run in a cgroup with the cpu controller
+     */
+    double getCpuThrottlingRatio() {
+        if (!circuitBreakerConfiguration.isCpuThrottlingMonitoringEnabled()) {
+            return Double.NaN;
+        }
+        CgroupCpuStats cpuStats = getCgroupCpuStats();
+        if (cpuStats == null || !cpuStats.update()) {
+            return Double.NaN;
+        }
+        double throttledRatio = cpuStats.getThrottledRatio();
+        logger.debug("CPU throttling measurement: {}", throttledRatio);
+        return throttledRatio;
+    }
+
+    @Nullable
+    synchronized CgroupCpuStats getCgroupCpuStats() {
+        if (stopped) {
+            return null;
+        }
+        if (!cgroupCpuStatsResolved) {
+            cgroupCpuStats = createCgroupCpuStats();
+            cgroupCpuStatsResolved = true;
+            if (cgroupCpuStats == null) {
+                logger.info("CPU throttling monitoring is enabled, but the JVM does not run in a cgroup with the cpu controller");
+            }
+        }
+        return cgroupCpuStats;
+    }
+
+    @Nullable
+    CgroupCpuStats createCgroupCpuStats() {
+        return CgroupCpuStats.forCurrentProcess();
+    }
+
+    /**
+     * Closes the {@code cpu.stat} file.
+     * A poll that is still running after the monitor has been stopped doesn't re-open it.
+     */
+    @Override
+    synchronized void stop() {
+        stopped = true;
+        if (cgroupCpuStats != null) {
+            cgroupCpuStats.close();
+            cgroupCpuStats = null;
         }
     }
 
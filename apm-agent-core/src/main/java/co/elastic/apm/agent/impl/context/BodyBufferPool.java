@@ -0,0 +1,148 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.impl.context;
+
+import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides the memory for captured request bodies.
+ * <p>
+ * Body bytes are stored in fixed-size segments which are sliced from larger slabs,
+ * so that capturing a body does not allocate once the pool is warmed up and the segments are not scattered across the heap.
+ * Freed segments are kept in a LIFO free list so that recently used (and likely cache-resident) segments are reused first.
+ * </p>
+ * <p>
+ * All body buffers, including the ones for server request bodies, reserve their size from a global budget
+ * (see {@code capture_body_memory_limit}) while they are in use.
+ * When the budget is exhausted, bodies are not captured or are truncated instead of growing the heap.
+ * As slabs are only allocated when the free list is empty,
+ * the retained memory is bounded by the budget, rounded up to the next slab.
+ * </p>
+ */
+public class BodyBufferPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(BodyBufferPool.class);
+
+    static final int SEGMENT_SIZE = 1024;
+    static final int SEGMENTS_PER_SLAB = 64;
+    static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    private static final BodyBufferPool INSTANCE = new BodyBufferPool(DEFAULT_MAX_BYTES);
+
+    private final ArrayDeque<ByteBuffer> freeSegments = new ArrayDeque<>();
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private volatile long maxBytes;
+
+    BodyBufferPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static void init(CoreConfigurationImpl coreConfiguration) {
+        INSTANCE.maxBytes = coreConfiguration.getCaptureBodyMemoryLimit();
+    }
+
+    static BodyBufferPool get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Reserves the given amount of bytes from the global budget.
+     *
+     * @param bytes the number of bytes to reserve
+     * @return {@code true} if the bytes have been reserved and need to be {@linkplain #release(long) released} after use,
+     * {@code false} if the budget is exhausted
+     */
+    boolean tryReserve(long bytes) {
+        long current;
+        do {
+            current = reservedBytes.get();
+            if (current + bytes > maxBytes) {
+                logger.debug("Not capturing body as the capture_body_memory_limit of {} bytes has been reached", maxBytes);
+                return false;
+            }
+        } while (!reservedBytes.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    void release(long bytes) {
+        reservedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * @return an empty segment in write mode, or {@code null} if the budget is exhausted
+     */
+    @Nullable
+    ByteBuffer acquireSegment() {
+        if (!tryReserve(SEGMENT_SIZE)) {
+            return null;
+        }
+        synchronized (freeSegments) {
+            ByteBuffer segment = freeSegments.pollLast();
+            if (segment != null) {
+                return segment;
+            }
+            return allocateSlab();
+        }
+    }
+
+    /**
+     * Allocates a new slab, adds all but one of its segments to the free list and returns the remaining segment.
+     * Must be called while holding the lock on {@link #freeSegments}.
+     */
+    private ByteBuffer allocateSlab() {
+        ByteBuffer slab = ByteBuffer.allocate(SEGMENT_SIZE * SEGMENTS_PER_SLAB);
+        for (int i = SEGMENTS_PER_SLAB - 1; i > 0; i--) {
+            freeSegments.addLast(slice(slab, i));
+        }
+        return slice(slab, 0);
+    }
+
+    private static ByteBuffer slice(ByteBuffer slab, int index) {
+        // to be compatible with Java 8, we have to cast to buffer because of different return types
+        ((Buffer) slab).limit((index + 1) * SEGMENT_SIZE);
+        ((Buffer) slab).position(index * SEGMENT_SIZE);
+        return slab.slice();
+    }
+
+    void releaseSegment(ByteBuffer segment) {
+        ((Buffer) segment).clear();
+        synchronized (freeSegments) {
+            freeSegments.addLast(segment);
+        }
+        release(SEGMENT_SIZE);
+    }
+
+    long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    int getFreeSegmentCount() {
+        synchronized (freeSegments) {
+            return freeSegments.size();
+        }
+    }
+}
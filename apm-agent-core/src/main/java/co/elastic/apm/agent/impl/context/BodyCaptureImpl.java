@@ -18,37 +18,18 @@
  */
 package co.elastic.apm.agent.impl.context;
 
-import co.elastic.apm.agent.objectpool.Resetter;
-import co.elastic.apm.agent.objectpool.impl.QueueBasedObjectPool;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
 import co.elastic.apm.agent.tracer.metadata.BodyCapture;
-import co.elastic.apm.agent.tracer.pooling.Allocator;
-import co.elastic.apm.agent.tracer.pooling.ObjectPool;
 import co.elastic.apm.agent.tracer.pooling.Recyclable;
-import org.jctools.queues.atomic.MpmcAtomicArrayQueue;
 
 import javax.annotation.Nullable;
-import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 public class BodyCaptureImpl implements BodyCapture, Recyclable {
 
-    private static final int BUFFER_SEGMENT_SIZE = 1024;
-
-    private static final ObjectPool<ByteBuffer> BYTE_BUFFER_POOL = QueueBasedObjectPool.of(new MpmcAtomicArrayQueue<ByteBuffer>(128), false,
-        new Allocator<ByteBuffer>() {
-            @Override
-            public ByteBuffer createInstance() {
-                return ByteBuffer.allocate(BUFFER_SEGMENT_SIZE);
-            }
-        },
-        new Resetter<ByteBuffer>() {
-            @Override
-            public void recycle(ByteBuffer object) {
-                ((Buffer) object).clear();
-            }
-        });
+    private final BodyBufferPool bufferPool;
 
     private enum CaptureState {
         NOT_ELIGIBLE, // initial state
@@ -70,17 +51,34 @@ public class BodyCaptureImpl implements BodyCapture, Recyclable {
 
     private final ArrayList<ByteBuffer> bodyBuffers = new ArrayList<>();
 
+    /**
+     * The transaction of the span this body belongs to, used to enforce the per-transaction body capturing limit.
+     */
+    @Nullable
+    private TransactionImpl transaction;
+
     BodyCaptureImpl() {
+        this(BodyBufferPool.get());
+    }
+
+    BodyCaptureImpl(BodyBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
         charset = new StringBuilder();
         resetState();
     }
 
+    public void setTransaction(@Nullable TransactionImpl transaction) {
+        this.transaction = transaction;
+    }
+
     @Override
     public void resetState() {
         state = CaptureState.NOT_ELIGIBLE;
         charset.setLength(0);
-        for (ByteBuffer buffer : bodyBuffers) {
-            BYTE_BUFFER_POOL.recycle(buffer);
+        remainingBytesToCapture = 0;
+        transaction = null;
+        for (int i = 0; i < bodyBuffers.size(); i++) {
+            bufferPool.releaseSegment(bodyBuffers.get(i));
         }
         bodyBuffers.clear();
         bodyBuffers.trimToSize();
@@ -144,26 +142,61 @@ public class BodyCaptureImpl implements BodyCapture, Recyclable {
         return false;
     }
 
+    /**
+     * Returns the buffer to append to, acquiring a new segment if the current one is full.
+     * If no more memory can be reserved, the capture is marked as {@linkplain #isFull() full}.
+     *
+     * @return the buffer to append to, or {@code null} if no more bytes can be captured
+     */
+    @Nullable
     private ByteBuffer getNonFullAppendBuffer() {
         ByteBuffer last = null;
         if (!bodyBuffers.isEmpty()) {
             last = bodyBuffers.get(bodyBuffers.size() - 1);
         }
         if (last == null || !last.hasRemaining()) {
-            last = BYTE_BUFFER_POOL.createInstance();
+            last = acquireSegment();
+            if (last == null) {
+                remainingBytesToCapture = 0;
+                return null;
+            }
             bodyBuffers.add(last);
         }
         return last;
     }
 
+    @Nullable
+    private ByteBuffer acquireSegment() {
+        ByteBuffer segment = bufferPool.acquireSegment();
+        if (segment == null) {
+            return null;
+        }
+        if (transaction != null) {
+            int requested = Math.min(segment.capacity(), remainingBytesToCapture);
+            int granted = transaction.reserveBodyCaptureBytes(requested);
+            if (granted == 0) {
+                bufferPool.releaseSegment(segment);
+                return null;
+            }
+            if (granted < requested) {
+                // this is the last segment we are allowed to fill
+                remainingBytesToCapture = granted;
+            }
+        }
+        return segment;
+    }
+
     @Override
     public void append(byte b) {
         if (state != CaptureState.STARTED) {
             throw new IllegalStateException("Capturing has not been started!");
         }
         if (!isFull()) {
-            getNonFullAppendBuffer().put(b);
-            remainingBytesToCapture--;
+            ByteBuffer appendTo = getNonFullAppendBuffer();
+            if (appendTo != null) {
+                appendTo.put(b);
+                remainingBytesToCapture--;
+            }
         }
     }
 
@@ -179,6 +212,9 @@ public class BodyCaptureImpl implements BodyCapture, Recyclable {
         int currLen = len;
         do {
             ByteBuffer appendTo = getNonFullAppendBuffer();
+            if (appendTo == null) {
+                return;
+            }
             int toWrite = Math.min(appendTo.remaining(), Math.min(remainingBytesToCapture, currLen));
             appendTo.put(b, currOffset, toWrite);
             currOffset += toWrite;
@@ -200,6 +236,12 @@ public class BodyCaptureImpl implements BodyCapture, Recyclable {
         return charset;
     }
 
+    /**
+     * Returns the captured body as a list of buffers in write mode, which means that the position marks the end of the content.
+     * The buffers are owned by this instance and are recycled when it is reset.
+     *
+     * @return the buffers holding the captured body
+     */
     public List<ByteBuffer> getBody() {
         return bodyBuffers;
     }
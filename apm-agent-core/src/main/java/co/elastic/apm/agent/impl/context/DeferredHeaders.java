@@ -0,0 +1,82 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.impl.context;
+
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.tracer.metadata.HeaderSource;
+import co.elastic.apm.agent.tracer.metadata.PotentiallyMultiValuedMap;
+import co.elastic.apm.agent.tracer.pooling.Recyclable;
+
+import javax.annotation.Nullable;
+
+/**
+ * Holds a reference to a request or response object and the {@link HeaderSource} to read its headers from,
+ * until the headers are either captured or discarded.
+ */
+class DeferredHeaders implements Recyclable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeferredHeaders.class);
+
+    @Nullable
+    private Object carrier;
+    @Nullable
+    private HeaderSource<Object> source;
+
+    @SuppressWarnings("unchecked")
+    <C> void set(C carrier, HeaderSource<C> source) {
+        this.carrier = carrier;
+        this.source = (HeaderSource<Object>) source;
+    }
+
+    boolean isPending() {
+        return source != null;
+    }
+
+    /**
+     * Copies the headers into the target map without releasing the reference to the carrier.
+     */
+    void copyTo(PotentiallyMultiValuedMap target) {
+        Object carrier = this.carrier;
+        HeaderSource<Object> source = this.source;
+        if (carrier == null || source == null) {
+            return;
+        }
+        try {
+            source.copyTo(carrier, target);
+        } catch (RuntimeException e) {
+            // the container might not allow to access the headers anymore
+            logger.debug("Failed to capture headers", e);
+        }
+    }
+
+    /**
+     * Copies the headers into the target map and releases the reference to the carrier.
+     */
+    void captureTo(PotentiallyMultiValuedMap target) {
+        copyTo(target);
+        resetState();
+    }
+
+    @Override
+    public void resetState() {
+        carrier = null;
+        source = null;
+    }
+}
@@ -22,6 +22,7 @@ import co.elastic.apm.agent.objectpool.ObservableObjectPool;
 import co.elastic.apm.agent.objectpool.Resetter;
 import co.elastic.apm.agent.objectpool.impl.QueueBasedObjectPool;
 import co.elastic.apm.agent.report.serialize.SerializationConstants;
+import co.elastic.apm.agent.tracer.metadata.HeaderSource;
 import co.elastic.apm.agent.tracer.metadata.PotentiallyMultiValuedMap;
 import co.elastic.apm.agent.tracer.metadata.Request;
 import co.elastic.apm.agent.tracer.pooling.Allocator;
@@ -67,6 +68,8 @@ public class RequestImpl implements Recyclable, Request {
      * A parsed key-value object of cookies
      */
     private final PotentiallyMultiValuedMap cookies = new PotentiallyMultiValuedMap();
+    private final DeferredHeaders deferredHeaders = new DeferredHeaders();
+    private final DeferredHeaders deferredCookies = new DeferredHeaders();
     /**
      * Data should only contain the request body (not the query string). It can either be a dictionary (for standard HTTP requests) or a raw request body.
      */
@@ -109,10 +112,7 @@ public class RequestImpl implements Recyclable, Request {
     @Override
     public void setRawBody(String rawBody) {
         postParams.resetState();
-        if (bodyBuffer != null) {
-            charBufferPool.recycle(bodyBuffer);
-            bodyBuffer = null;
-        }
+        recycleBodyBuffer();
         this.rawBody = rawBody;
     }
 
@@ -132,14 +132,37 @@ public class RequestImpl implements Recyclable, Request {
         return this;
     }
 
+    /**
+     * Returns the buffer to write the request body to.
+     * The buffer's memory is reserved from the global body capturing budget (see {@link BodyBufferPool}),
+     * if the budget is exhausted, {@code null} is returned and the body is not captured.
+     */
+    @Nullable
     @Override
     public CharBuffer withBodyBuffer() {
         if (this.bodyBuffer == null) {
-            this.bodyBuffer = charBufferPool.createInstance();
+            CharBuffer buffer = charBufferPool.createInstance();
+            if (!BodyBufferPool.get().tryReserve(getSizeInBytes(buffer))) {
+                charBufferPool.recycle(buffer);
+                return null;
+            }
+            this.bodyBuffer = buffer;
         }
         return this.bodyBuffer;
     }
 
+    private void recycleBodyBuffer() {
+        if (bodyBuffer != null) {
+            BodyBufferPool.get().release(getSizeInBytes(bodyBuffer));
+            charBufferPool.recycle(bodyBuffer);
+            bodyBuffer = null;
+        }
+    }
+
+    private static long getSizeInBytes(CharBuffer buffer) {
+        return 2L * buffer.capacity();
+    }
+
     @Override
     public void endOfBufferInput() {
         if (bodyBuffer != null && !bodyBufferFinished) {
@@ -264,6 +287,27 @@ public class RequestImpl implements Recyclable, Request {
         return cookies;
     }
 
+    @Override
+    public <C> RequestImpl withHeaderSource(C carrier, HeaderSource<C> headerSource) {
+        deferredHeaders.set(carrier, headerSource);
+        return this;
+    }
+
+    @Override
+    public <C> RequestImpl withCookieSource(C carrier, HeaderSource<C> cookieSource) {
+        deferredCookies.set(carrier, cookieSource);
+        return this;
+    }
+
+    /**
+     * Copies the headers and cookies of the sources registered via {@link #withHeaderSource} and {@link #withCookieSource}
+     * and releases the references to the request object.
+     */
+    void captureDeferredHeaders() {
+        deferredHeaders.captureTo(headers);
+        deferredCookies.captureTo(cookies);
+    }
+
     void onTransactionEnd() {
         endOfBufferInput();
     }
@@ -277,11 +321,10 @@ public class RequestImpl implements Recyclable, Request {
         socket.resetState();
         url.resetState();
         cookies.resetState();
+        deferredHeaders.resetState();
+        deferredCookies.resetState();
         bodyBufferFinished = false;
-        if (bodyBuffer != null) {
-            charBufferPool.recycle(bodyBuffer);
-            bodyBuffer = null;
-        }
+        recycleBodyBuffer();
         rawBody = null;
     }
 
@@ -293,14 +336,19 @@ public class RequestImpl implements Recyclable, Request {
         this.socket.copyFrom(other.socket);
         this.url.copyFrom(other.url);
         this.cookies.copyFrom(other.cookies);
+        // the other request's headers might not have been captured yet, for example when copying the context of an active transaction
+        other.deferredHeaders.copyTo(this.headers);
+        other.deferredCookies.copyTo(this.cookies);
         // Using getBodyBufferForSerialization to make sure we copy body buffer only if it was written to and writing was finished
         final CharSequence otherBuffer = other.getBodyBufferForSerialization();
         if (otherBuffer != null) {
             final CharBuffer thisBuffer = this.withBodyBuffer();
-            for (int i = 0; i < otherBuffer.length(); i++) {
-                thisBuffer.append(otherBuffer.charAt(i));
+            if (thisBuffer != null) {
+                for (int i = 0; i < otherBuffer.length(); i++) {
+                    thisBuffer.append(otherBuffer.charAt(i));
+                }
+                endOfBufferInput();
             }
-            endOfBufferInput();
         }
         this.rawBody = other.rawBody;
     }
@@ -309,8 +357,10 @@ public class RequestImpl implements Recyclable, Request {
     public boolean hasContent() {
         return method != null ||
             headers.size() > 0 ||
+            deferredHeaders.isPending() ||
             httpVersion != null ||
             cookies.size() > 0 ||
+            deferredCookies.isPending() ||
             postParams.size() > 0 ||
             socket.hasContent() ||
             url.hasContent();
@@ -18,6 +18,7 @@
  */
 package co.elastic.apm.agent.impl.context;
 
+import co.elastic.apm.agent.tracer.metadata.HeaderSource;
 import co.elastic.apm.agent.tracer.metadata.PotentiallyMultiValuedMap;
 import co.elastic.apm.agent.tracer.metadata.Response;
 import co.elastic.apm.agent.tracer.pooling.Recyclable;
@@ -31,6 +32,7 @@ public class ResponseImpl implements Recyclable, Response {
      * A mapping of HTTP headers of the response object
      */
     private final PotentiallyMultiValuedMap headers = new PotentiallyMultiValuedMap();
+    private final DeferredHeaders deferredHeaders = new DeferredHeaders();
     /**
      * A boolean indicating whether the response was finished or not
      */
@@ -79,6 +81,19 @@ public class ResponseImpl implements Recyclable, Response {
         return this;
     }
 
+    @Override
+    public <C> ResponseImpl withHeaderSource(C carrier, HeaderSource<C> headerSource) {
+        deferredHeaders.set(carrier, headerSource);
+        return this;
+    }
+
+    /**
+     * Copies the headers of the source registered via {@link #withHeaderSource} and releases the reference to the response object.
+     */
+    void captureDeferredHeaders() {
+        deferredHeaders.captureTo(headers);
+    }
+
     @Override
     public PotentiallyMultiValuedMap getHeaders() {
         return headers;
@@ -112,6 +127,7 @@ public class ResponseImpl implements Recyclable, Response {
     public void resetState() {
         finished = false;
         headers.resetState();
+        deferredHeaders.resetState();
         headersSent = false;
         statusCode = 0;
     }
@@ -119,11 +135,12 @@ public class ResponseImpl implements Recyclable, Response {
     public void copyFrom(ResponseImpl other) {
         this.finished = other.finished;
         this.headers.copyFrom(other.headers);
+        other.deferredHeaders.copyTo(this.headers);
         this.headersSent = other.headersSent;
         this.statusCode = other.statusCode;
     }
 
     public boolean hasContent() {
-        return statusCode > 0 || headers.size() > 0;
+        return statusCode > 0 || headers.size() > 0 || deferredHeaders.isPending();
     }
 }
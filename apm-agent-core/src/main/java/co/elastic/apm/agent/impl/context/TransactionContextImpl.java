@@ -140,4 +140,13 @@ public class TransactionContextImpl extends AbstractContextImpl implements Trans
         request.onTransactionEnd();
     }
 
+    /**
+     * Captures the request and response headers which have been registered via a {@link co.elastic.apm.agent.tracer.metadata.HeaderSource}.
+     * Must be called before the request is completed, as containers may recycle the request and response objects afterwards.
+     */
+    public void captureDeferredHeaders() {
+        request.captureDeferredHeaders();
+        response.captureDeferredHeaders();
+    }
+
 }
@@ -109,8 +109,12 @@ public class MetaData {
             processInformation.getArgv().clear();
         }
 
-        final ThreadPoolExecutor executor = ExecutorUtils.createThreadDaemonPool("metadata", 2, 3);
         final int metadataDiscoveryTimeoutMs = (int) coreConfiguration.getMetadataDiscoveryTimeoutMs();
+        if (serverlessConfiguration.isAwsLambdaFastStart()) {
+            return createForAwsLambda(coreConfiguration, serverlessConfiguration, service, processInformation, metadataDiscoveryTimeoutMs);
+        }
+
+        final ThreadPoolExecutor executor = ExecutorUtils.createThreadDaemonPool("metadata", 2, 3);
 
         try {
             // System info creation executes external processes for hostname discovery and reads files for container/k8s metadata discovery
@@ -157,6 +161,36 @@ public class MetaData {
         }
     }
 
+    /**
+     * On AWS Lambda, the system and cloud metadata are derived from environment variables, so there's no need to discover them
+     * on background threads. The metadata is completed by the thread that completes the FaaS metadata on the first invocation.
+     */
+    private static MetaDataFuture createForAwsLambda(final CoreConfigurationImpl coreConfiguration, ServerlessConfigurationImpl serverlessConfiguration,
+                                                     final ServiceImpl service, final ProcessInfo processInformation, int metadataDiscoveryTimeoutMs) {
+        final SystemInfo systemInfo = SystemInfo.create(coreConfiguration.getHostname(), metadataDiscoveryTimeoutMs, serverlessConfiguration);
+        final CloudProviderInfo cloudProviderInfo = CloudMetadataProvider.getCloudInfoProvider(coreConfiguration.getCloudProvider(),
+            metadataDiscoveryTimeoutMs, serverlessConfiguration);
+        final CompletableFuture<MetaData> metaDataFuture = new CompletableFuture<>();
+        CompletableFuture<FaaSMetaDataExtension> faaSMetaDataExtensionFuture = new CompletableFuture<FaaSMetaDataExtension>() {
+            @Override
+            public boolean complete(@Nullable FaaSMetaDataExtension faaSMetaDataExtension) {
+                boolean completed = super.complete(faaSMetaDataExtension);
+                if (completed) {
+                    metaDataFuture.complete(new MetaData(
+                        processInformation,
+                        service,
+                        systemInfo,
+                        cloudProviderInfo,
+                        coreConfiguration.getGlobalLabels(),
+                        faaSMetaDataExtension
+                    ));
+                }
+                return completed;
+            }
+        };
+        return new MetaDataFuture(metaDataFuture, faaSMetaDataExtensionFuture);
+    }
+
     /**
      * Service
      * (Required)
@@ -27,8 +27,8 @@ import java.util.concurrent.TimeoutException;
 
 public class MetaDataFuture implements Future<MetaData> {
 
-    private final Future<MetaData> metaDataFuture;
-    private final CompletableFuture<FaaSMetaDataExtension> faaSMetaDataExtensionFuture;
+    private volatile Future<MetaData> metaDataFuture;
+    private volatile CompletableFuture<FaaSMetaDataExtension> faaSMetaDataExtensionFuture;
 
     public MetaDataFuture(Future<MetaData> metaDataFuture, CompletableFuture<FaaSMetaDataExtension> faaSMetaDataExtensionFuture) {
         this.metaDataFuture = metaDataFuture;
@@ -63,4 +63,24 @@ public class MetaDataFuture implements Future<MetaData> {
     public CompletableFuture<FaaSMetaDataExtension> getFaaSMetaDataExtensionFuture() {
         return faaSMetaDataExtensionFuture;
     }
+
+    /**
+     * Replaces the metadata with metadata that has been discovered again, for example after the JVM has been restored from a
+     * checkpoint on another host.
+     * The FaaS metadata is carried over if it has already been completed.
+     *
+     * @param rediscovered the newly discovered metadata
+     */
+    public synchronized void replaceWith(MetaDataFuture rediscovered) {
+        CompletableFuture<FaaSMetaDataExtension> faaSMetaDataExtensionFuture = this.faaSMetaDataExtensionFuture;
+        if (faaSMetaDataExtensionFuture.isDone()) {
+            try {
+                rediscovered.faaSMetaDataExtensionFuture.complete(faaSMetaDataExtensionFuture.get());
+            } catch (Exception ignore) {
+                // the future is done, so get() does not block or fail
+            }
+        }
+        this.metaDataFuture = rediscovered.metaDataFuture;
+        this.faaSMetaDataExtensionFuture = rediscovered.faaSMetaDataExtensionFuture;
+    }
 }
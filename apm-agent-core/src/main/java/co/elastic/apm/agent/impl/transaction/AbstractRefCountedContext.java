@@ -23,19 +23,88 @@ import co.elastic.apm.agent.impl.ElasticApmTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Reference counting for pooled contexts.
+ * <p>
+ * References which may be released on a different thread than the one that acquired them are tracked by an atomic counter.
+ * Activations are always released on the thread that acquired them (see {@link #incrementActivationReferences()}).
+ * For activations on the {@linkplain #setOwnerThread(Thread) owner thread}, which usually is the thread that started the span,
+ * the count is biased towards that thread:
+ * it is kept in a plain field and only the first activation acquires a single reference on the shared atomic counter,
+ * which is released when the last activation on the owner thread is released.
+ * This avoids atomic operations for nested activations, for example of the transaction when activating child spans.
+ * </p>
+ */
 public abstract class AbstractRefCountedContext<T extends AbstractRefCountedContext<T>> extends TraceStateImpl<T> implements Recyclable {
     private static final Logger logger = LoggerFactory.getLogger(AbstractRefCountedContext.class);
 
     private final AtomicInteger references = new AtomicInteger();
 
+    /**
+     * The thread for which activations are counted in {@link #ownerActivations}.
+     * Volatile so that a thread never observes itself as the owner of a recycled and restarted context.
+     */
+    @Nullable
+    private volatile Thread ownerThread;
+
+    /**
+     * Number of activations on the {@link #ownerThread}, only accessed by the owner thread.
+     * While greater than zero, a single reference is held on {@link #references}.
+     */
+    private int ownerActivations;
+
     protected AbstractRefCountedContext(ElasticApmTracer tracer) {
         super(tracer);
     }
 
+    /**
+     * Sets the thread whose activations of this context are counted without atomic operations.
+     * Must only be called while this context has no activations, typically when it is started.
+     */
+    protected void setOwnerThread(Thread thread) {
+        ownerThread = thread;
+    }
+
     @Override
     public void incrementReferences() {
+        incrementSharedReferences();
+    }
+
+    @Override
+    public void decrementReferences() {
+        decrementSharedReferences();
+    }
+
+    @Override
+    public void incrementActivationReferences() {
+        if (Thread.currentThread() == ownerThread) {
+            if (ownerActivations++ == 0) {
+                incrementSharedReferences();
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("increment owner thread activations of {} ({})", this, ownerActivations);
+            }
+        } else {
+            incrementSharedReferences();
+        }
+    }
+
+    @Override
+    public void decrementActivationReferences() {
+        if (Thread.currentThread() == ownerThread && ownerActivations > 0) {
+            if (--ownerActivations == 0) {
+                decrementSharedReferences();
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("decrement owner thread activations of {} ({})", this, ownerActivations);
+            }
+        } else {
+            decrementSharedReferences();
+        }
+    }
+
+    private void incrementSharedReferences() {
         int referenceCount = references.incrementAndGet();
         if (logger.isDebugEnabled()) {
             logger.debug("increment references to {} ({})", this, referenceCount);
@@ -46,8 +115,7 @@ public abstract class AbstractRefCountedContext<T extends AbstractRefCountedCont
         }
     }
 
-    @Override
-    public void decrementReferences() {
+    private void decrementSharedReferences() {
         int referenceCount = references.decrementAndGet();
         if (logger.isDebugEnabled()) {
             logger.debug("decrement references to {} ({})", this, referenceCount);
@@ -65,8 +133,15 @@ public abstract class AbstractRefCountedContext<T extends AbstractRefCountedCont
         return references.get() > 0;
     }
 
+    /**
+     * Returns the total number of references, including the activations on the owner thread.
+     * When called from another thread than the owner thread, the activations of the owner thread may not be accurate.
+     *
+     * @return the total number of references
+     */
     public int getReferenceCount() {
-        return references.get();
+        int activations = ownerActivations;
+        return activations > 0 ? references.get() - 1 + activations : references.get();
     }
 
     protected abstract void recycle();
@@ -74,5 +149,7 @@ public abstract class AbstractRefCountedContext<T extends AbstractRefCountedCont
     @Override
     public void resetState() {
         references.set(0);
+        ownerActivations = 0;
+        ownerThread = null;
     }
 }
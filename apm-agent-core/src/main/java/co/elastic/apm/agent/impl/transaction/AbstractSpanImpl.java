@@ -34,9 +34,7 @@ import co.elastic.apm.agent.tracer.dispatch.HeaderGetter;
 import co.elastic.apm.agent.tracer.pooling.Recyclable;
 
 import javax.annotation.Nullable;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -123,7 +121,7 @@ public abstract class AbstractSpanImpl<T extends AbstractSpanImpl<T>> extends Ab
     @Nullable
     private OTelSpanKind otelKind = null;
 
-    private final Map<String, Object> otelAttributes = new HashMap<>();
+    private final OTelAttributes otelAttributes = new OTelAttributes();
 
     @Override
     public T requestDiscarding() {
@@ -446,7 +444,7 @@ public abstract class AbstractSpanImpl<T extends AbstractSpanImpl<T>> extends Ab
         bufferedSpan.reset();
         recycleSpanLinks();
         otelKind = null;
-        otelAttributes.clear();
+        otelAttributes.resetState();
     }
 
     private void recycleSpanLinks() {
@@ -536,6 +534,7 @@ public abstract class AbstractSpanImpl<T extends AbstractSpanImpl<T>> extends Ab
      */
     protected void onAfterStart() {
         this.finished = false;
+        setOwnerThread(Thread.currentThread());
         // this final reference is decremented when the span is reported
         // or even after its reported and the last child span is ended
         incrementReferences();
@@ -735,14 +734,14 @@ public abstract class AbstractSpanImpl<T extends AbstractSpanImpl<T>> extends Ab
         return otelKind;
     }
 
-    public Map<String, Object> getOtelAttributes() {
+    public OTelAttributes getOtelAttributes() {
         return otelAttributes;
     }
 
     @Override
     public T withOtelAttribute(String key, @Nullable Object value) {
         if (value != null) {
-            otelAttributes.put(key, value);
+            otelAttributes.putValue(key, value);
         }
         return thiz();
     }
@@ -19,17 +19,16 @@
 package co.elastic.apm.agent.impl.transaction;
 
 import co.elastic.apm.agent.report.serialize.Base64SerializationUtils;
-import co.elastic.apm.agent.report.serialize.HexSerializationUtils;
 import co.elastic.apm.agent.tracer.Id;
 import co.elastic.apm.agent.tracer.pooling.Recyclable;
 import co.elastic.apm.agent.tracer.util.HexUtils;
+import co.elastic.apm.agent.util.ByteUtils;
 import com.dslplatform.json.JsonWriter;
 
 import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * A 128 bit globally unique ID of the whole trace forest
@@ -40,6 +39,15 @@ public class IdImpl implements Recyclable, Id {
     private boolean empty = true;
     @Nullable
     private String cachedStringRepresentation;
+    /**
+     * The lower case hex representation of {@link #data} as ASCII bytes, which is lazily encoded and then re-used for
+     * serialization and propagation until the next mutation.
+     * The array is retained when this id is recycled.
+     * Encoding and reading the array is guarded by the lock on the array itself, as ids may be serialized concurrently,
+     * for example when a span is reported while a child span is propagated.
+     */
+    private final byte[] hexAscii;
+    private boolean hexAsciiValid;
 
     public static IdImpl new128BitId() {
         return new IdImpl(16);
@@ -49,13 +57,43 @@ public class IdImpl implements Recyclable, Id {
         return new IdImpl(8);
     }
 
+    /**
+     * Re-seeds the generators of random ids of all threads.
+     * Must be called after the JVM has been restored from a checkpoint, so that the restored JVMs don't generate the same ids.
+     */
+    public static void reseedRandomValues() {
+        RandomIdGenerator.reseed();
+    }
+
     private IdImpl(int idLengthBytes) {
         data = new byte[idLengthBytes];
+        hexAscii = new byte[idLengthBytes * 2];
     }
 
     @Override
     public void setToRandomValue() {
-        setToRandomValue(ThreadLocalRandom.current());
+        RandomIdGenerator random = RandomIdGenerator.current();
+        for (int offset = 0; offset < data.length; offset += 8) {
+            ByteUtils.putLong(data, offset, random.nextLong());
+        }
+        onMutation(false);
+    }
+
+    /**
+     * Sets this 128 bit id to a value of which the first 48 bits are the provided timestamp and the remaining 80 bits are random.
+     * Ids generated this way are roughly ordered by time, while the random part stays on the right side,
+     * so that sampling decisions based on the {@link #getLeastSignificantBits() least significant bits} are not affected.
+     *
+     * @param epochMillis the milliseconds since epoch
+     */
+    public void setToTimeOrderedRandomValue(long epochMillis) {
+        if (data.length != 16) {
+            throw new IllegalStateException("Time ordered ids are only supported for 128 bit ids");
+        }
+        RandomIdGenerator random = RandomIdGenerator.current();
+        ByteUtils.putLong(data, 0, (epochMillis << 16) | (random.nextLong() & 0xFFFF));
+        ByteUtils.putLong(data, 8, random.nextLong());
+        onMutation(false);
     }
 
     public void setToRandomValue(Random random) {
@@ -116,6 +154,9 @@ public class IdImpl implements Recyclable, Id {
         System.arraycopy(other.data, 0, data, 0, data.length);
         this.cachedStringRepresentation = other.cachedStringRepresentation;
         this.empty = other.empty;
+        // not copying the hex encoding, as the other id may concurrently encode into its buffer,
+        // for example when a span is created from a parent that is being serialized
+        hexAsciiValid = false;
     }
 
     private void onMutation() {
@@ -124,9 +165,21 @@ public class IdImpl implements Recyclable, Id {
 
     private void onMutation(boolean empty) {
         cachedStringRepresentation = null;
+        hexAsciiValid = false;
         this.empty = empty;
     }
 
+    /**
+     * Must only be called while holding the lock on {@link #hexAscii}, the returned array must not be used after releasing it.
+     */
+    private byte[] getHexAscii() {
+        if (!hexAsciiValid) {
+            HexUtils.writeBytesAsHexAscii(data, 0, data.length, hexAscii, 0);
+            hexAsciiValid = true;
+        }
+        return hexAscii;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -174,7 +227,9 @@ public class IdImpl implements Recyclable, Id {
     }
 
     public void writeAsHex(JsonWriter jw) {
-        HexSerializationUtils.writeBytesAsHex(data, jw);
+        synchronized (hexAscii) {
+            jw.writeAscii(getHexAscii());
+        }
     }
 
     public void writeAsBase64UrlSafe(JsonWriter jw) {
@@ -185,6 +240,18 @@ public class IdImpl implements Recyclable, Id {
         HexUtils.writeBytesAsHex(data, sb);
     }
 
+    /**
+     * Writes the hex representation of this id as ASCII bytes into the provided buffer.
+     *
+     * @param buffer the buffer to write to, must have room for {@code 2 * length} bytes after the offset
+     * @param offset the offset in the buffer
+     */
+    public void writeAsHexAscii(byte[] buffer, int offset) {
+        synchronized (hexAscii) {
+            System.arraycopy(getHexAscii(), 0, buffer, offset, hexAscii.length);
+        }
+    }
+
     /**
      * Returns the last 8 bytes of this id as a {@code long}.
      * <p>
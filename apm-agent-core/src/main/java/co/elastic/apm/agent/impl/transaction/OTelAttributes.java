@@ -0,0 +1,341 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.impl.transaction;
+
+import co.elastic.apm.agent.tracer.pooling.Recyclable;
+
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Stores the OpenTelemetry attributes of a span without boxing {@code long}, {@code double} and {@code boolean} values.
+ * <p>
+ * Entries are stored densely in insertion order, in parallel arrays with a primitive slot for numeric and boolean values.
+ * Lookups go through an open addressing index, comparing keys by identity first, as attribute keys are usually constants.
+ * The arrays are retained when the owning span is recycled, so that spans with many attributes don't cause map churn.
+ * </p>
+ * <p>
+ * The {@link Map} view boxes primitive values on access, the serializer and the OpenTelemetry bridge use the typed
+ * accessors instead.
+ * </p>
+ */
+public class OTelAttributes extends AbstractMap<String, Object> implements Recyclable {
+
+    public static final int TYPE_OBJECT = 0;
+    public static final int TYPE_LONG = 1;
+    public static final int TYPE_DOUBLE = 2;
+    public static final int TYPE_BOOLEAN = 3;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private long[] primitives = new long[INITIAL_CAPACITY];
+    private Object[] objects = new Object[INITIAL_CAPACITY];
+    /**
+     * Open addressing index with twice the capacity of the entry arrays, holding the entry index + 1, {@code 0} means free.
+     */
+    private int[] index = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public String getKey(int i) {
+        return keys[i];
+    }
+
+    /**
+     * @return one of {@link #TYPE_OBJECT}, {@link #TYPE_LONG}, {@link #TYPE_DOUBLE} or {@link #TYPE_BOOLEAN}
+     */
+    public int getType(int i) {
+        return types[i];
+    }
+
+    public long getLong(int i) {
+        return primitives[i];
+    }
+
+    public double getDouble(int i) {
+        return Double.longBitsToDouble(primitives[i]);
+    }
+
+    public boolean getBoolean(int i) {
+        return primitives[i] != 0;
+    }
+
+    public Object getObject(int i) {
+        return objects[i];
+    }
+
+    /**
+     * @return the value as a {@code long}, or the default value if the key is not present or the value is not a number
+     */
+    public long getLong(String key, long defaultValue) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return defaultValue;
+        }
+        switch (types[i]) {
+            case TYPE_LONG:
+                return primitives[i];
+            case TYPE_DOUBLE:
+                return (long) getDouble(i);
+            case TYPE_OBJECT:
+                return objects[i] instanceof Number ? ((Number) objects[i]).longValue() : defaultValue;
+            default:
+                return defaultValue;
+        }
+    }
+
+    /**
+     * @return the value if it is a {@link String}, {@code null} otherwise
+     */
+    @Nullable
+    public String getString(String key) {
+        int i = indexOf(key);
+        if (i >= 0 && objects[i] instanceof String) {
+            return (String) objects[i];
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && indexOf((String) key) >= 0;
+    }
+
+    @Nullable
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int i = indexOf((String) key);
+        return i >= 0 ? getValue(i) : null;
+    }
+
+    @Nullable
+    private Object getValue(int i) {
+        switch (types[i]) {
+            case TYPE_LONG:
+                return primitives[i];
+            case TYPE_DOUBLE:
+                return getDouble(i);
+            case TYPE_BOOLEAN:
+                return getBoolean(i);
+            default:
+                return objects[i];
+        }
+    }
+
+    public void putLong(String key, long value) {
+        int i = entryFor(key);
+        types[i] = TYPE_LONG;
+        primitives[i] = value;
+        objects[i] = null;
+    }
+
+    public void putDouble(String key, double value) {
+        int i = entryFor(key);
+        types[i] = TYPE_DOUBLE;
+        primitives[i] = Double.doubleToRawLongBits(value);
+        objects[i] = null;
+    }
+
+    public void putBoolean(String key, boolean value) {
+        int i = entryFor(key);
+        types[i] = TYPE_BOOLEAN;
+        primitives[i] = value ? 1 : 0;
+        objects[i] = null;
+    }
+
+    /**
+     * Stores {@link Long}, {@link Double} and {@link Boolean} values in primitive slots, other values as they are.
+     */
+    public void putValue(String key, Object value) {
+        if (value instanceof Long) {
+            putLong(key, (Long) value);
+        } else if (value instanceof Double) {
+            putDouble(key, (Double) value);
+        } else if (value instanceof Boolean) {
+            putBoolean(key, (Boolean) value);
+        } else {
+            int i = entryFor(key);
+            types[i] = TYPE_OBJECT;
+            primitives[i] = 0;
+            objects[i] = value;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Object put(String key, Object value) {
+        Object previous = get(key);
+        putValue(key, value);
+        return previous;
+    }
+
+    @Nullable
+    @Override
+    public Object remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int i = indexOf((String) key);
+        if (i < 0) {
+            return null;
+        }
+        Object previous = getValue(i);
+        int moved = size - i - 1;
+        System.arraycopy(keys, i + 1, keys, i, moved);
+        System.arraycopy(types, i + 1, types, i, moved);
+        System.arraycopy(primitives, i + 1, primitives, i, moved);
+        System.arraycopy(objects, i + 1, objects, i, moved);
+        size--;
+        keys[size] = null;
+        objects[size] = null;
+        // removal is rare, so we just rebuild the index instead of dealing with tombstones
+        rebuildIndex();
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(objects, 0, size, null);
+        Arrays.fill(index, 0);
+        size = 0;
+    }
+
+    @Override
+    public void resetState() {
+        clear();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (next >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = next++;
+                        return new SimpleImmutableEntry<>(keys[i], getValue(i));
+                    }
+
+                    @Override
+                    public void remove() {
+                        OTelAttributes.this.remove(keys[--next]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int indexOf(String key) {
+        int mask = index.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = index[slot] - 1;
+            if (entry < 0) {
+                return -1;
+            }
+            String candidate = keys[entry];
+            if (candidate == key || candidate.equals(key)) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * @return the index of the entry of the provided key, which is added if it does not exist yet
+     */
+    private int entryFor(String key) {
+        int existing = indexOf(key);
+        if (existing >= 0) {
+            return existing;
+        }
+        if (size == keys.length) {
+            grow();
+        }
+        int i = size++;
+        keys[i] = key;
+        insertIntoIndex(key, i);
+        return i;
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        types = Arrays.copyOf(types, capacity);
+        primitives = Arrays.copyOf(primitives, capacity);
+        objects = Arrays.copyOf(objects, capacity);
+        index = new int[capacity * 2];
+        rebuildIndex();
+    }
+
+    private void rebuildIndex() {
+        Arrays.fill(index, 0);
+        for (int i = 0; i < size; i++) {
+            insertIntoIndex(keys[i], i);
+        }
+    }
+
+    private void insertIntoIndex(String key, int entry) {
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = entry + 1;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        // spreads the higher bits, as the index only uses the lower bits
+        return h ^ (h >>> 16);
+    }
+}
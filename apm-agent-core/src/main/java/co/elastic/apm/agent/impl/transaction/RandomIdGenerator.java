@@ -0,0 +1,115 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.impl.transaction;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates the random part of span and trace ids with a xoroshiro128++ generator per thread.
+ * <p>
+ * Ids don't need to be cryptographically secure, but they need to be unique with a high probability,
+ * which xoroshiro128++ provides with a period of 2<sup>128</sup>-1 and good statistical quality,
+ * while only requiring a few shifts, rotations and additions per {@code long}.
+ * </p>
+ * <p>
+ * The generator of each thread is seeded from {@link ThreadLocalRandom}.
+ * Instances must only be used by the thread they belong to, as returned by {@link #current()}.
+ * </p>
+ * <p>
+ * When the JVM is restored from a checkpoint, the state of all generators and of {@link ThreadLocalRandom} is the same
+ * in each restored JVM. {@link #reseed()} makes all threads replace their generator with one that is seeded with fresh entropy.
+ * </p>
+ */
+final class RandomIdGenerator {
+
+    private static final ThreadLocal<RandomIdGenerator> generators = new ThreadLocal<RandomIdGenerator>() {
+        @Override
+        protected RandomIdGenerator initialValue() {
+            return newGenerator();
+        }
+    };
+
+    /**
+     * Incremented by {@link #reseed()}, generators of previous generations are replaced on their next use
+     */
+    private static volatile int currentGeneration;
+    private static volatile long reseedEntropy;
+
+    private final int generation;
+    private long s0;
+    private long s1;
+
+    RandomIdGenerator(long seed0, long seed1) {
+        this(seed0, seed1, currentGeneration);
+    }
+
+    private RandomIdGenerator(long seed0, long seed1, int generation) {
+        this.generation = generation;
+        // the state must not be all zeros, mixing the seeds makes sure similar seeds don't lead to similar sequences
+        s0 = mix(seed0);
+        s1 = mix(seed1);
+        if (s0 == 0 && s1 == 0) {
+            s1 = 0x9E3779B97F4A7C15L;
+        }
+    }
+
+    static RandomIdGenerator current() {
+        RandomIdGenerator generator = generators.get();
+        if (generator.generation != currentGeneration) {
+            generator = newGenerator();
+            generators.set(generator);
+        }
+        return generator;
+    }
+
+    private static RandomIdGenerator newGenerator() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long entropy = reseedEntropy;
+        return new RandomIdGenerator(random.nextLong() ^ entropy, random.nextLong() ^ Long.reverse(entropy), currentGeneration);
+    }
+
+    /**
+     * Makes all threads seed a new generator on their next use, mixing in entropy that is gathered when this method is called.
+     * Must be called after the JVM has been restored from a checkpoint, as all restored JVMs would generate the same ids otherwise.
+     */
+    static synchronized void reseed() {
+        reseedEntropy = new SecureRandom().nextLong();
+        currentGeneration++;
+    }
+
+    long nextLong() {
+        long s0 = this.s0;
+        long s1 = this.s1;
+        long result = Long.rotateLeft(s0 + s1, 17) + s0;
+        s1 ^= s0;
+        this.s0 = Long.rotateLeft(s0, 49) ^ s1 ^ (s1 << 21);
+        this.s1 = Long.rotateLeft(s1, 28);
+        return result;
+    }
+
+    /**
+     * The SplitMix64 finalizer
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
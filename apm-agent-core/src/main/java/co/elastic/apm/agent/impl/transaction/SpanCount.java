@@ -27,6 +27,9 @@ public class SpanCount implements Recyclable {
     private final AtomicInteger dropped = new AtomicInteger(0);
     private final AtomicInteger reported = new AtomicInteger(0);
     private final AtomicInteger total = new AtomicInteger(0);
+    private final AtomicInteger compressionEligible = new AtomicInteger(0);
+    private final AtomicInteger compressed = new AtomicInteger(0);
+    private final AtomicInteger compressionContended = new AtomicInteger(0);
 
     public AtomicInteger getDropped() {
         return dropped;
@@ -40,6 +43,28 @@ public class SpanCount implements Recyclable {
         return total;
     }
 
+    /**
+     * @return the number of ended spans which were eligible for span compression
+     */
+    public AtomicInteger getCompressionEligible() {
+        return compressionEligible;
+    }
+
+    /**
+     * @return the number of spans which have been compressed into a sibling, they are also counted as {@linkplain #getDropped() dropped}
+     */
+    public AtomicInteger getCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return the number of compression-eligible spans which were reported uncompressed,
+     * because concurrently ending siblings kept replacing the compression buffer of their parent
+     */
+    public AtomicInteger getCompressionContended() {
+        return compressionContended;
+    }
+
     public boolean isSpanLimitReached(int maxSpans) {
         return maxSpans <= total.get() - dropped.get();
     }
@@ -49,5 +74,8 @@ public class SpanCount implements Recyclable {
         dropped.set(0);
         reported.set(0);
         total.set(0);
+        compressionEligible.set(0);
+        compressed.set(0);
+        compressionContended.set(0);
     }
 }
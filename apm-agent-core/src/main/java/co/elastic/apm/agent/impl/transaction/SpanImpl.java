@@ -52,6 +52,13 @@ public class SpanImpl extends AbstractSpanImpl<SpanImpl> implements Recyclable,
      */
     static final int MAX_END_LISTENERS = 100;
     private static final Logger logger = LoggerFactory.getLogger(SpanImpl.class);
+
+    /**
+     * The maximum number of attempts to compress or buffer an ending span when the compression buffer of its parent
+     * is concurrently replaced by siblings, see {@link #compressOrBuffer(AbstractSpanImpl, TransactionImpl)}.
+     */
+    private static final int MAX_COMPRESSION_ATTEMPTS = 4;
+
     public static final long MAX_LOG_INTERVAL_MICRO_SECS = TimeUnit.MINUTES.toMicros(5);
     private static long lastSpanMaxWarningTimestamp;
     private final StacktraceConfigurationImpl stacktraceConfiguration;
@@ -115,6 +122,7 @@ public class SpanImpl extends AbstractSpanImpl<SpanImpl> implements Recyclable,
             this.parent = parentSpan;
             this.transaction = parentSpan.transaction;
         }
+        context.getHttp().getRequestBody().setTransaction(transaction);
         return start(epochMicros);
     }
 
@@ -321,55 +329,7 @@ public class SpanImpl extends AbstractSpanImpl<SpanImpl> implements Recyclable,
         this.incrementReferences();
         try {
             if (transaction != null && transaction.isSpanCompressionEnabled() && parent != null) {
-                SpanImpl parentBuffered = parent.bufferedSpan.incrementReferencesAndGet();
-                try {
-                    //per the reference, if it is not compression-eligible or if its parent has already ended, it is reported immediately
-                    if (parent.isFinished() || !isCompressionEligible()) {
-                        if (parentBuffered != null) {
-                            if (parent.bufferedSpan.compareAndSet(parentBuffered, null)) {
-                                this.tracer.endSpan(parentBuffered);
-                                logger.trace("parent span compression buffer was set to null and {} was ended", parentBuffered);
-                            }
-                        }
-                        this.tracer.endSpan(this);
-                        return;
-                    }
-                    //since it wasn't reported, this span gets buffered
-                    if (parentBuffered == null) {
-                        if (!parent.bufferedSpan.compareAndSet(null, this)) {
-                            // the failed update would ideally lead to a compression attempt with the new buffer,
-                            // but we're dropping the compression attempt to keep things simple and avoid looping so this stays wait-free
-                            // this doesn't exactly diverge from the spec, but it can lead to non-optimal compression under high load
-                            this.tracer.endSpan(this);
-                        } else {
-                            logger.trace("parent span compression buffer was set to {}", this);
-                        }
-                        return;
-                    }
-                    //still trying to buffer this span
-                    if (!parentBuffered.tryToCompress(this)) {
-                        // we couldn't compress so replace the buffer with this
-                        if (parent.bufferedSpan.compareAndSet(parentBuffered, this)) {
-                            this.tracer.endSpan(parentBuffered);
-                            logger.trace("parent span compression buffer was set to {} and {} was ended", this, parentBuffered);
-                        } else {
-                            // the failed update would ideally lead to a compression attempt with the new buffer,
-                            // but we're dropping the compression attempt to keep things simple and avoid looping so this stays wait-free
-                            // this doesn't exactly diverge from the spec, but it can lead to non-optimal compression under high load
-                            this.tracer.endSpan(this);
-                        }
-                    } else {
-                        if (isSampled() && transaction != null) {
-                            transaction.getSpanCount().getDropped().incrementAndGet();
-                        }
-                        //drop the span by removing the reference allocated in onAfterStart() because it has been compressed
-                        decrementReferences();
-                    }
-                } finally {
-                    if (parentBuffered != null) {
-                        parentBuffered.decrementReferences();
-                    }
-                }
+                compressOrBuffer(parent, transaction);
             } else {
                 this.tracer.endSpan(this);
             }
@@ -382,6 +342,72 @@ public class SpanImpl extends AbstractSpanImpl<SpanImpl> implements Recyclable,
         }
     }
 
+    /**
+     * Tries to compress this span into the span buffered by the parent, or replaces the buffered span with this one.
+     * <p>
+     * If the buffer of the parent is concurrently replaced by a sibling ending on a different thread, the attempt is retried
+     * with the new buffer, so that compression stays effective for parallel calls under the same parent.
+     * The number of attempts is bounded, so that ending a span never spins under heavy contention.
+     * If all attempts fail, this span is reported uncompressed.
+     * This doesn't diverge from the spec, but it can lead to non-optimal compression.
+     * </p>
+     */
+    private void compressOrBuffer(AbstractSpanImpl<?> parent, TransactionImpl transaction) {
+        boolean compressionEligible = isCompressionEligible();
+        SpanCount spanCount = transaction.getSpanCount();
+        if (compressionEligible) {
+            spanCount.getCompressionEligible().incrementAndGet();
+        }
+        for (int attempt = 0; attempt < MAX_COMPRESSION_ATTEMPTS; attempt++) {
+            SpanImpl parentBuffered = parent.bufferedSpan.incrementReferencesAndGet();
+            try {
+                //per the reference, if it is not compression-eligible or if its parent has already ended, it is reported immediately
+                if (parent.isFinished() || !compressionEligible) {
+                    if (parentBuffered != null) {
+                        if (parent.bufferedSpan.compareAndSet(parentBuffered, null)) {
+                            this.tracer.endSpan(parentBuffered);
+                            logger.trace("parent span compression buffer was set to null and {} was ended", parentBuffered);
+                        }
+                    }
+                    this.tracer.endSpan(this);
+                    return;
+                }
+                //since it wasn't reported, this span gets buffered
+                if (parentBuffered == null) {
+                    if (parent.bufferedSpan.compareAndSet(null, this)) {
+                        logger.trace("parent span compression buffer was set to {}", this);
+                        return;
+                    }
+                    // a sibling has been buffered concurrently, retry to compress this span into it
+                    continue;
+                }
+                //still trying to buffer this span
+                if (parentBuffered.tryToCompress(this)) {
+                    if (isSampled()) {
+                        spanCount.getDropped().incrementAndGet();
+                    }
+                    spanCount.getCompressed().incrementAndGet();
+                    //drop the span by removing the reference allocated in onAfterStart() because it has been compressed
+                    decrementReferences();
+                    return;
+                }
+                // we couldn't compress so replace the buffer with this
+                if (parent.bufferedSpan.compareAndSet(parentBuffered, this)) {
+                    this.tracer.endSpan(parentBuffered);
+                    logger.trace("parent span compression buffer was set to {} and {} was ended", this, parentBuffered);
+                    return;
+                }
+                // the buffer has been replaced concurrently, retry with the new buffer
+            } finally {
+                if (parentBuffered != null) {
+                    parentBuffered.decrementReferences();
+                }
+            }
+        }
+        spanCount.getCompressionContended().incrementAndGet();
+        this.tracer.endSpan(this);
+    }
+
     private boolean isCompressionEligible() {
         return isExit() && isDiscardable() && (outcomeNotSet() || getOutcome() == Outcome.SUCCESS);
     }
@@ -549,6 +575,22 @@ public class SpanImpl extends AbstractSpanImpl<SpanImpl> implements Recyclable,
         super.decrementReferences();
     }
 
+    @Override
+    public void incrementActivationReferences() {
+        if (transaction != null) {
+            transaction.incrementActivationReferences();
+        }
+        super.incrementActivationReferences();
+    }
+
+    @Override
+    public void decrementActivationReferences() {
+        if (transaction != null) {
+            transaction.decrementActivationReferences();
+        }
+        super.decrementActivationReferences();
+    }
+
     @Override
     protected void recycle() {
         tracer.recycle(this);
@@ -73,6 +73,7 @@ public class TraceContextImpl implements Recyclable, TraceContext {
     private static final Logger logger = LoggerFactory.getLogger(TraceContextImpl.class);
 
     private static final Double SAMPLE_RATE_ZERO = 0d;
+    private static final String SAMPLE_RATE_ZERO_HEADER = TraceState.getHeaderValue(SAMPLE_RATE_ZERO);
 
     public static final Set<String> TRACE_TEXTUAL_HEADERS;
 
@@ -195,6 +196,18 @@ public class TraceContextImpl implements Recyclable, TraceContext {
     private final IdImpl parentId = IdImpl.new64BitId();
     private final IdImpl transactionId = IdImpl.new64BitId();
     private final StringBuilder outgoingTextHeader = new StringBuilder(TEXT_HEADER_EXPECTED_LENGTH);
+    /**
+     * The outgoing {@code traceparent} header as a {@link String}, lazily created from {@link #outgoingTextHeader}.
+     */
+    @Nullable
+    private volatile String outgoingTextHeaderString;
+    /**
+     * The outgoing {@code traceparent} header as ASCII bytes, lazily encoded directly from the ids.
+     * A new array is created after each mutation instead of overwriting the previous one,
+     * as the array is handed out to carriers, like Kafka records, which may still be queued after this context has changed.
+     */
+    @Nullable
+    private volatile byte[] outgoingTextHeaderBytes;
     private byte flags;
     private boolean discardable = true;
 
@@ -338,7 +351,11 @@ public class TraceContextImpl implements Recyclable, TraceContext {
     }
 
     public void asRootSpan(Sampler sampler) {
-        traceId.setToRandomValue();
+        if (coreConfiguration.isTimeOrderedTraceIds()) {
+            traceId.setToTimeOrderedRandomValue(System.currentTimeMillis());
+        } else {
+            traceId.setToRandomValue();
+        }
         id.setToRandomValue();
         transactionId.copyFrom(id);
         if (sampler.isSampled(traceId)) {
@@ -369,6 +386,8 @@ public class TraceContextImpl implements Recyclable, TraceContext {
         parentId.resetState();
         transactionId.resetState();
         outgoingTextHeader.setLength(0);
+        outgoingTextHeaderString = null;
+        outgoingTextHeaderBytes = null;
         flags = 0;
         discardable = true;
         clock.resetState();
@@ -439,6 +458,21 @@ public class TraceContextImpl implements Recyclable, TraceContext {
         } else {
             flags &= ~FLAG_RECORDED;
         }
+        onMutation();
+    }
+
+    /**
+     * Records a transaction or span which has not been sampled when it was started, but has been promoted by tail sampling.
+     * <p>
+     * The sample rate is set to zero, as the transaction is already accounted for by the sampled transactions,
+     * which are extrapolated according to the sample rate of the head sampler.
+     * </p>
+     */
+    void setTailSampled() {
+        if (Double.isNaN(traceState.getSampleRate())) {
+            traceState.set(SAMPLE_RATE_ZERO, SAMPLE_RATE_ZERO_HEADER);
+        }
+        setRecorded(true);
     }
 
     void setNonDiscardable() {
@@ -487,20 +521,10 @@ public class TraceContextImpl implements Recyclable, TraceContext {
     }
 
     <T> T getOutgoingTraceParentTextHeader(HeaderSetter<T, ?> headerSetter) {
-        StringBuilder outgoingTraceParentTextHeader = getOutgoingTraceParentTextHeader();
         if (headerSetter instanceof TextHeaderSetter) {
-            return (T) outgoingTraceParentTextHeader.toString();
+            return (T) getOutgoingTraceParentString();
         } else if (headerSetter instanceof UTF8ByteHeaderSetter) {
-            int length = outgoingTraceParentTextHeader.length();
-            byte[] result = new byte[length];
-            for (int i = 0; i < length; i++) {
-                char c = outgoingTraceParentTextHeader.charAt(i);
-                if (c > 127) {
-                    throw new IllegalStateException("Expected traceparent header to be ascii only");
-                }
-                result[i] = (byte) c;
-            }
-            return (T) result;
+            return (T) getOutgoingTraceParentBytes();
         } else {
             throw new IllegalArgumentException("HeaderSetter must be either a TextHeaderSetter or UTF8ByteHeaderSetter: " + headerSetter.getClass().getName());
         }
@@ -515,7 +539,7 @@ public class TraceContextImpl implements Recyclable, TraceContext {
         if (headerSetter instanceof TextHeaderSetter) {
             return (T) outgoingTraceState;
         } else if (headerSetter instanceof UTF8ByteHeaderSetter) {
-            return (T) outgoingTraceState.getBytes(StandardCharsets.UTF_8);
+            return (T) traceState.toUtf8Header();
         } else {
             throw new IllegalArgumentException("HeaderSetter must be either a TextHeaderSetter or UTF8ByteHeaderSetter: " + headerSetter.getClass().getName());
         }
@@ -538,6 +562,45 @@ public class TraceContextImpl implements Recyclable, TraceContext {
         return outgoingTextHeader;
     }
 
+    /**
+     * @return the value of the {@code traceparent} header for downstream services, the same instance is returned until this context changes
+     */
+    String getOutgoingTraceParentString() {
+        String header = outgoingTextHeaderString;
+        if (header == null) {
+            header = getOutgoingTraceParentTextHeader().toString();
+            outgoingTextHeaderString = header;
+        }
+        return header;
+    }
+
+    /**
+     * Returns the ASCII encoded value of the {@code traceparent} header for downstream services.
+     * The returned array is shared by all carriers this context is propagated to and must not be modified.
+     *
+     * @return the value of the {@code traceparent} header, the same instance is returned until this context changes
+     */
+    byte[] getOutgoingTraceParentBytes() {
+        byte[] header = outgoingTextHeaderBytes;
+        if (header == null) {
+            header = new byte[TEXT_HEADER_EXPECTED_LENGTH];
+            fillTraceParentHeader(header, isSampled() ? id : transactionId);
+            outgoingTextHeaderBytes = header;
+        }
+        return header;
+    }
+
+    private void fillTraceParentHeader(byte[] buffer, IdImpl spanId) {
+        buffer[0] = '0';
+        buffer[1] = '0';
+        buffer[TEXT_HEADER_TRACE_ID_OFFSET - 1] = '-';
+        traceId.writeAsHexAscii(buffer, TEXT_HEADER_TRACE_ID_OFFSET);
+        buffer[TEXT_HEADER_PARENT_ID_OFFSET - 1] = '-';
+        spanId.writeAsHexAscii(buffer, TEXT_HEADER_PARENT_ID_OFFSET);
+        buffer[TEXT_HEADER_FLAGS_OFFSET - 1] = '-';
+        HexUtils.writeBytesAsHexAscii(flags, buffer, TEXT_HEADER_FLAGS_OFFSET);
+    }
+
     private void fillTraceParentHeader(StringBuilder sb, IdImpl spanId) {
         sb.append("00-");
         traceId.writeAsHex(sb);
@@ -571,11 +634,13 @@ public class TraceContextImpl implements Recyclable, TraceContext {
 
     @Override
     public String toString() {
-        return getOutgoingTraceParentTextHeader().toString();
+        return getOutgoingTraceParentString();
     }
 
     private void onMutation() {
         outgoingTextHeader.setLength(0);
+        outgoingTextHeaderString = null;
+        outgoingTextHeaderBytes = null;
     }
 
     public boolean isRoot() {
@@ -23,8 +23,10 @@ import co.elastic.apm.agent.sdk.logging.LoggerFactory;
 import co.elastic.apm.agent.tracer.configuration.RoundedDoubleConverter;
 import co.elastic.apm.agent.tracer.dispatch.HeaderGetter;
 import co.elastic.apm.agent.tracer.pooling.Recyclable;
+import co.elastic.apm.agent.util.HeaderValueCache;
 
 import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -42,6 +44,11 @@ public class TraceState implements Recyclable {
     private static final String SAMPLE_RATE_PREFIX = "s:";
     private static final String FULL_PREFIX = VENDOR_PREFIX + SAMPLE_RATE_PREFIX;
 
+    /**
+     * Upstream services typically send the same few tracestate values, caches the result of parsing them.
+     */
+    private static final HeaderValueCache<ParsedHeader> PARSED_HEADER_CACHE = new HeaderValueCache<>(256, DEFAULT_SIZE_LIMIT);
+
     private int sizeLimit;
 
     private final StringBuilder rewriteBuffer;
@@ -51,6 +58,12 @@ public class TraceState implements Recyclable {
     @Nullable
     private String cachedResultHeader;
 
+    /**
+     * UTF-8 encoded {@link #cachedResultHeader}, shared with the trace states this one is copied to
+     */
+    @Nullable
+    private volatile byte[] cachedResultHeaderBytes;
+
     /**
      * sample rate, {@link Double#NaN} if unknown or not set
      */
@@ -74,6 +87,7 @@ public class TraceState implements Recyclable {
         }
         rewriteBuffer.setLength(0);
         cachedResultHeader = other.cachedResultHeader;
+        cachedResultHeaderBytes = other.cachedResultHeaderBytes;
     }
 
     public List<String> getTracestate() {
@@ -82,12 +96,49 @@ public class TraceState implements Recyclable {
 
     public void addTextHeader(String headerValue) {
         cachedResultHeader = null;
+        cachedResultHeaderBytes = null;
+        if (!Double.isNaN(sampleRate)) {
+            // the result depends on the sample rate already being set, which is rare and therefore not cached
+            addEntry(parseHeader(headerValue));
+            return;
+        }
+        ParsedHeader parsed = PARSED_HEADER_CACHE.get(headerValue);
+        if (parsed == null) {
+            parsed = new ParsedHeader(parseHeader(headerValue), sampleRate);
+            PARSED_HEADER_CACHE.put(headerValue, parsed);
+        }
+        sampleRate = parsed.sampleRate;
+        if (parsed.entry != null) {
+            boolean singleEntry = tracestate.isEmpty();
+            tracestate.add(parsed.entry);
+            if (singleEntry && parsed.entry.length() <= sizeLimit) {
+                // re-use the pre-encoded header shared by all trace states that have received the same header value
+                cachedResultHeader = parsed.entry;
+                cachedResultHeaderBytes = parsed.entryUtf8;
+            }
+        }
+    }
+
+    private void addEntry(@Nullable String entry) {
+        if (entry != null) {
+            tracestate.add(entry);
+        }
+    }
+
+    /**
+     * Parses a {@code tracestate} header value, sets the sample rate if the value contains a valid one and
+     * rewrites the value if necessary.
+     *
+     * @param headerValue the raw header value
+     * @return the tracestate entry to add, or {@code null} if nothing is left after removing invalid parts
+     */
+    @Nullable
+    private String parseHeader(String headerValue) {
         int vendorStart = headerValue.indexOf(VENDOR_PREFIX);
 
         if (vendorStart < 0) {
             // no ES entry
-            tracestate.add(headerValue);
-            return;
+            return headerValue;
         }
 
         int vendorEnd = headerValue.indexOf(VENDOR_SEPARATOR, vendorStart);
@@ -100,10 +151,7 @@ public class TraceState implements Recyclable {
             // no sample rate, rewrite
             log.warn("invalid header, no sample rate {}", headerValue);
             headerValue = rewriteRemoveInvalidHeader(headerValue, vendorStart, vendorEnd);
-            if (headerValue.length() > 0) {
-                tracestate.add(headerValue);
-            }
-            return;
+            return headerValue.length() > 0 ? headerValue : null;
         }
 
         int valueStart = sampleRateStart + 2;
@@ -148,10 +196,7 @@ public class TraceState implements Recyclable {
             }
         }
 
-        if (!headerValue.isEmpty()) {
-            tracestate.add(headerValue);
-        }
-
+        return headerValue.isEmpty() ? null : headerValue;
     }
 
     private String rewriteRoundedHeader(String fullHeader, int valueStart, int valueEnd, double rounded) {
@@ -186,6 +231,7 @@ public class TraceState implements Recyclable {
             throw new IllegalStateException(String.format("sample rate already set to %f, trying to set it to %f", sampleRate, rate));
         }
         cachedResultHeader = null;
+        cachedResultHeaderBytes = null;
         sampleRate = rate;
         tracestate.add(headerValue);
     }
@@ -227,12 +273,34 @@ public class TraceState implements Recyclable {
         }
     }
 
+    /**
+     * Same as {@link #toTextHeader()}, but UTF-8 encoded.
+     * The returned array is cached and must not be modified.
+     *
+     * @return the UTF-8 encoded tracestate header, or {@code null} if there is no tracestate
+     */
+    @Nullable
+    public byte[] toUtf8Header() {
+        String header = toTextHeader();
+        if (header == null) {
+            return null;
+        }
+        byte[] bytes = cachedResultHeaderBytes;
+        if (bytes == null) {
+            bytes = header.getBytes(StandardCharsets.UTF_8);
+            cachedResultHeaderBytes = bytes;
+        }
+        return bytes;
+    }
+
     @Override
     public void resetState() {
         sampleRate = Double.NaN;
         sizeLimit = DEFAULT_SIZE_LIMIT;
         rewriteBuffer.setLength(0);
         tracestate.clear();
+        cachedResultHeader = null;
+        cachedResultHeaderBytes = null;
     }
 
     public void setSizeLimit(int limit) {
@@ -316,4 +384,20 @@ public class TraceState implements Recyclable {
         }
     };
 
+    /**
+     * The immutable result of {@linkplain #parseHeader(String) parsing} a tracestate header value when no sample rate has been set yet.
+     */
+    private static class ParsedHeader {
+        @Nullable
+        private final String entry;
+        @Nullable
+        private final byte[] entryUtf8;
+        private final double sampleRate;
+
+        private ParsedHeader(@Nullable String entry, double sampleRate) {
+            this.entry = entry;
+            this.entryUtf8 = entry != null ? entry.getBytes(StandardCharsets.UTF_8) : null;
+            this.sampleRate = sampleRate;
+        }
+    }
 }
@@ -103,6 +103,25 @@ public abstract class TraceStateImpl<T extends TraceStateImpl<T>> implements Tra
         return getSpan() == null && getBaggage().isEmpty();
     }
 
+    /**
+     * Increments the references held by an activation of this context.
+     * <p>
+     * Unlike {@link #incrementReferences()}, each invocation must be paired with {@link #decrementActivationReferences()}
+     * on the same thread, which is guaranteed by the thread-local activation stack.
+     * This allows implementations to avoid atomic operations for activations on the thread which started the span.
+     * </p>
+     */
+    public void incrementActivationReferences() {
+        incrementReferences();
+    }
+
+    /**
+     * Decrements the references held by an activation of this context, see {@link #incrementActivationReferences()}.
+     */
+    public void decrementActivationReferences() {
+        decrementReferences();
+    }
+
     @Override
     public final <C> void propagateContext(C carrier, HeaderSetter<?, C> headerSetter, @Nullable HeaderGetter<?, C> headerGetter) {
         propagateContext(carrier, headerSetter, carrier, headerGetter);
@@ -140,4 +140,14 @@ public class TraceStateWrapper<T extends TraceStateImpl<T>> extends TraceStateIm
     public void decrementReferences() {
         throw new UnsupportedOperationException("Context wrapper should not be involved in reference counting");
     }
+
+    @Override
+    public void incrementActivationReferences() {
+        throw new UnsupportedOperationException("Context wrapper should not be involved in reference counting");
+    }
+
+    @Override
+    public void decrementActivationReferences() {
+        throw new UnsupportedOperationException("Context wrapper should not be involved in reference counting");
+    }
 }
@@ -32,6 +32,7 @@ import co.elastic.apm.agent.tracer.metrics.Labels;
 import co.elastic.apm.agent.metrics.MetricRegistry;
 import co.elastic.apm.agent.metrics.Timer;
 import co.elastic.apm.agent.tracer.Outcome;
+import co.elastic.apm.agent.tracer.configuration.WebConfiguration;
 import co.elastic.apm.agent.tracer.dispatch.HeaderGetter;
 import co.elastic.apm.agent.tracer.util.ResultUtil;
 import co.elastic.apm.agent.util.KeyListConcurrentHashMap;
@@ -40,7 +41,10 @@ import org.HdrHistogram.WriterReaderPhaser;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static co.elastic.apm.agent.configuration.CoreConfigurationImpl.TraceContinuationStrategy.RESTART;
 import static co.elastic.apm.agent.configuration.CoreConfigurationImpl.TraceContinuationStrategy.RESTART_EXTERNAL;
@@ -77,6 +81,7 @@ public class TransactionImpl extends AbstractSpanImpl<TransactionImpl> implement
     private final WriterReaderPhaser phaser = new WriterReaderPhaser();
     private final CoreConfigurationImpl coreConfig;
     private final SpanConfiguration spanConfig;
+    private final WebConfiguration webConfig;
 
     /**
      * The result of the transaction. HTTP status code for HTTP-related
@@ -98,6 +103,30 @@ public class TransactionImpl extends AbstractSpanImpl<TransactionImpl> implement
 
     private long spanCompressionSameKindMaxDurationUs;
 
+    /**
+     * The number of http-client request body bytes which can still be captured by spans of this transaction.
+     *
+     * @see WebConfiguration#getCaptureClientRequestBytesPerTransaction()
+     */
+    private final AtomicInteger remainingBodyCaptureBytes = new AtomicInteger();
+
+    /**
+     * Whether the CPU time and the allocated bytes of the threads this transaction is active on are measured.
+     *
+     * @see CoreConfigurationImpl#isTransactionResourceUsageEnabled()
+     */
+    private boolean resourceUsageCaptured;
+
+    /**
+     * The CPU time in nanoseconds spent on all threads while this transaction or one of its spans was active on them.
+     */
+    private final AtomicLong cpuTimeNanos = new AtomicLong();
+
+    /**
+     * The heap bytes allocated by all threads while this transaction or one of its spans was active on them.
+     */
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
     @Nullable
     private String frameworkName;
 
@@ -120,6 +149,27 @@ public class TransactionImpl extends AbstractSpanImpl<TransactionImpl> implement
 
     private final AtomicBoolean wasActivated = new AtomicBoolean();
 
+    /**
+     * Ended spans of a non-sampled transaction which are kept until this transaction ends,
+     * so that they can still be reported if this transaction turns out to be slow or failed.
+     * <p>
+     * Like {@link #profilingCorrelationStackTraceIds}, this list is not re-allocated when the transaction is recycled.
+     * </p>
+     *
+     * @see CoreConfigurationImpl#isTailSamplingEnabled()
+     */
+    private final ArrayList<SpanImpl> tailSampledSpans = new ArrayList<>();
+
+    /**
+     * {@code true} while the tail sampling decision for this non-sampled transaction is pending.
+     * Guarded by {@link #tailSampledSpans} for writes, the volatile read allows a lock-free fast path.
+     */
+    private volatile boolean tailSamplingPending;
+
+    private int tailSamplingMaxBufferedSpans;
+
+    private long tailSamplingDurationThresholdUs;
+
     @Override
     public TransactionImpl getParentTransaction() {
         return this;
@@ -129,11 +179,13 @@ public class TransactionImpl extends AbstractSpanImpl<TransactionImpl> implement
         super(tracer);
         coreConfig = tracer.getConfig(CoreConfigurationImpl.class);
         spanConfig = tracer.getConfig(SpanConfiguration.class);
+        webConfig = tracer.getConfig(WebConfiguration.class);
     }
 
     public <T> TransactionImpl startRoot(long epochMicros, Sampler sampler, BaggageImpl baggage) {
         this.baggage = baggage;
         traceContext.asRootSpan(sampler);
+        initTailSampling();
         onTransactionStart(epochMicros);
         return this;
     }
@@ -162,10 +214,12 @@ public class TransactionImpl extends AbstractSpanImpl<TransactionImpl> implement
             // need to add a span link
             addSpanLink(headerGetter, parent);
             traceContext.asRootSpan(sampler);
+            initTailSampling();
         } else {
             boolean valid = traceContext.asChildOf(parent, headerGetter);
             if (!valid) {
                 traceContext.asRootSpan(sampler);
+                initTailSampling();
             }
         }
 
@@ -173,11 +227,25 @@ public class TransactionImpl extends AbstractSpanImpl<TransactionImpl> implement
         return this;
     }
 
+    /**
+     * Tail sampling only applies to transactions for which the sampling decision has been made locally.
+     * For transactions continuing a trace, the upstream service has already discarded its part of the trace.
+     */
+    private void initTailSampling() {
+        if (!isSampled() && coreConfig.isTailSamplingEnabled()) {
+            tailSamplingMaxBufferedSpans = coreConfig.getTailSamplingMaxBufferedSpans();
+            tailSamplingDurationThresholdUs = coreConfig.getTailSamplingDurationThreshold().getMicros();
+            tailSamplingPending = true;
+        }
+    }
+
     private void onTransactionStart(long epochMicros) {
         maxSpans = coreConfig.getTransactionMaxSpans();
         spanCompressionEnabled = spanConfig.isSpanCompressionEnabled();
         spanCompressionExactMatchMaxDurationUs = spanConfig.getSpanCompressionExactMatchMaxDuration().getMicros();
         spanCompressionSameKindMaxDurationUs = spanConfig.getSpanCompressionSameKindMaxDuration().getMicros();
+        remainingBodyCaptureBytes.set(webConfig.getCaptureClientRequestBytesPerTransaction());
+        resourceUsageCaptured = coreConfig.isTransactionResourceUsageEnabled() && tracer.isThreadResourceUsageSupported();
 
         if (epochMicros >= 0) {
             setStartTimestamp(epochMicros);
@@ -262,7 +330,7 @@ public class TransactionImpl extends AbstractSpanImpl<TransactionImpl> implement
 
     @Override
     public void beforeEnd(long epochMicros) {
-        if (!isSampled()) {
+        if (!isSampled() && !tailSamplingPending) {
             context.resetState();
         }
 
@@ -281,6 +349,10 @@ public class TransactionImpl extends AbstractSpanImpl<TransactionImpl> implement
         }
 
         context.onTransactionEnd();
+        if (isSampled() && !noop) {
+            // for tail sampling candidates, the headers are captured only if the transaction gets promoted
+            context.captureDeferredHeaders();
+        }
         incrementTimer("app", null, getSelfDuration());
     }
 
@@ -289,9 +361,70 @@ public class TransactionImpl extends AbstractSpanImpl<TransactionImpl> implement
     @Override
     protected void afterEnd() {
         trackMetrics();
+        if (tailSamplingPending) {
+            completeTailSampling();
+        }
         this.tracer.endTransaction(this);
     }
 
+    /**
+     * Buffers an ended span of this non-sampled transaction until the tail sampling decision is made at the end of this transaction.
+     * The caller hands over the span's reference to the buffer.
+     *
+     * @param span an ended, non-sampled child span of this transaction
+     * @return {@code true} if the span has been buffered, {@code false} if the span should be dropped right away
+     */
+    public boolean bufferTailSampledSpan(SpanImpl span) {
+        if (!tailSamplingPending) {
+            return false;
+        }
+        synchronized (tailSampledSpans) {
+            if (!tailSamplingPending || tailSampledSpans.size() >= tailSamplingMaxBufferedSpans) {
+                return false;
+            }
+            tailSampledSpans.add(span);
+            return true;
+        }
+    }
+
+    /**
+     * Promotes this transaction and the buffered spans to sampled if this transaction failed or was slow.
+     * Otherwise, the buffered spans are dropped.
+     * In both cases, the buffered spans are ended through the tracer which takes care of reporting or recycling them.
+     */
+    private void completeTailSampling() {
+        boolean promote = !noop && (getOutcome() == Outcome.FAILURE || getDuration() >= tailSamplingDurationThresholdUs);
+        synchronized (tailSampledSpans) {
+            // spans ending after this point are dropped right away
+            tailSamplingPending = false;
+            if (promote) {
+                traceContext.setTailSampled();
+                context.captureDeferredHeaders();
+            } else {
+                context.resetState();
+            }
+        }
+        // no concurrent modifications possible anymore as tailSamplingPending is false
+        for (int i = 0; i < tailSampledSpans.size(); i++) {
+            SpanImpl span = tailSampledSpans.get(i);
+            if (promote) {
+                span.getTraceContext().setTailSampled();
+            }
+            tracer.endSpan(span);
+        }
+        clearTailSampledSpans();
+    }
+
+    private void clearTailSampledSpans() {
+        if (tailSampledSpans.size() > 100) {
+            tailSampledSpans.clear();
+            //trim overly big lists
+            tailSampledSpans.trimToSize();
+        } else {
+            tailSampledSpans.clear();
+        }
+    }
+
     public SpanCount getSpanCount() {
         return spanCount;
     }
@@ -320,6 +453,58 @@ public class TransactionImpl extends AbstractSpanImpl<TransactionImpl> implement
         return drop;
     }
 
+    /**
+     * Reserves bytes for capturing the request body of a child span from the per-transaction limit.
+     *
+     * @param requestedBytes the number of bytes the span wants to capture
+     * @return the number of bytes which may be captured, between {@code 0} and {@code requestedBytes}
+     */
+    public int reserveBodyCaptureBytes(int requestedBytes) {
+        int remaining;
+        int granted;
+        do {
+            remaining = remainingBodyCaptureBytes.get();
+            granted = Math.min(remaining, requestedBytes);
+            if (granted <= 0) {
+                return 0;
+            }
+        } while (!remainingBodyCaptureBytes.compareAndSet(remaining, remaining - granted));
+        return granted;
+    }
+
+    public boolean isResourceUsageCaptured() {
+        return resourceUsageCaptured && !noop;
+    }
+
+    /**
+     * Adds the resource usage of a thread this transaction, or one of its spans, has been active on.
+     *
+     * @param cpuTimeNanos   the CPU time spent by the thread in nanoseconds, negative if unknown
+     * @param allocatedBytes the heap bytes allocated by the thread, negative if unknown
+     */
+    public void addResourceUsage(long cpuTimeNanos, long allocatedBytes) {
+        if (cpuTimeNanos > 0) {
+            this.cpuTimeNanos.addAndGet(cpuTimeNanos);
+        }
+        if (allocatedBytes > 0) {
+            this.allocatedBytes.addAndGet(allocatedBytes);
+        }
+    }
+
+    /**
+     * @return the CPU time in nanoseconds spent on all threads while this transaction or one of its spans was active on them
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos.get();
+    }
+
+    /**
+     * @return the heap bytes allocated by all threads while this transaction or one of its spans was active on them
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
      boolean isSpanLimitReached() {
         return getSpanCount().isSpanLimitReached(maxSpans);
     }
@@ -340,11 +525,19 @@ public class TransactionImpl extends AbstractSpanImpl<TransactionImpl> implement
         spanCompressionEnabled = false;
         spanCompressionExactMatchMaxDurationUs = 0L;
         spanCompressionSameKindMaxDurationUs = 0L;
+        remainingBodyCaptureBytes.set(0);
+        resourceUsageCaptured = false;
+        cpuTimeNanos.set(0);
+        allocatedBytes.set(0);
         frameworkName = null;
         frameworkVersion = null;
         faas.resetState();
         wasActivated.set(false);
         pendingException = null;
+        tailSamplingPending = false;
+        tailSamplingMaxBufferedSpans = 0;
+        tailSamplingDurationThresholdUs = 0L;
+        clearTailSampledSpans();
         recycleProfilingCorrelationStackTraceIds();
         // don't clear timerBySpanTypeAndSubtype map (see field-level javadoc)
     }
@@ -530,6 +723,10 @@ public class TransactionImpl extends AbstractSpanImpl<TransactionImpl> implement
             final MetricRegistry metricRegistry = tracer.getMetricRegistry();
             long criticalValueAtEnter = metricRegistry.writerCriticalSectionEnter();
             try {
+                if (isResourceUsageCaptured()) {
+                    metricRegistry.updateTimer("transaction.cpu_time", labelsMutable, TimeUnit.NANOSECONDS.toMicros(cpuTimeNanos.get()));
+                    metricRegistry.addToCounter("transaction.allocated_bytes", labelsMutable, allocatedBytes.get());
+                }
                 if (collectBreakdownMetrics) {
                     List<String> types = timerBySpanTypeAndSubtype.keyList();
                     for (int i = 0; i < types.size(); i++) {
@@ -0,0 +1,73 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.jfr;
+
+import co.elastic.apm.agent.common.JvmRuntimeInfo;
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+
+/**
+ * A stream of JFR runtime events, which are passed to a {@link JfrRuntimeEventHandler}.
+ * <p>
+ * The JFR event streaming API is only available as of Java 14,
+ * which is why the implementation is only loaded via reflection if the current JVM supports it.
+ * </p>
+ */
+abstract class JfrEventStream implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(JfrEventStream.class);
+
+    private static final String IMPL_NAME = "co.elastic.apm.agent.jfr.JfrEventStreamImpl";
+
+    static boolean isSupported() {
+        return JvmRuntimeInfo.ofCurrentVM().getMajorVersion() >= 14;
+    }
+
+    /**
+     * @param handler         the handler to pass the events to
+     * @param thresholdMillis the minimum duration of thread-specific events
+     * @return the event stream, or {@code null} if JFR event streaming is not supported or available
+     */
+    @Nullable
+    static JfrEventStream create(JfrRuntimeEventHandler handler, long thresholdMillis) {
+        if (!isSupported()) {
+            return null;
+        }
+        try {
+            return (JfrEventStream) Class.forName(IMPL_NAME)
+                .getDeclaredConstructor(JfrRuntimeEventHandler.class, long.class)
+                .newInstance(handler, thresholdMillis);
+        } catch (Throwable throwable) {
+            // for example, if the jdk.jfr module is not part of the runtime image
+            logger.warn("Failed to create the JFR event stream", throwable);
+            return null;
+        }
+    }
+
+    /**
+     * Consumes the events until the stream is {@linkplain #close() closed}, blocking the calling thread.
+     */
+    abstract void start();
+
+    @Override
+    public abstract void close();
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.jfr;
+
+import co.elastic.apm.agent.common.ThreadUtils;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+@IgnoreJRERequirement
+@SuppressWarnings("unused") //initialized via reflection
+class JfrEventStreamImpl extends JfrEventStream {
+
+    private static final String GARBAGE_COLLECTION = "jdk.GarbageCollection";
+    private static final String SAFEPOINT_BEGIN = "jdk.SafepointBegin";
+    private static final String SAFEPOINT_END = "jdk.SafepointEnd";
+
+    private final RecordingStream recordingStream;
+    private final JfrRuntimeEventHandler handler;
+
+    // only accessed by the thread consuming the stream
+    private long safepointId = -1;
+    private long safepointStartEpochMicros;
+
+    JfrEventStreamImpl(final JfrRuntimeEventHandler handler, long thresholdMillis) {
+        this.handler = handler;
+        recordingStream = new RecordingStream();
+        recordingStream.enable(GARBAGE_COLLECTION);
+        recordingStream.enable(SAFEPOINT_BEGIN);
+        recordingStream.enable(SAFEPOINT_END);
+        recordingStream.onEvent(GARBAGE_COLLECTION, new Consumer<RecordedEvent>() {
+            @Override
+            public void accept(RecordedEvent event) {
+                handler.onGarbageCollection(event.getString("name"), toMicros(event.getDuration("sumOfPauses")));
+            }
+        });
+        recordingStream.onEvent(SAFEPOINT_BEGIN, new Consumer<RecordedEvent>() {
+            @Override
+            public void accept(RecordedEvent event) {
+                safepointId = event.getLong("safepointId");
+                safepointStartEpochMicros = toEpochMicros(event.getStartTime());
+            }
+        });
+        recordingStream.onEvent(SAFEPOINT_END, new Consumer<RecordedEvent>() {
+            @Override
+            public void accept(RecordedEvent event) {
+                // the stream is ordered, so the end of a safepoint is consumed after its begin
+                if (event.getLong("safepointId") == safepointId) {
+                    handler.onSafepoint(toEpochMicros(event.getEndTime()) - safepointStartEpochMicros);
+                    safepointId = -1;
+                }
+            }
+        });
+        Duration threshold = Duration.ofMillis(thresholdMillis);
+        for (final ThreadEventType type : ThreadEventType.values()) {
+            recordingStream.enable(type.getJfrEventName()).withThreshold(threshold).withoutStackTrace();
+            recordingStream.onEvent(type.getJfrEventName(), new Consumer<RecordedEvent>() {
+                @Override
+                public void accept(RecordedEvent event) {
+                    onThreadEvent(type, event);
+                }
+            });
+        }
+        recordingStream.onFlush(new Runnable() {
+            @Override
+            public void run() {
+                handler.onFlush();
+            }
+        });
+    }
+
+    private void onThreadEvent(ThreadEventType type, RecordedEvent event) {
+        RecordedThread thread = event.getThread();
+        if (thread == null || isAgentThread(thread)) {
+            return;
+        }
+        long durationUs = toMicros(event.getDuration());
+        handler.onThreadEvent(type, thread.getJavaThreadId(), toEpochMicros(event.getStartTime()), durationUs,
+            handler.exceedsSpanThreshold(durationUs) ? describe(type, event) : null);
+    }
+
+    private static boolean isAgentThread(RecordedThread thread) {
+        String name = thread.getJavaName();
+        return name != null && name.startsWith(ThreadUtils.ELASTIC_APM_THREAD_PREFIX);
+    }
+
+    private static String describe(ThreadEventType type, RecordedEvent event) {
+        switch (type) {
+            case MONITOR_ENTER:
+                return getClassName(event, "monitorClass");
+            case THREAD_PARK:
+                return getClassName(event, "parkedClass");
+            case SOCKET_READ:
+            case SOCKET_WRITE:
+                String host = event.getString("host");
+                if (host == null || host.isEmpty()) {
+                    host = event.getString("address");
+                }
+                return host + ":" + event.getInt("port");
+            case FILE_READ:
+            case FILE_WRITE:
+                String path = event.getString("path");
+                return path != null ? path : "";
+            default:
+                return "";
+        }
+    }
+
+    private static String getClassName(RecordedEvent event, String field) {
+        RecordedClass recordedClass = event.getClass(field);
+        return recordedClass != null ? recordedClass.getName() : "";
+    }
+
+    private static long toMicros(@Nullable Duration duration) {
+        if (duration == null) {
+            return 0;
+        }
+        return TimeUnit.SECONDS.toMicros(duration.getSeconds()) + TimeUnit.NANOSECONDS.toMicros(duration.getNano());
+    }
+
+    private static long toEpochMicros(Instant instant) {
+        return TimeUnit.SECONDS.toMicros(instant.getEpochSecond()) + TimeUnit.NANOSECONDS.toMicros(instant.getNano());
+    }
+
+    @Override
+    void start() {
+        recordingStream.start();
+    }
+
+    @Override
+    public void close() {
+        recordingStream.close();
+    }
+}
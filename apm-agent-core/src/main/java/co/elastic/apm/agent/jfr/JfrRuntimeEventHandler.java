@@ -0,0 +1,123 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.jfr;
+
+import co.elastic.apm.agent.configuration.MetricsConfigurationImpl;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TraceContextImpl;
+import co.elastic.apm.agent.metrics.MetricRegistry;
+import co.elastic.apm.agent.tracer.metrics.Labels;
+
+import javax.annotation.Nullable;
+
+/**
+ * Records the JFR runtime events as histograms and reports long thread-specific events as spans.
+ * <p>
+ * This class does not depend on the JFR API so that it can be used on any Java version.
+ * It is only called by the single thread which consumes the JFR event stream, which is why it re-uses its labels and
+ * the context the spans are created from.
+ * </p>
+ */
+class JfrRuntimeEventHandler {
+
+    static final String GC_PAUSE_METRIC = "jvm.jfr.gc.pause";
+    static final String SAFEPOINT_METRIC = "jvm.jfr.safepoint";
+
+    private final MetricRegistry metricRegistry;
+    private final MetricsConfigurationImpl config;
+    private final ThreadActivationTimeline timeline;
+    private final boolean gcPauseMetricEnabled;
+    private final boolean safepointMetricEnabled;
+    private final boolean[] threadEventMetricEnabled = new boolean[ThreadEventType.values().length];
+    private final Labels.Mutable gcLabels = Labels.Mutable.of();
+    private final TraceContextImpl parentContext;
+
+    JfrRuntimeEventHandler(ElasticApmTracer tracer, ThreadActivationTimeline timeline) {
+        this.metricRegistry = tracer.getMetricRegistry();
+        this.config = tracer.getConfig(MetricsConfigurationImpl.class);
+        this.timeline = timeline;
+        this.parentContext = TraceContextImpl.with64BitId(tracer);
+        gcPauseMetricEnabled = !metricRegistry.isDisabled(GC_PAUSE_METRIC);
+        safepointMetricEnabled = !metricRegistry.isDisabled(SAFEPOINT_METRIC);
+        for (ThreadEventType type : ThreadEventType.values()) {
+            threadEventMetricEnabled[type.ordinal()] = !metricRegistry.isDisabled(type.getMetricName());
+        }
+    }
+
+    /**
+     * @param collectorName the name of the garbage collector
+     * @param pauseUs       the sum of all pauses of the collection in microseconds
+     */
+    void onGarbageCollection(String collectorName, long pauseUs) {
+        if (gcPauseMetricEnabled) {
+            gcLabels.resetState();
+            gcLabels.add("name", collectorName);
+            metricRegistry.updateHistogram(GC_PAUSE_METRIC, gcLabels, pauseUs);
+        }
+    }
+
+    /**
+     * @param durationUs the time from the start of the safepoint synchronization until the end of the safepoint in microseconds
+     */
+    void onSafepoint(long durationUs) {
+        if (safepointMetricEnabled) {
+            metricRegistry.updateHistogram(SAFEPOINT_METRIC, Labels.EMPTY, durationUs);
+        }
+    }
+
+    boolean exceedsSpanThreshold(long durationUs) {
+        return durationUs >= config.getJfrRuntimeEventsSpanThreshold().getMicros();
+    }
+
+    /**
+     * @param type             the type of the event
+     * @param javaThreadId     the id of the thread the event occurred on
+     * @param startEpochMicros the start of the event in microseconds since epoch
+     * @param durationUs       the duration of the event in microseconds
+     * @param description      describes the subject of the event, like the monitor class or the remote address.
+     *                         Only provided if the duration {@linkplain #exceedsSpanThreshold exceeds the span threshold}.
+     * @return {@code true} if the event has been reported as a span
+     */
+    boolean onThreadEvent(ThreadEventType type, long javaThreadId, long startEpochMicros, long durationUs, @Nullable String description) {
+        if (threadEventMetricEnabled[type.ordinal()]) {
+            metricRegistry.updateHistogram(type.getMetricName(), Labels.EMPTY, durationUs);
+        }
+        // the JFR timestamps and the timestamps of the activations are based on different clocks,
+        // looking up the context at the middle of the event makes the attribution robust against a small skew
+        if (description == null || !exceedsSpanThreshold(durationUs)
+            || !timeline.findActiveContext(javaThreadId, startEpochMicros + durationUs / 2, parentContext)) {
+            return false;
+        }
+        SpanImpl span = parentContext.createSpan(startEpochMicros)
+            .withType("app")
+            .withSubtype("internal")
+            .withAction(type.getSpanAction());
+        span.appendToName(type.getSpanName());
+        if (!description.isEmpty()) {
+            span.appendToName(" ").appendToName(description);
+        }
+        span.end(startEpochMicros + durationUs);
+        return true;
+    }
+
+    void onFlush() {
+        timeline.removeTerminatedThreads();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.jfr;
+
+import co.elastic.apm.agent.configuration.MetricsConfigurationImpl;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.tracer.AbstractLifecycleListener;
+import co.elastic.apm.agent.tracer.Tracer;
+import co.elastic.apm.agent.util.ExecutorUtils;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Starts consuming the JFR runtime events if {@code jfr_runtime_events} is enabled and the JVM supports JFR event streaming.
+ *
+ * @see MetricsConfigurationImpl#isJfrRuntimeEventsEnabled()
+ */
+public class JfrRuntimeEvents extends AbstractLifecycleListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(JfrRuntimeEvents.class);
+
+    @Nullable
+    private JfrEventStream eventStream;
+    @Nullable
+    private ThreadPoolExecutor executor;
+    @Nullable
+    private Tracer tracer;
+    @Nullable
+    private ThreadActivationTimeline timeline;
+
+    @Override
+    public void start(Tracer tracer) {
+        this.tracer = tracer;
+        ElasticApmTracer elasticApmTracer = tracer.require(ElasticApmTracer.class);
+        MetricsConfigurationImpl config = elasticApmTracer.getConfig(MetricsConfigurationImpl.class);
+        if (!config.isJfrRuntimeEventsEnabled()) {
+            return;
+        }
+        if (!JfrEventStream.isSupported()) {
+            logger.warn("jfr_runtime_events is enabled but JFR event streaming requires Java 14 or newer");
+            return;
+        }
+        ThreadActivationTimeline timeline = this.timeline;
+        if (timeline == null) {
+            timeline = new ThreadActivationTimeline(elasticApmTracer);
+        }
+        final JfrEventStream stream = JfrEventStream.create(new JfrRuntimeEventHandler(elasticApmTracer, timeline),
+            config.getJfrRuntimeEventsThreshold().getMillis());
+        if (stream == null) {
+            return;
+        }
+        if (this.timeline == null) {
+            // the timeline is kept when the stream is restarted after a checkpoint, as span listeners can't be unregistered
+            elasticApmTracer.registerSpanListener(timeline);
+            this.timeline = timeline;
+        }
+        eventStream = stream;
+        executor = ExecutorUtils.createSingleThreadDaemonPool("jfr-event-stream", 1);
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    stream.start();
+                } catch (Exception e) {
+                    logger.error("Failed to consume the JFR event stream", e);
+                }
+            }
+        });
+        logger.debug("Started consuming JFR runtime events");
+    }
+
+    /**
+     * The event stream reads from the files of the JFR repository, which can't be part of the checkpoint
+     */
+    @Override
+    public void beforeCheckpoint() {
+        stop();
+    }
+
+    @Override
+    public void afterRestore() {
+        if (tracer != null) {
+            start(tracer);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (eventStream != null) {
+            eventStream.close();
+            eventStream = null;
+        }
+        if (executor != null) {
+            ExecutorUtils.shutdownAndWaitTermination(executor);
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.jfr;
+
+import co.elastic.apm.agent.impl.ActivationListener;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.transaction.AbstractSpanImpl;
+import co.elastic.apm.agent.impl.transaction.EpochTickClock;
+import co.elastic.apm.agent.impl.transaction.TraceContextImpl;
+import co.elastic.apm.agent.sdk.internal.ThreadUtil;
+
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records which sampled transaction or span has been active on each thread over time.
+ * <p>
+ * JFR events are consumed asynchronously, roughly once per second, so the context which is active on a thread when an
+ * event is consumed is usually not the one which has been active when the event occurred.
+ * Similar to the activation events of the sampling profiler, each activation and deactivation of a sampled context
+ * is recorded with its timestamp, so that an event can be attributed to the context which has been active on the thread
+ * when the event started.
+ * </p>
+ * <p>
+ * Each thread keeps a fixed number of recent activation changes in a ring buffer, so recording does not allocate.
+ * Events which started before the oldest retained change of a thread can't be attributed.
+ * </p>
+ */
+class ThreadActivationTimeline implements ActivationListener {
+
+    static final int DEFAULT_CAPACITY = 256;
+
+    private final ElasticApmTracer tracer;
+    private final int capacity;
+    private final EpochTickClock clock = new EpochTickClock();
+    private final ConcurrentMap<Long, ThreadActivations> activationsByThreadId = new ConcurrentHashMap<>();
+    private final ThreadLocal<ThreadActivations> threadActivations = new ThreadLocal<ThreadActivations>() {
+        @Override
+        protected ThreadActivations initialValue() {
+            Thread thread = Thread.currentThread();
+            ThreadActivations activations = new ThreadActivations(thread, capacity);
+            activationsByThreadId.put(thread.getId(), activations);
+            return activations;
+        }
+    };
+
+    ThreadActivationTimeline(ElasticApmTracer tracer) {
+        this(tracer, DEFAULT_CAPACITY);
+    }
+
+    ThreadActivationTimeline(ElasticApmTracer tracer, int capacity) {
+        this.tracer = tracer;
+        this.capacity = capacity;
+        clock.init();
+    }
+
+    @Override
+    public void beforeActivate(AbstractSpanImpl<?> span) {
+        if (span.isSampled() && !ThreadUtil.isVirtual(Thread.currentThread())) {
+            threadActivations.get().record(clock.getEpochMicros(), span.getTraceContext());
+        }
+    }
+
+    @Override
+    public void afterDeactivate(AbstractSpanImpl<?> deactivatedSpan) {
+        if (deactivatedSpan.isSampled() && !ThreadUtil.isVirtual(Thread.currentThread())) {
+            AbstractSpanImpl<?> active = tracer.getActive();
+            threadActivations.get().record(clock.getEpochMicros(), active != null && active.isSampled() ? active.getTraceContext() : null);
+        }
+    }
+
+    /**
+     * Looks up the context that has been active on a thread at the given time.
+     *
+     * @param threadId    the id of the thread
+     * @param epochMicros the time in microseconds since epoch
+     * @param target      the context to deserialize the active context into
+     * @return {@code true} if a sampled context has been active and has been deserialized into the target
+     */
+    boolean findActiveContext(long threadId, long epochMicros, TraceContextImpl target) {
+        ThreadActivations activations = activationsByThreadId.get(threadId);
+        return activations != null && activations.findActiveContext(epochMicros, target);
+    }
+
+    /**
+     * Removes the timelines of threads which are not alive anymore.
+     */
+    void removeTerminatedThreads() {
+        for (Iterator<ThreadActivations> iterator = activationsByThreadId.values().iterator(); iterator.hasNext(); ) {
+            Thread thread = iterator.next().thread.get();
+            if (thread == null || !thread.isAlive()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    long getEpochMicros() {
+        return clock.getEpochMicros();
+    }
+
+    int getThreadCount() {
+        return activationsByThreadId.size();
+    }
+
+    private static class ThreadActivations {
+
+        private final WeakReference<Thread> thread;
+        private final int capacity;
+        private final long[] timestamps;
+        private final byte[][] contexts;
+        private final boolean[] hasContext;
+        private final String[] serviceNames;
+        private final String[] serviceVersions;
+        /**
+         * The total number of recorded changes, the index of the next change is {@code count % capacity}
+         */
+        private long count;
+
+        private ThreadActivations(Thread thread, int capacity) {
+            this.thread = new WeakReference<>(thread);
+            this.capacity = capacity;
+            this.timestamps = new long[capacity];
+            this.contexts = new byte[capacity][TraceContextImpl.SERIALIZED_LENGTH];
+            this.hasContext = new boolean[capacity];
+            this.serviceNames = new String[capacity];
+            this.serviceVersions = new String[capacity];
+        }
+
+        synchronized void record(long epochMicros, @Nullable TraceContextImpl active) {
+            int index = (int) (count % capacity);
+            timestamps[index] = epochMicros;
+            if (active != null) {
+                active.serialize(contexts[index]);
+                hasContext[index] = true;
+                serviceNames[index] = active.getServiceName();
+                serviceVersions[index] = active.getServiceVersion();
+            } else {
+                hasContext[index] = false;
+                serviceNames[index] = null;
+                serviceVersions[index] = null;
+            }
+            count++;
+        }
+
+        synchronized boolean findActiveContext(long epochMicros, TraceContextImpl target) {
+            long oldest = Math.max(0, count - capacity);
+            for (long i = count - 1; i >= oldest; i--) {
+                int index = (int) (i % capacity);
+                if (timestamps[index] <= epochMicros) {
+                    if (!hasContext[index]) {
+                        return false;
+                    }
+                    target.deserialize(contexts[index], serviceNames[index], serviceVersions[index]);
+                    return true;
+                }
+            }
+            // either nothing has been active before, or the change has already been overwritten
+            return false;
+        }
+    }
+}
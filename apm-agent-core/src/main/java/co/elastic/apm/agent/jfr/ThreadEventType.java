@@ -0,0 +1,60 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.jfr;
+
+/**
+ * The thread-specific JFR events which are attributed to the transaction or span that has been active on the thread.
+ */
+enum ThreadEventType {
+
+    MONITOR_ENTER("jdk.JavaMonitorEnter", "jvm.jfr.monitor_enter", "monitor_enter", "Monitor enter"),
+    THREAD_PARK("jdk.ThreadPark", "jvm.jfr.thread_park", "thread_park", "Thread park"),
+    SOCKET_READ("jdk.SocketRead", "jvm.jfr.socket_read", "socket_read", "Socket read"),
+    SOCKET_WRITE("jdk.SocketWrite", "jvm.jfr.socket_write", "socket_write", "Socket write"),
+    FILE_READ("jdk.FileRead", "jvm.jfr.file_read", "file_read", "File read"),
+    FILE_WRITE("jdk.FileWrite", "jvm.jfr.file_write", "file_write", "File write");
+
+    private final String jfrEventName;
+    private final String metricName;
+    private final String spanAction;
+    private final String spanName;
+
+    ThreadEventType(String jfrEventName, String metricName, String spanAction, String spanName) {
+        this.jfrEventName = jfrEventName;
+        this.metricName = metricName;
+        this.spanAction = spanAction;
+        this.spanName = spanName;
+    }
+
+    String getJfrEventName() {
+        return jfrEventName;
+    }
+
+    String getMetricName() {
+        return metricName;
+    }
+
+    String getSpanAction() {
+        return spanAction;
+    }
+
+    String getSpanName() {
+        return spanName;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.metrics;
+
+import co.elastic.apm.agent.tracer.pooling.Recyclable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations with fixed bucket boundaries.
+ * <p>
+ * In addition to the count and the total time tracked by a {@link Timer}, it tracks the distribution of the durations,
+ * so that a single long duration is not averaged away within a metrics interval.
+ * Recording a duration does not allocate.
+ * </p>
+ * <p>
+ * Each bucket counts the durations which are less than or equal to its boundary and greater than the boundary of the
+ * previous bucket. Durations greater than the largest boundary are counted in the last bucket.
+ * The boundaries are reported as the values of the histogram.
+ * </p>
+ */
+public class Histogram implements Recyclable {
+
+    /**
+     * Covers the range from 100 microseconds to one minute, roughly doubling with each bucket.
+     */
+    static final long[] DEFAULT_BOUNDARIES_US = {
+        100, 250, 500,
+        TimeUnit.MILLISECONDS.toMicros(1), TimeUnit.MILLISECONDS.toMicros(2), TimeUnit.MILLISECONDS.toMicros(5),
+        TimeUnit.MILLISECONDS.toMicros(10), TimeUnit.MILLISECONDS.toMicros(20), TimeUnit.MILLISECONDS.toMicros(50),
+        TimeUnit.MILLISECONDS.toMicros(100), TimeUnit.MILLISECONDS.toMicros(200), TimeUnit.MILLISECONDS.toMicros(500),
+        TimeUnit.SECONDS.toMicros(1), TimeUnit.SECONDS.toMicros(2), TimeUnit.SECONDS.toMicros(5),
+        TimeUnit.SECONDS.toMicros(10), TimeUnit.SECONDS.toMicros(20), TimeUnit.SECONDS.toMicros(60)
+    };
+
+    private final long[] boundaries;
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLong count = new AtomicLong();
+
+    public Histogram() {
+        this(DEFAULT_BOUNDARIES_US);
+    }
+
+    /**
+     * @param boundaries the upper boundaries of the buckets in microseconds, sorted in ascending order
+     */
+    Histogram(long[] boundaries) {
+        this.boundaries = boundaries;
+        this.bucketCounts = new AtomicLongArray(boundaries.length);
+    }
+
+    public void update(long durationUs) {
+        bucketCounts.incrementAndGet(getBucketIndex(durationUs));
+        totalTime.addAndGet(durationUs);
+        count.incrementAndGet();
+    }
+
+    private int getBucketIndex(long durationUs) {
+        int low = 0;
+        int high = boundaries.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (durationUs <= boundaries[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    public int getBucketCount() {
+        return boundaries.length;
+    }
+
+    /**
+     * @param bucket the index of the bucket
+     * @return the upper boundary of the bucket in microseconds
+     */
+    public long getBucketBoundary(int bucket) {
+        return boundaries[bucket];
+    }
+
+    /**
+     * @param bucket the index of the bucket
+     * @return the number of durations counted in the bucket
+     */
+    public long getBucketValue(int bucket) {
+        return bucketCounts.get(bucket);
+    }
+
+    public long getTotalTimeUs() {
+        return totalTime.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public boolean hasContent() {
+        return count.get() > 0;
+    }
+
+    @Override
+    public void resetState() {
+        for (int i = 0; i < bucketCounts.length(); i++) {
+            bucketCounts.set(i, 0);
+        }
+        totalTime.set(0);
+        count.set(0);
+    }
+}
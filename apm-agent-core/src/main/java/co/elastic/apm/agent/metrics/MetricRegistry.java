@@ -38,8 +38,7 @@ import java.util.concurrent.ConcurrentMap;
 /**
  * A registry for metrics.
  * <p>
- * Currently only holds gauges.
- * There are plans to add support for histogram-based timers.
+ * Holds gauges, counters, timers and histograms, grouped into {@link MetricSet}s by their labels.
  * </p>
  */
 public class MetricRegistry {
@@ -226,6 +225,25 @@ public class MetricRegistry {
         }
     }
 
+    /**
+     * Records a duration into a {@link Histogram}, which is reported with its count, total time and bucket counts.
+     *
+     * @param histogramName the name of the histogram
+     * @param labels        labels for the histogram
+     * @param durationUs    the duration in microseconds
+     */
+    public void updateHistogram(String histogramName, Labels labels, long durationUs) {
+        long criticalValueAtEnter = phaser.writerCriticalSectionEnter();
+        try {
+            final MetricSet metricSet = getOrCreateMetricSet(labels);
+            if (metricSet != null) {
+                metricSet.histogram(histogramName).update(durationUs);
+            }
+        } finally {
+            phaser.writerCriticalSectionExit(criticalValueAtEnter);
+        }
+    }
+
     /*
      * Must always be executed in context of a critical section so that the
      * activeMetricSets and inactiveMetricSets reference can't swap while this method runs
@@ -49,9 +49,11 @@ public class MetricSet implements Recyclable {
     // low load factor as hash collisions are quite costly when tracking breakdown metrics
     private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>(32, 0.5f, Runtime.getRuntime().availableProcessors());
     private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>(32, 0.5f, Runtime.getRuntime().availableProcessors());
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, Double> rawValues = new ConcurrentHashMap<>();
     private volatile boolean hasNonEmptyTimer;
     private volatile boolean hasNonEmptyCounter;
+    private volatile boolean hasNonEmptyHistogram;
 
     MetricSet(Labels.Immutable labels) {
         this(labels, new ConcurrentHashMap<String, DoubleSupplier>());
@@ -93,6 +95,16 @@ public class MetricSet implements Recyclable {
         return timer;
     }
 
+    public Histogram histogram(String histogramName) {
+        hasNonEmptyHistogram = true;
+        Histogram histogram = histograms.get(histogramName);
+        if (histogram == null) {
+            histograms.putIfAbsent(histogramName, new Histogram());
+            histogram = histograms.get(histogramName);
+        }
+        return histogram;
+    }
+
     public void addToCounter(String name, long count) {
         hasNonEmptyCounter = true;
         AtomicLong counter = counters.get(name);
@@ -107,8 +119,12 @@ public class MetricSet implements Recyclable {
         return timers;
     }
 
+    public Map<String, Histogram> getHistograms() {
+        return histograms;
+    }
+
     public boolean hasContent() {
-        return !gauges.isEmpty() || hasNonEmptyTimer || hasNonEmptyCounter || !rawValues.isEmpty();
+        return !gauges.isEmpty() || hasNonEmptyTimer || hasNonEmptyCounter || hasNonEmptyHistogram || !rawValues.isEmpty();
     }
 
     /**
@@ -121,9 +137,13 @@ public class MetricSet implements Recyclable {
         for (AtomicLong counter : counters.values()) {
             counter.set(0);
         }
+        for (Histogram histogram : histograms.values()) {
+            histogram.resetState();
+        }
         rawValues.clear();
         hasNonEmptyTimer = false;
         hasNonEmptyCounter = false;
+        hasNonEmptyHistogram = false;
     }
 
     public Map<String, AtomicLong> getCounters() {
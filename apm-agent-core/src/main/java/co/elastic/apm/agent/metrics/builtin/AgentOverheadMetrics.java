@@ -26,6 +26,7 @@ import co.elastic.apm.agent.tracer.metrics.Labels;
 import co.elastic.apm.agent.metrics.MetricCollector;
 import co.elastic.apm.agent.metrics.MetricRegistry;
 import co.elastic.apm.agent.metrics.MetricsProvider;
+import co.elastic.apm.agent.util.AgentScheduler;
 import co.elastic.apm.agent.util.ElasticThreadStateListener;
 import co.elastic.apm.agent.util.ExecutorUtils;
 import co.elastic.apm.agent.util.JmxUtils;
@@ -64,6 +65,11 @@ public class AgentOverheadMetrics extends AbstractLifecycleListener implements E
      */
     private final ConcurrentHashMap<Thread, ThreadInfo> lastThreadInfo = new ConcurrentHashMap<>();
 
+    /**
+     * Reused for draining the CPU time of the tasks executed by the {@link AgentScheduler}.
+     */
+    private final Map<String, Long> schedulerTaskCpuTime = new HashMap<>();
+
     private static class ThreadInfo {
         final String threadPurpose;
 
@@ -145,6 +151,8 @@ public class AgentOverheadMetrics extends AbstractLifecycleListener implements E
             if (!cpuTimeMeasurementEnabled) {
                 cpuOverheadMetricEnabled = false;
                 cpuUsageMetricEnabled = false;
+            } else {
+                ExecutorUtils.getAgentScheduler().setTaskCpuTimeMeasurementEnabled(true);
             }
         }
 
@@ -308,6 +316,7 @@ public class AgentOverheadMetrics extends AbstractLifecycleListener implements E
                 addToCounter(cpuTimeIncreaseByPurpose, threadPurpose, cpuTimeDelta);
             }
         }
+        attributeSchedulerTaskCpuTime(cpuTimeIncreaseByPurpose);
 
         long processCpuTimeDelta = getProcessCpuTimeDelta();
         if (processCpuTimeDelta == NO_VALUE) {
@@ -332,6 +341,24 @@ public class AgentOverheadMetrics extends AbstractLifecycleListener implements E
         }
     }
 
+    /**
+     * The worker threads of the {@link AgentScheduler} are shared by many periodic tasks.
+     * Instead of reporting their CPU time as a whole, it is attributed to the purposes of the tasks they have executed.
+     */
+    private void attributeSchedulerTaskCpuTime(Map<String, AtomicLong> cpuTimeIncreaseByPurpose) {
+        schedulerTaskCpuTime.clear();
+        ExecutorUtils.getAgentScheduler().drainTaskCpuTime(schedulerTaskCpuTime);
+        AtomicLong workerCpuTime = cpuTimeIncreaseByPurpose.get(AgentScheduler.WORKER_THREAD_PURPOSE);
+        for (Map.Entry<String, Long> entry : schedulerTaskCpuTime.entrySet()) {
+            long taskCpuTime = entry.getValue();
+            addToCounter(cpuTimeIncreaseByPurpose, entry.getKey(), taskCpuTime);
+            if (workerCpuTime != null) {
+                // the CPU time of the worker threads and of the tasks are not sampled at exactly the same time
+                workerCpuTime.set(Math.max(0L, workerCpuTime.get() - taskCpuTime));
+            }
+        }
+    }
+
     private void resetCounterMap(Map<String, AtomicLong> map) {
         for (Map.Entry<String, AtomicLong> entry : map.entrySet()) {
             entry.getValue().set(0L);
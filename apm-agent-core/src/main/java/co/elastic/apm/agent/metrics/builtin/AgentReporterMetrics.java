@@ -47,6 +47,9 @@ public class AgentReporterMetrics implements ReporterMonitor {
     private static final String REQUEST_COUNT_METRIC = "agent.events.requests.count";
     private static final String REQUEST_BYTES_METRIC = "agent.events.requests.bytes";
 
+    private static final String REQUEST_SIZE_LIMIT_METRIC = "agent.events.requests.size_limit.bytes";
+    private static final String REQUEST_TIME_LIMIT_METRIC = "agent.events.requests.time_limit.ms";
+
     private final boolean totalEventsMetricEnabled;
     private final boolean droppedEventsMetricEnabled;
 
@@ -57,6 +60,10 @@ public class AgentReporterMetrics implements ReporterMonitor {
 
     private final boolean requestBytesMetricEnabled;
 
+    private final boolean requestSizeLimitMetricEnabled;
+
+    private final boolean requestTimeLimitMetricEnabled;
+
 
     private static final Labels QUEUE_REASON_LABEL = Labels.Mutable.of("reason", "queue").immutableCopy();
     private static final Labels ERROR_REASON_LABEL = Labels.Mutable.of("reason", "error").immutableCopy();
@@ -77,6 +84,12 @@ public class AgentReporterMetrics implements ReporterMonitor {
     private final AtomicDouble maxQueueSize = new AtomicDouble(0.0);
     private final AtomicDouble minQueueSize = new AtomicDouble(0.0);
 
+    /**
+     * Only set when the request limits are adapted to the load, see {@link ReporterMonitor#requestLimitsAdapted(long, long)}
+     */
+    private volatile long requestSizeLimit = -1;
+    private volatile long requestTimeLimit = -1;
+
     public AgentReporterMetrics(final MetricRegistry registry, MetricsConfigurationImpl configuration) {
         this.metricRegistry = registry;
         boolean allEnabled = configuration.isReporterHealthMetricsEnabled();
@@ -86,6 +99,8 @@ public class AgentReporterMetrics implements ReporterMonitor {
         this.maxQueueSizeMetricEnabled = allEnabled && !registry.isDisabled(MAX_QUEUE_SIZE_METRIC);
         this.requestCountMetricEnabled = allEnabled && !registry.isDisabled(REQUEST_COUNT_METRIC);
         this.requestBytesMetricEnabled = allEnabled && !registry.isDisabled(REQUEST_BYTES_METRIC);
+        this.requestSizeLimitMetricEnabled = allEnabled && !registry.isDisabled(REQUEST_SIZE_LIMIT_METRIC);
+        this.requestTimeLimitMetricEnabled = allEnabled && !registry.isDisabled(REQUEST_TIME_LIMIT_METRIC);
 
         if (anyQueueSizeMetricEnabled()) {
             registry.addMetricsProvider(new MetricsProvider() {
@@ -103,6 +118,21 @@ public class AgentReporterMetrics implements ReporterMonitor {
                 }
             });
         }
+        if (requestSizeLimitMetricEnabled || requestTimeLimitMetricEnabled) {
+            registry.addMetricsProvider(new MetricsProvider() {
+                @Override
+                public void collectAndReset(MetricCollector collector) {
+                    long sizeLimit = requestSizeLimit;
+                    if (requestSizeLimitMetricEnabled && sizeLimit >= 0) {
+                        collector.addMetricValue(REQUEST_SIZE_LIMIT_METRIC, Labels.EMPTY, sizeLimit);
+                    }
+                    long timeLimit = requestTimeLimit;
+                    if (requestTimeLimitMetricEnabled && timeLimit >= 0) {
+                        collector.addMetricValue(REQUEST_TIME_LIMIT_METRIC, Labels.EMPTY, timeLimit);
+                    }
+                }
+            });
+        }
     }
 
     @Override
@@ -171,6 +201,12 @@ public class AgentReporterMetrics implements ReporterMonitor {
         }
     }
 
+    @Override
+    public void requestLimitsAdapted(long sizeLimitBytes, long timeLimitMillis) {
+        requestSizeLimit = sizeLimitBytes;
+        requestTimeLimit = timeLimitMillis;
+    }
+
     // package-protected for tests
     @Nullable
     static Labels getLabelFor(ReportingEvent.ReportingEventType type) {
@@ -30,9 +30,13 @@ import org.stagemonitor.util.StringUtils;
 
 import javax.annotation.Nullable;
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -40,6 +44,12 @@ import java.util.regex.Pattern;
  * Record metrics related to the CGroup Usage.
  * <p>
  * Implements the cgroup metrics spec - https://github.com/elastic/apm/blob/master/docs/agents/agent-development.md#cgroup-metrics
+ * </p>
+ * <p>
+ * In addition to the memory metrics of the spec, this records the CFS bandwidth control (CPU throttling) statistics
+ * and, where available, the pressure stall information (PSI) of the cgroup.
+ * The files are kept open and read into reusable buffers, so that collecting the metrics does not allocate.
+ * </p>
  */
 public class CGroupMetrics extends AbstractLifecycleListener {
 
@@ -52,12 +62,29 @@ public class CGroupMetrics extends AbstractLifecycleListener {
     private static final String CGROUP2_MAX_MEMORY = "memory.max";
     private static final String CGROUP2_USED_MEMORY = "memory.current";
     private static final String CGROUP_MEMORY_STAT = "memory.stat";
+    private static final String CGROUP_CPU_STAT = "cpu.stat";
+    private static final String CGROUP1_CFS_QUOTA = "cpu.cfs_quota_us";
+    private static final String CGROUP1_CFS_PERIOD = "cpu.cfs_period_us";
+    private static final String CGROUP2_CPU_MAX = "cpu.max";
+    private static final String CGROUP_CPU_PRESSURE = "cpu.pressure";
+    private static final String CGROUP_MEMORY_PRESSURE = "memory.pressure";
+    private static final String CGROUP_IO_PRESSURE = "io.pressure";
     private static final String CGROUP1_UNLIMITED = "9223372036854771712";
     private static final String CGROUP2_UNLIMITED = "max";
 
     static final Pattern MEMORY_CGROUP = Pattern.compile("^\\d+:memory:.*");
     static final Pattern CGROUP1_MOUNT_POINT = Pattern.compile("^\\d+? \\d+? .+? .+? (.*?) .*cgroup.*memory.*");
     static final Pattern CGROUP2_MOUNT_POINT = Pattern.compile("^\\d+? \\d+? .+? .+? (.*?) .*cgroup2.*cgroup.*");
+    static final Pattern CGROUP1_CPU_MOUNT_POINT = Pattern.compile("^\\d+? \\d+? .+? .+? (.*?) .*cgroup.*[ ,]cpu(,.*)?$");
+
+    /**
+     * Multiple metrics are based on the same file, this makes sure that a file is only read once per metrics collection.
+     */
+    private static final long MAX_FILE_AGE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private static final byte[] PRESSURE_SOME = CgroupFileReader.toBytes("some");
+    private static final byte[] PRESSURE_FULL = CgroupFileReader.toBytes("full");
+    private static final String[] PRESSURE_WINDOWS = {"10", "60", "300"};
 
     private static final Logger logger = LoggerFactory.getLogger(CGroupMetrics.class);
 
@@ -65,6 +92,8 @@ public class CGroupMetrics extends AbstractLifecycleListener {
     @Nullable
     private final CgroupFiles cgroupFiles;
 
+    private final List<Closeable> closeables = new CopyOnWriteArrayList<>();
+
     public CGroupMetrics() {
         this(new File(PROC_SELF_CGROUP), new File(PROC_SELF_MOUNTINFO));
     }
@@ -126,7 +155,7 @@ public class CGroupMetrics extends AbstractLifecycleListener {
                         // cgroup v1
                         String memoryMountPath = applyCgroupRegex(CGROUP1_MOUNT_POINT, mountLine);
                         if (memoryMountPath != null) {
-                            cgroupFiles = createCgroup1Files(new File(memoryMountPath));
+                            cgroupFiles = createCgroup1Files(new File(memoryMountPath), mountInfo);
                             if (cgroupFiles != null) {
                                 return cgroupFiles;
                             }
@@ -148,7 +177,7 @@ public class CGroupMetrics extends AbstractLifecycleListener {
                 return cgroupFiles;
             }
             // cgroup v1
-            cgroupFiles = createCgroup1Files(new File(DEFAULT_SYS_FS_CGROUP + File.pathSeparator + "memory"));
+            cgroupFiles = createCgroup1Files(new File(DEFAULT_SYS_FS_CGROUP + File.pathSeparator + "memory"), mountInfo);
             if (cgroupFiles != null) {
                 return cgroupFiles;
             }
@@ -177,29 +206,82 @@ public class CGroupMetrics extends AbstractLifecycleListener {
         File maxMemoryFile = new File(rootCgroupFsPath, sliceSubdir + System.getProperty("file.separator") + CGROUP2_MAX_MEMORY);
         if (maxMemoryFile.canRead()) {
             maxMemoryFile = getMaxMemoryFile(maxMemoryFile, CGROUP2_UNLIMITED);
-            return new CgroupFiles(
+            File sliceDir = new File(rootCgroupFsPath, sliceSubdir);
+            CgroupFiles cgroupFiles = new CgroupFiles(
                 maxMemoryFile,
-                new File(rootCgroupFsPath, sliceSubdir + System.getProperty("file.separator") + CGROUP2_USED_MEMORY),
-                new File(rootCgroupFsPath, sliceSubdir + System.getProperty("file.separator") + CGROUP_MEMORY_STAT)
+                new File(sliceDir, CGROUP2_USED_MEMORY),
+                new File(sliceDir, CGROUP_MEMORY_STAT)
             );
+            cgroupFiles.setCpuFiles(readableOrNull(new File(sliceDir, CGROUP_CPU_STAT)), true,
+                readableOrNull(new File(sliceDir, CGROUP2_CPU_MAX)), null, null);
+            cgroupFiles.setPressureFiles(
+                readableOrNull(new File(sliceDir, CGROUP_CPU_PRESSURE)),
+                readableOrNull(new File(sliceDir, CGROUP_MEMORY_PRESSURE)),
+                readableOrNull(new File(sliceDir, CGROUP_IO_PRESSURE)));
+            return cgroupFiles;
         }
         return null;
     }
 
     @Nullable
-    private CgroupFiles createCgroup1Files(File memoryMountPath) throws IOException {
+    private CgroupFiles createCgroup1Files(File memoryMountPath, File mountInfo) throws IOException {
         File maxMemoryFile = new File(memoryMountPath, CGroupMetrics.CGROUP1_MAX_MEMORY);
         if (maxMemoryFile.canRead()) {
             maxMemoryFile = getMaxMemoryFile(maxMemoryFile, CGROUP1_UNLIMITED);
-            return new CgroupFiles(
+            CgroupFiles cgroupFiles = new CgroupFiles(
                 maxMemoryFile,
                 new File(memoryMountPath, CGroupMetrics.CGROUP1_USED_MEMORY),
                 new File(memoryMountPath, CGroupMetrics.CGROUP_MEMORY_STAT)
             );
+            File cpuMountPath = findCgroup1CpuMountPath(mountInfo);
+            if (cpuMountPath != null) {
+                cgroupFiles.setCpuFiles(readableOrNull(new File(cpuMountPath, CGROUP_CPU_STAT)), false, null,
+                    readableOrNull(new File(cpuMountPath, CGROUP1_CFS_QUOTA)),
+                    readableOrNull(new File(cpuMountPath, CGROUP1_CFS_PERIOD)));
+                // only available on cgroup v1 if the kernel has been booted with psi=1 and psi_v1=1
+                cgroupFiles.setPressureFiles(
+                    readableOrNull(new File(cpuMountPath, CGROUP_CPU_PRESSURE)),
+                    readableOrNull(new File(memoryMountPath, CGROUP_MEMORY_PRESSURE)),
+                    null);
+            }
+            return cgroupFiles;
         }
         return null;
     }
 
+    /**
+     * With cgroup v1, each controller has its own mount point.
+     * The cpu controller is usually co-mounted with cpuacct, as in {@code /sys/fs/cgroup/cpu,cpuacct}.
+     */
+    @Nullable
+    private File findCgroup1CpuMountPath(File mountInfo) {
+        if (mountInfo.canRead()) {
+            try (BufferedReader fileMountInfoReader = new BufferedReader(new FileReader(mountInfo))) {
+                for (String mountLine = fileMountInfoReader.readLine(); mountLine != null; mountLine = fileMountInfoReader.readLine()) {
+                    String cpuMountPath = applyCgroupRegex(CGROUP1_CPU_MOUNT_POINT, mountLine);
+                    if (cpuMountPath != null && new File(cpuMountPath, CGROUP_CPU_STAT).canRead()) {
+                        return new File(cpuMountPath);
+                    }
+                }
+            } catch (Exception e) {
+                logger.debug("Failed to discover the cpu cgroup mount path based on mountinfo", e);
+            }
+        }
+        for (String fallback : new String[]{"cpu,cpuacct", "cpu"}) {
+            File cpuMountPath = new File(DEFAULT_SYS_FS_CGROUP, fallback);
+            if (new File(cpuMountPath, CGROUP_CPU_STAT).canRead()) {
+                return cpuMountPath;
+            }
+        }
+        logger.debug("Failed to find the cpu cgroup mount path. Cgroup CPU metrics will not be reported.");
+        return null;
+    }
+
+    @Nullable
+    private static File readableOrNull(File file) {
+        return file.canRead() ? file : null;
+    }
+
     @Nullable
     private File getMaxMemoryFile(File maxMemoryFile, String cgroupUnlimitedConstant) throws IOException {
         try(BufferedReader maxFileReader = new BufferedReader(new FileReader(maxMemoryFile))) {
@@ -221,35 +303,152 @@ public class CGroupMetrics extends AbstractLifecycleListener {
     void bindTo(MetricRegistry metricRegistry) {
         if (cgroupFiles != null) {
 
-            metricRegistry.addUnlessNan("system.process.cgroup.memory.mem.usage.bytes", Labels.EMPTY, new DoubleSupplier() {
+            addFirstValueGauge(metricRegistry, "system.process.cgroup.memory.mem.usage.bytes", cgroupFiles.getUsedMemoryFile());
+
+            final File maxMemoryFile = cgroupFiles.getMaxMemoryFile();
+            if (maxMemoryFile != null) {
+                addFirstValueGauge(metricRegistry, "system.process.cgroup.memory.mem.limit.bytes", maxMemoryFile);
+            }
+
+            bindCpuMetrics(metricRegistry, cgroupFiles);
+
+            bindPressureMetrics(metricRegistry, "cpu", cgroupFiles.getCpuPressureFile());
+            bindPressureMetrics(metricRegistry, "memory", cgroupFiles.getMemoryPressureFile());
+            bindPressureMetrics(metricRegistry, "io", cgroupFiles.getIoPressureFile());
+        }
+    }
+
+    private void bindCpuMetrics(MetricRegistry metricRegistry, CgroupFiles cgroupFiles) {
+        final CgroupCpuStats cpuStats = createCpuStats();
+        if (cpuStats != null && cpuStats.update()) {
+            closeables.add(cpuStats);
+            metricRegistry.addUnlessNan("system.process.cgroup.cpu.stats.periods", Labels.EMPTY, new DoubleSupplier() {
                 @Override
                 public double get() {
-                    try (BufferedReader fileReaderMemoryUsed = new BufferedReader(new FileReader(cgroupFiles.getUsedMemoryFile()))) {
-                        return Long.parseLong(fileReaderMemoryUsed.readLine());
-                    } catch (Exception e) {
-                        logger.debug("Failed to read " + cgroupFiles.getUsedMemoryFile().getAbsolutePath() + " file", e);
-                        return Double.NaN;
-                    }
+                    cpuStats.updateIfOlderThan(MAX_FILE_AGE_NANOS);
+                    return toDouble(cpuStats.getPeriods());
+                }
+            });
+            metricRegistry.addUnlessNan("system.process.cgroup.cpu.stats.throttled.periods", Labels.EMPTY, new DoubleSupplier() {
+                @Override
+                public double get() {
+                    cpuStats.updateIfOlderThan(MAX_FILE_AGE_NANOS);
+                    return toDouble(cpuStats.getThrottledPeriods());
+                }
+            });
+            metricRegistry.addUnlessNan("system.process.cgroup.cpu.stats.throttled.ns", Labels.EMPTY, new DoubleSupplier() {
+                @Override
+                public double get() {
+                    cpuStats.updateIfOlderThan(MAX_FILE_AGE_NANOS);
+                    return toDouble(cpuStats.getThrottledNanos());
+                }
+            });
+            // the ratio is only known after the second read, NaN values are not reported
+            metricRegistry.add("system.process.cgroup.cpu.stats.throttled.pct", Labels.EMPTY, new DoubleSupplier() {
+                @Override
+                public double get() {
+                    cpuStats.updateIfOlderThan(MAX_FILE_AGE_NANOS);
+                    return cpuStats.getThrottledRatio();
                 }
             });
+        }
 
-            final File maxMemoryFile = cgroupFiles.getMaxMemoryFile();
-            if (maxMemoryFile != null) {
-                metricRegistry.addUnlessNan("system.process.cgroup.memory.mem.limit.bytes", Labels.EMPTY, new DoubleSupplier() {
+        File cpuMaxFile = cgroupFiles.getCpuMaxFile();
+        if (cpuMaxFile != null) {
+            // cgroup v2: "$MAX $PERIOD", where $MAX is "max" if there is no limit
+            final CgroupFileReader cpuMax = register(new CgroupFileReader(cpuMaxFile));
+            metricRegistry.addUnlessNan("system.process.cgroup.cpu.cfs.quota.us", Labels.EMPTY, new DoubleSupplier() {
+                @Override
+                public double get() {
+                    return cpuMax.read() ? toDouble(cpuMax.getLongToken(0)) : Double.NaN;
+                }
+            });
+            metricRegistry.addUnlessNan("system.process.cgroup.cpu.cfs.period.us", Labels.EMPTY, new DoubleSupplier() {
+                @Override
+                public double get() {
+                    return cpuMax.read() ? toDouble(cpuMax.getLongToken(1)) : Double.NaN;
+                }
+            });
+        }
+        File cfsQuotaFile = cgroupFiles.getCfsQuotaFile();
+        if (cfsQuotaFile != null) {
+            // cgroup v1: -1 if there is no limit
+            addFirstValueGauge(metricRegistry, "system.process.cgroup.cpu.cfs.quota.us", cfsQuotaFile);
+        }
+        File cfsPeriodFile = cgroupFiles.getCfsPeriodFile();
+        if (cfsPeriodFile != null) {
+            addFirstValueGauge(metricRegistry, "system.process.cgroup.cpu.cfs.period.us", cfsPeriodFile);
+        }
+    }
+
+    /**
+     * Registers the averages of the pressure stall information of a resource, for example
+     * <pre>
+     * some avg10=0.00 avg60=0.00 avg300=0.00 total=0
+     * full avg10=0.00 avg60=0.00 avg300=0.00 total=0
+     * </pre>
+     * The averages are percentages of wall clock time, they are reported as ratios between 0 and 1.
+     */
+    private void bindPressureMetrics(MetricRegistry metricRegistry, String resource, @Nullable File pressureFile) {
+        if (pressureFile == null) {
+            return;
+        }
+        final CgroupFileReader pressure = register(new CgroupFileReader(pressureFile));
+        for (String stallType : new String[]{"some", "full"}) {
+            final byte[] lineKey = "some".equals(stallType) ? PRESSURE_SOME : PRESSURE_FULL;
+            for (String window : PRESSURE_WINDOWS) {
+                final byte[] field = CgroupFileReader.toBytes("avg" + window + "=");
+                metricRegistry.addUnlessNan("system.process.cgroup." + resource + ".pressure." + stallType + "." + window + ".pct", Labels.EMPTY, new DoubleSupplier() {
                     @Override
                     public double get() {
-                        try (BufferedReader fileReaderMemoryMax = new BufferedReader(new FileReader(maxMemoryFile))) {
-                            return Long.parseLong(fileReaderMemoryMax.readLine());
-                        } catch (Exception e) {
-                            logger.debug("Failed to read " + maxMemoryFile + " file", e);
+                        if (!pressure.readIfOlderThan(MAX_FILE_AGE_NANOS)) {
                             return Double.NaN;
                         }
+                        return pressure.getPressureValue(lineKey, field) / 100;
                     }
                 });
             }
         }
     }
 
+    private void addFirstValueGauge(MetricRegistry metricRegistry, String name, File file) {
+        final CgroupFileReader reader = register(new CgroupFileReader(file));
+        metricRegistry.addUnlessNan(name, Labels.EMPTY, new DoubleSupplier() {
+            @Override
+            public double get() {
+                return reader.read() ? toDouble(reader.getFirstLong()) : Double.NaN;
+            }
+        });
+    }
+
+    private CgroupFileReader register(CgroupFileReader reader) {
+        closeables.add(reader);
+        return reader;
+    }
+
+    private static double toDouble(long value) {
+        return value < 0 ? Double.NaN : value;
+    }
+
+    @Nullable
+    CgroupCpuStats createCpuStats() {
+        if (cgroupFiles == null || cgroupFiles.getCpuStatFile() == null) {
+            return null;
+        }
+        return new CgroupCpuStats(cgroupFiles.getCpuStatFile(), cgroupFiles.isCgroupV2());
+    }
+
+    @Override
+    public void stop() {
+        for (Closeable closeable : closeables) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+            }
+        }
+        closeables.clear();
+    }
+
     private static class CgroupFiles {
 
         @Nullable // may be null if memory mount is found for the cgroup, but memory is unlimited
@@ -257,12 +456,43 @@ public class CGroupMetrics extends AbstractLifecycleListener {
         private final File usedMemoryFile;
         private final File statMemoryFile;
 
+        @Nullable
+        private File cpuStatFile;
+        private boolean cgroupV2;
+        @Nullable
+        private File cpuMaxFile;
+        @Nullable
+        private File cfsQuotaFile;
+        @Nullable
+        private File cfsPeriodFile;
+
+        @Nullable
+        private File cpuPressureFile;
+        @Nullable
+        private File memoryPressureFile;
+        @Nullable
+        private File ioPressureFile;
+
         public CgroupFiles(@Nullable File maxMemoryFile, File usedMemoryFile, File statMemoryFile) {
             this.maxMemoryFile = maxMemoryFile;
             this.usedMemoryFile = usedMemoryFile;
             this.statMemoryFile = statMemoryFile;
         }
 
+        void setCpuFiles(@Nullable File cpuStatFile, boolean cgroupV2, @Nullable File cpuMaxFile, @Nullable File cfsQuotaFile, @Nullable File cfsPeriodFile) {
+            this.cpuStatFile = cpuStatFile;
+            this.cgroupV2 = cgroupV2;
+            this.cpuMaxFile = cpuMaxFile;
+            this.cfsQuotaFile = cfsQuotaFile;
+            this.cfsPeriodFile = cfsPeriodFile;
+        }
+
+        void setPressureFiles(@Nullable File cpuPressureFile, @Nullable File memoryPressureFile, @Nullable File ioPressureFile) {
+            this.cpuPressureFile = cpuPressureFile;
+            this.memoryPressureFile = memoryPressureFile;
+            this.ioPressureFile = ioPressureFile;
+        }
+
         @Nullable
         public File getMaxMemoryFile() {
             return maxMemoryFile;
@@ -279,5 +509,56 @@ public class CGroupMetrics extends AbstractLifecycleListener {
         public File getStatMemoryFile() {
             return statMemoryFile;
         }
+
+        /**
+         * @return the cpu.stat file, {@code null} if the cpu controller is not enabled for the cgroup
+         */
+        @Nullable
+        public File getCpuStatFile() {
+            return cpuStatFile;
+        }
+
+        public boolean isCgroupV2() {
+            return cgroupV2;
+        }
+
+        /**
+         * @return the cgroup v2 cpu.max file, {@code null} for cgroup v1
+         */
+        @Nullable
+        public File getCpuMaxFile() {
+            return cpuMaxFile;
+        }
+
+        /**
+         * @return the cgroup v1 cpu.cfs_quota_us file, {@code null} for cgroup v2
+         */
+        @Nullable
+        public File getCfsQuotaFile() {
+            return cfsQuotaFile;
+        }
+
+        /**
+         * @return the cgroup v1 cpu.cfs_period_us file, {@code null} for cgroup v2
+         */
+        @Nullable
+        public File getCfsPeriodFile() {
+            return cfsPeriodFile;
+        }
+
+        @Nullable
+        public File getCpuPressureFile() {
+            return cpuPressureFile;
+        }
+
+        @Nullable
+        public File getMemoryPressureFile() {
+            return memoryPressureFile;
+        }
+
+        @Nullable
+        public File getIoPressureFile() {
+            return ioPressureFile;
+        }
     }
 }
@@ -0,0 +1,147 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.metrics.builtin;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+
+import static co.elastic.apm.agent.metrics.builtin.CgroupFileReader.NO_VALUE;
+
+/**
+ * Tracks the CFS bandwidth control statistics of the current cgroup, as exposed by the {@code cpu.stat} file.
+ * <p>
+ * cgroup v1 exposes {@code nr_periods}, {@code nr_throttled} and {@code throttled_time} (in nanoseconds),
+ * cgroup v2 exposes {@code nr_periods}, {@code nr_throttled} and {@code throttled_usec}.
+ * </p>
+ * <p>
+ * Each instance keeps track of the previous values, so that the ratio of throttled periods can be calculated for the
+ * time between two {@linkplain #update() updates}.
+ * Therefore, each consumer should use its own instance.
+ * </p>
+ */
+public class CgroupCpuStats implements Closeable {
+
+    private static final byte[] NR_PERIODS = CgroupFileReader.toBytes("nr_periods");
+    private static final byte[] NR_THROTTLED = CgroupFileReader.toBytes("nr_throttled");
+    private static final byte[] THROTTLED_USEC = CgroupFileReader.toBytes("throttled_usec");
+    private static final byte[] THROTTLED_TIME = CgroupFileReader.toBytes("throttled_time");
+
+    private final CgroupFileReader cpuStat;
+    private final boolean cgroupV2;
+
+    private long periods = NO_VALUE;
+    private long throttledPeriods = NO_VALUE;
+    private long throttledNanos = NO_VALUE;
+    private double throttledRatio = Double.NaN;
+    private long lastUpdateNanos;
+
+    CgroupCpuStats(File cpuStatFile, boolean cgroupV2) {
+        this.cpuStat = new CgroupFileReader(cpuStatFile);
+        this.cgroupV2 = cgroupV2;
+    }
+
+    /**
+     * Discovers the {@code cpu.stat} file of the cgroup the current process belongs to.
+     *
+     * @return the CPU stats of the current cgroup, or {@code null} if the process does not run in a cgroup with the cpu controller
+     */
+    @Nullable
+    public static CgroupCpuStats forCurrentProcess() {
+        return new CGroupMetrics().createCpuStats();
+    }
+
+    /**
+     * Reads the current values and calculates the ratio of throttled periods since the previous update.
+     *
+     * @return {@code true} if the stats could be read
+     */
+    public synchronized boolean update() {
+        lastUpdateNanos = System.nanoTime();
+        if (!cpuStat.read()) {
+            throttledRatio = Double.NaN;
+            return false;
+        }
+        long currentPeriods = cpuStat.getLongValue(NR_PERIODS);
+        long currentThrottledPeriods = cpuStat.getLongValue(NR_THROTTLED);
+        if (cgroupV2) {
+            long throttledUsec = cpuStat.getLongValue(THROTTLED_USEC);
+            throttledNanos = throttledUsec != NO_VALUE ? throttledUsec * 1000 : NO_VALUE;
+        } else {
+            throttledNanos = cpuStat.getLongValue(THROTTLED_TIME);
+        }
+
+        long periodsDelta = currentPeriods - periods;
+        if (periods != NO_VALUE && currentPeriods != NO_VALUE && periodsDelta > 0 && throttledPeriods != NO_VALUE && currentThrottledPeriods != NO_VALUE) {
+            throttledRatio = (double) (currentThrottledPeriods - throttledPeriods) / periodsDelta;
+        } else if (periods != NO_VALUE && periodsDelta == 0) {
+            // no CFS period has elapsed as no task of the cgroup was runnable, so there was no throttling either
+            throttledRatio = 0;
+        } else {
+            throttledRatio = Double.NaN;
+        }
+        periods = currentPeriods;
+        throttledPeriods = currentThrottledPeriods;
+        return true;
+    }
+
+    /**
+     * Same as {@link #update()}, but only reads the file if the last update is older than the provided age.
+     * This allows to register multiple metrics which are based on the same file, without reading it for each metric.
+     */
+    synchronized void updateIfOlderThan(long maxAgeNanos) {
+        if (periods == NO_VALUE || System.nanoTime() - lastUpdateNanos >= maxAgeNanos) {
+            update();
+        }
+    }
+
+    /**
+     * @return the number of CFS enforcement periods that have elapsed, or {@code -1} if unknown
+     */
+    public synchronized long getPeriods() {
+        return periods;
+    }
+
+    /**
+     * @return the number of CFS enforcement periods in which the cgroup has been throttled, or {@code -1} if unknown
+     */
+    public synchronized long getThrottledPeriods() {
+        return throttledPeriods;
+    }
+
+    /**
+     * @return the total time the cgroup has been throttled in nanoseconds, or {@code -1} if unknown
+     */
+    public synchronized long getThrottledNanos() {
+        return throttledNanos;
+    }
+
+    /**
+     * @return the ratio of throttled CFS periods between the previous two {@linkplain #update() updates},
+     * or {@link Double#NaN} if it can't be determined
+     */
+    public synchronized double getThrottledRatio() {
+        return throttledRatio;
+    }
+
+    @Override
+    public synchronized void close() {
+        cpuStat.close();
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.metrics.builtin;
+
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads small pseudo files, like the ones of the cgroup file system, without allocating.
+ * <p>
+ * The file is kept open and re-read from the start into a reusable buffer, the values are parsed directly from that buffer.
+ * Pseudo files are re-generated by the kernel on each read from offset 0.
+ * </p>
+ * <p>
+ * Not thread safe, callers need to synchronize if an instance is shared across threads.
+ * </p>
+ */
+class CgroupFileReader implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CgroupFileReader.class);
+
+    static final long NO_VALUE = -1L;
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private final File file;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int length;
+    @Nullable
+    private RandomAccessFile randomAccessFile;
+    private boolean lastReadSuccessful;
+    private long lastReadNanos;
+
+    CgroupFileReader(File file) {
+        this.file = file;
+    }
+
+    static byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    /**
+     * Reads the current content of the file into the internal buffer.
+     *
+     * @return {@code true} if the file could be read
+     */
+    boolean read() {
+        lastReadNanos = System.nanoTime();
+        lastReadSuccessful = doRead();
+        return lastReadSuccessful;
+    }
+
+    /**
+     * Same as {@link #read()}, but keeps the current content if it has been successfully read recently.
+     * This allows to register multiple metrics which are based on the same file, without reading it for each metric.
+     *
+     * @param maxAgeNanos the maximum age of the current content
+     * @return {@code true} if the content is available
+     */
+    boolean readIfOlderThan(long maxAgeNanos) {
+        if (lastReadSuccessful && System.nanoTime() - lastReadNanos < maxAgeNanos) {
+            return true;
+        }
+        return read();
+    }
+
+    private boolean doRead() {
+        length = 0;
+        try {
+            if (randomAccessFile == null) {
+                randomAccessFile = new RandomAccessFile(file, "r");
+            }
+            randomAccessFile.seek(0);
+            int read;
+            while (length < buffer.length && (read = randomAccessFile.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+            return true;
+        } catch (IOException e) {
+            logger.debug("Failed to read {} file: {}", file.getAbsolutePath(), e.getMessage());
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * @return the first value of the file, or {@link #NO_VALUE} if the value is not a number, like {@code max}
+     */
+    long getFirstLong() {
+        return parseLong(skipWhitespace(0));
+    }
+
+    /**
+     * Returns the value at the given whitespace-separated position of the first line, as in {@code max 100000}.
+     *
+     * @param index the index of the token in the first line
+     * @return the value of the token, or {@link #NO_VALUE} if the token does not exist or is not a number
+     */
+    long getLongToken(int index) {
+        int pos = skipWhitespace(0);
+        for (int i = 0; i < index && pos < length; i++) {
+            while (pos < length && !isWhitespace(buffer[pos])) {
+                pos++;
+            }
+            pos = skipWhitespace(pos);
+        }
+        return parseLong(pos);
+    }
+
+    /**
+     * Returns the value of a {@code key value} line, as found in {@code cpu.stat} or {@code memory.stat}.
+     *
+     * @param key the key, as returned by {@link #toBytes(String)}
+     * @return the value, or {@link #NO_VALUE} if the key is not present
+     */
+    long getLongValue(byte[] key) {
+        int lineStart = findLine(key);
+        if (lineStart < 0) {
+            return NO_VALUE;
+        }
+        return parseLong(skipWhitespace(lineStart + key.length));
+    }
+
+    /**
+     * Returns a decimal field of a pressure stall information line, like {@code avg10} in
+     * {@code some avg10=0.12 avg60=0.05 avg300=0.01 total=12345}.
+     *
+     * @param lineKey the first token of the line, {@code some} or {@code full}
+     * @param field   the field name including the equals sign, like {@code avg10=}
+     * @return the value, or {@link Double#NaN} if the line or the field is not present
+     */
+    double getPressureValue(byte[] lineKey, byte[] field) {
+        int lineStart = findLine(lineKey);
+        if (lineStart < 0) {
+            return Double.NaN;
+        }
+        int pos = lineStart + lineKey.length;
+        while (pos < length && buffer[pos] != '\n') {
+            pos = skipWhitespace(pos);
+            if (regionMatches(pos, field)) {
+                return parseDecimal(pos + field.length);
+            }
+            while (pos < length && !isWhitespace(buffer[pos])) {
+                pos++;
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * @return the start of the line beginning with the given key followed by a whitespace, or {@code -1} if not found
+     */
+    private int findLine(byte[] key) {
+        int lineStart = 0;
+        while (lineStart < length) {
+            if (regionMatches(lineStart, key) && lineStart + key.length < length && isWhitespace(buffer[lineStart + key.length])) {
+                return lineStart;
+            }
+            while (lineStart < length && buffer[lineStart] != '\n') {
+                lineStart++;
+            }
+            lineStart++;
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int offset, byte[] bytes) {
+        if (offset + bytes.length > length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer[offset + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long parseLong(int pos) {
+        boolean negative = false;
+        if (pos < length && buffer[pos] == '-') {
+            negative = true;
+            pos++;
+        }
+        if (pos >= length || !isDigit(buffer[pos])) {
+            return NO_VALUE;
+        }
+        long value = 0;
+        while (pos < length && isDigit(buffer[pos])) {
+            value = value * 10 + (buffer[pos++] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private double parseDecimal(int pos) {
+        if (pos >= length || !isDigit(buffer[pos])) {
+            return Double.NaN;
+        }
+        long integral = 0;
+        while (pos < length && isDigit(buffer[pos])) {
+            integral = integral * 10 + (buffer[pos++] - '0');
+        }
+        double value = integral;
+        if (pos < length && buffer[pos] == '.') {
+            pos++;
+            double scale = 0.1;
+            while (pos < length && isDigit(buffer[pos])) {
+                value += (buffer[pos++] - '0') * scale;
+                scale /= 10;
+            }
+        }
+        return value;
+    }
+
+    private int skipWhitespace(int pos) {
+        while (pos < length && isWhitespace(buffer[pos]) && buffer[pos] != '\n') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    @Override
+    public void close() {
+        if (randomAccessFile != null) {
+            try {
+                randomAccessFile.close();
+            } catch (IOException ignore) {
+            }
+            randomAccessFile = null;
+        }
+    }
+}
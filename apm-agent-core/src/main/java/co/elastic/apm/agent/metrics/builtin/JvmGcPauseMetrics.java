@@ -0,0 +1,348 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.metrics.builtin;
+
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.metrics.MetricRegistry;
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.tracer.AbstractLifecycleListener;
+import co.elastic.apm.agent.tracer.Tracer;
+import co.elastic.apm.agent.tracer.metrics.DoubleSupplier;
+import co.elastic.apm.agent.tracer.metrics.Labels;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import javax.annotation.Nullable;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records every garbage collection based on the notifications of the {@link GarbageCollectorMXBean}s.
+ * <p>
+ * As opposed to the accumulated {@code jvm.gc.count} and {@code jvm.gc.time} of {@link JvmGcMetrics},
+ * this captures the distribution of the individual pauses, so that a single long pause is not averaged away within a metrics interval.
+ * Based on the heap usage before and after each collection, it also tracks how many bytes have been allocated and promoted
+ * to the old generation and how much of each heap pool is still in use after a collection.
+ * </p>
+ * <p>
+ * The recording itself does not allocate, however the JVM creates the notifications and their {@link GcInfo} for every collection.
+ * </p>
+ */
+public class JvmGcPauseMetrics extends AbstractLifecycleListener {
+
+    static final String PAUSE_METRIC = "jvm.gc.pause";
+    static final String ALLOCATED_BYTES_METRIC = "jvm.gc.allocated_bytes";
+    static final String PROMOTED_BYTES_METRIC = "jvm.gc.promoted_bytes";
+    static final String USED_AFTER_GC_METRIC = "jvm.memory.heap.pool.used_after_gc";
+
+    private static final Logger logger = LoggerFactory.getLogger(JvmGcPauseMetrics.class);
+
+    private final List<GarbageCollectorMXBean> garbageCollectorMXBeans;
+    private final String[] collectorNames;
+    private final Labels[] collectorLabels;
+    private final String[] heapPoolNames;
+    private final boolean[] oldGenPools;
+    private final boolean generational;
+    private final AtomicLongArray usedAfterGc;
+    private final AtomicLong longestPauseMillis = new AtomicLong();
+
+    @Nullable
+    private volatile MetricRegistry registry;
+    private boolean pauseMetricEnabled;
+    private boolean allocatedBytesMetricEnabled;
+    private boolean promotedBytesMetricEnabled;
+    @Nullable
+    private NotificationListener notificationListener;
+
+    public JvmGcPauseMetrics() {
+        this(ManagementFactory.getGarbageCollectorMXBeans(), getHeapPoolNames());
+    }
+
+    JvmGcPauseMetrics(List<GarbageCollectorMXBean> garbageCollectorMXBeans, String[] heapPoolNames) {
+        this.garbageCollectorMXBeans = garbageCollectorMXBeans;
+        collectorNames = new String[garbageCollectorMXBeans.size()];
+        collectorLabels = new Labels[collectorNames.length];
+        for (int i = 0; i < collectorNames.length; i++) {
+            collectorNames[i] = garbageCollectorMXBeans.get(i).getName();
+            collectorLabels[i] = Labels.Mutable.of("name", collectorNames[i]).immutableCopy();
+        }
+        this.heapPoolNames = heapPoolNames;
+        oldGenPools = new boolean[heapPoolNames.length];
+        usedAfterGc = new AtomicLongArray(heapPoolNames.length);
+        boolean hasYoungGenPool = false;
+        for (int i = 0; i < heapPoolNames.length; i++) {
+            String name = heapPoolNames[i].toLowerCase(Locale.ROOT);
+            if (name.contains("eden") || name.contains("nursery-allocate") || name.contains("young")) {
+                hasYoungGenPool = true;
+            } else if (!name.contains("survivor")) {
+                oldGenPools[i] = true;
+            }
+            usedAfterGc.set(i, -1);
+        }
+        // single-generation collectors like ZGC or Shenandoah don't promote objects
+        generational = hasYoungGenPool;
+    }
+
+    private static String[] getHeapPoolNames() {
+        List<String> names = new ArrayList<>();
+        for (MemoryPoolMXBean memoryPoolMXBean : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPoolMXBean.getType() == MemoryType.HEAP) {
+                names.add(memoryPoolMXBean.getName());
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    @Override
+    public void start(Tracer tracer) {
+        bindTo(tracer.require(ElasticApmTracer.class).getMetricRegistry());
+        registerNotificationListener();
+    }
+
+    void registerNotificationListener() {
+        try {
+            // only refer to hotspot specific class via reflection to avoid linkage errors
+            Class.forName("com.sun.management.GarbageCollectionNotificationInfo");
+            NotificationListener listener = (NotificationListener) Class.forName(getClass().getName() + "$GcNotificationListener")
+                .getDeclaredConstructor(JvmGcPauseMetrics.class)
+                .newInstance(this);
+            for (GarbageCollectorMXBean garbageCollectorMXBean : garbageCollectorMXBeans) {
+                if (garbageCollectorMXBean instanceof NotificationEmitter) {
+                    ((NotificationEmitter) garbageCollectorMXBean).addNotificationListener(listener, null, null);
+                }
+            }
+            notificationListener = listener;
+        } catch (Exception e) {
+            logger.debug("Garbage collection notifications are not supported on this JVM, GC pauses are not recorded", e);
+        }
+    }
+
+    void bindTo(final MetricRegistry registry) {
+        pauseMetricEnabled = !registry.isDisabled(PAUSE_METRIC);
+        allocatedBytesMetricEnabled = !registry.isDisabled(ALLOCATED_BYTES_METRIC);
+        promotedBytesMetricEnabled = !registry.isDisabled(PROMOTED_BYTES_METRIC);
+        for (int i = 0; i < heapPoolNames.length; i++) {
+            final int pool = i;
+            registry.add(USED_AFTER_GC_METRIC, Labels.Mutable.of("name", heapPoolNames[i]), new DoubleSupplier() {
+                @Override
+                public double get() {
+                    long used = usedAfterGc.get(pool);
+                    // not reported until the pool has been collected
+                    return used >= 0 ? used : Double.NaN;
+                }
+            });
+        }
+        this.registry = registry;
+    }
+
+    /**
+     * Records a garbage collection.
+     *
+     * @param collectorName   the name of the {@link GarbageCollectorMXBean}
+     * @param minorGc         whether only the young generation has been collected
+     * @param concurrentPhase whether the collection ran concurrently to the application, which means it is not a pause
+     * @param durationMillis  the duration of the collection
+     * @param usedBeforeGc    the used bytes of each heap pool before the collection, {@code -1} if unknown
+     * @param usedAfterGc     the used bytes of each heap pool after the collection, {@code -1} if unknown
+     */
+    synchronized void onGarbageCollection(String collectorName, boolean minorGc, boolean concurrentPhase, long durationMillis,
+                                          long[] usedBeforeGc, long[] usedAfterGc) {
+        long allocatedBytes = 0;
+        long promotedBytes = 0;
+        for (int i = 0; i < heapPoolNames.length; i++) {
+            long before = usedBeforeGc[i];
+            long after = usedAfterGc[i];
+            if (before < 0 || after < 0) {
+                continue;
+            }
+            // between two collections, the pools only grow through allocations
+            long afterPreviousGc = this.usedAfterGc.get(i);
+            if (afterPreviousGc >= 0 && before > afterPreviousGc) {
+                allocatedBytes += before - afterPreviousGc;
+            }
+            if (generational && minorGc && oldGenPools[i] && after > before) {
+                promotedBytes += after - before;
+            }
+            this.usedAfterGc.set(i, after);
+        }
+
+        if (!concurrentPhase) {
+            updateLongestPause(durationMillis);
+        }
+        MetricRegistry registry = this.registry;
+        if (registry == null) {
+            return;
+        }
+        if (!concurrentPhase && pauseMetricEnabled) {
+            int collector = indexOf(collectorName);
+            if (collector >= 0) {
+                registry.updateHistogram(PAUSE_METRIC, collectorLabels[collector], TimeUnit.MILLISECONDS.toMicros(durationMillis));
+            }
+        }
+        if (allocatedBytes > 0 && allocatedBytesMetricEnabled) {
+            registry.addToCounter(ALLOCATED_BYTES_METRIC, Labels.EMPTY, allocatedBytes);
+        }
+        if (promotedBytes > 0 && promotedBytesMetricEnabled) {
+            registry.addToCounter(PROMOTED_BYTES_METRIC, Labels.EMPTY, promotedBytes);
+        }
+    }
+
+    private int indexOf(String collectorName) {
+        for (int i = 0; i < collectorNames.length; i++) {
+            if (collectorNames[i].equals(collectorName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void updateLongestPause(long durationMillis) {
+        long longest = longestPauseMillis.get();
+        while (durationMillis > longest && !longestPauseMillis.compareAndSet(longest, durationMillis)) {
+            longest = longestPauseMillis.get();
+        }
+    }
+
+    /**
+     * Returns the longest GC pause since the last invocation of this method.
+     * As this resets the state, there should only be a single consumer, which is the GC stress monitor of the circuit breaker.
+     *
+     * @return the longest GC pause in milliseconds since the last invocation
+     */
+    public long getAndResetLongestPauseMillis() {
+        return longestPauseMillis.getAndSet(0);
+    }
+
+    /**
+     * Collectors whose notifications are known to only report stop-the-world pauses.
+     */
+    private static final Set<String> STOP_THE_WORLD_COLLECTORS = new HashSet<>(Arrays.asList(
+        "Copy", "MarkSweepCompact", // Serial
+        "PS Scavenge", "PS MarkSweep", // Parallel
+        "ParNew", // young generation of CMS
+        "G1 Young Generation", "G1 Old Generation",
+        "Shenandoah Pauses",
+        "ZGC Pauses", "ZGC Minor Pauses", "ZGC Major Pauses"
+    ));
+
+    /**
+     * Collectors whose notifications report the duration of mostly concurrent cycles, which don't stop the application threads.
+     * Before JDK 17, ZGC only registered a single {@code ZGC} collector which reports its cycles.
+     * The duration reported by {@code ConcurrentMarkSweep} (JDK 8 - 13) includes its concurrent phases.
+     */
+    private static final Set<String> CONCURRENT_COLLECTORS = new HashSet<>(Arrays.asList(
+        "ConcurrentMarkSweep",
+        "ZGC", "ZGC Cycles", "ZGC Minor Cycles", "ZGC Major Cycles",
+        "Shenandoah Cycles",
+        "G1 Concurrent GC"
+    ));
+
+    /**
+     * The actions the JDK uses for notifications about stop-the-world collections.
+     */
+    private static final Set<String> STOP_THE_WORLD_ACTIONS = new HashSet<>(Arrays.asList(
+        "end of minor GC", "end of major GC", "end of GC pause"
+    ));
+
+    /**
+     * Only stop-the-world pauses are recorded as {@link #PAUSE_METRIC} and reported to the GC stress monitor,
+     * as concurrent collectors also notify about their concurrent cycles, which may take seconds without stopping the application.
+     * Unknown collectors, for example of other JVM implementations, are only considered if the action denotes a stop-the-world collection.
+     */
+    static boolean isStopTheWorldPause(String collectorName, @Nullable String action, @Nullable String cause) {
+        if ("No GC".equals(cause) || CONCURRENT_COLLECTORS.contains(collectorName)) {
+            return false;
+        }
+        return STOP_THE_WORLD_COLLECTORS.contains(collectorName) || STOP_THE_WORLD_ACTIONS.contains(action);
+    }
+
+    @Override
+    public void stop() {
+        NotificationListener listener = notificationListener;
+        if (listener == null) {
+            return;
+        }
+        for (GarbageCollectorMXBean garbageCollectorMXBean : garbageCollectorMXBeans) {
+            if (garbageCollectorMXBean instanceof NotificationEmitter) {
+                try {
+                    ((NotificationEmitter) garbageCollectorMXBean).removeNotificationListener(listener);
+                } catch (ListenerNotFoundException ignore) {
+                }
+            }
+        }
+        notificationListener = null;
+    }
+
+    @IgnoreJRERequirement
+    @SuppressWarnings("unused") //initialized via reflection
+    static class GcNotificationListener implements NotificationListener {
+
+        private final JvmGcPauseMetrics metrics;
+        // guarded by this
+        private final long[] usedBeforeGc;
+        private final long[] usedAfterGc;
+
+        GcNotificationListener(JvmGcPauseMetrics metrics) {
+            this.metrics = metrics;
+            usedBeforeGc = new long[metrics.heapPoolNames.length];
+            usedAfterGc = new long[metrics.heapPoolNames.length];
+        }
+
+        @Override
+        public synchronized void handleNotification(Notification notification, @Nullable Object handback) {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            GcInfo gcInfo = info.getGcInfo();
+            copyUsed(gcInfo.getMemoryUsageBeforeGc(), usedBeforeGc);
+            copyUsed(gcInfo.getMemoryUsageAfterGc(), usedAfterGc);
+            metrics.onGarbageCollection(info.getGcName(), "end of minor GC".equals(info.getGcAction()),
+                !isStopTheWorldPause(info.getGcName(), info.getGcAction(), info.getGcCause()), gcInfo.getDuration(), usedBeforeGc, usedAfterGc);
+        }
+
+        private void copyUsed(Map<String, MemoryUsage> usageByPool, long[] target) {
+            String[] heapPoolNames = metrics.heapPoolNames;
+            for (int i = 0; i < heapPoolNames.length; i++) {
+                MemoryUsage usage = usageByPool.get(heapPoolNames[i]);
+                target[i] = usage != null ? usage.getUsed() : -1;
+            }
+        }
+    }
+}
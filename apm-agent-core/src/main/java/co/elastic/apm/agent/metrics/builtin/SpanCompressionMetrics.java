@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.metrics.builtin;
+
+import co.elastic.apm.agent.impl.transaction.SpanCount;
+import co.elastic.apm.agent.metrics.MetricCollector;
+import co.elastic.apm.agent.metrics.MetricRegistry;
+import co.elastic.apm.agent.metrics.MetricsProvider;
+import co.elastic.apm.agent.tracer.metrics.Labels;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports how effective span compression is.
+ * <p>
+ * The counts are tracked per transaction in its {@link SpanCount} and only added to the totals of this class when the
+ * transaction is recycled. At that point, all child spans have ended and the shared counters here are only updated
+ * once per transaction instead of once per span.
+ * </p>
+ */
+public class SpanCompressionMetrics implements MetricsProvider {
+
+    private static final String ELIGIBLE_METRIC = "agent.span_compression.eligible.count";
+    private static final String COMPRESSED_METRIC = "agent.span_compression.compressed.count";
+    private static final String CONTENDED_METRIC = "agent.span_compression.contended.count";
+    private static final String RATIO_METRIC = "agent.span_compression.ratio";
+
+    private final boolean eligibleMetricEnabled;
+    private final boolean compressedMetricEnabled;
+    private final boolean contendedMetricEnabled;
+    private final boolean ratioMetricEnabled;
+
+    private final AtomicLong eligible = new AtomicLong();
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong contended = new AtomicLong();
+
+    public SpanCompressionMetrics(MetricRegistry registry) {
+        eligibleMetricEnabled = !registry.isDisabled(ELIGIBLE_METRIC);
+        compressedMetricEnabled = !registry.isDisabled(COMPRESSED_METRIC);
+        contendedMetricEnabled = !registry.isDisabled(CONTENDED_METRIC);
+        ratioMetricEnabled = !registry.isDisabled(RATIO_METRIC);
+    }
+
+    public boolean isAnyMetricEnabled() {
+        return eligibleMetricEnabled || compressedMetricEnabled || contendedMetricEnabled || ratioMetricEnabled;
+    }
+
+    public void onTransactionRecycled(SpanCount spanCount) {
+        int transactionEligible = spanCount.getCompressionEligible().get();
+        if (transactionEligible == 0) {
+            return;
+        }
+        eligible.addAndGet(transactionEligible);
+        compressed.addAndGet(spanCount.getCompressed().get());
+        contended.addAndGet(spanCount.getCompressionContended().get());
+    }
+
+    @Override
+    public void collectAndReset(MetricCollector collector) {
+        long eligibleCount = eligible.getAndSet(0);
+        long compressedCount = compressed.getAndSet(0);
+        long contendedCount = contended.getAndSet(0);
+        if (eligibleMetricEnabled) {
+            collector.addMetricValue(ELIGIBLE_METRIC, Labels.EMPTY, eligibleCount);
+        }
+        if (compressedMetricEnabled) {
+            collector.addMetricValue(COMPRESSED_METRIC, Labels.EMPTY, compressedCount);
+        }
+        if (contendedMetricEnabled) {
+            collector.addMetricValue(CONTENDED_METRIC, Labels.EMPTY, contendedCount);
+        }
+        if (ratioMetricEnabled && eligibleCount > 0) {
+            collector.addMetricValue(RATIO_METRIC, Labels.EMPTY, (double) compressedCount / eligibleCount);
+        }
+    }
+}
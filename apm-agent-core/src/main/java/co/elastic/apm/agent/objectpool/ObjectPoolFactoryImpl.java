@@ -24,6 +24,7 @@ import co.elastic.apm.agent.impl.transaction.SpanImpl;
 import co.elastic.apm.agent.impl.transaction.TraceContextImpl;
 import co.elastic.apm.agent.impl.transaction.TransactionImpl;
 import co.elastic.apm.agent.objectpool.impl.QueueBasedObjectPool;
+import co.elastic.apm.agent.objectpool.impl.StripedObjectPool;
 import co.elastic.apm.agent.sdk.internal.pooling.ObjectPooling;
 import co.elastic.apm.agent.tracer.pooling.Allocator;
 import co.elastic.apm.agent.tracer.pooling.Recyclable;
@@ -40,7 +41,7 @@ public class ObjectPoolFactoryImpl implements co.elastic.apm.agent.tracer.poolin
 
     @Override
     public <T extends Recyclable> ObservableObjectPool<T> createRecyclableObjectPool(int maxCapacity, Allocator<T> allocator) {
-        return QueueBasedObjectPool.ofRecyclable(new MpmcAtomicArrayQueue<T>((maxCapacity)), false, allocator);
+        return StripedObjectPool.ofRecyclable(maxCapacity, allocator);
     }
 
     @Override
@@ -29,4 +29,21 @@ public interface ObservableObjectPool<T> extends co.elastic.apm.agent.tracer.poo
      * @return number of times that objects could not be returned to the pool because the pool was already full
      */
     long getGarbageCreated();
+
+    /**
+     * @return number of objects that have been served from a cache local to the calling thread,
+     * {@code 0} for pools that don't have such a cache
+     */
+    long getHits();
+
+    /**
+     * @return number of objects that have been served from the storage that is shared by all threads,
+     * {@code 0} for pools that don't have a cache local to the calling thread
+     */
+    long getSteals();
+
+    /**
+     * @return number of objects that had to be allocated because the pool was empty
+     */
+    long getMisses();
 }
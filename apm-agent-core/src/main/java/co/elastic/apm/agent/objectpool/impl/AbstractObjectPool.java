@@ -24,17 +24,20 @@ import co.elastic.apm.agent.tracer.pooling.Allocator;
 
 import javax.annotation.Nullable;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class AbstractObjectPool<T> implements ObservableObjectPool<T> {
 
     protected final Allocator<? extends T> allocator;
     protected final Resetter<? super T> resetter;
     private final AtomicInteger garbageCreated;
+    private final AtomicLong misses;
 
     protected AbstractObjectPool(Allocator<? extends T> allocator, Resetter<? super T> resetter) {
         this.allocator = allocator;
         this.resetter = resetter;
         this.garbageCreated = new AtomicInteger();
+        this.misses = new AtomicLong();
     }
 
     @Override
@@ -42,6 +45,7 @@ public abstract class AbstractObjectPool<T> implements ObservableObjectPool<T> {
         T object = tryCreateInstance();
         if (object == null) {
             // pool does not have available instance, falling back to creating a new one
+            misses.incrementAndGet();
             object = allocator.createInstance();
         }
         return object;
@@ -61,6 +65,21 @@ public abstract class AbstractObjectPool<T> implements ObservableObjectPool<T> {
         return garbageCreated.longValue();
     }
 
+    @Override
+    public long getHits() {
+        return 0;
+    }
+
+    @Override
+    public long getSteals() {
+        return 0;
+    }
+
+    @Override
+    public final long getMisses() {
+        return misses.get();
+    }
+
     /**
      * Pushes object reference back into the available pooled instances
      *
@@ -0,0 +1,258 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.objectpool.impl;
+
+import co.elastic.apm.agent.objectpool.ObservableObjectPool;
+import co.elastic.apm.agent.objectpool.Resetter;
+import co.elastic.apm.agent.tracer.pooling.Allocator;
+import co.elastic.apm.agent.tracer.pooling.Recyclable;
+import org.jctools.queues.atomic.MpmcAtomicArrayQueue;
+
+import javax.annotation.Nullable;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An object pool that puts small, bounded caches (magazines) in front of a shared queue (the depot),
+ * so that most {@link #createInstance()} and {@link #recycle(Object)} calls don't contend on the shared queue.
+ * <p>
+ * Instead of a magazine per thread, which would not play well with a large number of (virtual) threads,
+ * there's a fixed number of magazines and each thread is mapped to one of them based on its id.
+ * A magazine is guarded by a lock which is only ever acquired with {@link ReentrantLock#tryLock()}.
+ * If the magazine is contended, the depot is used directly instead of waiting.
+ * </p>
+ * <p>
+ * Objects are moved between magazines and the depot in batches of half a magazine:
+ * an empty magazine is refilled from the depot and a full magazine hands over half of its objects to the depot.
+ * </p>
+ *
+ * @param <T> pooled object type
+ */
+public class StripedObjectPool<T> extends AbstractObjectPool<T> {
+
+    private static final int MAX_STRIPES = 64;
+    private static final int MAX_MAGAZINE_SIZE = 16;
+    private static final int MIN_MAGAZINE_SIZE = 2;
+
+    private final Queue<T> depot;
+    private final Stripe<T>[] stripes;
+    private final int mask;
+    private final AtomicLong depotSteals = new AtomicLong();
+
+    /**
+     * Creates a pool for types that implement {@link Recyclable}, which is able to hold roughly {@code maxCapacity} objects.
+     * The number of magazines depends on the number of available processors.
+     * If the capacity is too small to be split into magazines, a plain {@link QueueBasedObjectPool} is returned.
+     *
+     * @param maxCapacity the maximum number of pooled objects
+     * @param allocator   a factory used to create new instances of the recyclable object
+     */
+    public static <T extends Recyclable> ObservableObjectPool<T> ofRecyclable(int maxCapacity, Allocator<T> allocator) {
+        int stripes = Math.min(MAX_STRIPES, nextPowerOfTwo(Runtime.getRuntime().availableProcessors()));
+        // at most half of the capacity is held in magazines
+        int magazineSize = Math.min(MAX_MAGAZINE_SIZE, maxCapacity / (2 * stripes));
+        if (magazineSize < MIN_MAGAZINE_SIZE) {
+            return QueueBasedObjectPool.ofRecyclable(new MpmcAtomicArrayQueue<T>(maxCapacity), false, allocator);
+        }
+        Queue<T> depot = new MpmcAtomicArrayQueue<T>(maxCapacity - stripes * magazineSize);
+        return new StripedObjectPool<T>(depot, stripes, magazineSize, allocator, Resetter.ForRecyclable.<T>get());
+    }
+
+    /**
+     * @param depot        the queue that is shared by all magazines
+     * @param stripes      the number of magazines, has to be a power of two
+     * @param magazineSize the capacity of each magazine, has to be at least {@value #MIN_MAGAZINE_SIZE}
+     * @param allocator    a factory used to create new instances when the pool is empty
+     * @param resetter     a reset strategy class
+     */
+    @SuppressWarnings("unchecked")
+    public StripedObjectPool(Queue<T> depot, int stripes, int magazineSize, Allocator<? extends T> allocator, Resetter<? super T> resetter) {
+        super(allocator, resetter);
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("The number of stripes has to be a power of two: " + stripes);
+        }
+        if (magazineSize < MIN_MAGAZINE_SIZE) {
+            throw new IllegalArgumentException("The magazine size has to be at least " + MIN_MAGAZINE_SIZE + ": " + magazineSize);
+        }
+        this.depot = depot;
+        this.mask = stripes - 1;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe<T>(magazineSize);
+        }
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    private Stripe<T> currentStripe() {
+        return stripes[(int) Thread.currentThread().getId() & mask];
+    }
+
+    @Nullable
+    @Override
+    protected T tryCreateInstance() {
+        Stripe<T> stripe = currentStripe();
+        if (stripe.lock.tryLock()) {
+            try {
+                return stripe.pop(depot);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        T obj = depot.poll();
+        if (obj != null) {
+            depotSteals.incrementAndGet();
+        }
+        return obj;
+    }
+
+    @Override
+    protected boolean returnToPool(T obj) {
+        Stripe<T> stripe = currentStripe();
+        if (stripe.lock.tryLock()) {
+            try {
+                return stripe.push(obj, depot);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return depot.offer(obj);
+    }
+
+    @Override
+    public int getObjectsInPool() {
+        int objects = depot.size();
+        for (Stripe<T> stripe : stripes) {
+            objects += stripe.size;
+        }
+        return objects;
+    }
+
+    @Override
+    public long getHits() {
+        long hits = 0;
+        for (Stripe<T> stripe : stripes) {
+            hits += stripe.hits;
+        }
+        return hits;
+    }
+
+    @Override
+    public long getSteals() {
+        long steals = depotSteals.get();
+        for (Stripe<T> stripe : stripes) {
+            steals += stripe.steals;
+        }
+        return steals;
+    }
+
+    @Override
+    public void clear() {
+        for (Stripe<T> stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.clear();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        depot.clear();
+    }
+
+    /**
+     * A magazine of pooled objects, all methods must only be called while holding the {@link #lock}.
+     * The counters are only written while holding the lock, reading them without the lock gives an approximate value.
+     */
+    private static class Stripe<T> {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Object[] objects;
+        private volatile int size;
+        private long hits;
+        private long steals;
+
+        private Stripe(int magazineSize) {
+            objects = new Object[magazineSize];
+        }
+
+        @Nullable
+        @SuppressWarnings("unchecked")
+        private T pop(Queue<T> depot) {
+            int size = this.size;
+            if (size == 0) {
+                T obj = depot.poll();
+                if (obj == null) {
+                    return null;
+                }
+                steals++;
+                // refill half of the magazine so that the next requests of this thread don't need to go to the depot
+                int refill = objects.length / 2;
+                T next;
+                while (size < refill && (next = depot.poll()) != null) {
+                    objects[size++] = next;
+                }
+                this.size = size;
+                return obj;
+            }
+            T obj = (T) objects[--size];
+            objects[size] = null;
+            this.size = size;
+            hits++;
+            return obj;
+        }
+
+        private boolean push(T obj, Queue<T> depot) {
+            int size = this.size;
+            if (size == objects.length) {
+                // hand over the least recently returned half of the magazine to the depot
+                int moved = 0;
+                int half = objects.length / 2;
+                while (moved < half && depot.offer(objectAt(moved))) {
+                    moved++;
+                }
+                if (moved == 0) {
+                    return false;
+                }
+                System.arraycopy(objects, moved, objects, 0, size - moved);
+                for (int i = size - moved; i < size; i++) {
+                    objects[i] = null;
+                }
+                size -= moved;
+            }
+            objects[size++] = obj;
+            this.size = size;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T objectAt(int index) {
+            return (T) objects[index];
+        }
+
+        private void clear() {
+            for (int i = 0; i < size; i++) {
+                objects[i] = null;
+            }
+            size = 0;
+        }
+    }
+}
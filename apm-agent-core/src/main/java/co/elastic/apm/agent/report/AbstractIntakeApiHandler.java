@@ -55,12 +55,20 @@ public class AbstractIntakeApiHandler {
     protected volatile boolean shutDown;
     private volatile boolean healthy = true;
     private long requestStartedNanos;
+    private boolean compressed;
+    /**
+     * {@code null} if {@link ReporterConfigurationImpl#isAdaptiveRequestLimits()} is disabled
+     */
+    @Nullable
+    private final AdaptiveRequestLimits adaptiveRequestLimits;
+    private boolean sizeLimitReached;
 
     protected AbstractIntakeApiHandler(ReporterConfigurationImpl reporterConfiguration, DslJsonSerializer payloadSerializer, ApmServerClient apmServerClient) {
         this.reporterConfiguration = reporterConfiguration;
         this.payloadSerializer = payloadSerializer.newWriter();
         this.apmServerClient = apmServerClient;
         this.deflater = new Deflater(Deflater.BEST_SPEED);
+        this.adaptiveRequestLimits = reporterConfiguration.isAdaptiveRequestLimits() ? new AdaptiveRequestLimits(reporterConfiguration) : null;
     }
 
     /*
@@ -82,16 +90,89 @@ public class AbstractIntakeApiHandler {
         if (countingOs == null) {
             return false;
         }
-        final long written = countingOs.getCount() + payloadSerializer.getBufferSize();
-        final boolean endRequest = written >= reporterConfiguration.getApiRequestSize();
+        final long written = estimateRequestSize(countingOs.getCount(), getUncompressedBytes(countingOs), payloadSerializer.getBufferSize());
+        final long sizeLimit = getApiRequestSizeLimit();
+        final boolean endRequest = written >= sizeLimit;
         if (endRequest && logger.isDebugEnabled()) {
-            logger.debug("Flushing, because request size limit exceeded {}/{}", written, reporterConfiguration.getApiRequestSize());
+            logger.debug("Flushing, because request size limit exceeded {}/{}", written, sizeLimit);
         }
+        sizeLimitReached = endRequest;
         return endRequest;
     }
 
+    /**
+     * Checks whether events which are buffered in memory, before a request is started for them,
+     * would exceed the size limit of a request, using the same estimate and limit as {@link #shouldEndRequest()}.
+     *
+     * @param bufferedBytes the size of the buffered, uncompressed events
+     * @return whether the buffered events should be sent
+     */
+    protected boolean isBufferSizeLimitExceeded(long bufferedBytes) {
+        return estimateRequestSize(0, 0, bufferedBytes) >= getApiRequestSizeLimit();
+    }
+
+    private long estimateRequestSize(long compressedBytes, long uncompressedBytes, long bufferedBytes) {
+        if (adaptiveRequestLimits != null) {
+            return adaptiveRequestLimits.estimateCompressedSize(compressedBytes, uncompressedBytes, bufferedBytes);
+        }
+        return compressedBytes + bufferedBytes;
+    }
+
+    private long getApiRequestSizeLimit() {
+        if (adaptiveRequestLimits != null) {
+            return adaptiveRequestLimits.getSizeLimit();
+        }
+        return reporterConfiguration.getApiRequestSize();
+    }
+
+    private long getUncompressedBytes(CountingOutputStream countingOs) {
+        return compressed ? deflater.getBytesRead() : countingOs.getCount();
+    }
+
+    /**
+     * @return the maximum time to keep a request open for, which is adapted to the load when
+     * {@link ReporterConfigurationImpl#isAdaptiveRequestLimits()} is enabled
+     */
+    protected long getApiRequestTimeMillis() {
+        if (adaptiveRequestLimits != null) {
+            return adaptiveRequestLimits.getTimeLimitMillis();
+        }
+        return reporterConfiguration.getApiRequestTime().getMillis();
+    }
+
+    /**
+     * @return the utilization of the queue of events which are waiting to be sent, from 0 to 1
+     */
+    protected double getQueueUtilization() {
+        return 0;
+    }
+
+    /**
+     * Called after the request limits have been adapted to the load of the last request.
+     *
+     * @param sizeLimit       the size limit of the compressed request body in bytes
+     * @param timeLimitMillis the time limit of a request in milliseconds
+     */
+    protected void onRequestLimitsAdapted(long sizeLimit, long timeLimitMillis) {
+    }
+
     @Nullable
     protected HttpURLConnection startRequest(String endpoint) throws Exception {
+        return startRequest(endpoint, null, null);
+    }
+
+    /**
+     * Starts a request to the provided endpoint and writes the metadata to it.
+     *
+     * @param endpoint       the intake API endpoint
+     * @param serviceName    the name of the service of all events of this request,
+     *                       or {@code null} to use the service of the agent in the metadata
+     * @param serviceVersion the version of the service of all events of this request
+     * @return the connection, or {@code null} if no APM Server is available
+     * @throws Exception if the request could not be started
+     */
+    @Nullable
+    protected HttpURLConnection startRequest(String endpoint, @Nullable String serviceName, @Nullable String serviceVersion) throws Exception {
         payloadSerializer.blockUntilReady();
         final HttpURLConnection connection = apmServerClient.startRequest(endpoint);
         if (connection == null) {
@@ -102,6 +183,7 @@ public class AbstractIntakeApiHandler {
                 logger.debug("Starting new request to {}", connection.getURL());
             }
             boolean useCompression = !isLocalhost(connection);
+            compressed = useCompression;
             connection.setRequestMethod("POST");
             connection.setDoOutput(true);
             connection.setChunkedStreamingMode(SerializationConstants.BUFFER_SIZE);
@@ -118,7 +200,11 @@ public class AbstractIntakeApiHandler {
                 os = countingOs;
             }
             payloadSerializer.setOutputStream(os);
-            payloadSerializer.appendMetaDataNdJsonToStream();
+            if (serviceName != null) {
+                payloadSerializer.appendMetaDataNdJsonToStream(serviceName, serviceVersion);
+            } else {
+                payloadSerializer.appendMetaDataNdJsonToStream();
+            }
             payloadSerializer.flushToOutputStream();
             requestStartedNanos = System.nanoTime();
         } catch (IOException e) {
@@ -195,20 +281,28 @@ public class AbstractIntakeApiHandler {
         }
         try (UrlConnectionUtils.ContextClassloaderScope clScope = UrlConnectionUtils.withContextClassloaderOf(connection)) {
             long writtenBytes = countingOs != null ? countingOs.getCount() : 0L;
+            long uncompressedBytes = 0L;
+            long responseStartedNanos = System.nanoTime();
+            long responseNanos = 0L;
+            boolean success = false;
             try {
                 payloadSerializer.fullFlush();
                 if (os != null) {
                     os.close();
                 }
                 writtenBytes = countingOs != null ? countingOs.getCount() : 0L;
+                uncompressedBytes = countingOs != null ? getUncompressedBytes(countingOs) : 0L;
                 if (logger.isDebugEnabled()) {
                     logger.debug("Flushing {} uncompressed {} compressed bytes", deflater.getBytesRead(), writtenBytes);
                 }
+                responseStartedNanos = System.nanoTime();
                 InputStream inputStream = connection.getInputStream();
                 final int responseCode = connection.getResponseCode();
+                responseNanos = System.nanoTime() - responseStartedNanos;
                 if (isFailed || responseCode >= 400) {
                     onRequestError(responseCode, writtenBytes, inputStream, null);
                 } else {
+                    success = true;
                     onRequestSuccess(writtenBytes);
                 }
             } catch (IOException e) {
@@ -218,6 +312,12 @@ public class AbstractIntakeApiHandler {
                     onRequestError(-1, writtenBytes, connection.getErrorStream(), e);
                 }
             } finally {
+                if (adaptiveRequestLimits != null) {
+                    adaptiveRequestLimits.onRequestEnded(responseStartedNanos - requestStartedNanos, responseNanos, uncompressedBytes, writtenBytes,
+                        sizeLimitReached, getQueueUtilization(), success);
+                    onRequestLimitsAdapted(adaptiveRequestLimits.getSizeLimit(), adaptiveRequestLimits.getTimeLimitMillis());
+                }
+                sizeLimitReached = false;
                 HttpUtils.consumeAndClose(connection);
                 connection = null;
                 os = null;
@@ -228,7 +328,7 @@ public class AbstractIntakeApiHandler {
     }
 
     protected boolean isApiRequestTimeExpired() {
-        return System.nanoTime() >= requestStartedNanos + TimeUnit.MILLISECONDS.toNanos(reporterConfiguration.getApiRequestTime().getMillis());
+        return System.nanoTime() >= requestStartedNanos + TimeUnit.MILLISECONDS.toNanos(getApiRequestTimeMillis());
     }
 
     private void onRequestError(Integer responseCode, long bytesWritten, InputStream inputStream, @Nullable IOException e) {
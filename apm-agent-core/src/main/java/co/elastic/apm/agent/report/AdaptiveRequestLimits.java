@@ -0,0 +1,161 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.report;
+
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the size and time limits of intake API requests to the load,
+ * between {@code api_request_size}/{@code api_request_time} and {@code api_request_max_size}/{@code api_request_max_time}.
+ * <ul>
+ *     <li>
+ *         The size limit is doubled when a request reached it while the APM Server was slow to respond or while the reporting queue
+ *         was filling up, as ending and starting requests then holds back the reporter.
+ *         It is halved when a request ends because of the time limit while using less than a quarter of the size limit.
+ *     </li>
+ *     <li>
+ *         The time limit is doubled when a request ends because of the time limit while carrying only a few events,
+ *         so that connections and metadata are amortized over more events.
+ *         It is halved when a request reaches the size limit or carries a lot of events.
+ *     </li>
+ *     <li>
+ *         Both limits go back to their lower bounds when a request fails, so that less events are lost on subsequent errors.
+ *     </li>
+ * </ul>
+ * <p>
+ * Also tracks the compression ratio of the requests, to estimate the compressed size of events which are not yet compressed.
+ * </p>
+ * <p>
+ * Not thread safe, only to be used by the reporter thread.
+ * </p>
+ */
+class AdaptiveRequestLimits {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveRequestLimits.class);
+
+    /**
+     * The share of the request duration the APM Server may take to respond before the request is considered slow
+     */
+    static final double SLOW_RESPONSE_RATIO = 0.1;
+    /**
+     * The utilization of the reporting queue above which the reporter is considered to fall behind
+     */
+    static final double HIGH_QUEUE_UTILIZATION = 0.5;
+    /**
+     * Requests smaller than {@code api_request_size} divided by this value are considered to only carry a few events
+     */
+    static final int SMALL_REQUEST_DIVISOR = 16;
+
+    private final ReporterConfigurationImpl reporterConfiguration;
+    private long sizeLimit;
+    private long timeLimitMillis;
+    private double compressionRatio = 1.0;
+
+    AdaptiveRequestLimits(ReporterConfigurationImpl reporterConfiguration) {
+        this.reporterConfiguration = reporterConfiguration;
+    }
+
+    /**
+     * @return the current size limit of the compressed request body in bytes
+     */
+    long getSizeLimit() {
+        long min = reporterConfiguration.getApiRequestSize();
+        return clamp(sizeLimit, min, Math.max(min, reporterConfiguration.getApiRequestMaxSize()));
+    }
+
+    /**
+     * @return the current time limit of a request in milliseconds
+     */
+    long getTimeLimitMillis() {
+        long min = reporterConfiguration.getApiRequestTime().getMillis();
+        return clamp(timeLimitMillis, min, Math.max(min, reporterConfiguration.getApiRequestMaxTime().getMillis()));
+    }
+
+    /**
+     * @return the ratio of compressed to uncompressed bytes of the previous requests
+     */
+    double getCompressionRatio() {
+        return compressionRatio;
+    }
+
+    /**
+     * Estimates the compressed size of a request.
+     *
+     * @param compressedBytes   the bytes which have been written to the connection
+     * @param uncompressedBytes the bytes which have been written, before compression
+     * @param bufferedBytes     the bytes which are buffered and not yet compressed
+     * @return the estimated compressed size of the request, once the buffered bytes have been written
+     */
+    long estimateCompressedSize(long compressedBytes, long uncompressedBytes, long bufferedBytes) {
+        return Math.max(compressedBytes, (long) ((uncompressedBytes + bufferedBytes) * compressionRatio));
+    }
+
+    /**
+     * Adapts the limits after a request has ended.
+     *
+     * @param durationNanos     the time between starting and ending the request
+     * @param responseNanos     the time the APM Server took to respond after the request body has been sent
+     * @param uncompressedBytes the size of the request body before compression
+     * @param compressedBytes   the size of the request body which has been sent
+     * @param sizeLimitReached  whether the request has been ended because of the size limit
+     * @param queueUtilization  the utilization of the reporting queue, from 0 to 1
+     * @param success           whether the request succeeded
+     */
+    void onRequestEnded(long durationNanos, long responseNanos, long uncompressedBytes, long compressedBytes,
+                        boolean sizeLimitReached, double queueUtilization, boolean success) {
+        if (uncompressedBytes > 0 && compressedBytes > 0) {
+            // smooths out the ratio, as the content of the requests varies
+            compressionRatio = (compressionRatio + Math.min(1.0, (double) compressedBytes / uncompressedBytes)) / 2;
+        }
+        long size = getSizeLimit();
+        long time = getTimeLimitMillis();
+        if (!success) {
+            // falls back to the configured limits, as the APM Server may be overloaded or unavailable
+            size = 0;
+            time = 0;
+        } else if (sizeLimitReached) {
+            if (responseNanos >= durationNanos * SLOW_RESPONSE_RATIO || queueUtilization >= HIGH_QUEUE_UTILIZATION) {
+                size *= 2;
+            }
+            time /= 2;
+        } else if (durationNanos >= TimeUnit.MILLISECONDS.toNanos(time)) {
+            if (compressedBytes < size / 4) {
+                size /= 2;
+            }
+            if (compressedBytes < reporterConfiguration.getApiRequestSize() / SMALL_REQUEST_DIVISOR && queueUtilization < HIGH_QUEUE_UTILIZATION) {
+                time *= 2;
+            } else if (compressedBytes >= reporterConfiguration.getApiRequestSize() / 4) {
+                time /= 2;
+            }
+        }
+        // otherwise, the request has been ended before reaching a limit, for example to flush, which doesn't tell anything about the load
+        sizeLimit = size;
+        timeLimitMillis = time;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Request limits are {} bytes and {} ms, compression ratio is {}", getSizeLimit(), getTimeLimitMillis(), compressionRatio);
+        }
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.min(Math.max(value, min), max);
+    }
+}
@@ -24,6 +24,7 @@ import co.elastic.apm.agent.configuration.ServerlessConfigurationImpl;
 import co.elastic.apm.agent.report.ssl.SslUtils;
 import co.elastic.apm.agent.sdk.logging.Logger;
 import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.util.CompletableFuture;
 import co.elastic.apm.agent.util.UrlConnectionUtils;
 import co.elastic.apm.agent.util.VersionUtils;
 import org.stagemonitor.configuration.ConfigurationOption;
@@ -73,6 +74,10 @@ public class ApmServerClient {
     private static final Version VERSION_7_0 = Version.of("7.0.0");
     private static final Version VERSION_7_4 = Version.of("7.4.0");
     private static final Version VERSION_8_0 = Version.of("8.0.0");
+    /**
+     * The minimum APM Server version that supports AWS Lambda
+     */
+    private static final Version VERSION_8_2 = Version.of("8.2.0");
     private static final Version VERSION_8_6 = Version.of("8.6.0");
     private static final Version VERSION_8_7_1 = Version.of("8.7.1");
 
@@ -126,7 +131,14 @@ public class ApmServerClient {
 
     private void setServerUrls(List<URL> serverUrls) {
         this.serverUrls = serverUrls;
-        this.apmServerVersion = healthChecker.checkHealthAndGetMinVersion();
+        if (serverlessConfiguration.isAwsLambdaFastStart()) {
+            // the health check request would be proxied by the Lambda extension to the APM Server, delaying the first invocation
+            CompletableFuture<Version> version = new CompletableFuture<>();
+            version.complete(VERSION_8_2);
+            this.apmServerVersion = version;
+        } else {
+            this.apmServerVersion = healthChecker.checkHealthAndGetMinVersion();
+        }
         this.errorCount.set(0);
     }
 
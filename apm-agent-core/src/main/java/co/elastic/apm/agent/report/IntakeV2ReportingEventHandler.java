@@ -18,18 +18,20 @@
  */
 package co.elastic.apm.agent.report;
 
+import co.elastic.apm.agent.impl.transaction.TraceContextImpl;
 import co.elastic.apm.agent.report.processor.ProcessorEventHandler;
 import co.elastic.apm.agent.report.serialize.DslJsonSerializer;
 import co.elastic.apm.agent.sdk.logging.Logger;
 import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.util.AgentScheduler;
 import co.elastic.apm.agent.util.ExecutorUtils;
 import co.elastic.apm.agent.sdk.internal.util.LoggerUtils;
 import com.dslplatform.json.DslJson;
 
 import javax.annotation.Nullable;
 import java.net.HttpURLConnection;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -46,9 +48,10 @@ public class IntakeV2ReportingEventHandler extends AbstractIntakeApiHandler impl
     private static final Logger logsSupportLogger = LoggerUtils.logOnce(LoggerFactory.getLogger(IntakeV2ReportingEventHandler.class));
 
     private final ProcessorEventHandler processorEventHandler;
-    private final ScheduledExecutorService timeoutTimer;
     @Nullable
     private Runnable timeoutTask;
+    @Nullable
+    private AgentScheduler.ScheduledTask scheduledTimeout;
 
     @Nullable
     private ApmServerReporter reporter;
@@ -56,6 +59,12 @@ public class IntakeV2ReportingEventHandler extends AbstractIntakeApiHandler impl
     private final ReportingEventCounter inflightEvents = new ReportingEventCounter();
 
     private final DslJson<Object> dslJson;
+    /**
+     * Buffers the events of services which are not the service of the agent,
+     * {@code null} if {@link ReporterConfigurationImpl#isGroupEventsByService()} is disabled
+     */
+    @Nullable
+    private final ServiceEventStreams serviceEventStreams;
 
     private long reported;
     private long dropped;
@@ -65,7 +74,7 @@ public class IntakeV2ReportingEventHandler extends AbstractIntakeApiHandler impl
         super(reporterConfiguration, payloadSerializer, apmServerClient);
         this.processorEventHandler = processorEventHandler;
         this.dslJson = new DslJson<>(new DslJson.Settings<>());
-        this.timeoutTimer = ExecutorUtils.createSingleThreadSchedulingDaemonPool("request-timeout-timer");
+        this.serviceEventStreams = reporterConfiguration.isGroupEventsByService() ? new ServiceEventStreams(payloadSerializer) : null;
     }
 
     @Override
@@ -85,9 +94,9 @@ public class IntakeV2ReportingEventHandler extends AbstractIntakeApiHandler impl
                 logger.debug("Receiving {} event (sequence {})", event.getType(), sequence);
             }
             if (!shutDown) {
-                if (connection != null && isApiRequestTimeExpired()) {
+                if ((connection != null && isApiRequestTimeExpired()) || isServiceEventsTimeExpired()) {
                     logger.debug("Request flush because the request timeout occurred");
-                    endRequest();
+                    endRequests();
                 }
                 dispatchEvent(event, sequence, endOfBatch);
             }
@@ -109,11 +118,11 @@ public class IntakeV2ReportingEventHandler extends AbstractIntakeApiHandler impl
                 // wakeup silently ignored
                 break;
             case MAKE_FLUSH_REQUEST:
-                endRequest();
+                endRequests();
                 connection = startRequest(INTAKE_V2_FLUSH_URL);
                 // continuing to behave as END_REQUEST
             case END_REQUEST:
-                endRequest();
+                endRequests();
                 break;
             case SHUTDOWN:
                 handleShutdownEvent();
@@ -133,11 +142,16 @@ public class IntakeV2ReportingEventHandler extends AbstractIntakeApiHandler impl
 
     private void handleShutdownEvent() {
         shutDown = true;
-        endRequest();
+        endRequests();
     }
 
     private void handleIntakeEvent(ReportingEvent event, long sequence, boolean endOfBatch) {
         processorEventHandler.onEvent(event, sequence, endOfBatch);
+        ServiceEventStreams.Stream serviceEventStream = getServiceEventStream(event);
+        if (serviceEventStream != null) {
+            bufferServiceEvent(serviceEventStream, event);
+            return;
+        }
         try {
             inflightEvents.increment(event.getType());
             if (connection == null) {
@@ -160,7 +174,120 @@ public class IntakeV2ReportingEventHandler extends AbstractIntakeApiHandler impl
         }
 
         if (shouldEndRequest()) {
-            endRequest();
+            endRequests();
+        }
+    }
+
+    /**
+     * Returns the stream to buffer the event in if the event belongs to a service which is not the service of the agent.
+     *
+     * @param event the event
+     * @return the stream of the service of the event, or {@code null} if the event is to be sent in the current request
+     */
+    @Nullable
+    private ServiceEventStreams.Stream getServiceEventStream(ReportingEvent event) {
+        if (serviceEventStreams == null) {
+            return null;
+        }
+        TraceContextImpl traceContext;
+        if (event.getTransaction() != null) {
+            traceContext = event.getTransaction().getTraceContext();
+        } else if (event.getSpan() != null) {
+            traceContext = event.getSpan().getTraceContext();
+        } else if (event.getError() != null) {
+            traceContext = event.getError().getTraceContext();
+        } else {
+            return null;
+        }
+        String serviceName = traceContext.getServiceName();
+        if (serviceName == null) {
+            return null;
+        }
+        return serviceEventStreams.get(serviceName, traceContext.getServiceVersion());
+    }
+
+    private void bufferServiceEvent(ServiceEventStreams.Stream stream, ReportingEvent event) {
+        //noinspection ConstantConditions
+        if (serviceEventStreams.onBufferEvent() && connection == null && timeoutTask != null) {
+            // makes sure the buffered events are sent after api_request_time even if no other events are reported
+            cancelTimeout();
+            scheduledTimeout = ExecutorUtils.getAgentScheduler().schedule("request-timeout-timer", timeoutTask,
+                getApiRequestTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+        writeEvent(stream.getWriter(), event);
+        stream.getEvents().increment(event.getType());
+        if (isBufferSizeLimitExceeded(stream.getBufferSize())) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Flushing, because request size limit of service {} exceeded", stream.getServiceName());
+            }
+            endRequests();
+        }
+    }
+
+    private boolean isServiceEventsTimeExpired() {
+        return serviceEventStreams != null
+            && serviceEventStreams.isApiRequestTimeExpired(TimeUnit.MILLISECONDS.toNanos(getApiRequestTimeMillis()));
+    }
+
+    /**
+     * Ends the current request and sends the buffered events of other services, in a request per service.
+     */
+    private void endRequests() {
+        endRequest();
+        if (serviceEventStreams == null || serviceEventStreams.isEmpty()) {
+            return;
+        }
+        cancelTimeout();
+        boolean failed = false;
+        List<ServiceEventStreams.Stream> streams = serviceEventStreams.drain();
+        for (ServiceEventStreams.Stream stream : streams) {
+            if (!failed) {
+                failed = !sendServiceEvents(stream);
+            } else {
+                dropServiceEvents(stream.getEvents());
+            }
+            stream.reset();
+        }
+    }
+
+    /**
+     * @param stream the buffered events of a service
+     * @return {@code false} if the events could not be sent
+     */
+    private boolean sendServiceEvents(ServiceEventStreams.Stream stream) {
+        inflightEvents.addAll(stream.getEvents());
+        try {
+            connection = startRequest(INTAKE_V2_URL, stream.getServiceName(), stream.getServiceVersion());
+            if (connection == null) {
+                inflightEvents.reset();
+                dropServiceEvents(stream.getEvents());
+                return false;
+            }
+            DslJsonSerializer.Writer writer = stream.getWriter();
+            payloadSerializer.writeBytes(writer.getJsonWriter().getByteBuffer(), writer.getBufferSize());
+        } catch (Exception e) {
+            logger.error("Failed to send the events of service {} with this error: {}", stream.getServiceName(), e.getMessage());
+            logger.debug("Event handling failure", e);
+            endRequestExceptionally();
+            return false;
+        }
+        int errorsBefore = errorCount;
+        endRequest();
+        return errorCount <= errorsBefore;
+    }
+
+    private void dropServiceEvents(ReportingEventCounter events) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Failed to get APM server connection, dropping events: {}", events);
+        }
+        dropped += events.getTotalCount();
+        if (reporter != null) {
+            ReporterMonitor monitor = reporter.getReporterMonitor();
+            for (ReportingEvent.ReportingEventType type : ReportingEvent.ReportingEventType.values()) {
+                for (long i = events.getCount(type); i > 0; i--) {
+                    monitor.eventDroppedAfterDequeue(type);
+                }
+            }
         }
     }
 
@@ -180,6 +307,10 @@ public class IntakeV2ReportingEventHandler extends AbstractIntakeApiHandler impl
     }
 
     private void writeEvent(ReportingEvent event) {
+        writeEvent(payloadSerializer, event);
+    }
+
+    private void writeEvent(DslJsonSerializer.Writer payloadSerializer, ReportingEvent event) {
         if (event.getTransaction() != null) {
             payloadSerializer.serializeTransactionNdJson(event.getTransaction());
         } else if (event.getSpan() != null) {
@@ -210,16 +341,32 @@ public class IntakeV2ReportingEventHandler extends AbstractIntakeApiHandler impl
         HttpURLConnection connection = super.startRequest(endpoint);
         if (connection != null) {
             if (timeoutTask != null) {
-                long requestTimeoutMillis = reporterConfiguration.getApiRequestTime().getMillis();
+                long requestTimeoutMillis = getApiRequestTimeMillis();
                 if (logger.isDebugEnabled()) {
                     logger.debug("Scheduling request timeout in {} seconds", TimeUnit.MILLISECONDS.toSeconds(requestTimeoutMillis));
                 }
-                timeoutTimer.schedule(timeoutTask, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+                cancelTimeout();
+                scheduledTimeout = ExecutorUtils.getAgentScheduler().schedule("request-timeout-timer", timeoutTask, requestTimeoutMillis, TimeUnit.MILLISECONDS);
             }
         }
         return connection;
     }
 
+    @Override
+    protected double getQueueUtilization() {
+        if (reporter == null) {
+            return 0;
+        }
+        return (double) reporter.getQueueElementCount() / reporter.getQueueCapacity();
+    }
+
+    @Override
+    protected void onRequestLimitsAdapted(long sizeLimit, long timeLimitMillis) {
+        if (reporter != null) {
+            reporter.getReporterMonitor().requestLimitsAdapted(sizeLimit, timeLimitMillis);
+        }
+    }
+
     @Override
     protected void onRequestSuccess(long bytesWritten) {
         long totalCount = inflightEvents.getTotalCount();
@@ -270,7 +417,15 @@ public class IntakeV2ReportingEventHandler extends AbstractIntakeApiHandler impl
         super.close();
         logger.info("Reported events: {}", reported);
         logger.info("Dropped events: {}", dropped);
-        timeoutTimer.shutdownNow();
+        cancelTimeout();
+    }
+
+    private void cancelTimeout() {
+        AgentScheduler.ScheduledTask timeout = scheduledTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+            scheduledTimeout = null;
+        }
     }
 
     /**
@@ -191,6 +191,59 @@ public class ReporterConfigurationImpl extends ConfigurationOptionProvider imple
             "Allowed byte units are `b`, `kb` and `mb`. `1kb` is equal to `1024b`.")
         .buildWithDefault(ByteValue.of("768kb"));
 
+    private final ConfigurationOption<Boolean> groupEventsByService = ConfigurationOption.booleanOption()
+        .key("group_events_by_service")
+        .tags("performance", "added[1.57.0]", "experimental")
+        .configurationCategory(REPORTER_CATEGORY)
+        .dynamic(false)
+        .description("When set to true, events which belong to another service than the one of the agent, for example because the service name " +
+            "is derived from the name of the web application, are sent in separate requests to the APM Server, one for each service.\n" +
+            "The service is then part of the metadata of the request instead of being serialized on each event, " +
+            "which reduces the size of the requests in application servers which host many services.\n" +
+            "The events of each service are buffered in memory until the current request ends, " +
+            "see <<config-api-request-time,`api_request_time`>> and <<config-api-request-size,`api_request_size`>>.")
+        .buildWithDefault(false);
+
+    private final ConfigurationOption<Boolean> adaptiveRequestLimits = ConfigurationOption.booleanOption()
+        .key("adaptive_request_limits")
+        .tags("performance", "added[1.57.0]", "experimental")
+        .configurationCategory(REPORTER_CATEGORY)
+        .dynamic(false)
+        .description("When set to true, the agent adapts the size and the duration of the requests to the APM Server to the load.\n" +
+            "\n" +
+            "When the size limit is reached while the server responds slowly or the reporting queue fills up, " +
+            "the size limit is raised up to <<config-api-request-max-size,`api_request_max_size`>>, so that less time is spent " +
+            "on ending and starting requests.\n" +
+            "When requests only carry a few events, the duration is raised up to <<config-api-request-max-time,`api_request_max_time`>>, " +
+            "so that fewer requests, connections and metadata are sent.\n" +
+            "The limits go back to <<config-api-request-size,`api_request_size`>> and <<config-api-request-time,`api_request_time`>> " +
+            "when the load goes down or up again, or when a request fails.\n" +
+            "The compressed size of the events which are not yet written to the request is estimated from the compression ratio " +
+            "of the previous requests.")
+        .buildWithDefault(false);
+
+    private final ConfigurationOption<ByteValue> apiRequestMaxSize = ByteValueConverter.byteOption()
+        .key("api_request_max_size")
+        .tags("performance", "added[1.57.0]", "experimental")
+        .configurationCategory(REPORTER_CATEGORY)
+        .dynamic(true)
+        .description("The upper bound of the request size when <<config-adaptive-request-limits,`adaptive_request_limits`>> is enabled.\n" +
+            "Values lower than <<config-api-request-size,`api_request_size`>> are ignored.\n" +
+            "\n" +
+            "Allowed byte units are `b`, `kb` and `mb`. `1kb` is equal to `1024b`.")
+        .buildWithDefault(ByteValue.of("3mb"));
+
+    private final ConfigurationOption<TimeDuration> apiRequestMaxTime = TimeDurationValueConverter.durationOption("s")
+        .key("api_request_max_time")
+        .tags("performance", "added[1.57.0]", "experimental")
+        .configurationCategory(REPORTER_CATEGORY)
+        .dynamic(true)
+        .description("The upper bound of the request duration when <<config-adaptive-request-limits,`adaptive_request_limits`>> is enabled.\n" +
+            "Values lower than <<config-api-request-time,`api_request_time`>> are ignored.\n" +
+            "\n" +
+            "NOTE: This value has to be lower than the APM Server's `read_timeout` setting.")
+        .buildWithDefault(TimeDuration.of("30s"));
+
     private final ConfigurationOption<TimeDuration> metricsInterval = TimeDurationValueConverter.durationOption("s")
         .key("metrics_interval")
         .tags("added[1.3.0]")
@@ -296,6 +349,22 @@ public class ReporterConfigurationImpl extends ConfigurationOptionProvider imple
         return apiRequestSize.get().getBytes();
     }
 
+    public boolean isGroupEventsByService() {
+        return groupEventsByService.get();
+    }
+
+    public boolean isAdaptiveRequestLimits() {
+        return adaptiveRequestLimits.get();
+    }
+
+    public long getApiRequestMaxSize() {
+        return apiRequestMaxSize.get().getBytes();
+    }
+
+    public TimeDuration getApiRequestMaxTime() {
+        return apiRequestMaxTime.get();
+    }
+
     //Only whole seconds are used, so drop the fractional part at 1 second resolution
     @Override
     public long getMetricsIntervalMs() {
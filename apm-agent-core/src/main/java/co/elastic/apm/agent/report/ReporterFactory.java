@@ -19,6 +19,7 @@
 package co.elastic.apm.agent.report;
 
 import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
+import co.elastic.apm.agent.configuration.ServerlessConfigurationImpl;
 import co.elastic.apm.agent.objectpool.ObjectPoolFactoryImpl;
 import co.elastic.apm.agent.report.processor.ProcessorEventHandler;
 import co.elastic.apm.agent.report.serialize.DslJsonSerializer;
@@ -36,6 +37,10 @@ public class ReporterFactory {
 
         ReporterConfigurationImpl reporterConfiguration = configurationRegistry.getConfig(ReporterConfigurationImpl.class);
         CoreConfigurationImpl coreConfig = configurationRegistry.getConfig(CoreConfigurationImpl.class);
+        if (configurationRegistry.getConfig(ServerlessConfigurationImpl.class).isAwsLambdaFastStart()) {
+            return new SynchronousApmServerReporter(reporterConfiguration, coreConfig, ProcessorEventHandler.loadProcessors(configurationRegistry),
+                monitor, apmServerClient, payloadSerializer, poolFactory);
+        }
         ReportingEventHandler reportingEventHandler = getReportingEventHandler(configurationRegistry, reporterConfiguration, payloadSerializer, apmServerClient);
         return new ApmServerReporter(true, reporterConfiguration, coreConfig, reportingEventHandler, monitor, apmServerClient, payloadSerializer, poolFactory);
     }
@@ -30,6 +30,8 @@ public interface ReporterMonitor {
 
     void requestFinished(ReportingEventCounter requestContent, long acceptedEventCount, long bytesWritten, boolean success);
 
+    void requestLimitsAdapted(long sizeLimitBytes, long timeLimitMillis);
+
 
     ReporterMonitor NOOP = new ReporterMonitor() {
 
@@ -57,5 +59,10 @@ public interface ReporterMonitor {
         public void requestFinished(ReportingEventCounter contents, long acceptedEventCount, long bytesWritten, boolean success) {
 
         }
+
+        @Override
+        public void requestLimitsAdapted(long sizeLimitBytes, long timeLimitMillis) {
+
+        }
     };
 }
@@ -0,0 +1,165 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.report;
+
+import co.elastic.apm.agent.report.serialize.DslJsonSerializer;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers the serialized events of services which are not the service of the agent,
+ * so that they can be sent in a request per service, with the service in the metadata of the request.
+ * <p>
+ * Not thread safe, only to be used by the reporter thread.
+ * </p>
+ */
+class ServiceEventStreams {
+
+    private final DslJsonSerializer serializer;
+    private final Map<String, Map<String, Stream>> streams = new HashMap<>();
+    private long bufferedSinceNanos;
+    private boolean empty = true;
+
+    ServiceEventStreams(DslJsonSerializer serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * Returns the stream of the service, which is created if there's none yet.
+     *
+     * @param serviceName    the name of the service
+     * @param serviceVersion the version of the service
+     * @return the stream of the service
+     */
+    Stream get(String serviceName, @Nullable String serviceVersion) {
+        Map<String, Stream> versions = streams.get(serviceName);
+        if (versions == null) {
+            versions = new HashMap<>();
+            streams.put(serviceName, versions);
+        }
+        Stream stream = versions.get(serviceVersion);
+        if (stream == null) {
+            stream = new Stream(serviceName, serviceVersion, serializer.newWriter());
+            versions.put(serviceVersion, stream);
+        }
+        return stream;
+    }
+
+    /**
+     * To be called before an event is buffered.
+     *
+     * @return {@code true} if this is the first buffered event since the streams were drained
+     */
+    boolean onBufferEvent() {
+        if (empty) {
+            empty = false;
+            bufferedSinceNanos = System.nanoTime();
+            return true;
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @param apiRequestTimeNanos the maximum time events are buffered
+     * @return whether there are events which are buffered for longer than the provided time
+     */
+    boolean isApiRequestTimeExpired(long apiRequestTimeNanos) {
+        return !empty && System.nanoTime() >= bufferedSinceNanos + apiRequestTimeNanos;
+    }
+
+    /**
+     * Removes all streams which contain events, so that the buffered events can be sent.
+     * Streams which don't contain events are discarded so that services which stopped sending events don't retain their buffer.
+     *
+     * @return the streams which contain events
+     */
+    List<Stream> drain() {
+        List<Stream> result = new ArrayList<>();
+        for (Iterator<Map<String, Stream>> versionsIterator = streams.values().iterator(); versionsIterator.hasNext(); ) {
+            Map<String, Stream> versions = versionsIterator.next();
+            for (Iterator<Stream> iterator = versions.values().iterator(); iterator.hasNext(); ) {
+                Stream stream = iterator.next();
+                if (stream.isEmpty()) {
+                    iterator.remove();
+                } else {
+                    result.add(stream);
+                }
+            }
+            if (versions.isEmpty()) {
+                versionsIterator.remove();
+            }
+        }
+        empty = true;
+        return result;
+    }
+
+    static class Stream {
+        private final String serviceName;
+        @Nullable
+        private final String serviceVersion;
+        private final DslJsonSerializer.Writer writer;
+        private final ReportingEventCounter events = new ReportingEventCounter();
+
+        private Stream(String serviceName, @Nullable String serviceVersion, DslJsonSerializer.Writer writer) {
+            this.serviceName = serviceName;
+            this.serviceVersion = serviceVersion;
+            this.writer = writer;
+            writer.setServiceInMetaData(true);
+        }
+
+        String getServiceName() {
+            return serviceName;
+        }
+
+        @Nullable
+        String getServiceVersion() {
+            return serviceVersion;
+        }
+
+        DslJsonSerializer.Writer getWriter() {
+            return writer;
+        }
+
+        ReportingEventCounter getEvents() {
+            return events;
+        }
+
+        int getBufferSize() {
+            return writer.getBufferSize();
+        }
+
+        boolean isEmpty() {
+            return events.getTotalCount() == 0;
+        }
+
+        void reset() {
+            writer.resetState();
+            events.reset();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.report;
+
+import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
+import co.elastic.apm.agent.impl.error.ErrorCaptureImpl;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import co.elastic.apm.agent.objectpool.ObjectPoolFactoryImpl;
+import co.elastic.apm.agent.report.processor.ProcessorEventHandler;
+import co.elastic.apm.agent.report.serialize.DslJsonSerializer;
+import co.elastic.apm.agent.sdk.internal.util.LoggerUtils;
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import com.dslplatform.json.JsonWriter;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+import static co.elastic.apm.agent.report.IntakeV2ReportingEventHandler.INTAKE_V2_FLUSH_URL;
+import static co.elastic.apm.agent.report.IntakeV2ReportingEventHandler.INTAKE_V2_URL;
+
+/**
+ * Serializes events on the reporting thread and sends them to the APM Server with a single request when the reporter is
+ * {@linkplain #flush(long, TimeUnit, boolean) flushed}.
+ * <p>
+ * This reporter is used on AWS Lambda when {@code aws_lambda_fast_start} is enabled.
+ * Unlike the {@link ApmServerReporter}, it does not start a reporter thread and does not hold an HTTP request open,
+ * which makes the first invocation of a function faster.
+ * The function invocation ends with a flush that makes a single request to the Lambda extension,
+ * containing all events of the invocation, that tells the extension that the invocation is done.
+ * </p>
+ * <p>
+ * Events are buffered until the reporter is flushed or {@code api_request_size} is exceeded.
+ * As the request is made by the thread of the function, the reporter does not back off after a connection error,
+ * the buffered events are dropped instead.
+ * </p>
+ */
+public class SynchronousApmServerReporter extends AbstractIntakeApiHandler implements Reporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SynchronousApmServerReporter.class);
+
+    private static final Logger logsSupportLogger = LoggerUtils.logOnce(LoggerFactory.getLogger(SynchronousApmServerReporter.class));
+
+    private final CoreConfigurationImpl coreConfiguration;
+    private final ProcessorEventHandler processorEventHandler;
+    private final ReporterMonitor monitor;
+    private final PartialTransactionReporter partialTransactionReporter;
+    /**
+     * Serializes the events into an in-memory buffer, as the request is only started on flush
+     */
+    private final DslJsonSerializer.Writer eventSerializer;
+    private final ReportingEvent event = new ReportingEvent();
+    private final ReportingEventCounter bufferedEvents = new ReportingEventCounter();
+    private long reported;
+    private long dropped;
+    private boolean lastRequestSucceeded;
+
+    public SynchronousApmServerReporter(ReporterConfigurationImpl reporterConfiguration,
+                                        CoreConfigurationImpl coreConfiguration,
+                                        ProcessorEventHandler processorEventHandler,
+                                        ReporterMonitor monitor,
+                                        ApmServerClient apmServerClient,
+                                        DslJsonSerializer serializer,
+                                        ObjectPoolFactoryImpl poolFactory) {
+        super(reporterConfiguration, serializer, apmServerClient);
+        this.coreConfiguration = coreConfiguration;
+        this.processorEventHandler = processorEventHandler;
+        this.monitor = monitor;
+        this.eventSerializer = serializer.newWriter();
+        this.partialTransactionReporter = new PartialTransactionReporter(apmServerClient, serializer, poolFactory);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void reportPartialTransaction(TransactionImpl transaction) {
+        if (!coreConfiguration.isContextPropagationOnly()) {
+            partialTransactionReporter.reportPartialTransaction(transaction);
+        }
+    }
+
+    @Override
+    public synchronized void report(TransactionImpl transaction) {
+        event.setTransaction(transaction);
+        handleEvent();
+    }
+
+    @Override
+    public synchronized void report(SpanImpl span) {
+        event.setSpan(span);
+        handleEvent();
+    }
+
+    @Override
+    public synchronized void report(ErrorCaptureImpl error) {
+        event.setError(error);
+        handleEvent();
+    }
+
+    @Override
+    public synchronized void reportMetrics(JsonWriter jsonWriter) {
+        if (jsonWriter.size() == 0) {
+            return;
+        }
+        event.setMetricSet(jsonWriter);
+        handleEvent();
+    }
+
+    @Override
+    public synchronized void reportLog(String log) {
+        if (log.isEmpty()) {
+            return;
+        }
+        event.setStringLog(log);
+        handleEvent();
+    }
+
+    @Override
+    public void reportLog(byte[] log) {
+        reportLogBytes(log, false);
+    }
+
+    @Override
+    public void reportAgentLog(byte[] log) {
+        reportLogBytes(log, true);
+    }
+
+    private synchronized void reportLogBytes(byte[] log, boolean agentLog) {
+        if (log.length == 0) {
+            return;
+        }
+        event.setBytesLog(log, agentLog);
+        handleEvent();
+    }
+
+    private void handleEvent() {
+        ReportingEvent.ReportingEventType type = event.getType();
+        try {
+            if (coreConfiguration.isContextPropagationOnly() || shutDown) {
+                logger.debug("Dropping event {}", event);
+                return;
+            }
+            monitor.eventCreated(type, reporterConfiguration.getApiRequestSize(), eventSerializer.getBufferSize());
+            processorEventHandler.onEvent(event, 0, true);
+            if (writeEvent()) {
+                bufferedEvents.increment(type);
+            }
+        } finally {
+            event.end();
+            event.resetState();
+        }
+        if (isBufferSizeLimitExceeded(eventSerializer.getBufferSize())) {
+            logger.debug("Sending events, because the request size limit is exceeded");
+            sendBufferedEvents(INTAKE_V2_URL, -1);
+        }
+    }
+
+    private boolean writeEvent() {
+        if (event.getTransaction() != null) {
+            eventSerializer.serializeTransactionNdJson(event.getTransaction());
+        } else if (event.getSpan() != null) {
+            eventSerializer.serializeSpanNdJson(event.getSpan());
+        } else if (event.getError() != null) {
+            eventSerializer.serializeErrorNdJson(event.getError());
+        } else if (event.getJsonWriter() != null) {
+            eventSerializer.writeBytes(event.getJsonWriter().getByteBuffer(), event.getJsonWriter().size());
+        } else if (event.getBytesLog() != null && logsSupported()) {
+            eventSerializer.serializeLogNdJson(event.getBytesLog());
+        } else if (event.getStringLog() != null && logsSupported()) {
+            eventSerializer.serializeLogNdJson(event.getStringLog());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private boolean logsSupported() {
+        if (apmServerClient.supportsLogsEndpoint()) {
+            return true;
+        }
+        logsSupportLogger.warn("sending logs to apm server is not supported, upgrading to a more recent version is required");
+        return false;
+    }
+
+    @Override
+    public boolean flush() {
+        return flush(-1, TimeUnit.NANOSECONDS, false);
+    }
+
+    @Override
+    public synchronized boolean flush(long timeout, TimeUnit unit, boolean followupWithFlushRequest) {
+        if (followupWithFlushRequest) {
+            // a single request that contains the buffered events and tells the Lambda extension that the invocation is done
+            return sendBufferedEvents(INTAKE_V2_FLUSH_URL, timeout < 0 ? -1 : unit.toMillis(timeout));
+        }
+        if (bufferedEvents.getTotalCount() == 0) {
+            return true;
+        }
+        return sendBufferedEvents(INTAKE_V2_URL, timeout < 0 ? -1 : unit.toMillis(timeout));
+    }
+
+    private boolean sendBufferedEvents(String endpoint, long timeoutMillis) {
+        lastRequestSucceeded = false;
+        try {
+            connection = startRequest(endpoint);
+            if (connection == null) {
+                logger.debug("Failed to get APM server connection, dropping {} events", bufferedEvents.getTotalCount());
+                dropBufferedEvents();
+                return false;
+            }
+            if (timeoutMillis >= 0) {
+                // the response is awaited on the thread of the function, the connect timeout is bounded by server_timeout
+                connection.setReadTimeout((int) Math.max(1, Math.min(timeoutMillis, Integer.MAX_VALUE)));
+            }
+            JsonWriter events = eventSerializer.getJsonWriter();
+            payloadSerializer.writeBytes(events.getByteBuffer(), events.size());
+            endRequest();
+        } catch (Exception e) {
+            logger.error("Failed to send events to the APM Server: {}", e.getMessage());
+            logger.debug("Sending events failed", e);
+            endRequestExceptionally();
+        } finally {
+            eventSerializer.getJsonWriter().reset();
+            bufferedEvents.reset();
+        }
+        return lastRequestSucceeded;
+    }
+
+    private void dropBufferedEvents() {
+        dropped += bufferedEvents.getTotalCount();
+        for (ReportingEvent.ReportingEventType type : ReportingEvent.ReportingEventType.values()) {
+            for (long i = bufferedEvents.getCount(type); i > 0; i--) {
+                monitor.eventDroppedAfterDequeue(type);
+            }
+        }
+    }
+
+    @Override
+    protected void onRequestSuccess(long bytesWritten) {
+        long totalCount = bufferedEvents.getTotalCount();
+        reported += totalCount;
+        monitor.requestFinished(new ReportingEventCounter(bufferedEvents), totalCount, bytesWritten, true);
+        lastRequestSucceeded = true;
+        super.onRequestSuccess(bytesWritten);
+    }
+
+    @Override
+    protected void onConnectionError(@Nullable Integer responseCode, @Nullable String responseBody, long bytesWritten) {
+        // not backing off, as that would block the function
+        dropped += bufferedEvents.getTotalCount();
+        monitor.requestFinished(new ReportingEventCounter(bufferedEvents), 0, bytesWritten, false);
+        if (responseCode == null || responseCode > 429) {
+            apmServerClient.onConnectionError();
+        }
+    }
+
+    @Override
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public synchronized long getReported() {
+        return reported;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (bufferedEvents.getTotalCount() > 0) {
+            sendBufferedEvents(INTAKE_V2_URL, TimeUnit.SECONDS.toMillis(5));
+        }
+        super.close();
+        logger.info("Reported events: {}", reported);
+        logger.info("Dropped events: {}", dropped);
+    }
+}
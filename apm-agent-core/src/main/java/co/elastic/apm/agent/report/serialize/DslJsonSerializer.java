@@ -54,6 +54,7 @@ import co.elastic.apm.agent.impl.transaction.DroppedSpanStats;
 import co.elastic.apm.agent.impl.transaction.FaasImpl;
 import co.elastic.apm.agent.impl.transaction.FaasTriggerImpl;
 import co.elastic.apm.agent.impl.transaction.IdImpl;
+import co.elastic.apm.agent.impl.transaction.OTelAttributes;
 import co.elastic.apm.agent.impl.transaction.OTelSpanKind;
 import co.elastic.apm.agent.impl.transaction.SpanCount;
 import co.elastic.apm.agent.impl.transaction.SpanImpl;
@@ -62,10 +63,6 @@ import co.elastic.apm.agent.impl.transaction.TraceContextImpl;
 import co.elastic.apm.agent.impl.transaction.TransactionImpl;
 import co.elastic.apm.agent.report.ApmServerClient;
 import co.elastic.apm.agent.sdk.internal.collections.LongList;
-import co.elastic.apm.agent.sdk.internal.pooling.ObjectHandle;
-import co.elastic.apm.agent.sdk.internal.pooling.ObjectPool;
-import co.elastic.apm.agent.sdk.internal.pooling.ObjectPooling;
-import co.elastic.apm.agent.sdk.internal.util.IOUtils;
 import co.elastic.apm.agent.sdk.logging.Logger;
 import co.elastic.apm.agent.sdk.logging.LoggerFactory;
 import co.elastic.apm.agent.tracer.configuration.WebConfiguration;
@@ -85,18 +82,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.Buffer;
-import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.nio.charset.CoderResult;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -113,13 +107,6 @@ public class DslJsonSerializer {
     private static final Logger logger = LoggerFactory.getLogger(DslJsonSerializer.class);
     private static final List<String> excludedStackFramesPrefixes = Arrays.asList("java.lang.reflect.", "com.sun.", "sun.", "jdk.internal.");
 
-    private final ObjectPool<? extends ObjectHandle<CharBuffer>> requestBodyBufferPool = ObjectPooling.createWithDefaultFactory(new Callable<CharBuffer>() {
-        @Override
-        public CharBuffer call() throws Exception {
-            return CharBuffer.allocate(SerializationConstants.getMaxLongStringValueLength());
-        }
-    });
-
 
     private final StacktraceConfigurationImpl stacktraceConfiguration;
     private final WebConfiguration webConfiguration;
@@ -128,7 +115,16 @@ public class DslJsonSerializer {
     private final Future<MetaData> metaData;
     @Nullable
     private byte[] serializedMetaData;
+    /**
+     * The metadata which has been serialized, it's replaced when the metadata is discovered again after restoring from a checkpoint
+     */
+    @Nullable
+    private MetaData serializedMetaDataSource;
     private boolean serializedActivationMethod;
+    /**
+     * The serialized metadata of services which are not the service of the agent, keyed by service name and version
+     */
+    private final Map<String, Map<String, byte[]>> serializedServiceMetaData = new HashMap<>();
 
     public DslJsonSerializer(ConfigurationRegistry config, ApmServerClient apmServerClient, final Future<MetaData> metaData) {
         this.stacktraceConfiguration = config.getConfig(StacktraceConfigurationImpl.class);
@@ -147,11 +143,13 @@ public class DslJsonSerializer {
         MetaData meta = metaData.get(5, TimeUnit.SECONDS);
         synchronized (this) {
             boolean supportsActivationMethod = apmServerClient.supportsActivationMethod();
-            if (null != serializedMetaData && serializedActivationMethod == supportsActivationMethod) {
+            if (null != serializedMetaData && serializedMetaDataSource == meta && serializedActivationMethod == supportsActivationMethod) {
                 return;
             }
 
+            serializedMetaDataSource = meta;
             serializedActivationMethod = supportsActivationMethod;
+            serializedServiceMetaData.clear();
 
             JsonWriter metadataJW = new DslJson<>(new DslJson.Settings<>()).newWriter(4096);
 
@@ -163,14 +161,55 @@ public class DslJsonSerializer {
         }
     }
 
+    /**
+     * Returns the serialized metadata, with the name and version of the service replaced by the provided ones.
+     *
+     * @param serviceName    the name of the service
+     * @param serviceVersion the version of the service
+     * @return the serialized metadata of the service
+     * @throws UninitializedException if the metadata is not ready yet
+     */
+    private synchronized byte[] getServiceMetaData(String serviceName, @Nullable String serviceVersion) throws UninitializedException {
+        MetaData meta = serializedMetaDataSource;
+        if (meta == null) {
+            throw new UninitializedException("Cannot serialize metadata as it is not ready yet. Call blockUntilReady()");
+        }
+        Map<String, byte[]> serializedVersions = serializedServiceMetaData.get(serviceName);
+        if (serializedVersions == null) {
+            serializedVersions = new HashMap<>();
+            serializedServiceMetaData.put(serviceName, serializedVersions);
+        }
+        byte[] serialized = serializedVersions.get(serviceVersion);
+        if (serialized == null) {
+            JsonWriter metadataJW = new DslJson<>(new DslJson.Settings<>()).newWriter(4096);
+            serializeMetadata(meta, serviceName, serviceVersion, metadataJW,
+                apmServerClient.supportsConfiguredAndDetectedHostname(),
+                serializedActivationMethod);
+            serialized = metadataJW.toByteArray();
+            serializedVersions.put(serviceVersion, serialized);
+        }
+        return serialized;
+    }
+
     static void serializeMetadata(MetaData metaData,
                                   JsonWriter metadataJW,
                                   boolean supportsConfiguredAndDetectedHostname,
                                   boolean supportsAgentActivationMethod) {
+        ServiceImpl service = metaData.getService();
+        serializeMetadata(metaData, service.getName(), service.getVersion(), metadataJW, supportsConfiguredAndDetectedHostname,
+            supportsAgentActivationMethod);
+    }
+
+    private static void serializeMetadata(MetaData metaData,
+                                          @Nullable String serviceName,
+                                          @Nullable String serviceVersion,
+                                          JsonWriter metadataJW,
+                                          boolean supportsConfiguredAndDetectedHostname,
+                                          boolean supportsAgentActivationMethod) {
 
         StringBuilder metadataReplaceBuilder = new StringBuilder();
         metadataJW.writeByte(JsonWriter.OBJECT_START);
-        serializeService(metaData.getService(), metadataReplaceBuilder, metadataJW, supportsAgentActivationMethod);
+        serializeService(metaData.getService(), serviceName, serviceVersion, metadataReplaceBuilder, metadataJW, supportsAgentActivationMethod);
         metadataJW.writeByte(COMMA);
         serializeProcess(metaData.getProcess(), metadataReplaceBuilder, metadataJW);
         metadataJW.writeByte(COMMA);
@@ -202,11 +241,12 @@ public class DslJsonSerializer {
         }
     }
 
-    private static void serializeService(final ServiceImpl service, final StringBuilder replaceBuilder, final JsonWriter jw, boolean supportsAgentActivationMethod) {
+    private static void serializeService(final ServiceImpl service, @Nullable String serviceName, @Nullable String serviceVersion,
+                                         final StringBuilder replaceBuilder, final JsonWriter jw, boolean supportsAgentActivationMethod) {
         DslJsonUtil.writeFieldName("service", jw);
         jw.writeByte(JsonWriter.OBJECT_START);
 
-        writeField("name", service.getName(), replaceBuilder, jw);
+        writeField("name", serviceName, replaceBuilder, jw);
         writeField("id", service.getId(), replaceBuilder, jw);
         writeField("environment", service.getEnvironment(), replaceBuilder, jw);
 
@@ -235,7 +275,7 @@ public class DslJsonSerializer {
             serializeRuntime(runtime, replaceBuilder, jw);
         }
 
-        writeLastField("version", service.getVersion(), replaceBuilder, jw);
+        writeLastField("version", serviceVersion, replaceBuilder, jw);
         jw.writeByte(JsonWriter.OBJECT_END);
     }
 
@@ -684,8 +724,10 @@ public class DslJsonSerializer {
         // visible for testing
         final JsonWriter jw;
         private final StringBuilder replaceBuilder;
+        private final RequestBodyJsonWriter requestBodyWriter = new RequestBodyJsonWriter();
         @Nullable
         private OutputStream os;
+        private boolean serviceInMetaData;
 
         private Writer() {
             jw = new DslJson<>(new DslJson.Settings<>()).newWriter(SerializationConstants.BUFFER_SIZE);
@@ -761,6 +803,37 @@ public class DslJsonSerializer {
             jw.writeByte(NEW_LINE);
         }
 
+        /**
+         * Appends the serialized metadata of a service which is not the service of the agent to ND-JSON as a {@code metadata} line.
+         * <p>
+         * NOTE: Must be called after {@link DslJsonSerializer.Writer#blockUntilReady()} was called and returned, otherwise the
+         * cached serialized metadata may not be ready yet.
+         * </p>
+         *
+         * @param serviceName    the name of the service
+         * @param serviceVersion the version of the service
+         * @throws UninitializedException may be thrown if {@link DslJsonSerializer.Writer#blockUntilReady()} was not invoked
+         */
+        public void appendMetaDataNdJsonToStream(String serviceName, @Nullable String serviceVersion) throws UninitializedException {
+            byte[] serviceMetaData = getServiceMetaData(serviceName, serviceVersion);
+            jw.writeByte(JsonWriter.OBJECT_START);
+            writeFieldName("metadata");
+            jw.writeAscii(serviceMetaData);
+            jw.writeByte(JsonWriter.OBJECT_END);
+            jw.writeByte(NEW_LINE);
+        }
+
+        /**
+         * Sets whether the service of the serialized events is part of the metadata of the request,
+         * in which case the service name and version of the events are not serialized.
+         *
+         * @param serviceInMetaData {@code true} if the service is part of the metadata
+         * @see #appendMetaDataNdJsonToStream(String, String)
+         */
+        public void setServiceInMetaData(boolean serviceInMetaData) {
+            this.serviceInMetaData = serviceInMetaData;
+        }
+
         /**
          * Appends the serialized metadata to the underlying {@link OutputStream}.
          * <p>
@@ -1080,7 +1153,7 @@ public class DslJsonSerializer {
 
         private void serializeOtel(AbstractSpanImpl<?> span, List<IdImpl> profilingStackTraceIds, @Nullable BodyCaptureImpl httpRequestBody) {
             OTelSpanKind kind = span.getOtelKind();
-            Map<String, Object> attributes = span.getOtelAttributes();
+            OTelAttributes attributes = span.getOtelAttributes();
 
             boolean hasRequestBody = httpRequestBody != null && httpRequestBody.hasContent() && webConfiguration.isCaptureClientRequestBodyAsLabel();
             boolean hasAttributes = !attributes.isEmpty() || !profilingStackTraceIds.isEmpty() || hasRequestBody;
@@ -1101,20 +1174,32 @@ public class DslJsonSerializer {
                     writeFieldName("attributes");
                     jw.writeByte(OBJECT_START);
                     boolean isFirstAttrib = true;
-                    for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                    for (int i = 0, size = attributes.size(); i < size; i++) {
                         if (!isFirstAttrib) {
                             jw.writeByte(COMMA);
                         }
                         isFirstAttrib = false;
 
-                        writeFieldName(entry.getKey());
-                        Object o = entry.getValue();
-                        if (o instanceof Number) {
-                            serializeNumber((Number) o, jw);
-                        } else if (o instanceof String) {
-                            writeStringValue((String) o);
-                        } else if (o instanceof Boolean) {
-                            BoolConverter.serialize((Boolean) o, jw);
+                        writeFieldName(attributes.getKey(i));
+                        switch (attributes.getType(i)) {
+                            case OTelAttributes.TYPE_LONG:
+                                NumberConverter.serialize(attributes.getLong(i), jw);
+                                break;
+                            case OTelAttributes.TYPE_DOUBLE:
+                                NumberConverter.serialize(attributes.getDouble(i), jw);
+                                break;
+                            case OTelAttributes.TYPE_BOOLEAN:
+                                BoolConverter.serialize(attributes.getBoolean(i), jw);
+                                break;
+                            default:
+                                Object o = attributes.getObject(i);
+                                if (o instanceof Number) {
+                                    serializeNumber((Number) o, jw);
+                                } else if (o instanceof String) {
+                                    writeStringValue((String) o);
+                                } else if (o instanceof Boolean) {
+                                    BoolConverter.serialize((Boolean) o, jw);
+                                }
                         }
                     }
                     if (!profilingStackTraceIds.isEmpty()) {
@@ -1150,43 +1235,7 @@ public class DslJsonSerializer {
 
 
         private void writeRequestBodyAsString(JsonWriter jw, BodyCaptureImpl requestBody) {
-            try (ObjectHandle<CharBuffer> charBufferHandle = requestBodyBufferPool.createInstance()) {
-                CharBuffer charBuffer = charBufferHandle.get();
-                try {
-                    decodeRequestBodyBytes(requestBody, charBuffer);
-                    ((Buffer) charBuffer).flip();
-                    jw.writeString(charBuffer);
-                } finally {
-                    ((Buffer) charBuffer).clear();
-                }
-            }
-        }
-
-        private void decodeRequestBodyBytes(BodyCaptureImpl requestBody, CharBuffer charBuffer) {
-            CharSequence charset = requestBody.getCharset();
-            List<ByteBuffer> encodedBuffers = requestBody.getBody();
-            for (ByteBuffer buffer : encodedBuffers) {
-                ((Buffer) buffer).flip(); //make ready for reading
-            }
-
-            if (charset != null) {
-                CoderResult result = IOUtils.decode(encodedBuffers, charBuffer, charset.toString());
-                if (result != null && !result.isMalformed() && !result.isUnmappable()) {
-                    return;
-                }
-            }
-
-            //fallback to decoding by simply casting bytes to chars
-            ((Buffer) charBuffer).clear();
-            for (ByteBuffer buffer : encodedBuffers) {
-                ((Buffer) buffer).position(0);
-                while (buffer.hasRemaining() && charBuffer.hasRemaining()) {
-                    charBuffer.put((char) (((int) buffer.get()) & 0xFF));
-                }
-                if (!charBuffer.hasRemaining()) {
-                    return;
-                }
-            }
+            requestBodyWriter.write(requestBody, jw, SerializationConstants.getMaxLongStringValueLength());
         }
 
         private void serializeNumber(Number n, JsonWriter jw) {
@@ -1212,8 +1261,8 @@ public class DslJsonSerializer {
         }
 
         private void serializeServiceNameWithFramework(@Nullable final TransactionImpl transaction, final TraceContextImpl traceContext, final ServiceOriginImpl serviceOrigin) {
-            String serviceName = traceContext.getServiceName();
-            String serviceVersion = traceContext.getServiceVersion();
+            String serviceName = serviceInMetaData ? null : traceContext.getServiceName();
+            String serviceVersion = serviceInMetaData ? null : traceContext.getServiceVersion();
             boolean isFrameworkNameNotNull = transaction != null && transaction.getFrameworkName() != null;
             if (serviceName != null || serviceVersion != null || isFrameworkNameNotNull || serviceOrigin.hasContent()) {
                 writeFieldName("service");
@@ -1411,7 +1460,11 @@ public class DslJsonSerializer {
             writeFieldName("context");
             jw.writeByte(OBJECT_START);
 
-            DslJsonSerializer.serializeService(traceContext.getServiceName(), traceContext.getServiceVersion(), context.getServiceTarget(), replaceBuilder, jw);
+            if (serviceInMetaData) {
+                DslJsonSerializer.serializeService(null, null, context.getServiceTarget(), replaceBuilder, jw);
+            } else {
+                DslJsonSerializer.serializeService(traceContext.getServiceName(), traceContext.getServiceVersion(), context.getServiceTarget(), replaceBuilder, jw);
+            }
             serializeMessageContext(context.getMessage());
             serializeDbContext(context.getDb());
             serializeHttpContext(context.getHttp());
@@ -27,8 +27,11 @@ import co.elastic.apm.agent.tracer.metrics.Labels;
 import co.elastic.apm.agent.metrics.MetricRegistry;
 import co.elastic.apm.agent.metrics.MetricSet;
 import co.elastic.apm.agent.report.Reporter;
+import co.elastic.apm.agent.util.AgentScheduler;
+import co.elastic.apm.agent.util.ExecutorUtils;
 import com.dslplatform.json.JsonWriter;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -39,6 +42,8 @@ public class MetricRegistryReporter extends AbstractLifecycleListener implements
     private final ElasticApmTracer tracer;
     private final MetricRegistry metricRegistry;
     private final MetricRegistrySerializer serializer;
+    @Nullable
+    private AgentScheduler.ScheduledTask scheduledTask;
 
     public MetricRegistryReporter(ElasticApmTracer tracer) {
         this.tracer = tracer;
@@ -51,9 +56,7 @@ public class MetricRegistryReporter extends AbstractLifecycleListener implements
     public void start(Tracer tracer) {
         long intervalMs = tracer.getConfig(ReporterConfigurationImpl.class).getMetricsIntervalMs();
         if (intervalMs > 0) {
-            tracer.require(ElasticApmTracer.class)
-                .getSharedSingleThreadedPool()
-                .scheduleAtFixedRate(this, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+            scheduledTask = ExecutorUtils.getAgentScheduler().scheduleAtFixedRate("metrics-reporter", this, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
         }
     }
 
@@ -64,6 +67,11 @@ public class MetricRegistryReporter extends AbstractLifecycleListener implements
 
     @Override
     public void stop() throws Exception {
+        AgentScheduler.ScheduledTask task = scheduledTask;
+        if (task != null) {
+            task.cancel();
+            scheduledTask = null;
+        }
         // flushing out metrics before shutting down
         // this is especially important for counters as the counts that were accumulated between the last report and the shutdown would otherwise get lost
         tracer.getSharedSingleThreadedPool().submit(this);
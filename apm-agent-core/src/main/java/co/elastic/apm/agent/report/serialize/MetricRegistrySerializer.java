@@ -20,6 +20,7 @@ package co.elastic.apm.agent.report.serialize;
 
 import co.elastic.apm.agent.tracer.service.ServiceInfo;
 import co.elastic.apm.agent.tracer.metrics.DoubleSupplier;
+import co.elastic.apm.agent.metrics.Histogram;
 import co.elastic.apm.agent.metrics.MetricSet;
 import co.elastic.apm.agent.metrics.Timer;
 import co.elastic.apm.agent.tracer.metrics.DslJsonUtil;
@@ -93,6 +94,7 @@ public class MetricRegistrySerializer {
                 hasSamples = serializeGauges(metricSet.getGauges(), jw);
                 hasSamples |= serializeTimers(metricSet.getTimers(), hasSamples, jw);
                 hasSamples |= serializeCounters(metricSet.getCounters(), hasSamples, jw);
+                hasSamples |= serializeHistograms(metricSet.getHistograms(), hasSamples, jw);
                 hasSamples |= serializeRawMetrics(metricSet.getRawMetrics(), hasSamples, jw);
                 jw.writeByte(JsonWriter.OBJECT_END);
             }
@@ -198,6 +200,21 @@ public class MetricRegistrySerializer {
         return hasSamples;
     }
 
+    private static boolean serializeHistograms(Map<String, Histogram> histograms, boolean hasSamples, JsonWriter jw) {
+        if (!histograms.isEmpty()) {
+            for (Map.Entry<String, Histogram> kv : histograms.entrySet()) {
+                Histogram histogram = kv.getValue();
+                if (histogram.hasContent()) {
+                    if (hasSamples) {
+                        jw.writeByte(JsonWriter.COMMA);
+                    }
+                    serializeHistogram(kv.getKey(), histogram, jw);
+                    hasSamples = true;
+                }
+            }
+        }
+        return hasSamples;
+    }
 
     private static boolean serializeRawMetrics(Map<String, Double> rawValues, boolean hasSamples, JsonWriter jw) {
         //TODO: refactor this class?
@@ -244,6 +261,55 @@ public class MetricRegistrySerializer {
         serializeValue(key, ".sum.us", timer.getTotalTimeUs(), jw);
     }
 
+    /**
+     * Serializes the histogram like a timer, with an additional {@code .histogram} sample which only contains the
+     * non-empty buckets, as the values of an Elasticsearch histogram have to be unique.
+     */
+    private static void serializeHistogram(String key, Histogram histogram, JsonWriter jw) {
+        serializeValue(key, ".count", histogram.getCount(), jw);
+        jw.writeByte(JsonWriter.COMMA);
+        serializeValue(key, ".sum.us", histogram.getTotalTimeUs(), jw);
+        jw.writeByte(JsonWriter.COMMA);
+
+        jw.writeByte(JsonWriter.QUOTE);
+        jw.writeAscii(key);
+        jw.writeAscii(".histogram");
+        jw.writeByte(JsonWriter.QUOTE);
+        jw.writeByte(JsonWriter.SEMI);
+        jw.writeByte(JsonWriter.OBJECT_START);
+        DslJsonUtil.writeFieldName("values", jw);
+        jw.writeByte(JsonWriter.ARRAY_START);
+        boolean first = true;
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            if (histogram.getBucketValue(i) > 0) {
+                if (!first) {
+                    jw.writeByte(JsonWriter.COMMA);
+                }
+                NumberConverter.serialize(histogram.getBucketBoundary(i), jw);
+                first = false;
+            }
+        }
+        jw.writeByte(JsonWriter.ARRAY_END);
+        jw.writeByte(JsonWriter.COMMA);
+        DslJsonUtil.writeFieldName("counts", jw);
+        jw.writeByte(JsonWriter.ARRAY_START);
+        first = true;
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            long bucketValue = histogram.getBucketValue(i);
+            if (bucketValue > 0) {
+                if (!first) {
+                    jw.writeByte(JsonWriter.COMMA);
+                }
+                NumberConverter.serialize(bucketValue, jw);
+                first = false;
+            }
+        }
+        jw.writeByte(JsonWriter.ARRAY_END);
+        jw.writeByte(JsonWriter.COMMA);
+        jw.writeAscii("\"type\":\"histogram\"");
+        jw.writeByte(JsonWriter.OBJECT_END);
+    }
+
     private static void serializeValue(String key, double value, JsonWriter jw) {
         serializeValue(key, "", value, jw);
     }
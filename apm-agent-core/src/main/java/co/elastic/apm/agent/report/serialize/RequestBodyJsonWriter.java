@@ -0,0 +1,268 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.report.serialize;
+
+import co.elastic.apm.agent.impl.context.BodyCaptureImpl;
+import co.elastic.apm.agent.sdk.internal.pooling.ObjectHandle;
+import co.elastic.apm.agent.sdk.internal.util.IOUtils;
+import com.dslplatform.json.JsonWriter;
+
+import javax.annotation.Nullable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.util.List;
+
+import static com.dslplatform.json.JsonWriter.QUOTE;
+
+/**
+ * Writes a captured request body as a JSON string by decoding the raw bytes in small chunks and escaping and encoding
+ * them directly into the {@link JsonWriter}, without materializing the whole body as a {@link String} or {@link CharBuffer}.
+ * <p>
+ * Characters which are split across two body segments are re-assembled in a small carry-over buffer.
+ * If the body has no (supported) charset or turns out to be malformed, the remaining bytes are written by simply casting them to chars.
+ * An incomplete character at the end of a truncated body is dropped.
+ * </p>
+ * <p>
+ * Not thread safe, each {@link DslJsonSerializer.Writer} has its own instance.
+ * </p>
+ */
+class RequestBodyJsonWriter {
+
+    private static final int CHUNK_SIZE = 256;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private final CharBuffer chunk = CharBuffer.allocate(CHUNK_SIZE);
+    /**
+     * Holds the bytes of a character which spans two segments, 16 bytes exceed the max bytes per char of all common charsets.
+     */
+    private final ByteBuffer carry = ByteBuffer.allocate(16);
+    private int remainingChars;
+
+    /**
+     * @param body     the body to write
+     * @param jw       the writer to write the quoted and escaped body to
+     * @param maxChars the maximum number of chars to write
+     */
+    void write(BodyCaptureImpl body, JsonWriter jw, int maxChars) {
+        List<ByteBuffer> buffers = body.getBody();
+        remainingChars = maxChars;
+        jw.writeByte(QUOTE);
+        for (int i = 0; i < buffers.size(); i++) {
+            ((Buffer) buffers.get(i)).flip(); //make ready for reading
+        }
+        try {
+            int fallbackIndex = 0;
+            CharSequence charset = body.getCharset();
+            if (charset != null) {
+                fallbackIndex = decode(buffers, charset.toString(), jw);
+            }
+            if (fallbackIndex >= 0) {
+                writeLatin1(buffers, fallbackIndex, jw);
+            }
+        } finally {
+            for (int i = 0; i < buffers.size(); i++) {
+                // restore write mode, so that the body can be serialized again
+                ByteBuffer buffer = buffers.get(i);
+                int end = buffer.limit();
+                ((Buffer) buffer).limit(buffer.capacity());
+                ((Buffer) buffer).position(end);
+            }
+            ((Buffer) chunk).clear();
+            ((Buffer) carry).clear();
+        }
+        jw.writeByte(QUOTE);
+    }
+
+    /**
+     * @return {@code -1} if the body has been decoded successfully,
+     * otherwise the index of the buffer from whose position on the body could not be decoded
+     */
+    private int decode(List<ByteBuffer> buffers, String charsetName, JsonWriter jw) {
+        ObjectHandle<CharsetDecoder> decoderHandle = IOUtils.getPooledCharsetDecoder(charsetName);
+        if (decoderHandle == null) {
+            return 0; //charset is unsupported
+        }
+        try {
+            CharsetDecoder decoder = decoderHandle.get();
+            try {
+                for (int i = 0; i < buffers.size() && remainingChars > 0; i++) {
+                    ByteBuffer input = buffers.get(i);
+                    if (carry.position() > 0 && !decodeCarryOver(decoder, input, jw)) {
+                        return i;
+                    }
+                    // the end of the input is never signaled so that a truncated trailing character is not treated as malformed
+                    CoderResult result = decode(decoder, input, jw);
+                    if (result != null && result.isError()) {
+                        writeChunk(jw);
+                        return i;
+                    }
+                    if (input.hasRemaining() && remainingChars > 0) {
+                        // incomplete character at the end of the segment
+                        if (input.remaining() > carry.remaining()) {
+                            writeChunk(jw);
+                            return i;
+                        }
+                        carry.put(input);
+                    }
+                }
+                writeChunk(jw);
+                // any incomplete trailing character is held in the carry-over buffer and not in the decoder
+                decoder.decode(EMPTY, chunk, true);
+                decoder.flush(chunk);
+                writeChunk(jw);
+                return -1;
+            } finally {
+                decoder.reset();
+            }
+        } finally {
+            decoderHandle.close();
+        }
+    }
+
+    /**
+     * Completes the character in the carry-over buffer with bytes from the next segment.
+     *
+     * @return {@code false} if the character is malformed, in which case the carry-over bytes are written as Latin-1
+     */
+    private boolean decodeCarryOver(CharsetDecoder decoder, ByteBuffer input, JsonWriter jw) {
+        while (carry.position() > 0 && input.hasRemaining()) {
+            carry.put(input.get());
+            ((Buffer) carry).flip();
+            CoderResult result = decode(decoder, carry, jw);
+            carry.compact();
+            if ((result != null && result.isError()) || !carry.hasRemaining()) {
+                writeChunk(jw);
+                ((Buffer) carry).flip();
+                while (carry.hasRemaining() && remainingChars > 0) {
+                    writeChar(carry.get() & 0xFF, jw);
+                }
+                ((Buffer) carry).clear();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the result of the decoding, or {@code null} if the max number of chars has been written
+     */
+    @Nullable
+    private CoderResult decode(CharsetDecoder decoder, ByteBuffer input, JsonWriter jw) {
+        while (true) {
+            CoderResult result = decoder.decode(input, chunk, false);
+            if (!result.isOverflow()) {
+                return result;
+            }
+            writeChunk(jw);
+            if (remainingChars == 0) {
+                return null;
+            }
+        }
+    }
+
+    private void writeChunk(JsonWriter jw) {
+        ((Buffer) chunk).flip();
+        while (chunk.hasRemaining() && remainingChars > 0) {
+            char c = chunk.get();
+            if (Character.isHighSurrogate(c) && chunk.hasRemaining() && Character.isLowSurrogate(chunk.get(chunk.position()))) {
+                if (remainingChars < 2) {
+                    // don't split the surrogate pair
+                    remainingChars = 0;
+                    break;
+                }
+                writeChar(Character.toCodePoint(c, chunk.get()), jw);
+                remainingChars--;
+            } else if (Character.isSurrogate(c)) {
+                writeChar('?', jw);
+            } else {
+                writeChar(c, jw);
+            }
+        }
+        ((Buffer) chunk).clear();
+    }
+
+    private void writeLatin1(List<ByteBuffer> buffers, int fromIndex, JsonWriter jw) {
+        for (int i = fromIndex; i < buffers.size() && remainingChars > 0; i++) {
+            ByteBuffer buffer = buffers.get(i);
+            while (buffer.hasRemaining() && remainingChars > 0) {
+                writeChar(buffer.get() & 0xFF, jw);
+            }
+        }
+    }
+
+    /**
+     * Writes a JSON escaped and UTF-8 encoded code point.
+     */
+    private void writeChar(int codePoint, JsonWriter jw) {
+        remainingChars--;
+        if (codePoint < 0x80) {
+            if (codePoint == '"' || codePoint == '\\') {
+                jw.writeByte((byte) '\\');
+                jw.writeByte((byte) codePoint);
+            } else if (codePoint < 0x20) {
+                writeControlChar(codePoint, jw);
+            } else {
+                jw.writeByte((byte) codePoint);
+            }
+        } else if (codePoint < 0x800) {
+            jw.writeByte((byte) (0xC0 | (codePoint >> 6)));
+            jw.writeByte((byte) (0x80 | (codePoint & 0x3F)));
+        } else if (codePoint < 0x10000) {
+            jw.writeByte((byte) (0xE0 | (codePoint >> 12)));
+            jw.writeByte((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            jw.writeByte((byte) (0x80 | (codePoint & 0x3F)));
+        } else {
+            jw.writeByte((byte) (0xF0 | (codePoint >> 18)));
+            jw.writeByte((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            jw.writeByte((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            jw.writeByte((byte) (0x80 | (codePoint & 0x3F)));
+        }
+    }
+
+    private static void writeControlChar(int c, JsonWriter jw) {
+        jw.writeByte((byte) '\\');
+        switch (c) {
+            case '\b':
+                jw.writeByte((byte) 'b');
+                break;
+            case '\t':
+                jw.writeByte((byte) 't');
+                break;
+            case '\n':
+                jw.writeByte((byte) 'n');
+                break;
+            case '\f':
+                jw.writeByte((byte) 'f');
+                break;
+            case '\r':
+                jw.writeByte((byte) 'r');
+                break;
+            default:
+                jw.writeByte((byte) 'u');
+                jw.writeByte((byte) '0');
+                jw.writeByte((byte) '0');
+                jw.writeByte(HEX[c >> 4]);
+                jw.writeByte(HEX[c & 0xF]);
+        }
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.util;
+
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A scheduler which periodic and delayed agent tasks register with, instead of each of them creating a dedicated
+ * scheduling thread.
+ * <p>
+ * A single timer thread keeps the tasks ordered by their deadline and parks until the earliest one is due, so it doesn't
+ * wake up at all while nothing is scheduled. Expired tasks are handed over to a small, bounded pool of worker threads.
+ * Tasks are expected to be short-lived; long-running or blocking work should still use a dedicated executor.
+ * </p>
+ * <p>
+ * Scheduling and cancelling don't need a lock, as both only enqueue to the timer thread.
+ * The timer thread is only unparked if a new task is due before the deadline it currently waits for.
+ * A periodic task is never executed concurrently with itself: the next execution is only scheduled after the previous one
+ * has completed.
+ * </p>
+ * <p>
+ * When {@linkplain #setTaskCpuTimeMeasurementEnabled(boolean) enabled}, the CPU time spent on each task is recorded per
+ * task purpose, so that the overhead of the shared worker threads can be attributed to the tasks they execute.
+ * </p>
+ */
+public class AgentScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentScheduler.class);
+
+    static final String TIMER_THREAD_PURPOSE = "scheduler-timer";
+    public static final String WORKER_THREAD_PURPOSE = "scheduler-worker";
+
+    private static final int DEFAULT_WORKER_THREADS = 2;
+    private static final int DEFAULT_WORKER_QUEUE_CAPACITY = 1024;
+    /**
+     * How long the timer thread parks when no task is scheduled, relative to {@link System#nanoTime()}.
+     * Large enough to never expire, small enough to not overflow when compared to the deadline of a task.
+     */
+    private static final long IDLE_PARK_NANOS = Long.MAX_VALUE / 4;
+
+    private final Queue<ScheduledTask> pendingTasks = new ConcurrentLinkedQueue<>();
+    private final Queue<ScheduledTask> cancelledTasks = new ConcurrentLinkedQueue<>();
+    private final ThreadPoolExecutor workers;
+    private final ExecutorUtils.SingleNamedThreadFactory timerThreadFactory;
+    private final Object lifecycleLock = new Object();
+    private final ConcurrentHashMap<String, AtomicLong> taskCpuTimeNanos = new ConcurrentHashMap<>();
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    /**
+     * Only accessed from the timer thread
+     */
+    private final PriorityQueue<ScheduledTask> scheduledTasks = new PriorityQueue<>(64, new Comparator<ScheduledTask>() {
+        @Override
+        public int compare(ScheduledTask o1, ScheduledTask o2) {
+            long diff = o1.deadline - o2.deadline;
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    });
+
+    private volatile boolean taskCpuTimeMeasurementEnabled;
+    private volatile boolean shutdown;
+    @Nullable
+    private volatile Thread timerThread;
+    /**
+     * The {@link System#nanoTime()} until which the timer thread parks.
+     * Tasks with an earlier deadline unpark it, later ones are picked up when it wakes up anyway.
+     */
+    private volatile long parkedUntil;
+
+    AgentScheduler() {
+        this(DEFAULT_WORKER_THREADS, DEFAULT_WORKER_QUEUE_CAPACITY);
+    }
+
+    AgentScheduler(int workerThreads, int workerQueueCapacity) {
+        this.workers = ExecutorUtils.createThreadDaemonPool(WORKER_THREAD_PURPOSE, workerThreads, workerQueueCapacity);
+        this.timerThreadFactory = new ExecutorUtils.SingleNamedThreadFactory(TIMER_THREAD_PURPOSE);
+    }
+
+    /**
+     * Executes the task once after the given delay.
+     *
+     * @param purpose the purpose of the task, used for logging and for attributing the CPU time spent on it
+     * @param task    the task to execute
+     * @param delay   the delay after which the task should be executed
+     * @param unit    the time unit of the delay
+     * @return a handle that can be used to cancel the task
+     */
+    public ScheduledTask schedule(String purpose, Runnable task, long delay, TimeUnit unit) {
+        return submit(new ScheduledTask(this, purpose, task, 0, false), unit.toNanos(delay));
+    }
+
+    /**
+     * Executes the task periodically, with the given delay between the end of one execution and the start of the next one.
+     *
+     * @see java.util.concurrent.ScheduledExecutorService#scheduleWithFixedDelay
+     */
+    public ScheduledTask scheduleWithFixedDelay(String purpose, Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("delay must be greater than 0");
+        }
+        return submit(new ScheduledTask(this, purpose, task, unit.toNanos(delay), false), unit.toNanos(initialDelay));
+    }
+
+    /**
+     * Executes the task periodically, aiming for a fixed rate between the starts of each execution.
+     * If an execution takes longer than the period, subsequent executions are started late but never concurrently.
+     *
+     * @see java.util.concurrent.ScheduledExecutorService#scheduleAtFixedRate
+     */
+    public ScheduledTask scheduleAtFixedRate(String purpose, Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be greater than 0");
+        }
+        return submit(new ScheduledTask(this, purpose, task, unit.toNanos(period), true), unit.toNanos(initialDelay));
+    }
+
+    private ScheduledTask submit(ScheduledTask task, long delayNanos) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Agent scheduler has been shut down");
+        }
+        ensureStarted();
+        task.deadline = System.nanoTime() + Math.max(0, delayNanos);
+        enqueue(task);
+        return task;
+    }
+
+    private void enqueue(ScheduledTask task) {
+        pendingTasks.add(task);
+        // the timer thread publishes parkedUntil before re-checking the pending tasks,
+        // so either it sees this task or this thread sees the deadline the timer thread is about to park until
+        if (task.deadline - parkedUntil < 0) {
+            Thread thread = timerThread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    private void ensureStarted() {
+        if (timerThread != null) {
+            return;
+        }
+        synchronized (lifecycleLock) {
+            if (timerThread == null && !shutdown) {
+                Thread thread = timerThreadFactory.newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        runTimer();
+                    }
+                });
+                thread.start();
+                timerThread = thread;
+            }
+        }
+    }
+
+    private void runTimer() {
+        while (!shutdown) {
+            removeCancelledTasks();
+            transferPendingTasks();
+            long now = System.nanoTime();
+            ScheduledTask next = scheduledTasks.peek();
+            while (next != null && next.deadline - now <= 0) {
+                scheduledTasks.poll();
+                dispatch(next);
+                next = scheduledTasks.peek();
+            }
+            long parkNanos = next != null ? next.deadline - now : IDLE_PARK_NANOS;
+            parkedUntil = now + parkNanos;
+            if (pendingTasks.isEmpty() && cancelledTasks.isEmpty() && !shutdown) {
+                LockSupport.parkNanos(this, parkNanos);
+            }
+            // tasks which are due after this point in time don't need to wake up the timer thread
+            parkedUntil = System.nanoTime();
+        }
+    }
+
+    private void transferPendingTasks() {
+        // bounds the work per iteration in case tasks are added in a tight loop
+        for (int i = 0; i < 100_000; i++) {
+            ScheduledTask task = pendingTasks.poll();
+            if (task == null) {
+                return;
+            }
+            if (!task.cancelled) {
+                scheduledTasks.add(task);
+            }
+        }
+    }
+
+    private void removeCancelledTasks() {
+        for (ScheduledTask task = cancelledTasks.poll(); task != null; task = cancelledTasks.poll()) {
+            scheduledTasks.remove(task);
+        }
+    }
+
+    private void dispatch(ScheduledTask task) {
+        if (task.cancelled) {
+            return;
+        }
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (shutdown) {
+                return;
+            }
+            logger.warn("Agent scheduler worker queue is full, skipping execution of {}", task.purpose);
+            task.rescheduleIfPeriodic();
+        }
+    }
+
+    void runTask(ScheduledTask task) {
+        boolean measureCpuTime = taskCpuTimeMeasurementEnabled;
+        long cpuTimeBefore = measureCpuTime ? threadBean.getCurrentThreadCpuTime() : -1;
+        try {
+            task.task.run();
+        } catch (Throwable t) {
+            logger.error("Error in scheduled agent task " + task.purpose + ": " + t.getMessage(), t);
+        } finally {
+            if (measureCpuTime && cpuTimeBefore >= 0) {
+                long cpuTimeAfter = threadBean.getCurrentThreadCpuTime();
+                if (cpuTimeAfter >= cpuTimeBefore) {
+                    addTaskCpuTime(task.purpose, cpuTimeAfter - cpuTimeBefore);
+                }
+            }
+        }
+    }
+
+    private void addTaskCpuTime(String purpose, long cpuTimeNanos) {
+        AtomicLong counter = taskCpuTimeNanos.get(purpose);
+        if (counter == null) {
+            taskCpuTimeNanos.putIfAbsent(purpose, new AtomicLong());
+            counter = taskCpuTimeNanos.get(purpose);
+        }
+        counter.addAndGet(cpuTimeNanos);
+    }
+
+    void reschedule(ScheduledTask task, long deadline) {
+        if (shutdown || task.cancelled) {
+            return;
+        }
+        task.deadline = deadline;
+        enqueue(task);
+    }
+
+    void cancel(ScheduledTask task) {
+        cancelledTasks.add(task);
+        Thread thread = timerThread;
+        if (thread != null) {
+            // eagerly releases the task instead of keeping it until its deadline
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Enables or disables measuring the CPU time spent on each task.
+     * Requires {@link ThreadMXBean#isCurrentThreadCpuTimeSupported()} and for thread CPU time measurement to be enabled.
+     */
+    public void setTaskCpuTimeMeasurementEnabled(boolean enabled) {
+        this.taskCpuTimeMeasurementEnabled = enabled;
+    }
+
+    /**
+     * Adds the CPU time that has been spent on each task purpose since the last invocation to the provided map and resets
+     * the internal counters.
+     *
+     * @param cpuTimeByPurpose the map to add the CPU time in nanoseconds to, keyed by task purpose
+     */
+    public void drainTaskCpuTime(Map<String, Long> cpuTimeByPurpose) {
+        for (Map.Entry<String, AtomicLong> entry : taskCpuTimeNanos.entrySet()) {
+            long cpuTime = entry.getValue().getAndSet(0);
+            if (cpuTime > 0) {
+                Long previous = cpuTimeByPurpose.get(entry.getKey());
+                cpuTimeByPurpose.put(entry.getKey(), previous != null ? previous + cpuTime : cpuTime);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of scheduled tasks that have not yet been handed over to the timer thread.
+     */
+    int getPendingTaskCount() {
+        return pendingTasks.size();
+    }
+
+    @Nullable
+    Thread getTimerThread() {
+        return timerThread;
+    }
+
+    void shutdown() {
+        Thread thread;
+        synchronized (lifecycleLock) {
+            shutdown = true;
+            thread = timerThread;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        ExecutorUtils.shutdownAndWaitTermination(workers);
+        pendingTasks.clear();
+    }
+
+    /**
+     * A handle to a task registered with the {@link AgentScheduler}.
+     */
+    public static class ScheduledTask implements Runnable {
+
+        private final AgentScheduler scheduler;
+        private final String purpose;
+        private final Runnable task;
+        private final long periodNanos;
+        private final boolean fixedRate;
+
+        private volatile boolean cancelled;
+        volatile long deadline;
+
+        private ScheduledTask(AgentScheduler scheduler, String purpose, Runnable task, long periodNanos, boolean fixedRate) {
+            this.scheduler = scheduler;
+            this.purpose = purpose;
+            this.task = task;
+            this.periodNanos = periodNanos;
+            this.fixedRate = fixedRate;
+        }
+
+        /**
+         * Executed by the worker threads
+         */
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            scheduler.runTask(this);
+            rescheduleIfPeriodic();
+        }
+
+        private void rescheduleIfPeriodic() {
+            if (periodNanos <= 0 || cancelled) {
+                return;
+            }
+            long now = System.nanoTime();
+            long nextDeadline;
+            if (fixedRate) {
+                nextDeadline = deadline + periodNanos;
+                if (nextDeadline < now) {
+                    // don't try to catch up on missed executions
+                    nextDeadline = now;
+                }
+            } else {
+                nextDeadline = now + periodNanos;
+            }
+            scheduler.reschedule(this, nextDeadline);
+        }
+
+        /**
+         * Prevents any further execution of this task.
+         * An execution that is currently in progress is not interrupted.
+         */
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                scheduler.cancel(this);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public String getPurpose() {
+            return purpose;
+        }
+
+        @Override
+        public String toString() {
+            return "ScheduledTask(" + purpose + ")";
+        }
+    }
+}
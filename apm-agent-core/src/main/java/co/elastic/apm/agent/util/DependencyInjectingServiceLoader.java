@@ -43,7 +43,14 @@ import java.util.Set;
 public class DependencyInjectingServiceLoader<T> {
 
     private static final Logger logger = LoggerFactory.getLogger(DependencyInjectingServiceLoader.class);
+    private static final ImplementationFilter ACCEPT_ALL = new ImplementationFilter() {
+        @Override
+        public boolean accept(String implementationClassName) {
+            return true;
+        }
+    };
     private final Class<T> clazz;
+    private final ImplementationFilter filter;
     private final Object[] constructorArguments;
     private final Class<?>[] constructorTypes;
     private final List<T> instances = new ArrayList<>();
@@ -51,11 +58,12 @@ public class DependencyInjectingServiceLoader<T> {
     private final Set<URL> resourcePathCache;
 
     private DependencyInjectingServiceLoader(Class<T> clazz, Object... constructorArguments) {
-        this(clazz, Collections.singletonList(PrivilegedActionUtils.getClassLoader(clazz)), constructorArguments);
+        this(clazz, Collections.singletonList(PrivilegedActionUtils.getClassLoader(clazz)), ACCEPT_ALL, constructorArguments);
     }
 
-    private DependencyInjectingServiceLoader(Class<T> clazz, List<ClassLoader> classLoaders, Object... constructorArguments) {
+    private DependencyInjectingServiceLoader(Class<T> clazz, List<ClassLoader> classLoaders, ImplementationFilter filter, Object... constructorArguments) {
         this.clazz = clazz;
+        this.filter = filter;
         this.constructorArguments = constructorArguments;
         List<Class<?>> types = new ArrayList<>(constructorArguments.length);
         for (Object constructorArgument : constructorArguments) {
@@ -87,7 +95,14 @@ public class DependencyInjectingServiceLoader<T> {
     }
 
     public static <T> List<T> load(Class<T> clazz, List<ClassLoader> classLoaders, Object... constructorArguments) {
-        return new DependencyInjectingServiceLoader<>(clazz, classLoaders, constructorArguments).instances;
+        return new DependencyInjectingServiceLoader<>(clazz, classLoaders, ACCEPT_ALL, constructorArguments).instances;
+    }
+
+    /**
+     * Like {@link #load(Class, List, Object...)}, but only loads and instantiates the implementations accepted by the filter.
+     */
+    public static <T> List<T> load(Class<T> clazz, List<ClassLoader> classLoaders, ImplementationFilter filter, Object... constructorArguments) {
+        return new DependencyInjectingServiceLoader<>(clazz, classLoaders, filter, constructorArguments).instances;
     }
 
     private static boolean isComment(String serviceImplementationClassName) {
@@ -116,6 +131,9 @@ public class DependencyInjectingServiceLoader<T> {
 
     private void instantiate(ClassLoader classLoader, Set<String> implementations) {
         for (String implementation : implementations) {
+            if (!filter.accept(implementation)) {
+                continue;
+            }
             T instance = instantiate(classLoader, implementation);
             if (instance != null) {
                 instances.add(instance);
@@ -189,4 +207,11 @@ public class DependencyInjectingServiceLoader<T> {
         return true;
     }
 
+    /**
+     * Decides which service implementations to load, based on their class name only, so that the other ones are not loaded at all.
+     */
+    public interface ImplementationFilter {
+        boolean accept(String implementationClassName);
+    }
+
 }
@@ -47,6 +47,9 @@ public final class ExecutorUtils {
     @Nullable
     private static volatile ElasticThreadStateListener threadStateListener = null;
 
+    @Nullable
+    private static volatile AgentScheduler agentScheduler;
+
     private ExecutorUtils() {
     }
 
@@ -78,6 +81,41 @@ public final class ExecutorUtils {
         return new NamedDaemonThreadPoolExecutor(poolSize, queueCapacity, daemonThreadFactory, threadPurpose);
     }
 
+    /**
+     * Returns the agent-wide scheduler which periodic and delayed agent tasks should register with,
+     * instead of creating a dedicated scheduling thread each.
+     * The threads of the scheduler are started lazily when the first task is scheduled.
+     *
+     * @return the agent-wide scheduler
+     */
+    public static AgentScheduler getAgentScheduler() {
+        AgentScheduler scheduler = agentScheduler;
+        if (scheduler == null) {
+            synchronized (ExecutorUtils.class) {
+                scheduler = agentScheduler;
+                if (scheduler == null) {
+                    agentScheduler = scheduler = new AgentScheduler();
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Stops the threads of the agent-wide scheduler and discards all of its tasks.
+     * A subsequent call to {@link #getAgentScheduler()}, for example when a tracer is started again, creates a new scheduler.
+     */
+    public static void shutdownAgentScheduler() {
+        AgentScheduler scheduler;
+        synchronized (ExecutorUtils.class) {
+            scheduler = agentScheduler;
+            agentScheduler = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
     public static WeakMap<Thread, String> getStartedThreads() {
         return startedThreads;
     }
@@ -0,0 +1,107 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.util;
+
+import javax.annotation.Nullable;
+
+/**
+ * A bounded, lock-free cache from raw header values to their parsed representation.
+ * <p>
+ * Upstream services and gateways tend to send the same few {@code baggage} or {@code tracestate} values over and over again.
+ * Caching the immutable result of parsing them avoids re-parsing and re-allocating on every request.
+ * </p>
+ * <p>
+ * The cache is direct-mapped: each header value can only be stored in a single slot determined by its hash code,
+ * a colliding value simply replaces the previous one.
+ * This keeps lookups and inserts constant-time without locking, at the cost of a lower hit rate for a high number of distinct values.
+ * As entries are immutable and only have final fields, they are safely published even though the slots are written racily.
+ * </p>
+ *
+ * @param <V> the type of the parsed representation, must be immutable
+ */
+public class HeaderValueCache<V> {
+
+    private final Entry<V>[] entries;
+    private final int mask;
+    private final int maxHeaderLength;
+
+    /**
+     * @param size            the number of slots, will be rounded up to the next power of two
+     * @param maxHeaderLength header values longer than this are never cached, which avoids retaining very large values
+     */
+    @SuppressWarnings("unchecked")
+    public HeaderValueCache(int size, int maxHeaderLength) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        int capacity = Integer.highestOneBit(size);
+        if (capacity < size) {
+            capacity <<= 1;
+        }
+        this.entries = (Entry<V>[]) new Entry[capacity];
+        this.mask = capacity - 1;
+        this.maxHeaderLength = maxHeaderLength;
+    }
+
+    /**
+     * @param headerValue the raw header value
+     * @return the cached parsed representation, or {@code null} if the value is not cached
+     */
+    @Nullable
+    public V get(String headerValue) {
+        Entry<V> entry = entries[slot(headerValue)];
+        if (entry != null && (entry.headerValue == headerValue || entry.headerValue.equals(headerValue))) {
+            return entry.value;
+        }
+        return null;
+    }
+
+    /**
+     * Caches the parsed representation of a header value, possibly replacing another cached value.
+     *
+     * @param headerValue the raw header value
+     * @param value       the immutable parsed representation
+     */
+    public void put(String headerValue, V value) {
+        if (headerValue.length() <= maxHeaderLength) {
+            entries[slot(headerValue)] = new Entry<>(headerValue, value);
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+    }
+
+    private int slot(String headerValue) {
+        int hash = headerValue.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static class Entry<V> {
+        private final String headerValue;
+        private final V value;
+
+        private Entry(String headerValue, V value) {
+            this.headerValue = headerValue;
+            this.value = value;
+        }
+    }
+}
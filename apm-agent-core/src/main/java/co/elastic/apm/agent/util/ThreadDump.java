@@ -30,7 +30,6 @@ import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.lang.management.MonitorInfo;
 import java.lang.management.LockInfo;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class ThreadDump extends AbstractLifecycleListener {
@@ -40,7 +39,7 @@ public class ThreadDump extends AbstractLifecycleListener {
     private static final int MAX_FRAMES = 40;
 
     @Nullable
-    private ScheduledThreadPoolExecutor executor;
+    private AgentScheduler.ScheduledTask scheduledTask;
 
     @Override
     public void start(Tracer tracer) throws Exception {
@@ -62,9 +61,7 @@ public class ThreadDump extends AbstractLifecycleListener {
 
         log.warn("thread dump will be generated every %s ms", threadDumpInterval);
 
-        executor = ExecutorUtils.createSingleThreadSchedulingDaemonPool("thread-dump");
-
-        executor.scheduleAtFixedRate(new Runnable() {
+        scheduledTask = ExecutorUtils.getAgentScheduler().scheduleAtFixedRate("thread-dump", new Runnable() {
             @Override
             public void run() {
                 ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
@@ -81,10 +78,10 @@ public class ThreadDump extends AbstractLifecycleListener {
 
     @Override
     public void stop() throws Exception {
-        if (executor == null) {
+        if (scheduledTask == null) {
             return;
         }
-        ExecutorUtils.shutdownAndWaitTermination(executor);
+        scheduledTask.cancel();
     }
 
     /**
@@ -0,0 +1,130 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.bci;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.ClassFileLocator;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ByteArrayClassLoader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static net.bytebuddy.matcher.ElementMatchers.none;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndyPluginClassLoaderFactoryTest {
+
+    private static final String DEPENDENCY = "com.example.lib.Dependency";
+    private static final String PLUGIN_HELPER = "com.example.plugin.Helper";
+
+    private DynamicType.Unloaded<Object> dependency;
+    private ClassFileLocator pluginClassFileLocator;
+    private ClassLoader commonClassLoader;
+
+    @BeforeEach
+    void setUp() {
+        dependency = new ByteBuddy().subclass(Object.class).name(DEPENDENCY).make();
+        byte[] helper = new ByteBuddy().subclass(Object.class)
+            .name(PLUGIN_HELPER)
+            .defineField("dependency", dependency.getTypeDescription(), Visibility.PUBLIC)
+            .make()
+            .getBytes();
+        pluginClassFileLocator = ClassFileLocator.Simple.of(PLUGIN_HELPER, helper);
+        // like the common class loader of an application server that provides the Servlet API to all web applications
+        commonClassLoader = new ByteArrayClassLoader(ClassLoader.getSystemClassLoader(), Map.of(DEPENDENCY, dependency.getBytes()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        IndyPluginClassLoaderFactory.clear();
+    }
+
+    @Test
+    void testCollectReferencedTypes() throws Exception {
+        assertThat(IndyPluginClassLoaderFactory.collectReferencedTypes(Map.of(PLUGIN_HELPER, pluginClassFileLocator.locate(PLUGIN_HELPER).resolve())))
+            .containsExactly(DEPENDENCY);
+    }
+
+    @Test
+    void testSharePluginClassLoaderAcrossWebApps() throws Exception {
+        ClassLoader webApp1 = new ByteArrayClassLoader(commonClassLoader, Map.of());
+        ClassLoader webApp2 = new ByteArrayClassLoader(commonClassLoader, Map.of());
+
+        ClassLoader pluginClassLoader1 = getOrCreatePluginClassLoader(webApp1, true);
+        ClassLoader pluginClassLoader2 = getOrCreatePluginClassLoader(webApp2, true);
+
+        assertThat(pluginClassLoader1).isSameAs(pluginClassLoader2);
+        assertThat(pluginClassLoader1.getParent()).isNotNull();
+        assertThat(getDependencyType(pluginClassLoader1)).isSameAs(commonClassLoader.loadClass(DEPENDENCY));
+    }
+
+    @Test
+    void testDoNotShareWhenDisabled() throws Exception {
+        ClassLoader webApp1 = new ByteArrayClassLoader(commonClassLoader, Map.of());
+        ClassLoader webApp2 = new ByteArrayClassLoader(commonClassLoader, Map.of());
+
+        assertThat(getOrCreatePluginClassLoader(webApp1, false)).isNotSameAs(getOrCreatePluginClassLoader(webApp2, false));
+    }
+
+    @Test
+    void testIsolateWebAppWithOwnDependency() throws Exception {
+        ClassLoader webApp1 = new ByteArrayClassLoader(commonClassLoader, Map.of());
+        // bundles its own version of the dependency and loads it child-first
+        ClassLoader webApp2 = new ByteArrayClassLoader.ChildFirst(commonClassLoader, Map.of(DEPENDENCY, dependency.getBytes()));
+
+        ClassLoader pluginClassLoader1 = getOrCreatePluginClassLoader(webApp1, true);
+        ClassLoader pluginClassLoader2 = getOrCreatePluginClassLoader(webApp2, true);
+
+        assertThat(pluginClassLoader1).isNotSameAs(pluginClassLoader2);
+        assertThat(getDependencyType(pluginClassLoader1)).isSameAs(commonClassLoader.loadClass(DEPENDENCY));
+        assertThat(getDependencyType(pluginClassLoader2)).isSameAs(webApp2.loadClass(DEPENDENCY));
+        // requesting the plugin class loader again returns the cached one
+        assertThat(getOrCreatePluginClassLoader(webApp2, true)).isSameAs(pluginClassLoader2);
+    }
+
+    @Test
+    void testGetSharedTargetClassLoader() {
+        ClassLoader webApp = new ByteArrayClassLoader(commonClassLoader, Map.of());
+        ClassLoader agentClassLoader = ClassLoader.getSystemClassLoader();
+
+        assertThat(IndyPluginClassLoaderFactory.getSharedTargetClassLoader(webApp, Set.of(DEPENDENCY), agentClassLoader, false))
+            .isSameAs(commonClassLoader);
+        // types which can't be resolved don't prevent sharing
+        assertThat(IndyPluginClassLoaderFactory.getSharedTargetClassLoader(webApp, Set.of(DEPENDENCY, "com.example.Missing"), agentClassLoader, false))
+            .isSameAs(commonClassLoader);
+        // only refers to types of the agent and the bootstrap class loader
+        assertThat(IndyPluginClassLoaderFactory.getSharedTargetClassLoader(webApp, Set.of(IndyPluginClassLoaderFactory.class.getName()), agentClassLoader, false))
+            .isNull();
+    }
+
+    private ClassLoader getOrCreatePluginClassLoader(ClassLoader targetClassLoader, boolean shareAcrossClassLoaders) throws Exception {
+        return IndyPluginClassLoaderFactory.getOrCreatePluginClassLoader(targetClassLoader, List.of(PLUGIN_HELPER),
+            ClassLoader.getSystemClassLoader(), pluginClassFileLocator, none(), false, shareAcrossClassLoaders);
+    }
+
+    private static Class<?> getDependencyType(ClassLoader pluginClassLoader) throws Exception {
+        return pluginClassLoader.loadClass(PLUGIN_HELPER).getField("dependency").getType();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.bci;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.instrument.Instrumentation;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LazyPluginActivatorTest {
+
+    private final Instrumentation instrumentation = mock(Instrumentation.class);
+    private final URLClassLoader agentClassLoader = new URLClassLoader(new URL[0], null);
+    private final List<String> activatedPlugins = new CopyOnWriteArrayList<>();
+    private LazyPluginActivator activator;
+
+    @BeforeEach
+    void setUp() {
+        activator = new LazyPluginActivator(instrumentation,
+            Map.of(
+                "co.elastic.apm.agent.foo", Set.of("org.example.foo."),
+                "co.elastic.apm.agent.bar", Set.of("org.example.bar.", "com.example.Bar")),
+            agentClassLoader, activatedPlugins::add, 100);
+        when(instrumentation.getInitiatedClasses(any())).thenReturn(new Class<?>[0]);
+    }
+
+    @AfterEach
+    void tearDown() {
+        activator.uninstall();
+    }
+
+    @Test
+    void testActivateOnFirstMatchingClass() {
+        activator.install();
+        verify(instrumentation).addTransformer(activator, false);
+
+        ClassLoader applicationClassLoader = new URLClassLoader(new URL[0], null);
+        assertThat(activator.transform(applicationClassLoader, "org/example/other/Client", null, null, new byte[0])).isNull();
+        assertThat(activator.transform(applicationClassLoader, "org/example/foo/Client", null, null, new byte[0])).isNull();
+        assertThat(activator.transform(applicationClassLoader, "org/example/foo/Server", null, null, new byte[0])).isNull();
+
+        await().untilAsserted(() -> assertThat(activatedPlugins).containsExactly("co.elastic.apm.agent.foo"));
+        assertThat(activator.getPendingPluginPackages()).containsExactly("co.elastic.apm.agent.bar");
+
+        activator.transform(applicationClassLoader, "com/example/Bar", null, null, new byte[0]);
+        await().untilAsserted(() -> assertThat(activatedPlugins).containsExactly("co.elastic.apm.agent.foo", "co.elastic.apm.agent.bar"));
+        assertThat(activator.getPendingPluginPackages()).isEmpty();
+        await().untilAsserted(() -> verify(instrumentation).removeTransformer(activator));
+    }
+
+    @Test
+    void testAwaitTriggerClassLoaded() {
+        ClassLoader applicationClassLoader = new URLClassLoader(new URL[0], null);
+        LazyPluginActivator activator = new LazyPluginActivator(instrumentation,
+            Map.of("co.elastic.apm.agent.baz", Set.of("co.elastic.apm.agent.bci.LazyPluginActivatorTest")),
+            agentClassLoader, activatedPlugins::add, 10_000);
+        try {
+            when(instrumentation.getInitiatedClasses(applicationClassLoader))
+                .thenReturn(new Class<?>[]{String.class})
+                .thenReturn(new Class<?>[]{String.class})
+                .thenReturn(new Class<?>[]{String.class, LazyPluginActivatorTest.class});
+
+            activator.transform(applicationClassLoader, "co/elastic/apm/agent/bci/LazyPluginActivatorTest", null, null, new byte[0]);
+
+            await().untilAsserted(() -> assertThat(activatedPlugins).containsExactly("co.elastic.apm.agent.baz"));
+            verify(instrumentation, times(3)).getInitiatedClasses(applicationClassLoader);
+        } finally {
+            activator.uninstall();
+        }
+    }
+
+    @Test
+    void testIgnoreRedefinitionsAndAgentClasses() {
+        activator.transform(agentClassLoader, "org/example/foo/Client", null, null, new byte[0]);
+        activator.transform(new URLClassLoader(new URL[0], null), "org/example/foo/Client", Object.class, null, new byte[0]);
+        assertThat(activator.getPendingPluginPackages()).containsExactlyInAnyOrder("co.elastic.apm.agent.foo", "co.elastic.apm.agent.bar");
+        assertThat(activatedPlugins).isEmpty();
+    }
+
+    @Test
+    void testAlreadyLoadedClasses() {
+        assertThat(activator.removePluginsOfLoadedClasses(new Class<?>[]{String.class, LazyPluginActivatorTest.class})).isEmpty();
+
+        LazyPluginActivator activator = new LazyPluginActivator(instrumentation,
+            Map.of(
+                "co.elastic.apm.agent.junit", Set.of("org.junit."),
+                "co.elastic.apm.agent.bar", Set.of("org.example.bar.")),
+            agentClassLoader, activatedPlugins::add);
+        assertThat(activator.removePluginsOfLoadedClasses(new Class<?>[]{String.class, Test.class})).containsExactly("co.elastic.apm.agent.junit");
+        assertThat(activator.getPendingPluginPackages()).containsExactly("co.elastic.apm.agent.bar");
+        assertThat(activatedPlugins).isEmpty();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.bci;
+
+import co.elastic.apm.agent.sdk.ElasticApmInstrumentation;
+import co.elastic.apm.agent.sdk.bytebuddy.CustomElementMatchers;
+import co.elastic.apm.agent.sdk.virtualfield.VirtualFieldDeclaration;
+import net.bytebuddy.description.NamedElement;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.matcher.ElementMatcher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static net.bytebuddy.matcher.ElementMatchers.any;
+import static net.bytebuddy.matcher.ElementMatchers.nameContains;
+import static net.bytebuddy.matcher.ElementMatchers.nameStartsWith;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+import static net.bytebuddy.matcher.ElementMatchers.none;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PluginActivationManifestTest {
+
+    @Test
+    void testClassLoaderMatcher() {
+        assertThat(PluginActivationManifest.getActivationPrefixes(new TestInstrumentation(
+            CustomElementMatchers.classLoaderCanLoadClass("org.example.library.Client"), any())))
+            .containsExactly("org.example.library.");
+    }
+
+    @Test
+    void testTypeMatcherPreFilter() {
+        assertThat(PluginActivationManifest.getActivationPrefixes(new TestInstrumentation(
+            any(), nameStartsWith("org.example.").or(named("com.example.Client")))))
+            .containsExactlyInAnyOrder("org.example.", "com.example.Client");
+    }
+
+    @Test
+    void testConjunctionRequiresOnlyOneKnownPart() {
+        assertThat(PluginActivationManifest.getActivationPrefixes(new TestInstrumentation(
+            any(), nameStartsWith("org.example.").and(nameContains("Client")))))
+            .containsExactly("org.example.");
+    }
+
+    @Test
+    void testUnknownPrefixesLoadEagerly() {
+        assertThat(PluginActivationManifest.getActivationPrefixes(new TestInstrumentation(any(), any()))).isNull();
+        assertThat(PluginActivationManifest.getActivationPrefixes(new TestInstrumentation(
+            any(), nameStartsWith("org.example.").or(nameContains("Client"))))).isNull();
+    }
+
+    @Test
+    void testVirtualFieldsLoadEagerly() {
+        TestInstrumentation instrumentation = new TestInstrumentation(any(), nameStartsWith("org.example.")) {
+            @Override
+            public Collection<VirtualFieldDeclaration> getVirtualFields() {
+                return List.of(VirtualFieldDeclaration.of("org.example.Foo", "java.lang.String"));
+            }
+        };
+        assertThat(PluginActivationManifest.getActivationPrefixes(instrumentation)).isNull();
+    }
+
+    @Test
+    void testPluginIsEagerIfAnyInstrumentationIsUnknown() {
+        PluginActivationManifest manifest = PluginActivationManifest.of(List.of(
+            new TestInstrumentation(any(), nameStartsWith("org.example.")),
+            new TestInstrumentation(any(), any())));
+        assertThat(manifest.isEmpty()).isTrue();
+    }
+
+    @Test
+    void testWriteAndRead(@TempDir Path tempDir) throws Exception {
+        PluginActivationManifest manifest = PluginActivationManifest.of(List.of(
+            new TestInstrumentation(CustomElementMatchers.classLoaderCanLoadClass("org.example.library.Client"), any()),
+            new TestInstrumentation(any(), nameStartsWith("com.example."))));
+        assertThat(manifest.getActivationPrefixesByPluginPackage())
+            .containsOnlyKeys("co.elastic.apm.agent.bci");
+        Set<String> prefixes = manifest.getActivationPrefixesByPluginPackage().get("co.elastic.apm.agent.bci");
+        assertThat(prefixes).containsExactly("com.example.", "org.example.library.");
+
+        StringWriter writer = new StringWriter();
+        manifest.write(writer);
+        Path resource = tempDir.resolve(PluginActivationManifest.RESOURCE_NAME);
+        Files.createDirectories(resource.getParent());
+        Files.write(resource, writer.toString().getBytes(StandardCharsets.UTF_8));
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{tempDir.toUri().toURL()}, null)) {
+            assertThat(PluginActivationManifest.read(classLoader).getActivationPrefixesByPluginPackage())
+                .isEqualTo(manifest.getActivationPrefixesByPluginPackage());
+        }
+    }
+
+    @Test
+    void testMissingManifest() throws Exception {
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[0], null)) {
+            assertThat(PluginActivationManifest.read(classLoader).isEmpty()).isTrue();
+        }
+    }
+
+    private static class TestInstrumentation extends ElasticApmInstrumentation {
+
+        private final ElementMatcher.Junction<ClassLoader> classLoaderMatcher;
+        private final ElementMatcher<? super NamedElement> typeMatcherPreFilter;
+
+        private TestInstrumentation(ElementMatcher.Junction<ClassLoader> classLoaderMatcher, ElementMatcher<? super NamedElement> typeMatcherPreFilter) {
+            this.classLoaderMatcher = classLoaderMatcher;
+            this.typeMatcherPreFilter = typeMatcherPreFilter;
+        }
+
+        @Override
+        public ElementMatcher.Junction<ClassLoader> getClassLoaderMatcher() {
+            return classLoaderMatcher;
+        }
+
+        @Override
+        public ElementMatcher<? super NamedElement> getTypeMatcherPreFilter() {
+            return typeMatcherPreFilter;
+        }
+
+        @Override
+        public ElementMatcher<? super TypeDescription> getTypeMatcher() {
+            return none();
+        }
+
+        @Override
+        public ElementMatcher<? super MethodDescription> getMethodMatcher() {
+            return none();
+        }
+
+        @Override
+        public Collection<String> getInstrumentationGroupNames() {
+            return List.of("test");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.bci.virtualfield;
+
+import co.elastic.apm.agent.sdk.virtualfield.VirtualField;
+import co.elastic.apm.agent.sdk.virtualfield.VirtualFields;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VirtualFieldImplTest {
+
+    private final VirtualFieldImpl<Object, String> virtualField = new VirtualFieldImpl<>("test.Type", "java.lang.String");
+
+    @Test
+    void testFieldName() {
+        assertThat(VirtualFieldImpl.getFieldName("java.sql.Statement", "java.lang.String"))
+            .isEqualTo("$elasticApm$java$sql$Statement$java$lang$String");
+    }
+
+    @Test
+    void testInjectedField() {
+        WithField object = new WithField();
+        assertThat(virtualField.get(object)).isNull();
+
+        virtualField.set(object, "foo");
+        assertThat(virtualField.get(object)).isEqualTo("foo");
+        assertThat(object.$elasticApm$test$Type$java$lang$String).isEqualTo("foo");
+        assertThat(virtualField.getFallbackSize()).isZero();
+
+        virtualField.remove(object);
+        assertThat(virtualField.get(object)).isNull();
+        assertThat(object.$elasticApm$test$Type$java$lang$String).isNull();
+    }
+
+    @Test
+    void testInjectedFieldOfSuperClass() {
+        WithField object = new SubclassWithField();
+        virtualField.set(object, "foo");
+        assertThat(virtualField.get(object)).isEqualTo("foo");
+        assertThat(object.$elasticApm$test$Type$java$lang$String).isEqualTo("foo");
+        assertThat(virtualField.getFallbackSize()).isZero();
+    }
+
+    @Test
+    void testWeakMapFallback() {
+        Object object = new Object();
+        assertThat(virtualField.get(object)).isNull();
+
+        virtualField.set(object, "foo");
+        assertThat(virtualField.get(object)).isEqualTo("foo");
+        assertThat(virtualField.getFallbackSize()).isEqualTo(1);
+
+        virtualField.remove(object);
+        assertThat(virtualField.get(object)).isNull();
+        assertThat(virtualField.getFallbackSize()).isZero();
+    }
+
+    @Test
+    void testSameFieldForSameDeclaration() {
+        VirtualField<Runnable, String> field = VirtualFields.find(Runnable.class, String.class);
+        assertThat(VirtualFields.find(Runnable.class, String.class)).isSameAs(field);
+        assertThat(VirtualFields.find(Runnable.class, Integer.class)).isNotSameAs(field);
+    }
+
+    private static class WithField {
+        private transient volatile Object $elasticApm$test$Type$java$lang$String;
+    }
+
+    private static class SubclassWithField extends WithField {
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.bci.virtualfield;
+
+import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
+import co.elastic.apm.agent.configuration.SpyConfiguration;
+import co.elastic.apm.agent.sdk.ElasticApmInstrumentation;
+import co.elastic.apm.agent.sdk.virtualfield.VirtualFieldDeclaration;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.agent.ByteBuddyAgent;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.agent.builder.ResettableClassFileTransformer;
+import net.bytebuddy.description.NamedElement;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.StubMethod;
+import net.bytebuddy.matcher.ElementMatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+
+import static net.bytebuddy.matcher.ElementMatchers.isAbstract;
+import static net.bytebuddy.matcher.ElementMatchers.nameContains;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+import static net.bytebuddy.matcher.ElementMatchers.none;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VirtualFieldInjectorTest {
+
+    private static final String FIELD_NAME = VirtualFieldImpl.getFieldName("java.sql.Statement", "java.lang.String");
+
+    private final Instrumentation instrumentation = ByteBuddyAgent.install();
+    private ResettableClassFileTransformer transformer;
+
+    @BeforeEach
+    void setUp() {
+        transformer = VirtualFieldInjector.install(instrumentation, Collections.<ElasticApmInstrumentation>singletonList(new TestStatementInstrumentation()),
+            SpyConfiguration.createSpyConfig().getConfig(CoreConfigurationImpl.class), AgentBuilder.PoolStrategy.Default.FAST);
+        assertThat(transformer).isNotNull();
+    }
+
+    @AfterEach
+    void tearDown() {
+        instrumentation.removeTransformer(transformer);
+    }
+
+    @Test
+    void testFieldIsInjectedIntoStatementLoadedAfterInstall() throws Exception {
+        Class<?> statementClass = loadStatementImplementation("org.example.jdbc.TestStatement");
+
+        Field field = statementClass.getDeclaredField(FIELD_NAME);
+        assertThat(field.isSynthetic()).isTrue();
+        assertThat(Modifier.isPrivate(field.getModifiers())).isTrue();
+        assertThat(Modifier.isTransient(field.getModifiers())).isTrue();
+        assertThat(Modifier.isVolatile(field.getModifiers())).isTrue();
+
+        VirtualFieldImpl<Statement, String> virtualField = new VirtualFieldImpl<>("java.sql.Statement", "java.lang.String");
+        Statement statement = (Statement) statementClass.getDeclaredConstructor().newInstance();
+        virtualField.set(statement, "SELECT 1");
+        assertThat(virtualField.get(statement)).isEqualTo("SELECT 1");
+        assertThat(virtualField.getFallbackSize()).isZero();
+    }
+
+    @Test
+    void testTypesNotPassingNamePreFilterAreSkipped() throws Exception {
+        Class<?> statementClass = loadStatementImplementation("org.example.jdbc.TestQuery");
+
+        assertThat(statementClass.getDeclaredFields()).extracting("name").doesNotContain(FIELD_NAME);
+    }
+
+    @Test
+    void testTypesNotImplementingDeclaredTypeAreSkipped() {
+        Class<?> type = new ByteBuddy()
+            .subclass(Object.class)
+            .name("org.example.jdbc.NotAStatement")
+            .make()
+            .load(VirtualFieldInjectorTest.class.getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+            .getLoaded();
+
+        assertThat(type.getDeclaredFields()).isEmpty();
+    }
+
+    /**
+     * Defines a new {@link Statement} implementation in a new class loader, so that it goes through the installed transformer
+     */
+    private static Class<?> loadStatementImplementation(String name) {
+        return new ByteBuddy()
+            .subclass(Statement.class)
+            .name(name)
+            .method(isAbstract())
+            .intercept(StubMethod.INSTANCE)
+            .make()
+            .load(VirtualFieldInjectorTest.class.getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+            .getLoaded();
+    }
+
+    private static class TestStatementInstrumentation extends ElasticApmInstrumentation {
+
+        @Override
+        public ElementMatcher<? super NamedElement> getTypeMatcherPreFilter() {
+            return nameContains("Statement");
+        }
+
+        @Override
+        public ElementMatcher<? super TypeDescription> getTypeMatcher() {
+            return named("java.sql.Statement");
+        }
+
+        @Override
+        public ElementMatcher<? super MethodDescription> getMethodMatcher() {
+            return none();
+        }
+
+        @Override
+        public Collection<String> getInstrumentationGroupNames() {
+            return Collections.singletonList("test");
+        }
+
+        @Override
+        public Collection<VirtualFieldDeclaration> getVirtualFields() {
+            return Collections.singleton(VirtualFieldDeclaration.of("java.sql.Statement", "java.lang.String"));
+        }
+    }
+}
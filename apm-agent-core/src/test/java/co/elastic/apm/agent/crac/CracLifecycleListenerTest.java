@@ -0,0 +1,90 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.crac;
+
+import co.elastic.apm.agent.MockTracer;
+import co.elastic.apm.agent.crac.simulated.Core;
+import co.elastic.apm.agent.crac.simulated.Resource;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static co.elastic.apm.agent.impl.ElasticApmTracer.TracerState.PAUSED;
+import static co.elastic.apm.agent.impl.ElasticApmTracer.TracerState.RUNNING;
+import static co.elastic.apm.agent.impl.ElasticApmTracer.TracerState.STOPPED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CracLifecycleListenerTest {
+
+    private static final String SIMULATED_CRAC_PACKAGE = "co.elastic.apm.agent.crac.simulated";
+
+    private ElasticApmTracer tracer;
+
+    @BeforeEach
+    void setUp() {
+        tracer = MockTracer.createRealTracer();
+    }
+
+    @AfterEach
+    void tearDown() {
+        Core.getGlobalContext().unregisterAll();
+        tracer.stop();
+    }
+
+    @Test
+    void testCheckpointAndRestore() throws Exception {
+        Object resource = CracLifecycleListener.register(SIMULATED_CRAC_PACKAGE, getClass().getClassLoader(), tracer);
+        assertThat(resource).isEqualTo(resource);
+        assertThat(resource.hashCode()).isEqualTo(System.identityHashCode(resource));
+        String ephemeralId = tracer.getEphemeralId();
+
+        Core.getGlobalContext().checkpoint();
+        assertThat(tracer.getState()).isEqualTo(PAUSED);
+
+        Core.getGlobalContext().restore();
+        assertThat(tracer.getState()).isEqualTo(RUNNING);
+        assertThat(tracer.getEphemeralId()).isNotEqualTo(ephemeralId);
+    }
+
+    @Test
+    void testStoppedTracerIsNotRestored() throws Exception {
+        CracLifecycleListener.register(SIMULATED_CRAC_PACKAGE, getClass().getClassLoader(), tracer);
+        tracer.stop();
+
+        Core.getGlobalContext().checkpoint();
+        Core.getGlobalContext().restore();
+        assertThat(tracer.getState()).isEqualTo(STOPPED);
+    }
+
+    @Test
+    void testUnknownMethodIsIgnored() throws Exception {
+        Resource resource = (Resource) CracLifecycleListener.register(SIMULATED_CRAC_PACKAGE, getClass().getClassLoader(), tracer);
+
+        resource.onUnknownEvent(Core.getGlobalContext());
+        assertThat(tracer.getState()).isEqualTo(RUNNING);
+    }
+
+    @Test
+    void testCracNotAvailable() {
+        assertThatThrownBy(() -> CracLifecycleListener.register("co.elastic.apm.agent.crac.missing", getClass().getClassLoader(), tracer))
+            .isInstanceOf(ClassNotFoundException.class);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.crac.simulated;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Context {
+
+    private final List<Resource> resources = new ArrayList<>();
+
+    public synchronized void register(Resource resource) {
+        resources.add(resource);
+    }
+
+    public synchronized void unregisterAll() {
+        resources.clear();
+    }
+
+    /**
+     * Notifies the resources in the reverse order of their registration, like the global context of CRaC
+     */
+    public synchronized void checkpoint() throws Exception {
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            resources.get(i).beforeCheckpoint(this);
+        }
+    }
+
+    public synchronized void restore() throws Exception {
+        for (Resource resource : resources) {
+            resource.afterRestore(this);
+        }
+    }
+}
@@ -21,6 +21,7 @@ package co.elastic.apm.agent.impl;
 import co.elastic.apm.agent.MockReporter;
 import co.elastic.apm.agent.bci.ElasticApmAgent;
 import co.elastic.apm.agent.configuration.SpyConfiguration;
+import co.elastic.apm.agent.impl.metadata.MetaData;
 import co.elastic.apm.agent.tracer.AbstractLifecycleListener;
 import co.elastic.apm.agent.objectpool.TestObjectPoolFactory;
 import net.bytebuddy.agent.ByteBuddyAgent;
@@ -31,6 +32,7 @@ import org.stagemonitor.configuration.ConfigurationRegistry;
 import org.stagemonitor.configuration.source.SimpleSource;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -98,6 +100,39 @@ public class LifecycleTest {
         assertThat(TestLifecycleListener.stop.get()).isEqualTo(stopBefore + 1);
     }
 
+    @Test
+    void testCheckpointAndRestore() throws Exception {
+        int checkpointBefore = TestLifecycleListener.beforeCheckpoint.get();
+        int restoreBefore = TestLifecycleListener.afterRestore.get();
+        String ephemeralId = tracerImpl.getEphemeralId();
+        MetaData metaData = tracerImpl.getMetaDataFuture().get(5, TimeUnit.SECONDS);
+
+        tracerImpl.beforeCheckpoint();
+        assertThat(tracerImpl.getState()).isEqualTo(PAUSED);
+        assertThat(TestLifecycleListener.beforeCheckpoint.get()).isEqualTo(checkpointBefore + 1);
+
+        tracerImpl.afterRestore();
+        assertThat(tracerImpl.getState()).isEqualTo(RUNNING);
+        assertThat(TestLifecycleListener.afterRestore.get()).isEqualTo(restoreBefore + 1);
+        assertThat(tracerImpl.getEphemeralId()).isNotEqualTo(ephemeralId);
+        MetaData rediscovered = tracerImpl.getMetaDataFuture().get(5, TimeUnit.SECONDS);
+        assertThat(rediscovered).isNotSameAs(metaData);
+        assertThat(rediscovered.getService().getAgent().getEphemeralId()).isEqualTo(tracerImpl.getEphemeralId());
+    }
+
+    @Test
+    void testPausedTracerIsNotResumedAfterRestore() throws IOException {
+        TracerInternalApiUtils.setRecordingConfig(config, false, TEST_CONFIG_SOURCE_NAME);
+        assertThat(tracerImpl.getState()).isEqualTo(PAUSED);
+
+        tracerImpl.beforeCheckpoint();
+        tracerImpl.afterRestore();
+        assertThat(tracerImpl.getState()).isEqualTo(PAUSED);
+
+        TracerInternalApiUtils.setRecordingConfig(config, true, TEST_CONFIG_SOURCE_NAME);
+        assertThat(tracerImpl.getState()).isEqualTo(RUNNING);
+    }
+
     @Test
     void testActiveConfigurationChange() throws IOException {
         int pauseBefore = TestLifecycleListener.pause.get();
@@ -172,6 +207,8 @@ public class LifecycleTest {
         public static final AtomicInteger pause = new AtomicInteger();
         public static final AtomicInteger resume = new AtomicInteger();
         public static final AtomicInteger stop = new AtomicInteger();
+        public static final AtomicInteger beforeCheckpoint = new AtomicInteger();
+        public static final AtomicInteger afterRestore = new AtomicInteger();
 
         public TestLifecycleListener() {
             init.incrementAndGet();
@@ -192,6 +229,16 @@ public class LifecycleTest {
             resume.incrementAndGet();
         }
 
+        @Override
+        public void beforeCheckpoint() {
+            beforeCheckpoint.incrementAndGet();
+        }
+
+        @Override
+        public void afterRestore() {
+            afterRestore.incrementAndGet();
+        }
+
         @Override
         public void stop() {
             stop.incrementAndGet();
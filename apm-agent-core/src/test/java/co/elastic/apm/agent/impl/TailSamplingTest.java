@@ -0,0 +1,173 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.impl;
+
+import co.elastic.apm.agent.MockReporter;
+import co.elastic.apm.agent.MockTracer;
+import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
+import co.elastic.apm.agent.configuration.SpyConfiguration;
+import co.elastic.apm.agent.impl.sampling.ConstantSampler;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import co.elastic.apm.agent.tracer.Outcome;
+import co.elastic.apm.agent.tracer.configuration.TimeDuration;
+import co.elastic.apm.agent.tracer.metadata.HeaderSource;
+import co.elastic.apm.agent.tracer.metadata.PotentiallyMultiValuedMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.stagemonitor.configuration.ConfigurationRegistry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+class TailSamplingTest {
+
+    private ElasticApmTracer tracer;
+    private MockReporter reporter;
+    private CoreConfigurationImpl coreConfig;
+
+    @BeforeEach
+    void setUp() {
+        reporter = new MockReporter();
+        ConfigurationRegistry config = SpyConfiguration.createSpyConfig();
+        coreConfig = config.getConfig(CoreConfigurationImpl.class);
+        doReturn(true).when(coreConfig).isTailSamplingEnabled();
+        doReturn(TimeDuration.of("100ms")).when(coreConfig).getTailSamplingDurationThreshold();
+        tracer = MockTracer.createRealTracer(reporter, config);
+    }
+
+    @AfterEach
+    void cleanupAndCheck() {
+        reporter.assertRecycledAfterDecrementingReferences();
+        tracer.stop();
+    }
+
+    @Test
+    void testFailedTransactionIsPromoted() {
+        TransactionImpl transaction = startNonSampledTransaction();
+        transaction.createSpan(0).withName("span").end(10);
+        transaction.withOutcome(Outcome.FAILURE).end(20);
+
+        assertThat(reporter.getTransactions()).containsExactly(transaction);
+        assertThat(transaction.isSampled()).isTrue();
+        assertThat(reporter.getSpans()).hasSize(1);
+        SpanImpl span = reporter.getFirstSpan();
+        assertThat(span.getNameAsString()).isEqualTo("span");
+        assertThat(span.isSampled()).isTrue();
+        assertThat(span.isChildOf(transaction)).isTrue();
+        assertThat(transaction.getSpanCount().getReported()).hasValue(1);
+        // promoted transactions are not extrapolated, they are already accounted for by the sampled ones
+        assertThat(transaction.getTraceContext().getSampleRate()).isZero();
+        assertThat(span.getTraceContext().getSampleRate()).isZero();
+    }
+
+    @Test
+    void testSlowTransactionIsPromoted() {
+        TransactionImpl transaction = startNonSampledTransaction();
+        SpanImpl parent = transaction.createSpan(0).withName("parent");
+        parent.createSpan(10).withName("child").end(20);
+        parent.end(30);
+        transaction.end(100_000);
+
+        assertThat(transaction.isSampled()).isTrue();
+        assertThat(reporter.getTransactions()).containsExactly(transaction);
+        assertThat(reporter.getSpans()).extracting(SpanImpl::getNameAsString).containsExactly("child", "parent");
+    }
+
+    @Test
+    void testFastSuccessfulTransactionIsNotPromoted() {
+        TransactionImpl transaction = startNonSampledTransaction();
+        transaction.createSpan(0).withName("span").end(10);
+        transaction.end(20);
+
+        assertThat(transaction.isSampled()).isFalse();
+        assertThat(reporter.getSpans()).isEmpty();
+    }
+
+    @Test
+    void testBufferIsBounded() {
+        doReturn(1).when(coreConfig).getTailSamplingMaxBufferedSpans();
+        TransactionImpl transaction = startNonSampledTransaction();
+        transaction.createSpan(0).withName("first").end(10);
+        transaction.createSpan(10).withName("second").end(20);
+        transaction.withOutcome(Outcome.FAILURE).end(30);
+
+        assertThat(reporter.getSpans()).extracting(SpanImpl::getNameAsString).containsExactly("first");
+    }
+
+    @Test
+    void testSpanEndedAfterTransactionIsDropped() {
+        TransactionImpl transaction = startNonSampledTransaction();
+        SpanImpl span = transaction.createSpan(0).withName("span");
+        transaction.withOutcome(Outcome.FAILURE).end(10);
+        span.end(20);
+
+        assertThat(reporter.getTransactions()).containsExactly(transaction);
+        assertThat(reporter.getSpans()).isEmpty();
+    }
+
+    @Test
+    void testSampledTransactionIsNotBuffered() {
+        TransactionImpl transaction = tracer.startRootTransaction(ConstantSampler.of(true), 0, null);
+        assertThat(transaction).isNotNull();
+        transaction.createSpan(0).withName("span").end(10);
+
+        assertThat(reporter.getSpans()).hasSize(1);
+        transaction.end(20);
+    }
+
+    @Test
+    void testDeferredHeadersAreOnlyCapturedForPromotedTransactions() {
+        TransactionImpl promoted = startNonSampledTransaction();
+        promoted.getContext().getRequest()
+            .withMethod("GET")
+            .withHeaderSource("promoted", FakeHeaderSource.INSTANCE)
+            .getUrl().withProtocol("http").withHostname("localhost").withPort(8080).withPathname("/");
+        promoted.withOutcome(Outcome.FAILURE).end(10);
+        assertThat(reporter.getFirstTransaction().getContext().getRequest().getHeaders().get("carrier")).isEqualTo("promoted");
+
+        TransactionImpl discarded = startNonSampledTransaction();
+        discarded.getContext().getRequest().withHeaderSource("discarded", new HeaderSource<String>() {
+            @Override
+            public void copyTo(String carrier, PotentiallyMultiValuedMap target) {
+                throw new AssertionError("headers of discarded transactions should not be read");
+            }
+        });
+        discarded.end(10);
+        assertThat(discarded.isSampled()).isFalse();
+        assertThat(discarded.getContext().getRequest().getHeaders().isEmpty()).isTrue();
+    }
+
+    private enum FakeHeaderSource implements HeaderSource<String> {
+        INSTANCE;
+
+        @Override
+        public void copyTo(String carrier, PotentiallyMultiValuedMap target) {
+            target.add("carrier", carrier);
+        }
+    }
+
+    private TransactionImpl startNonSampledTransaction() {
+        TransactionImpl transaction = tracer.startRootTransaction(ConstantSampler.of(false), 0, null);
+        assertThat(transaction).isNotNull();
+        assertThat(transaction.isSampled()).isFalse();
+        return transaction;
+    }
+}
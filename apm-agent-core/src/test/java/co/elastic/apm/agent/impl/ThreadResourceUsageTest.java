@@ -0,0 +1,71 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class ThreadResourceUsageTest {
+
+    @Test
+    void testThreadBeanNotAccessedUntilSupportIsChecked() {
+        ThreadMXBean threadBean = mock(ThreadMXBean.class);
+        doReturn(true).when(threadBean).isCurrentThreadCpuTimeSupported();
+        ThreadResourceUsage resourceUsage = new ThreadResourceUsage(threadBean);
+
+        assertThat(resourceUsage.getCurrentThreadCpuTime()).isEqualTo(ThreadResourceUsage.UNSUPPORTED);
+        assertThat(resourceUsage.getCurrentThreadAllocatedBytes()).isEqualTo(ThreadResourceUsage.UNSUPPORTED);
+        verifyNoInteractions(threadBean);
+
+        assertThat(resourceUsage.isCpuTimeSupported()).isTrue();
+        verify(threadBean).setThreadCpuTimeEnabled(true);
+    }
+
+    @Test
+    void testAllocatedBytes() {
+        ThreadResourceUsage resourceUsage = new ThreadResourceUsage();
+        assumeTrue(resourceUsage.isAllocatedBytesSupported());
+
+        long before = resourceUsage.getCurrentThreadAllocatedBytes();
+        byte[] bytes = new byte[1024 * 1024];
+        long after = resourceUsage.getCurrentThreadAllocatedBytes();
+
+        assertThat(bytes).hasSize(1024 * 1024);
+        assertThat(after - before).isGreaterThanOrEqualTo(1024 * 1024);
+    }
+
+    @Test
+    void testCpuTime() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        ThreadResourceUsage resourceUsage = new ThreadResourceUsage(threadBean);
+        assumeTrue(resourceUsage.isCpuTimeSupported());
+
+        assertThat(threadBean.isThreadCpuTimeEnabled()).isTrue();
+        assertThat(resourceUsage.getCurrentThreadCpuTime()).isPositive();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.impl;
+
+import co.elastic.apm.agent.MockReporter;
+import co.elastic.apm.agent.MockTracer;
+import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
+import co.elastic.apm.agent.configuration.SpyConfiguration;
+import co.elastic.apm.agent.impl.sampling.ConstantSampler;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import co.elastic.apm.agent.metrics.MetricSet;
+import co.elastic.apm.agent.tracer.metrics.Labels;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.stagemonitor.configuration.ConfigurationRegistry;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.doReturn;
+
+class TransactionResourceUsageTest {
+
+    private static final int ALLOCATION_SIZE = 4 * 1024 * 1024;
+
+    // prevents the allocations from being optimized away
+    private static volatile Object sink;
+
+    private ElasticApmTracer tracer;
+
+    @BeforeEach
+    void setUp() {
+        ConfigurationRegistry config = SpyConfiguration.createSpyConfig();
+        doReturn(true).when(config.getConfig(CoreConfigurationImpl.class)).isTransactionResourceUsageEnabled();
+        tracer = MockTracer.createRealTracer(new MockReporter(), config);
+        assumeTrue(tracer.isThreadResourceUsageSupported());
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracer.stop();
+    }
+
+    @Test
+    void testResourceUsageOfActiveTransaction() {
+        TransactionImpl transaction = startTransaction();
+        transaction.activate();
+        allocate();
+        burnCpu();
+        transaction.deactivate();
+
+        assertThat(transaction.getAllocatedBytes()).isGreaterThanOrEqualTo(ALLOCATION_SIZE);
+        assertThat(transaction.getCpuTimeNanos()).isPositive();
+        transaction.end();
+    }
+
+    @Test
+    void testNotActive() {
+        TransactionImpl transaction = startTransaction();
+        allocate();
+        transaction.end();
+
+        assertThat(transaction.getAllocatedBytes()).isZero();
+        assertThat(transaction.getCpuTimeNanos()).isZero();
+    }
+
+    @Test
+    void testNestedActivationsAreCountedOnce() {
+        // warm up, so that lazy initializations within the agent don't add to the allocated bytes
+        runNestedActivations(startTransaction()).end();
+
+        TransactionImpl transaction = runNestedActivations(startTransaction());
+        assertThat(transaction.getAllocatedBytes())
+            .isGreaterThanOrEqualTo(ALLOCATION_SIZE)
+            .isLessThan(2 * ALLOCATION_SIZE);
+        transaction.end();
+    }
+
+    private static TransactionImpl runNestedActivations(TransactionImpl transaction) {
+        transaction.activate();
+        SpanImpl span = transaction.createSpan();
+        span.activate();
+        transaction.activate();
+        allocate();
+        transaction.deactivate();
+        span.deactivate().end();
+        transaction.deactivate();
+        return transaction;
+    }
+
+    @Test
+    void testActivationOnMultipleThreads() throws Exception {
+        final TransactionImpl transaction = startTransaction();
+        transaction.activate();
+        allocate();
+        transaction.deactivate();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    SpanImpl span = transaction.createSpan();
+                    span.activate();
+                    allocate();
+                    span.deactivate().end();
+                }
+            }).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(transaction.getAllocatedBytes()).isGreaterThanOrEqualTo(2 * ALLOCATION_SIZE);
+        transaction.end();
+    }
+
+    @Test
+    void testDisabled() {
+        doReturn(false).when(tracer.getConfig(CoreConfigurationImpl.class)).isTransactionResourceUsageEnabled();
+        TransactionImpl transaction = startTransaction();
+        transaction.activate();
+        allocate();
+        transaction.deactivate();
+
+        assertThat(transaction.isResourceUsageCaptured()).isFalse();
+        assertThat(transaction.getAllocatedBytes()).isZero();
+        transaction.end();
+
+        tracer.getMetricRegistry().flipPhaseAndReport(metricSets -> assertThat(getTransactionMetricSet(metricSets)).isNull());
+    }
+
+    @Test
+    void testMetricsReported() {
+        TransactionImpl transaction = startTransaction();
+        transaction.activate();
+        allocate();
+        transaction.deactivate();
+        transaction.end();
+
+        tracer.getMetricRegistry().flipPhaseAndReport(metricSets -> {
+            MetricSet metricSet = getTransactionMetricSet(metricSets);
+            assertThat(metricSet).isNotNull();
+            assertThat(metricSet.timer("transaction.cpu_time").getCount()).isEqualTo(1);
+            assertThat(metricSet.getCounters().get("transaction.allocated_bytes").get()).isGreaterThanOrEqualTo(ALLOCATION_SIZE);
+        });
+    }
+
+    private TransactionImpl startTransaction() {
+        return tracer.startRootTransaction(ConstantSampler.of(true), -1, getClass().getClassLoader())
+            .withName("test")
+            .withType("request");
+    }
+
+    @Nullable
+    private static MetricSet getTransactionMetricSet(Map<? extends Labels, MetricSet> metricSets) {
+        return metricSets.get(Labels.Mutable.of().transactionName("test").transactionType("request"));
+    }
+
+    private static void allocate() {
+        sink = new byte[ALLOCATION_SIZE];
+    }
+
+    private static void burnCpu() {
+        long start = System.nanoTime();
+        long result = 0;
+        while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(20)) {
+            result += Long.rotateLeft(result, 7) ^ start;
+        }
+        sink = result;
+    }
+}
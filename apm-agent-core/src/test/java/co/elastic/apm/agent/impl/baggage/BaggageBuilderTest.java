@@ -95,4 +95,49 @@ public class BaggageBuilderTest {
             .containsEntry("bar", "baz", "meta2")
             .containsEntry("new", "newval", "new_meta");
     }
+
+    @Test
+    public void verifyPutAllAdoptsBaggage() {
+        BaggageImpl parsed = BaggageImpl.builder()
+            .put("foo", "bar", "meta1")
+            .build();
+
+        assertThat(BaggageImpl.builder().putAll(parsed).build()).isSameAs(parsed);
+
+        BaggageImpl modified = BaggageImpl.builder()
+            .putAll(parsed)
+            .put("new", "newval", "new_meta")
+            .build();
+
+        assertThat(parsed)
+            .hasSize(1)
+            .containsEntry("foo", "bar", "meta1");
+        assertThat(modified)
+            .hasSize(2)
+            .containsEntry("foo", "bar", "meta1")
+            .containsEntry("new", "newval", "new_meta");
+    }
+
+    @Test
+    public void verifyPutAllMergesIntoNonEmptyBaggage() {
+        BaggageImpl base = BaggageImpl.builder()
+            .put("foo", "bar")
+            .put("bar", "baz")
+            .build();
+        BaggageImpl parsed = BaggageImpl.builder()
+            .put("foo", "not-bar", "meta")
+            .build();
+
+        BaggageImpl newlyBuilt = base.toBuilder()
+            .putAll(parsed)
+            .build();
+
+        assertThat(base)
+            .containsEntry("foo", "bar", null)
+            .containsEntry("bar", "baz", null);
+        assertThat(newlyBuilt)
+            .hasSize(2)
+            .containsEntry("foo", "not-bar", "meta")
+            .containsEntry("bar", "baz", null);
+    }
 }
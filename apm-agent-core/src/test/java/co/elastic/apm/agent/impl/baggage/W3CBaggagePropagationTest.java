@@ -22,6 +22,7 @@ import co.elastic.apm.agent.impl.TextHeaderMapAccessor;
 import co.elastic.apm.agent.impl.Utf8HeaderMapAccessor;
 import co.elastic.apm.agent.tracer.dispatch.TextHeaderGetter;
 import co.elastic.apm.agent.tracer.dispatch.UTF8ByteHeaderGetter;
+import co.elastic.apm.agent.tracer.dispatch.UTF8ByteHeaderSetter;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -128,6 +129,46 @@ public class W3CBaggagePropagationTest {
         }
 
 
+        @Test
+        public void testParsedHeaderIsReused() {
+            String[] baggageHeaders = {"reused=value;meta,other=42"};
+
+            BaggageImpl.Builder firstBuilder = BaggageImpl.builder();
+            W3CBaggagePropagation.parse(baggageHeaders, new TextBaggageheaderGetter(), firstBuilder);
+            BaggageImpl first = firstBuilder.build();
+
+            BaggageImpl.Builder secondBuilder = BaggageImpl.builder();
+            W3CBaggagePropagation.parse(baggageHeaders, new UTF8BaggageheaderGetter(), secondBuilder);
+            BaggageImpl second = secondBuilder.build();
+
+            assertThat(second).isSameAs(first);
+            assertThat(first)
+                .hasSize(2)
+                .containsEntry("reused", "value", "meta")
+                .containsEntry("other", "42", null);
+
+            Map<String, byte[]> firstHeaders = new HashMap<>();
+            W3CBaggagePropagation.propagate(first, firstHeaders, Utf8ByteArrayHeaderSetter.INSTANCE);
+            Map<String, byte[]> secondHeaders = new HashMap<>();
+            W3CBaggagePropagation.propagate(second, secondHeaders, Utf8ByteArrayHeaderSetter.INSTANCE);
+            assertThat(secondHeaders.get("baggage")).isSameAs(firstHeaders.get("baggage"));
+        }
+
+        @Test
+        public void testParsedHeaderMergedIntoBaseBaggage() {
+            String[] baggageHeaders = {"merged=value"};
+
+            BaggageImpl base = BaggageImpl.builder().put("base", "1").build();
+            BaggageImpl.Builder resultBuilder = base.toBuilder();
+            W3CBaggagePropagation.parse(baggageHeaders, new TextBaggageheaderGetter(), resultBuilder);
+
+            assertThat(resultBuilder.build())
+                .hasSize(2)
+                .containsEntry("base", "1", null)
+                .containsEntry("merged", "value", null);
+            assertThat(base).hasSize(1);
+        }
+
         @Test
         public void testNoValue() {
             BaggageImpl.Builder textResultBuilder = BaggageImpl.builder();
@@ -141,6 +182,15 @@ public class W3CBaggagePropagationTest {
 
     }
 
+    private enum Utf8ByteArrayHeaderSetter implements UTF8ByteHeaderSetter<Map<String, byte[]>> {
+        INSTANCE;
+
+        @Override
+        public void setHeader(String headerName, byte[] headerValue, Map<String, byte[]> carrier) {
+            carrier.put(headerName, headerValue);
+        }
+    }
+
     private static class TextBaggageheaderGetter implements TextHeaderGetter<String[]> {
         @Nullable
         @Override
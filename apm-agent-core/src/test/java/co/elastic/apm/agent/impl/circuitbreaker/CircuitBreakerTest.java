@@ -66,6 +66,7 @@ public class CircuitBreakerTest {
         // disable gc stress monitor
         circuitBreakerConfiguration.gcStressThreshold.set(1D);
         circuitBreakerConfiguration.gcReliefThreshold.set(0D);
+        circuitBreakerConfiguration.gcPauseStressThresholdMillis.set(0L);
         // disable cpu stress monitor
         circuitBreakerConfiguration.systemCpuStressThreshold.set(1D);
         circuitBreakerConfiguration.systemCpuReliefThreshold.set(0D);
@@ -289,6 +290,7 @@ public class CircuitBreakerTest {
         final AtomicLong stressMonitoringPollingIntervalMillis;
         final AtomicDouble gcStressThreshold;
         final AtomicDouble gcReliefThreshold;
+        final AtomicLong gcPauseStressThresholdMillis;
         final AtomicLong cpuStressDurationThresholdMillis;
         final AtomicDouble systemCpuStressThreshold;
         final AtomicDouble systemCpuReliefThreshold;
@@ -298,6 +300,7 @@ public class CircuitBreakerTest {
             this.stressMonitoringPollingIntervalMillis = new AtomicLong(defaultConfig.getStressMonitoringPollingIntervalMillis());
             this.gcStressThreshold = new AtomicDouble(defaultConfig.getGcStressThreshold());
             this.gcReliefThreshold = new AtomicDouble(defaultConfig.getGcReliefThreshold());
+            this.gcPauseStressThresholdMillis = new AtomicLong(defaultConfig.getGcPauseStressThresholdMillis());
             this.cpuStressDurationThresholdMillis = new AtomicLong(defaultConfig.getCpuStressDurationThresholdMillis());
             this.systemCpuStressThreshold = new AtomicDouble(defaultConfig.getSystemCpuStressThreshold());
             this.systemCpuReliefThreshold = new AtomicDouble(defaultConfig.getSystemCpuReliefThreshold());
@@ -323,6 +326,11 @@ public class CircuitBreakerTest {
             return gcReliefThreshold.get();
         }
 
+        @Override
+        public long getGcPauseStressThresholdMillis() {
+            return gcPauseStressThresholdMillis.get();
+        }
+
         @Override
         public long getCpuStressDurationThresholdMillis() {
             return cpuStressDurationThresholdMillis.get();
@@ -0,0 +1,74 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.impl.circuitbreaker;
+
+import co.elastic.apm.agent.configuration.SpyConfiguration;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.metrics.builtin.JvmGcPauseMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+class GCStressMonitorTest {
+
+    private JvmGcPauseMetrics gcPauseMetrics;
+    private CircuitBreakerConfiguration circuitBreakerConfiguration;
+    private GCStressMonitor gcStressMonitor;
+
+    @BeforeEach
+    void setUp() {
+        circuitBreakerConfiguration = SpyConfiguration.createSpyConfig().getConfig(CircuitBreakerConfiguration.class);
+        // never consider the heap usage as stress
+        doReturn(1D).when(circuitBreakerConfiguration).getGcStressThreshold();
+        doReturn(1D).when(circuitBreakerConfiguration).getGcReliefThreshold();
+        doReturn(100L).when(circuitBreakerConfiguration).getGcPauseStressThresholdMillis();
+        gcPauseMetrics = mock(JvmGcPauseMetrics.class);
+
+        ElasticApmTracer tracer = mock(ElasticApmTracer.class);
+        doReturn(tracer).when(tracer).probe(ElasticApmTracer.class);
+        doReturn(circuitBreakerConfiguration).when(tracer).getConfig(CircuitBreakerConfiguration.class);
+        doReturn(gcPauseMetrics).when(tracer).getLifecycleListener(JvmGcPauseMetrics.class);
+        gcStressMonitor = new GCStressMonitor(tracer);
+    }
+
+    @Test
+    void testPauseSpike() {
+        doReturn(50L).when(gcPauseMetrics).getAndResetLongestPauseMillis();
+        assertThat(gcStressMonitor.isUnderStress()).isFalse();
+
+        doReturn(150L).when(gcPauseMetrics).getAndResetLongestPauseMillis();
+        assertThat(gcStressMonitor.isUnderStress()).isTrue();
+        assertThat(gcStressMonitor.getStressDetectionInfo()).contains("150ms");
+        assertThat(gcStressMonitor.isStressRelieved()).isFalse();
+
+        doReturn(0L).when(gcPauseMetrics).getAndResetLongestPauseMillis();
+        assertThat(gcStressMonitor.isStressRelieved()).isTrue();
+    }
+
+    @Test
+    void testPauseThresholdDisabled() {
+        doReturn(0L).when(circuitBreakerConfiguration).getGcPauseStressThresholdMillis();
+        doReturn(5000L).when(gcPauseMetrics).getAndResetLongestPauseMillis();
+        assertThat(gcStressMonitor.isUnderStress()).isFalse();
+        assertThat(gcStressMonitor.isStressRelieved()).isTrue();
+    }
+}
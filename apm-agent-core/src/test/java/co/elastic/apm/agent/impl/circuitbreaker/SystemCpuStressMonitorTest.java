@@ -22,6 +22,7 @@ import co.elastic.apm.agent.MockReporter;
 import co.elastic.apm.agent.configuration.SpyConfiguration;
 import co.elastic.apm.agent.impl.ElasticApmTracerBuilder;
 import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.metrics.builtin.CgroupCpuStats;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -38,7 +39,11 @@ import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 class SystemCpuStressMonitorTest {
     private static ElasticApmTracer tracer;
@@ -145,6 +150,56 @@ class SystemCpuStressMonitorTest {
         }
     }
 
+    @Test
+    void testCpuThrottlingStress() throws Exception {
+        CircuitBreakerConfiguration config = tracer.getConfig(CircuitBreakerConfiguration.class);
+        CgroupCpuStats cpuStats = mock(CgroupCpuStats.class);
+        doReturn(true).when(cpuStats).update();
+        doReturn(0.6, 0.7, 0.8, 0.9, 0.3, 0.05, 0.05, 0.05).when(cpuStats).getThrottledRatio();
+        doReturn(cpuStats).when(systemCpuStressMonitor).getCgroupCpuStats();
+        doReturn(true).when(config).isCpuThrottlingMonitoringEnabled();
+        try {
+            testValues = List.of(0.4, 0.4, 0.4, 0.4, 0.4, 0.4, 0.4, 0.4);
+            for (int i = 0; i < 2; i++) {
+                assertNotUnderStress();
+            }
+            for (int i = 0; i < 5; i++) {
+                assertUnderStress();
+            }
+            assertNotUnderStress();
+        } finally {
+            doReturn(false).when(config).isCpuThrottlingMonitoringEnabled();
+        }
+    }
+
+    @Test
+    void testCpuThrottlingDisabled() throws Exception {
+        CgroupCpuStats cpuStats = mock(CgroupCpuStats.class);
+        doReturn(true).when(cpuStats).update();
+        doReturn(1.0).when(cpuStats).getThrottledRatio();
+        doReturn(cpuStats).when(systemCpuStressMonitor).getCgroupCpuStats();
+
+        testValues = List.of(0.4, 0.4, 0.4, 0.4);
+        for (int i = 0; i < 4; i++) {
+            assertNotUnderStress();
+        }
+        verify(cpuStats, never()).update();
+    }
+
+    @Test
+    void testStopClosesCgroupCpuStats() {
+        CgroupCpuStats cpuStats = mock(CgroupCpuStats.class);
+        SystemCpuStressMonitor monitor = spy(new SystemCpuStressMonitor(tracer));
+        doReturn(cpuStats).when(monitor).createCgroupCpuStats();
+        assertThat(monitor.getCgroupCpuStats()).isSameAs(cpuStats);
+
+        monitor.stop();
+        verify(cpuStats).close();
+        // a poll that runs concurrently to stopping doesn't re-open the stats
+        assertThat(monitor.getCgroupCpuStats()).isNull();
+        verify(monitor, times(1)).createCgroupCpuStats();
+    }
+
     // this method has a side effect of advancing the iterator that reads the test values from the list
     private void assertUnderStress() throws Exception {
         assertThat(systemCpuStressMonitor.isUnderStress()).isTrue();
@@ -0,0 +1,86 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.impl.context;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BodyBufferPoolTest {
+
+    @Test
+    void testSegmentsAreSlicedFromSlabs() {
+        BodyBufferPool pool = new BodyBufferPool(Long.MAX_VALUE);
+
+        ByteBuffer segment = pool.acquireSegment();
+        assertThat(segment).isNotNull();
+        assertThat(segment.position()).isZero();
+        assertThat(segment.capacity()).isEqualTo(BodyBufferPool.SEGMENT_SIZE);
+        assertThat(pool.getFreeSegmentCount()).isEqualTo(BodyBufferPool.SEGMENTS_PER_SLAB - 1);
+        assertThat(pool.getReservedBytes()).isEqualTo(BodyBufferPool.SEGMENT_SIZE);
+
+        // segments of the same slab must not overlap
+        ByteBuffer other = pool.acquireSegment();
+        assertThat(other).isNotNull();
+        segment.put((byte) 1);
+        other.put((byte) 2);
+        assertThat(segment.get(0)).isEqualTo((byte) 1);
+
+        pool.releaseSegment(segment);
+        pool.releaseSegment(other);
+        assertThat(pool.getReservedBytes()).isZero();
+        assertThat(pool.getFreeSegmentCount()).isEqualTo(BodyBufferPool.SEGMENTS_PER_SLAB);
+    }
+
+    @Test
+    void testMostRecentlyReleasedSegmentIsReusedFirst() {
+        BodyBufferPool pool = new BodyBufferPool(Long.MAX_VALUE);
+        ByteBuffer segment = pool.acquireSegment();
+        assertThat(segment).isNotNull();
+        segment.put((byte) 42);
+        pool.releaseSegment(segment);
+
+        ByteBuffer reused = pool.acquireSegment();
+        assertThat(reused).isSameAs(segment);
+        assertThat(reused.position()).isZero();
+        assertThat(reused.remaining()).isEqualTo(BodyBufferPool.SEGMENT_SIZE);
+    }
+
+    @Test
+    void testMemoryLimit() {
+        BodyBufferPool pool = new BodyBufferPool(3 * BodyBufferPool.SEGMENT_SIZE);
+        List<ByteBuffer> segments = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            segments.add(pool.acquireSegment());
+        }
+        assertThat(segments).doesNotContainNull();
+        assertThat(pool.acquireSegment()).isNull();
+        assertThat(pool.tryReserve(1)).isFalse();
+
+        pool.releaseSegment(segments.get(0));
+        assertThat(pool.tryReserve(BodyBufferPool.SEGMENT_SIZE + 1)).isFalse();
+        assertThat(pool.tryReserve(BodyBufferPool.SEGMENT_SIZE)).isTrue();
+        pool.release(BodyBufferPool.SEGMENT_SIZE);
+        assertThat(pool.acquireSegment()).isNotNull();
+    }
+}
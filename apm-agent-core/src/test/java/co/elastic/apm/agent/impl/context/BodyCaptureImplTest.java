@@ -18,14 +18,19 @@
  */
 package co.elastic.apm.agent.impl.context;
 
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
 import co.elastic.apm.agent.sdk.internal.util.IOUtils;
 import org.junit.jupiter.api.Test;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static co.elastic.apm.agent.testutils.assertions.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 
 public class BodyCaptureImplTest {
 
@@ -110,6 +115,67 @@ public class BodyCaptureImplTest {
         assertThat(capture.getBody()).isEmpty();
     }
 
+    @Test
+    public void testMemoryLimit() {
+        BodyBufferPool pool = new BodyBufferPool(2 * BodyBufferPool.SEGMENT_SIZE);
+        BodyCaptureImpl capture = new BodyCaptureImpl(pool);
+        capture.markEligibleForCapturing();
+        capture.markPreconditionsPassed("utf-8", 4096);
+        capture.startCapture();
+
+        byte[] data = generateStringOfLength(4096).getBytes(StandardCharsets.UTF_8);
+        capture.append(data, 0, data.length);
+        assertThat(capture.isFull()).isTrue();
+        assertThat(IOUtils.copyToByteArray(capture.getBody())).hasSize(2 * BodyBufferPool.SEGMENT_SIZE);
+        assertThat(pool.getReservedBytes()).isEqualTo(2 * BodyBufferPool.SEGMENT_SIZE);
+
+        capture.resetState();
+        assertThat(pool.getReservedBytes()).isZero();
+    }
+
+    @Test
+    public void testPerTransactionLimit() {
+        TransactionImpl transaction = mock(TransactionImpl.class);
+        AtomicInteger remaining = new AtomicInteger(1500);
+        doAnswer(invocation -> {
+            int granted = Math.min(remaining.get(), invocation.<Integer>getArgument(0));
+            remaining.addAndGet(-granted);
+            return granted;
+        }).when(transaction).reserveBodyCaptureBytes(anyInt());
+
+        byte[] data = generateStringOfLength(4096).getBytes(StandardCharsets.UTF_8);
+
+        BodyCaptureImpl first = new BodyCaptureImpl();
+        first.setTransaction(transaction);
+        first.markEligibleForCapturing();
+        first.markPreconditionsPassed("utf-8", 1024);
+        first.startCapture();
+        first.append(data, 0, data.length);
+        assertThat(IOUtils.copyToByteArray(first.getBody())).hasSize(1024);
+
+        BodyCaptureImpl second = new BodyCaptureImpl();
+        second.setTransaction(transaction);
+        second.markEligibleForCapturing();
+        second.markPreconditionsPassed("utf-8", 1024);
+        second.startCapture();
+        second.append(data, 0, data.length);
+        assertThat(second.isFull()).isTrue();
+        assertThat(IOUtils.copyToByteArray(second.getBody())).hasSize(476);
+
+        BodyCaptureImpl third = new BodyCaptureImpl();
+        third.setTransaction(transaction);
+        third.markEligibleForCapturing();
+        third.markPreconditionsPassed("utf-8", 1024);
+        third.startCapture();
+        third.append((byte) 42);
+        assertThat(third.isFull()).isTrue();
+        assertThat(third.hasContent()).isFalse();
+
+        first.resetState();
+        second.resetState();
+        third.resetState();
+    }
+
     private String generateStringOfLength(int len) {
         StringBuilder out = new StringBuilder();
         int i = 0;
@@ -18,8 +18,14 @@
  */
 package co.elastic.apm.agent.impl.context;
 
+import co.elastic.apm.agent.tracer.metadata.HeaderSource;
+import co.elastic.apm.agent.tracer.metadata.PotentiallyMultiValuedMap;
 import org.junit.jupiter.api.Test;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static co.elastic.apm.agent.JsonUtils.toJson;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -51,6 +57,78 @@ class TransactionContextTest {
         assertThat(copyOfContext.hasCustom()).isFalse();
     }
 
+    @Test
+    void testCaptureDeferredHeaders() {
+        TransactionContextImpl context = new TransactionContextImpl();
+        CountingHeaderSource source = new CountingHeaderSource();
+        context.getRequest()
+            .withHeaderSource(headers("content-type", "text/html"), source)
+            .withCookieSource(headers("c1", "v1"), source);
+        context.getResponse().withHeaderSource(headers("content-type", "application/json"), source);
+        assertThat(context.getRequest().hasContent()).isTrue();
+        assertThat(source.invocations).hasValue(0);
+
+        context.captureDeferredHeaders();
+        assertThat(source.invocations).hasValue(3);
+        assertThat(context.getRequest().getHeaders().get("content-type")).isEqualTo("text/html");
+        assertThat(context.getRequest().getCookies().get("c1")).isEqualTo("v1");
+        assertThat(context.getResponse().getHeaders().get("content-type")).isEqualTo("application/json");
+
+        // the references to the carriers are released after capturing the headers
+        context.captureDeferredHeaders();
+        assertThat(source.invocations).hasValue(3);
+    }
+
+    @Test
+    void testResetDiscardsDeferredHeaders() {
+        TransactionContextImpl context = new TransactionContextImpl();
+        CountingHeaderSource source = new CountingHeaderSource();
+        context.getRequest().withHeaderSource(headers("content-type", "text/html"), source);
+        context.getResponse().withHeaderSource(headers("content-type", "application/json"), source);
+
+        context.resetState();
+        context.captureDeferredHeaders();
+        assertThat(source.invocations).hasValue(0);
+        assertThat(context.getRequest().hasContent()).isFalse();
+        assertThat(context.getResponse().hasContent()).isFalse();
+    }
+
+    @Test
+    void testCopyFromCopiesDeferredHeaders() {
+        TransactionContextImpl context = new TransactionContextImpl();
+        CountingHeaderSource source = new CountingHeaderSource();
+        context.getRequest().withHeaderSource(headers("content-type", "text/html"), source);
+        context.getResponse().withHeaderSource(headers("content-type", "application/json"), source);
+
+        TransactionContextImpl copyOfContext = new TransactionContextImpl();
+        copyOfContext.copyFrom(context);
+        assertThat(copyOfContext.getRequest().getHeaders().get("content-type")).isEqualTo("text/html");
+        assertThat(copyOfContext.getResponse().getHeaders().get("content-type")).isEqualTo("application/json");
+
+        // the headers of the original context are still captured when the transaction ends
+        context.captureDeferredHeaders();
+        assertThat(context.getRequest().getHeaders().get("content-type")).isEqualTo("text/html");
+    }
+
+    private static Map<String, String> headers(String key, String value) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(key, value);
+        return headers;
+    }
+
+    private static class CountingHeaderSource implements HeaderSource<Map<String, String>> {
+
+        private final AtomicInteger invocations = new AtomicInteger();
+
+        @Override
+        public void copyTo(Map<String, String> carrier, PotentiallyMultiValuedMap target) {
+            invocations.incrementAndGet();
+            for (Map.Entry<String, String> entry : carrier.entrySet()) {
+                target.add(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
     private TransactionContextImpl createContext() {
         TransactionContextImpl context = new TransactionContextImpl();
         RequestImpl request = context.getRequest();
@@ -120,6 +120,9 @@ abstract class AbstractCompressionStrategyTest {
         SpanCount spanCount = reporter.getFirstTransaction().getSpanCount();
         assertThat(spanCount.getReported().get()).isEqualTo(1);
         assertThat(spanCount.getDropped().get()).isEqualTo(3);
+        assertThat(spanCount.getCompressionEligible().get()).isEqualTo(4);
+        assertThat(spanCount.getCompressed().get()).isEqualTo(3);
+        assertThat(spanCount.getCompressionContended().get()).isEqualTo(0);
     }
 
     @Test
@@ -137,6 +140,8 @@ abstract class AbstractCompressionStrategyTest {
         SpanCount spanCount = reporter.getFirstTransaction().getSpanCount();
         assertThat(spanCount.getReported().get()).isEqualTo(2);
         assertThat(spanCount.getDropped().get()).isEqualTo(0);
+        assertThat(spanCount.getCompressionEligible().get()).isEqualTo(1);
+        assertThat(spanCount.getCompressed().get()).isEqualTo(0);
     }
 
     @Test
@@ -0,0 +1,102 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.impl.transaction;
+
+import co.elastic.apm.agent.MockTracer;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.sampling.ConstantSampler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AbstractRefCountedContextTest {
+
+    private ElasticApmTracer tracer;
+    private TransactionImpl transaction;
+
+    @BeforeEach
+    void setUp() {
+        tracer = MockTracer.createRealTracer();
+        transaction = tracer.startRootTransaction(ConstantSampler.of(true), -1, null);
+    }
+
+    @Test
+    void testNestedActivationsOnOwnerThread() {
+        int initialReferences = transaction.getReferenceCount();
+
+        transaction.activate();
+        assertThat(transaction.getReferenceCount()).isEqualTo(initialReferences + 1);
+        transaction.activate();
+        assertThat(transaction.getReferenceCount()).isEqualTo(initialReferences + 2);
+
+        SpanImpl span = transaction.createSpan();
+        int referencesWithSpan = transaction.getReferenceCount();
+        span.activate();
+        assertThat(transaction.getReferenceCount()).isEqualTo(referencesWithSpan + 1);
+        assertThat(span.getReferenceCount()).isEqualTo(2);
+        span.deactivate();
+        assertThat(transaction.getReferenceCount()).isEqualTo(referencesWithSpan);
+        assertThat(span.getReferenceCount()).isEqualTo(1);
+
+        transaction.deactivate();
+        assertThat(transaction.getReferenceCount()).isEqualTo(referencesWithSpan - 1);
+        transaction.deactivate();
+        assertThat(transaction.getReferenceCount()).isEqualTo(referencesWithSpan - 2);
+        span.end();
+    }
+
+    @Test
+    void testActivationOnOtherThread() throws Exception {
+        int initialReferences = transaction.getReferenceCount();
+        AtomicInteger referencesWhileActive = new AtomicInteger();
+        Thread thread = new Thread(() -> {
+            transaction.activate();
+            referencesWhileActive.set(transaction.getReferenceCount());
+            transaction.deactivate();
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(referencesWhileActive.get()).isEqualTo(initialReferences + 1);
+        assertThat(transaction.getReferenceCount()).isEqualTo(initialReferences);
+    }
+
+    @Test
+    void testOwnerThreadActivationPreventsRecycling() throws Exception {
+        transaction.activate();
+        assertThat(transaction.getReferenceCount()).isEqualTo(2);
+
+        // release the reference acquired when starting the transaction from another thread, like the reporter does
+        Thread thread = new Thread(transaction::decrementReferences);
+        thread.start();
+        thread.join();
+
+        assertThat(transaction.isReferenced()).isTrue();
+        assertThat(transaction.getTraceContext().getId().isEmpty()).isFalse();
+
+        transaction.deactivate();
+        assertThat(transaction.isReferenced()).isFalse();
+        assertThat(transaction.getReferenceCount()).isZero();
+        // the transaction has been recycled
+        assertThat(transaction.getTraceContext().getId().isEmpty()).isTrue();
+    }
+}
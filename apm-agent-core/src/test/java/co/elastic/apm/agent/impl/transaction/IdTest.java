@@ -20,7 +20,16 @@ package co.elastic.apm.agent.impl.transaction;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class IdTest {
 
@@ -74,4 +83,96 @@ class IdTest {
         assertThat(id.readLong(0)).isEqualTo(21);
         assertThat(id.readLong(8)).isEqualTo(42);
     }
+
+    @Test
+    void testRandomValue() {
+        final IdImpl id = IdImpl.new128BitId();
+        final IdImpl other = IdImpl.new128BitId();
+
+        id.setToRandomValue();
+        other.setToRandomValue();
+
+        assertThat(id.isEmpty()).isFalse();
+        assertThat(id.readLong(0)).isNotZero();
+        assertThat(id.readLong(8)).isNotZero();
+        assertThat(id).isNotEqualTo(other);
+    }
+
+    @Test
+    void testReseedReplacesGeneratorOfThread() {
+        RandomIdGenerator generator = RandomIdGenerator.current();
+        assertThat(RandomIdGenerator.current()).isSameAs(generator);
+
+        IdImpl.reseedRandomValues();
+
+        RandomIdGenerator reseeded = RandomIdGenerator.current();
+        assertThat(reseeded).isNotSameAs(generator);
+        assertThat(RandomIdGenerator.current()).isSameAs(reseeded);
+    }
+
+    @Test
+    void testTimeOrderedValue() {
+        final IdImpl id = IdImpl.new128BitId();
+
+        id.setToTimeOrderedRandomValue(0x0123_4567_89ABL);
+
+        assertThat(id.toString()).startsWith("0123456789ab");
+        assertThat(id.isEmpty()).isFalse();
+        assertThatThrownBy(() -> IdImpl.new64BitId().setToTimeOrderedRandomValue(0))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testCachedHexIsInvalidatedOnMutation() {
+        final IdImpl id = IdImpl.new64BitId();
+        byte[] buffer = new byte[16];
+
+        id.fromHexString("0000000000000001", 0);
+        id.writeAsHexAscii(buffer, 0);
+        assertThat(new String(buffer, US_ASCII)).isEqualTo("0000000000000001");
+
+        id.fromLongs(2);
+        id.writeAsHexAscii(buffer, 0);
+        assertThat(new String(buffer, US_ASCII)).isEqualTo("0000000000000002");
+
+        final IdImpl copy = IdImpl.new64BitId();
+        copy.fromLongs(3);
+        copy.writeAsHexAscii(buffer, 0);
+        copy.copyFrom(id);
+        copy.writeAsHexAscii(buffer, 0);
+        assertThat(new String(buffer, US_ASCII)).isEqualTo("0000000000000002");
+
+        id.resetState();
+        id.writeAsHexAscii(buffer, 0);
+        assertThat(new String(buffer, US_ASCII)).isEqualTo("0000000000000000");
+        copy.writeAsHexAscii(buffer, 0);
+        assertThat(new String(buffer, US_ASCII)).isEqualTo("0000000000000002");
+    }
+
+    @Test
+    void testConcurrentHexEncoding() throws Exception {
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                final IdImpl id = IdImpl.new128BitId();
+                id.setToRandomValue();
+                final CyclicBarrier barrier = new CyclicBarrier(threads);
+                List<Future<String>> results = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    results.add(executor.submit(() -> {
+                        byte[] buffer = new byte[32];
+                        barrier.await();
+                        id.writeAsHexAscii(buffer, 0);
+                        return new String(buffer, US_ASCII);
+                    }));
+                }
+                for (Future<String> result : results) {
+                    assertThat(result.get()).isEqualTo(id.toString());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.impl.transaction;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OTelAttributesTest {
+
+    private final OTelAttributes attributes = new OTelAttributes();
+
+    @Test
+    void testTypedValues() {
+        attributes.putLong("long", 42L);
+        attributes.putDouble("double", 0.5);
+        attributes.putBoolean("boolean", true);
+        attributes.putValue("string", "foo");
+
+        assertThat(attributes).hasSize(4);
+        assertThat(attributes.getType(0)).isEqualTo(OTelAttributes.TYPE_LONG);
+        assertThat(attributes.getLong(0)).isEqualTo(42L);
+        assertThat(attributes.getType(1)).isEqualTo(OTelAttributes.TYPE_DOUBLE);
+        assertThat(attributes.getDouble(1)).isEqualTo(0.5);
+        assertThat(attributes.getType(2)).isEqualTo(OTelAttributes.TYPE_BOOLEAN);
+        assertThat(attributes.getBoolean(2)).isTrue();
+        assertThat(attributes.getType(3)).isEqualTo(OTelAttributes.TYPE_OBJECT);
+        assertThat(attributes.getObject(3)).isEqualTo("foo");
+
+        assertThat(attributes.getLong("long", -1)).isEqualTo(42L);
+        assertThat(attributes.getLong("string", -1)).isEqualTo(-1);
+        assertThat(attributes.getLong("missing", -1)).isEqualTo(-1);
+        assertThat(attributes.getString("string")).isEqualTo("foo");
+        assertThat(attributes.getString("long")).isNull();
+    }
+
+    @Test
+    void testMapView() {
+        attributes.putValue("long", 42L);
+        attributes.putValue("double", 0.5);
+        attributes.putValue("boolean", false);
+        attributes.putValue("float", 0.42f);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("long", 42L);
+        expected.put("double", 0.5);
+        expected.put("boolean", false);
+        expected.put("float", 0.42f);
+        assertThat(attributes).isEqualTo(expected);
+        assertThat(attributes.get("float")).isInstanceOf(Float.class);
+        assertThat(attributes.getType(0)).isEqualTo(OTelAttributes.TYPE_LONG);
+    }
+
+    @Test
+    void testOverwriteKeepsInsertionOrder() {
+        attributes.putValue("a", "1");
+        attributes.putValue("b", "2");
+        assertThat(attributes.put("a", 3L)).isEqualTo("1");
+
+        assertThat(attributes.keySet()).containsExactly("a", "b");
+        assertThat(attributes.get("a")).isEqualTo(3L);
+        assertThat(attributes.getObject(0)).isNull();
+    }
+
+    @Test
+    void testGrowAndRemove() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            // new String instances, so that lookups can't rely on identity
+            keys.add(new String("key." + i));
+            attributes.putLong(keys.get(i), i);
+        }
+        assertThat(attributes).hasSize(100);
+        for (int i = 0; i < 100; i++) {
+            assertThat(attributes.getLong("key." + i, -1)).isEqualTo(i);
+        }
+
+        assertThat(attributes.remove("key.50")).isEqualTo(50L);
+        assertThat(attributes).hasSize(99);
+        assertThat(attributes.containsKey("key.50")).isFalse();
+        assertThat(attributes.getLong("key.51", -1)).isEqualTo(51);
+        assertThat(attributes.getLong("key.99", -1)).isEqualTo(99);
+    }
+
+    @Test
+    void testResetState() {
+        attributes.putValue("string", "foo");
+        attributes.putLong("long", 1);
+
+        attributes.resetState();
+
+        assertThat(attributes).isEmpty();
+        assertThat(attributes.containsKey("string")).isFalse();
+        attributes.putLong("long", 2);
+        assertThat(attributes).containsExactly(Map.entry("long", 2L));
+    }
+}
@@ -97,6 +97,24 @@ public class SpanCompressionIT {
         assertReportedSpans(reporter.getSpans());
     }
 
+    @RepeatedTest(100)
+    void testCompressionCountsWithParallelExitSpans() {
+        runInTransactionScope((transaction, i) -> {
+            return () -> createExitSpan(transaction, i, 1000L + i, "postgresql");
+        });
+
+        List<SpanImpl> reportedSpans = reporter.getSpans();
+        int numberOfSpansIncludingCompressed = reportedSpans.stream()
+            .mapToInt(s -> s.isComposite() ? s.getComposite().getCount() : 1)
+            .sum();
+        assertThat(numberOfSpansIncludingCompressed).isEqualTo(numberOfSpans);
+
+        SpanCount spanCount = reporter.getFirstTransaction().getSpanCount();
+        assertThat(spanCount.getCompressionEligible().get()).isEqualTo(numberOfSpans);
+        assertThat(spanCount.getCompressed().get()).isEqualTo(numberOfSpans - reportedSpans.size());
+        assertThat(spanCount.getCompressionContended().get()).isLessThanOrEqualTo(reportedSpans.size());
+    }
+
     @RepeatedTest(100)
     void testParallelNonCompressibleExitSpanCreationWithRecycling() {
         reporter.setImmediateRecycling(true);
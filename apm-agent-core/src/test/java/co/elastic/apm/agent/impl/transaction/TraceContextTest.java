@@ -172,6 +172,19 @@ class TraceContextTest {
         assertThat(outgoingHeaders.get(TraceContextImpl.ELASTIC_TRACE_PARENT_TEXTUAL_HEADER_NAME)).isNull();
     }
 
+    @Test
+    void testTimeOrderedTraceIds() {
+        doReturn(true).when(config.getConfig(CoreConfigurationImpl.class)).isTimeOrderedTraceIds();
+        long before = System.currentTimeMillis();
+        final TraceContextImpl traceContext = TraceContextImpl.with64BitId(tracer);
+        traceContext.asRootSpan(ConstantSampler.of(true));
+        long after = System.currentTimeMillis();
+
+        long timestamp = traceContext.getTraceId().readLong(0) >>> 16;
+        assertThat(timestamp).isBetween(before, after);
+        assertThat(traceContext.getTraceId().getLeastSignificantBits()).isNotZero();
+    }
+
     @Test
     void testTraceContextTextHeadersRemoval() {
         Map<String, String> headerMap = new HashMap<>();
@@ -314,6 +327,29 @@ class TraceContextTest {
         assertThat(traceContext.getOutgoingTraceParentTextHeader().toString()).isNotEqualTo(traceParentHeader);
     }
 
+    @Test
+    void testOutgoingBinaryHeaderIsCachedUntilMutation() {
+        final TraceContextImpl traceContext = TraceContextImpl.with64BitId(tracer);
+        traceContext.asChildOf("00-0af7651916cd43dd8448eb211c80319c-b9c7c989f97918e1-01");
+
+        byte[] traceParent = traceContext.getOutgoingTraceParentBytes();
+        assertThat(new String(traceParent, StandardCharsets.US_ASCII)).isEqualTo(traceContext.getOutgoingTraceParentTextHeader().toString());
+        assertThat(traceContext.getOutgoingTraceParentBytes()).isSameAs(traceParent);
+        assertThat(traceContext.getOutgoingTraceParentString()).isSameAs(traceContext.getOutgoingTraceParentString());
+
+        traceContext.setRecorded(false);
+        byte[] unsampledTraceParent = traceContext.getOutgoingTraceParentBytes();
+        assertThat(unsampledTraceParent).isNotSameAs(traceParent);
+        assertThat(new String(unsampledTraceParent, StandardCharsets.US_ASCII))
+            .isEqualTo(traceContext.getOutgoingTraceParentTextHeader().toString())
+            .endsWith("-00");
+        // the previously handed out array must not be modified as it may still be referenced by a carrier
+        assertThat(new String(traceParent, StandardCharsets.US_ASCII)).endsWith("-01");
+
+        traceContext.resetState();
+        assertThat(traceContext.getOutgoingTraceParentBytes()).isNotSameAs(unsampledTraceParent);
+    }
+
     @Test
     void testCopyFrom() {
         Map<String, String> textHeaderMap = Map.of(
@@ -25,6 +25,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
 import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
@@ -186,6 +187,63 @@ class TraceStateTest {
         checkHeader(0.2d, "es=s:0.2,aa=1_2");
     }
 
+    @Test
+    void utf8HeaderIsCachedAndInvalidated() {
+        assertThat(traceState.toUtf8Header()).isNull();
+
+        traceState.addTextHeader("aa=1_2");
+        byte[] header = traceState.toUtf8Header();
+        assertThat(header).isEqualTo("aa=1_2".getBytes(StandardCharsets.UTF_8));
+        assertThat(traceState.toUtf8Header()).isSameAs(header);
+
+        TraceState copy = new TraceState();
+        copy.copyFrom(traceState);
+        assertThat(copy.toUtf8Header()).isSameAs(header);
+
+        traceState.addTextHeader("bb=3");
+        assertThat(traceState.toUtf8Header()).isEqualTo("aa=1_2,bb=3".getBytes(StandardCharsets.UTF_8));
+        assertThat(header).isEqualTo("aa=1_2".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void parsedHeaderIsSharedAcrossInstances() {
+        traceState.addTextHeader("es=s:0.555555,aa=42");
+        checkHeader(0.5556d, "es=s:0.5556,aa=42");
+        byte[] header = traceState.toUtf8Header();
+
+        TraceState other = new TraceState();
+        other.addTextHeader("es=s:0.555555,aa=42");
+        assertThat(other.getSampleRate()).isEqualTo(0.5556d);
+        assertThat(other.toTextHeader()).isEqualTo("es=s:0.5556,aa=42");
+        assertThat(other.toUtf8Header()).isSameAs(header);
+
+        other.addTextHeader("bb=3");
+        assertThat(other.toTextHeader()).isEqualTo("es=s:0.5556,aa=42,bb=3");
+        assertThat(traceState.toTextHeader()).isEqualTo("es=s:0.5556,aa=42");
+    }
+
+    @Test
+    void cachedHeaderRespectsSizeLimit() {
+        traceState.addTextHeader("aa=1_2,bb=3_4");
+        assertThat(traceState.toTextHeader()).isEqualTo("aa=1_2,bb=3_4");
+
+        TraceState other = new TraceState();
+        other.setSizeLimit(8);
+        other.addTextHeader("aa=1_2,bb=3_4");
+        assertThat(other.toTextHeader()).isEqualTo("aa=1_2");
+    }
+
+    @Test
+    void cachedHeaderIgnoredWhenSampleRateAlreadySet() {
+        traceState.addTextHeader("es=s:0.5");
+
+        TraceState other = new TraceState();
+        other.set(0.2d, TraceState.getHeaderValue(0.2d));
+        other.addTextHeader("es=s:0.5");
+        assertThat(other.getSampleRate()).isEqualTo(0.2d);
+        assertThat(other.toTextHeader()).isEqualTo("es=s:0.2");
+    }
+
     @ParameterizedTest
     @CsvSource(delimiterString = "|", value = {
         "es=k:0;s:0.555555,aa=123|es=k:0;s:0.5556,aa=123",
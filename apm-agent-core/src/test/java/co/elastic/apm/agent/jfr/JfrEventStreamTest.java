@@ -0,0 +1,108 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.jfr;
+
+import co.elastic.apm.agent.MockReporter;
+import co.elastic.apm.agent.MockTracer;
+import co.elastic.apm.agent.configuration.MetricsConfigurationImpl;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import co.elastic.apm.agent.tracer.configuration.TimeDuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.doReturn;
+
+@EnabledForJreRange(min = JRE.JAVA_14)
+class JfrEventStreamTest {
+
+    private MockReporter reporter;
+    private ElasticApmTracer tracer;
+    private JfrEventStream eventStream;
+    private Thread streamThread;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        reporter = new MockReporter();
+        tracer = MockTracer.createRealTracer(reporter);
+        doReturn(TimeDuration.of("20ms")).when(tracer.getConfig(MetricsConfigurationImpl.class)).getJfrRuntimeEventsSpanThreshold();
+        ThreadActivationTimeline timeline = new ThreadActivationTimeline(tracer);
+        tracer.registerSpanListener(timeline);
+        eventStream = JfrEventStream.create(new JfrRuntimeEventHandler(tracer, timeline), 10);
+        assertThat(eventStream).isNotNull();
+        streamThread = new Thread(eventStream::start);
+        streamThread.start();
+        // give the recording some time to start
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        eventStream.close();
+        streamThread.join(TimeUnit.SECONDS.toMillis(10));
+        tracer.stop();
+    }
+
+    @Test
+    void testContendedMonitorEnterIsReportedAsSpan() throws Exception {
+        TransactionImpl transaction = tracer.startRootTransaction(null);
+        transaction.activate();
+
+        Object lock = new Object();
+        CountDownLatch lockAcquired = new CountDownLatch(1);
+        Thread lockHolder = new Thread(() -> {
+            synchronized (lock) {
+                lockAcquired.countDown();
+                sleep(100);
+            }
+        });
+        lockHolder.start();
+        lockAcquired.await();
+        synchronized (lock) {
+            // entering the monitor blocks until the lock holder releases it
+            assertThat(lock).isNotNull();
+        }
+        transaction.deactivate().end();
+        lockHolder.join();
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> assertThat(reporter.getSpans())
+            .anyMatch(span -> span.getNameAsString().equals("Monitor enter java.lang.Object")));
+        SpanImpl span = reporter.getSpanByName("Monitor enter java.lang.Object");
+        assertThat(span.getTraceContext().getParentId()).isEqualTo(transaction.getTraceContext().getId());
+        assertThat(span.getDuration()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toMicros(20));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.jfr;
+
+import co.elastic.apm.agent.MockReporter;
+import co.elastic.apm.agent.MockTracer;
+import co.elastic.apm.agent.configuration.MetricsConfigurationImpl;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import co.elastic.apm.agent.metrics.Histogram;
+import co.elastic.apm.agent.metrics.MetricSet;
+import co.elastic.apm.agent.tracer.configuration.TimeDuration;
+import co.elastic.apm.agent.tracer.metrics.Labels;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+class JfrRuntimeEventHandlerTest {
+
+    private MockReporter reporter;
+    private ElasticApmTracer tracer;
+    private ThreadActivationTimeline timeline;
+    private JfrRuntimeEventHandler handler;
+    private long threadId;
+
+    @BeforeEach
+    void setUp() {
+        reporter = new MockReporter();
+        tracer = MockTracer.createRealTracer(reporter);
+        timeline = new ThreadActivationTimeline(tracer);
+        tracer.registerSpanListener(timeline);
+        handler = new JfrRuntimeEventHandler(tracer, timeline);
+        threadId = Thread.currentThread().getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracer.stop();
+    }
+
+    @Test
+    void testLongEventIsReportedAsSpanOfActiveTransaction() {
+        doReturn(TimeDuration.of("1ms")).when(tracer.getConfig(MetricsConfigurationImpl.class)).getJfrRuntimeEventsSpanThreshold();
+        TransactionImpl transaction = tracer.startRootTransaction(null);
+        transaction.activate();
+        long eventStart = timeline.getEpochMicros();
+        spinUntil(eventStart + 2_000);
+        transaction.deactivate().end();
+
+        assertThat(handler.exceedsSpanThreshold(2_000)).isTrue();
+        assertThat(handler.onThreadEvent(ThreadEventType.MONITOR_ENTER, threadId, eventStart, 2_000, "java.lang.Object")).isTrue();
+
+        SpanImpl span = reporter.getSpans().get(0);
+        assertThat(span.getNameAsString()).isEqualTo("Monitor enter java.lang.Object");
+        assertThat(span.getType()).isEqualTo("app");
+        assertThat(span.getSubtype()).isEqualTo("internal");
+        assertThat(span.getAction()).isEqualTo("monitor_enter");
+        assertThat(span.getTraceContext().getTraceId()).isEqualTo(transaction.getTraceContext().getTraceId());
+        assertThat(span.getTraceContext().getParentId()).isEqualTo(transaction.getTraceContext().getId());
+        assertThat(span.getTimestamp()).isEqualTo(eventStart);
+        assertThat(span.getDuration()).isEqualTo(2_000);
+    }
+
+    @Test
+    void testShortEventIsNotReportedAsSpan() {
+        TransactionImpl transaction = tracer.startRootTransaction(null);
+        transaction.activate();
+        long eventStart = timeline.getEpochMicros();
+        spinUntil(eventStart + 1_000);
+        transaction.deactivate().end();
+
+        assertThat(handler.exceedsSpanThreshold(1000)).isFalse();
+        assertThat(handler.onThreadEvent(ThreadEventType.THREAD_PARK, threadId, eventStart, 1000, null)).isFalse();
+        assertThat(reporter.getSpans()).isEmpty();
+    }
+
+    @Test
+    void testEventWithoutActiveContextIsNotReportedAsSpan() {
+        long eventStart = timeline.getEpochMicros();
+
+        assertThat(handler.onThreadEvent(ThreadEventType.SOCKET_READ, threadId, eventStart, 150_000, "localhost:8080")).isFalse();
+        assertThat(reporter.getSpans()).isEmpty();
+    }
+
+    @Test
+    void testHistograms() {
+        handler.onGarbageCollection("G1 Young Generation", 5_000);
+        handler.onGarbageCollection("G1 Young Generation", 2_000_000);
+        handler.onSafepoint(200);
+        handler.onThreadEvent(ThreadEventType.FILE_WRITE, threadId, timeline.getEpochMicros(), 20_000, null);
+
+        tracer.getMetricRegistry().flipPhaseAndReport(metricSets -> {
+            MetricSet gcMetrics = metricSets.get(Labels.Mutable.of("name", "G1 Young Generation"));
+            assertThat(gcMetrics).isNotNull();
+            Histogram gcPauses = gcMetrics.getHistograms().get(JfrRuntimeEventHandler.GC_PAUSE_METRIC);
+            assertThat(gcPauses.getCount()).isEqualTo(2);
+            assertThat(gcPauses.getTotalTimeUs()).isEqualTo(2_005_000);
+
+            MetricSet metrics = metricSets.get(Labels.EMPTY);
+            assertThat(metrics).isNotNull();
+            assertThat(metrics.getHistograms().get(JfrRuntimeEventHandler.SAFEPOINT_METRIC).getCount()).isEqualTo(1);
+            assertThat(metrics.getHistograms().get("jvm.jfr.file_write").getTotalTimeUs()).isEqualTo(20_000);
+        });
+    }
+
+    private void spinUntil(long epochMicros) {
+        while (timeline.getEpochMicros() <= epochMicros) {
+            Thread.onSpinWait();
+        }
+    }
+}
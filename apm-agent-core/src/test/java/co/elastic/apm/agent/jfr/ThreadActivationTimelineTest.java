@@ -0,0 +1,157 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.jfr;
+
+import co.elastic.apm.agent.MockReporter;
+import co.elastic.apm.agent.MockTracer;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.sampling.ConstantSampler;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TraceContextImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ThreadActivationTimelineTest {
+
+    private ElasticApmTracer tracer;
+    private ThreadActivationTimeline timeline;
+    private TraceContextImpl target;
+    private long threadId;
+
+    @BeforeEach
+    void setUp() {
+        tracer = MockTracer.createRealTracer(new MockReporter());
+        timeline = new ThreadActivationTimeline(tracer, 4);
+        tracer.registerSpanListener(timeline);
+        target = TraceContextImpl.with64BitId(tracer);
+        threadId = Thread.currentThread().getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracer.stop();
+    }
+
+    @Test
+    void testAttributesToActiveContext() {
+        long beforeActivation = tick();
+        TransactionImpl transaction = tracer.startRootTransaction(null);
+        transaction.activate();
+        long transactionActive = tick();
+        SpanImpl span = transaction.createSpan();
+        span.activate();
+        long spanActive = tick();
+        span.deactivate().end();
+        long transactionActiveAgain = tick();
+        transaction.deactivate();
+        long afterDeactivation = tick();
+
+        assertThat(timeline.findActiveContext(threadId, beforeActivation, target)).isFalse();
+        assertThat(timeline.findActiveContext(threadId, transactionActive, target)).isTrue();
+        assertThat(target.idEquals(transaction.getTraceContext())).isTrue();
+        assertThat(timeline.findActiveContext(threadId, spanActive, target)).isTrue();
+        assertThat(target.idEquals(span.getTraceContext())).isTrue();
+        assertThat(target.getTraceId()).isEqualTo(transaction.getTraceContext().getTraceId());
+        assertThat(timeline.findActiveContext(threadId, transactionActiveAgain, target)).isTrue();
+        assertThat(target.idEquals(transaction.getTraceContext())).isTrue();
+        assertThat(timeline.findActiveContext(threadId, afterDeactivation, target)).isFalse();
+        transaction.end();
+    }
+
+    @Test
+    void testOverwrittenChangesCanNotBeAttributed() {
+        TransactionImpl transaction = tracer.startRootTransaction(null);
+        transaction.activate();
+        long firstActivation = tick();
+        transaction.deactivate();
+        for (int i = 0; i < 2; i++) {
+            transaction.activate();
+            transaction.deactivate();
+        }
+        long lastActivation = tick();
+        transaction.activate();
+        transaction.deactivate();
+        transaction.end();
+
+        assertThat(timeline.findActiveContext(threadId, firstActivation, target)).isFalse();
+        assertThat(timeline.findActiveContext(threadId, lastActivation, target)).isFalse();
+    }
+
+    @Test
+    void testNonSampledContextsAreNotRecorded() {
+        TransactionImpl transaction = tracer.startRootTransaction(ConstantSampler.of(false), -1, null);
+        transaction.activate();
+        long active = tick();
+        transaction.deactivate().end();
+
+        assertThat(timeline.findActiveContext(threadId, active, target)).isFalse();
+        assertThat(timeline.getThreadCount()).isZero();
+    }
+
+    @Test
+    void testUnknownThread() {
+        TransactionImpl transaction = tracer.startRootTransaction(null);
+        transaction.activate();
+        long active = tick();
+        transaction.deactivate().end();
+
+        assertThat(timeline.findActiveContext(threadId + 1, active, target)).isFalse();
+    }
+
+    @Test
+    void testRemoveTerminatedThreads() throws Exception {
+        final TransactionImpl transaction = tracer.startRootTransaction(null);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                transaction.activate();
+                transaction.deactivate();
+            }
+        });
+        thread.start();
+        thread.join();
+        transaction.end();
+        assertThat(timeline.getThreadCount()).isEqualTo(1);
+
+        timeline.removeTerminatedThreads();
+
+        assertThat(timeline.getThreadCount()).isZero();
+    }
+
+    /**
+     * Returns a timestamp which is greater than the ones of the changes recorded before and less than the ones recorded after.
+     */
+    private long tick() {
+        long timestamp = nextMicros(timeline.getEpochMicros());
+        nextMicros(timestamp);
+        return timestamp;
+    }
+
+    private long nextMicros(long current) {
+        long next;
+        do {
+            next = timeline.getEpochMicros();
+        } while (next <= current);
+        return next;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistogramTest {
+
+    private final Histogram histogram = new Histogram(new long[]{10, 100, 1000});
+
+    @Test
+    void testBuckets() {
+        histogram.update(0);
+        histogram.update(10);
+        histogram.update(11);
+        histogram.update(100);
+        histogram.update(999);
+
+        assertThat(histogram.getBucketValue(0)).isEqualTo(2);
+        assertThat(histogram.getBucketValue(1)).isEqualTo(2);
+        assertThat(histogram.getBucketValue(2)).isEqualTo(1);
+        assertThat(histogram.getCount()).isEqualTo(5);
+        assertThat(histogram.getTotalTimeUs()).isEqualTo(1120);
+    }
+
+    @Test
+    void testValuesAboveLargestBoundaryAreCountedInLastBucket() {
+        histogram.update(1_000_000);
+
+        assertThat(histogram.getBucketValue(2)).isEqualTo(1);
+        assertThat(histogram.getBucketBoundary(2)).isEqualTo(1000);
+    }
+
+    @Test
+    void testReset() {
+        histogram.update(42);
+        assertThat(histogram.hasContent()).isTrue();
+
+        histogram.resetState();
+
+        assertThat(histogram.hasContent()).isFalse();
+        assertThat(histogram.getTotalTimeUs()).isZero();
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            assertThat(histogram.getBucketValue(i)).isZero();
+        }
+    }
+
+    @Test
+    void testDefaultBoundariesAreSorted() {
+        Histogram defaultHistogram = new Histogram();
+        for (int i = 1; i < defaultHistogram.getBucketCount(); i++) {
+            assertThat(defaultHistogram.getBucketBoundary(i)).isGreaterThan(defaultHistogram.getBucketBoundary(i - 1));
+        }
+    }
+}
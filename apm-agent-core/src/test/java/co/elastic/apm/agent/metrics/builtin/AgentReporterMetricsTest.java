@@ -182,6 +182,25 @@ public class AgentReporterMetricsTest {
         });
     }
 
+    @Test
+    public void checkRequestLimitMetrics() {
+        doReturn(true).when(mockMetricsConfig).isReporterHealthMetricsEnabled();
+        reporterMetrics = new AgentReporterMetrics(metricRegistry, mockMetricsConfig);
+
+        reportAndCheckMetrics(metrics -> {
+            assertMetricNotExported(metrics, "agent.events.requests.size_limit.bytes");
+            assertMetricNotExported(metrics, "agent.events.requests.time_limit.ms");
+        });
+
+        reporterMetrics.requestLimitsAdapted(1024, 10_000);
+        reporterMetrics.requestLimitsAdapted(2048, 20_000);
+
+        reportAndCheckMetrics(metricSets -> {
+            assertThat(metricSets.get(Labels.EMPTY).getRawMetrics())
+                .containsEntry("agent.events.requests.size_limit.bytes", 2048.0)
+                .containsEntry("agent.events.requests.time_limit.ms", 20_000.0);
+        });
+    }
 
     @Test
     public void checkQueueUtilizationCorrectlyReset() {
@@ -242,7 +261,9 @@ public class AgentReporterMetricsTest {
         "agent.events.total",
         "agent.events.dropped",
         "agent.events.queue.min_size.pct",
-        "agent.events.queue.max_size.pct"
+        "agent.events.queue.max_size.pct",
+        "agent.events.requests.size_limit.bytes",
+        "agent.events.requests.time_limit.ms"
     })
     public void testDisableMetric(String metric) {
         doReturn(List.of(WildcardMatcher.valueOf(metric))).when(mockReporterConfig).getDisableMetrics();
@@ -259,6 +280,7 @@ public class AgentReporterMetricsTest {
         inflightEvents.add(ReportingEvent.ReportingEventType.TRANSACTION, 20);
         reporterMetrics.requestFinished(inflightEvents, 0, 10, false);
         reporterMetrics.requestFinished(inflightEvents, 0, 20, true);
+        reporterMetrics.requestLimitsAdapted(1024, 10_000);
 
         reportAndCheckMetrics(metrics -> {
             assertMetricNotExported(metrics, metric);
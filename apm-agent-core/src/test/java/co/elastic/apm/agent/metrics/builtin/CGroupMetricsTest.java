@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 
@@ -128,4 +129,94 @@ class CGroupMetricsTest {
         assertThat(metricRegistry.getGaugeValue("system.process.cgroup.memory.mem.usage.bytes", Labels.EMPTY)).isEqualTo(964778496);
     }
 
+    @Test
+    void testCgroup2CpuAndPressureMetrics() throws Exception {
+        File mountInfo = new File(getClass().getResource("/proc/sys_cgroup2").toURI());
+        File fileTmp = File.createTempFile("temp", null);
+        fileTmp.deleteOnExit();
+        try (FileWriter fw = new FileWriter(fileTmp)) {
+            fw.write("30 23 0:26 / " + mountInfo.getAbsolutePath() + " rw,nosuid,nodev,noexec,relatime shared:4 - cgroup2 cgroup rw,seclabel\n");
+        }
+        CGroupMetrics cgroupMetrics = new CGroupMetrics(new File(getClass().getResource("/proc/cgroup2").toURI()), fileTmp);
+        cgroupMetrics.bindTo(metricRegistry);
+
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.stats.periods", Labels.EMPTY)).isEqualTo(4500);
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.stats.throttled.periods", Labels.EMPTY)).isEqualTo(1200);
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.stats.throttled.ns", Labels.EMPTY)).isEqualTo(5_400_000_000L);
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.cfs.quota.us", Labels.EMPTY)).isEqualTo(200000);
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.cfs.period.us", Labels.EMPTY)).isEqualTo(100000);
+
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.pressure.some.10.pct", Labels.EMPTY)).isCloseTo(0.0125, offset(1e-9));
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.pressure.some.60.pct", Labels.EMPTY)).isCloseTo(0.005, offset(1e-9));
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.pressure.full.300.pct", Labels.EMPTY)).isCloseTo(0.0005, offset(1e-9));
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.memory.pressure.some.10.pct", Labels.EMPTY)).isEqualTo(0);
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.io.pressure.some.10.pct", Labels.EMPTY)).isCloseTo(0.1234, offset(1e-9));
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.io.pressure.full.60.pct", Labels.EMPTY)).isCloseTo(0.04, offset(1e-9));
+        cgroupMetrics.stop();
+    }
+
+    @Test
+    void testCgroup1CpuMetrics() throws Exception {
+        File memoryMount = new File(getClass().getResource("/proc/limited/memory").toURI());
+        File cpuMount = new File(getClass().getResource("/proc/limited/cpu").toURI());
+        File fileTmp = File.createTempFile("temp", null);
+        fileTmp.deleteOnExit();
+        try (FileWriter fw = new FileWriter(fileTmp)) {
+            fw.write("39 30 0:35 / " + memoryMount.getAbsolutePath() + " rw,nosuid,nodev,noexec,relatime shared:10 - cgroup cgroup rw,seclabel,memory\n");
+            fw.write("40 30 0:36 / " + cpuMount.getAbsolutePath() + " rw,nosuid,nodev,noexec,relatime shared:11 - cgroup cgroup rw,seclabel,cpu,cpuacct\n");
+        }
+        CGroupMetrics cgroupMetrics = new CGroupMetrics(new File(getClass().getResource("/proc/cgroup").toURI()), fileTmp);
+        cgroupMetrics.bindTo(metricRegistry);
+
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.stats.periods", Labels.EMPTY)).isEqualTo(3000);
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.stats.throttled.periods", Labels.EMPTY)).isEqualTo(150);
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.stats.throttled.ns", Labels.EMPTY)).isEqualTo(2_250_000_000L);
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.cfs.period.us", Labels.EMPTY)).isEqualTo(100000);
+        // -1 means that there is no CPU limit
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.cfs.quota.us", Labels.EMPTY)).isEqualTo(Double.valueOf(Double.NaN));
+        assertThat(metricRegistry.getGaugeValue("system.process.cgroup.cpu.pressure.some.10.pct", Labels.EMPTY)).isEqualTo(Double.valueOf(Double.NaN));
+        cgroupMetrics.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "40 30 0:36 / /sys/fs/cgroup/cpu,cpuacct rw,nosuid,nodev,noexec,relatime shared:11 - cgroup cgroup rw,cpu,cpuacct|/sys/fs/cgroup/cpu,cpuacct",
+        "40 30 0:36 / /sys/fs/cgroup/cpu rw,nosuid,nodev,noexec,relatime shared:11 - cgroup cgroup rw,cpuacct,cpu|/sys/fs/cgroup/cpu",
+    })
+    void testCgroup1CpuRegex(String testString) throws Exception {
+        String[] split = testString.split("\\|");
+        CGroupMetrics cgroupMetrics = createUnlimitedSystemMetrics();
+        assertThat(cgroupMetrics.applyCgroupRegex(CGroupMetrics.CGROUP1_CPU_MOUNT_POINT, split[0])).isEqualTo(split[1]);
+        assertThat(cgroupMetrics.applyCgroupRegex(CGroupMetrics.CGROUP1_CPU_MOUNT_POINT,
+            "41 30 0:37 / /sys/fs/cgroup/cpuset rw,nosuid,nodev,noexec,relatime shared:12 - cgroup cgroup rw,cpuset")).isNull();
+    }
+
+    @Test
+    void testThrottledRatio() throws Exception {
+        File cpuStat = File.createTempFile("cpu", ".stat");
+        cpuStat.deleteOnExit();
+        writeCpuStat(cpuStat, 100, 10);
+        CgroupCpuStats cpuStats = new CgroupCpuStats(cpuStat, true);
+        try {
+            assertThat(cpuStats.update()).isTrue();
+            assertThat(cpuStats.getThrottledRatio()).isNaN();
+
+            writeCpuStat(cpuStat, 200, 35);
+            assertThat(cpuStats.update()).isTrue();
+            assertThat(cpuStats.getThrottledRatio()).isEqualTo(0.25);
+            assertThat(cpuStats.getThrottledNanos()).isEqualTo(35_000);
+
+            // no period elapsed
+            assertThat(cpuStats.update()).isTrue();
+            assertThat(cpuStats.getThrottledRatio()).isEqualTo(0);
+        } finally {
+            cpuStats.close();
+        }
+    }
+
+    private static void writeCpuStat(File cpuStat, long periods, long throttled) throws IOException {
+        try (FileWriter fw = new FileWriter(cpuStat)) {
+            fw.write("usage_usec 1000\nnr_periods " + periods + "\nnr_throttled " + throttled + "\nthrottled_usec " + throttled + "\n");
+        }
+    }
 }
@@ -0,0 +1,164 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.metrics.builtin;
+
+import co.elastic.apm.agent.configuration.MetricsConfigurationImpl;
+import co.elastic.apm.agent.metrics.MetricRegistry;
+import co.elastic.apm.agent.metrics.MetricSet;
+import co.elastic.apm.agent.report.ReporterConfigurationImpl;
+import co.elastic.apm.agent.tracer.metrics.Labels;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+class JvmGcPauseMetricsTest {
+
+    private static final String[] POOLS = {"G1 Eden Space", "G1 Survivor Space", "G1 Old Gen"};
+
+    private MetricRegistry registry;
+    private JvmGcPauseMetrics gcPauseMetrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new MetricRegistry(mock(ReporterConfigurationImpl.class), spy(MetricsConfigurationImpl.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (gcPauseMetrics != null) {
+            gcPauseMetrics.stop();
+        }
+    }
+
+    @Test
+    void testRecordPausesAllocationsAndPromotions() {
+        gcPauseMetrics = new JvmGcPauseMetrics(List.of(collector("G1 Young Generation"), collector("G1 Concurrent GC")), POOLS);
+        gcPauseMetrics.bindTo(registry);
+
+        gcPauseMetrics.onGarbageCollection("G1 Young Generation", true, false, 20,
+            new long[]{100, 0, 50}, new long[]{0, 10, 60});
+        gcPauseMetrics.onGarbageCollection("G1 Concurrent GC", false, true, 500,
+            new long[]{-1, -1, -1}, new long[]{-1, -1, -1});
+        gcPauseMetrics.onGarbageCollection("G1 Young Generation", true, false, 30,
+            new long[]{200, 10, 60}, new long[]{0, 5, 80});
+
+        assertThat(gcPauseMetrics.getAndResetLongestPauseMillis()).isEqualTo(30);
+        assertThat(gcPauseMetrics.getAndResetLongestPauseMillis()).isZero();
+        assertThat(registry.getGaugeValue(JvmGcPauseMetrics.USED_AFTER_GC_METRIC, Labels.Mutable.of("name", "G1 Old Gen"))).isEqualTo(80);
+        registry.flipPhaseAndReport(metricSets -> {
+            MetricSet pauses = metricSets.get(Labels.Mutable.of("name", "G1 Young Generation"));
+            assertThat(pauses.getHistograms().get(JvmGcPauseMetrics.PAUSE_METRIC).getCount()).isEqualTo(2);
+            assertThat(pauses.getHistograms().get(JvmGcPauseMetrics.PAUSE_METRIC).getTotalTimeUs()).isEqualTo(50_000);
+            assertThat(metricSets.get(Labels.Mutable.of("name", "G1 Concurrent GC"))).isNull();
+            // the allocations before the first collection are unknown
+            assertThat(metricSets.get(Labels.EMPTY).getCounters().get(JvmGcPauseMetrics.ALLOCATED_BYTES_METRIC).get()).isEqualTo(200);
+            assertThat(metricSets.get(Labels.EMPTY).getCounters().get(JvmGcPauseMetrics.PROMOTED_BYTES_METRIC).get()).isEqualTo(30);
+        });
+    }
+
+    @Test
+    void testNoPromotionsForFullGc() {
+        gcPauseMetrics = new JvmGcPauseMetrics(List.of(collector("G1 Young Generation"), collector("G1 Old Generation")), POOLS);
+        gcPauseMetrics.bindTo(registry);
+
+        gcPauseMetrics.onGarbageCollection("G1 Young Generation", true, false, 20,
+            new long[]{100, 0, 50}, new long[]{0, 10, 50});
+        gcPauseMetrics.onGarbageCollection("G1 Old Generation", false, false, 20,
+            new long[]{100, 10, 50}, new long[]{0, 0, 80});
+
+        registry.flipPhaseAndReport(metricSets -> {
+            assertThat(metricSets.get(Labels.EMPTY).getCounters().get(JvmGcPauseMetrics.ALLOCATED_BYTES_METRIC).get()).isEqualTo(100);
+            assertThat(metricSets.get(Labels.EMPTY).getCounters()).doesNotContainKey(JvmGcPauseMetrics.PROMOTED_BYTES_METRIC);
+        });
+    }
+
+    @Test
+    void testStopTheWorldPauses() {
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("PS Scavenge", "end of minor GC", "Allocation Failure")).isTrue();
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("ParNew", "end of minor GC", "Allocation Failure")).isTrue();
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("G1 Old Generation", "end of major GC", "G1 Evacuation Pause")).isTrue();
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("ZGC Pauses", "end of GC pause", "Warmup")).isTrue();
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("Shenandoah Pauses", "end of GC pause", "Concurrent GC")).isTrue();
+
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("ConcurrentMarkSweep", "end of major GC", "CMS Initial Mark")).isFalse();
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("ZGC", "end of major GC", "Proactive")).isFalse();
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("ZGC Major Cycles", "end of GC cycle", "Proactive")).isFalse();
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("Shenandoah Cycles", "end of GC cycle", "Concurrent GC")).isFalse();
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("G1 Young Generation", "end of minor GC", "No GC")).isFalse();
+
+        // unknown collectors depend on the action
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("scavenge", "end of minor GC", "unknown")).isTrue();
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("unknown", "end of GC cycle", "unknown")).isFalse();
+        assertThat(JvmGcPauseMetrics.isStopTheWorldPause("unknown", null, null)).isFalse();
+    }
+
+    @Test
+    void testConcurrentCyclesDontTripGcStressMonitor() {
+        gcPauseMetrics = new JvmGcPauseMetrics(List.of(collector("ParNew"), collector("ConcurrentMarkSweep")), POOLS);
+        gcPauseMetrics.bindTo(registry);
+
+        gcPauseMetrics.onGarbageCollection("ParNew", true,
+            !JvmGcPauseMetrics.isStopTheWorldPause("ParNew", "end of minor GC", "Allocation Failure"), 20,
+            new long[]{100, 0, 50}, new long[]{0, 10, 60});
+        // a CMS cycle which takes longer than the default stress_monitor_gc_pause_threshold
+        gcPauseMetrics.onGarbageCollection("ConcurrentMarkSweep", false,
+            !JvmGcPauseMetrics.isStopTheWorldPause("ConcurrentMarkSweep", "end of major GC", "CMS Initial Mark"), 3000,
+            new long[]{100, 10, 60}, new long[]{100, 10, 20});
+
+        assertThat(gcPauseMetrics.getAndResetLongestPauseMillis()).isEqualTo(20);
+        registry.flipPhaseAndReport(metricSets -> {
+            assertThat(metricSets.get(Labels.Mutable.of("name", "ParNew")).getHistograms().get(JvmGcPauseMetrics.PAUSE_METRIC).getCount()).isEqualTo(1);
+            assertThat(metricSets.get(Labels.Mutable.of("name", "ConcurrentMarkSweep"))).isNull();
+        });
+    }
+
+    @Test
+    void testNotifications() {
+        gcPauseMetrics = new JvmGcPauseMetrics();
+        gcPauseMetrics.bindTo(registry);
+        gcPauseMetrics.registerNotificationListener();
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> {
+            System.gc();
+            assertThat(ManagementFactory.getMemoryPoolMXBeans())
+                .filteredOn(pool -> pool.getType() == MemoryType.HEAP)
+                .extracting(MemoryPoolMXBean::getName)
+                .anyMatch(pool -> registry.getGaugeValue(JvmGcPauseMetrics.USED_AFTER_GC_METRIC, Labels.Mutable.of("name", pool)) >= 0);
+        });
+    }
+
+    private static GarbageCollectorMXBean collector(String name) {
+        GarbageCollectorMXBean collector = mock(GarbageCollectorMXBean.class);
+        doReturn(name).when(collector).getName();
+        return collector;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.metrics.builtin;
+
+import co.elastic.apm.agent.common.util.WildcardMatcher;
+import co.elastic.apm.agent.configuration.MetricsConfigurationImpl;
+import co.elastic.apm.agent.impl.transaction.SpanCount;
+import co.elastic.apm.agent.metrics.MetricRegistry;
+import co.elastic.apm.agent.metrics.MetricSet;
+import co.elastic.apm.agent.report.ReporterConfigurationImpl;
+import co.elastic.apm.agent.tracer.metrics.Labels;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+class SpanCompressionMetricsTest {
+
+    private MetricRegistry metricRegistry;
+
+    private ReporterConfigurationImpl mockReporterConfig;
+
+    @BeforeEach
+    void setUp() {
+        mockReporterConfig = mock(ReporterConfigurationImpl.class);
+        metricRegistry = new MetricRegistry(mockReporterConfig, spy(MetricsConfigurationImpl.class));
+    }
+
+    @Test
+    void testCountsAndRatio() {
+        SpanCompressionMetrics compressionMetrics = new SpanCompressionMetrics(metricRegistry);
+        metricRegistry.addMetricsProvider(compressionMetrics);
+
+        compressionMetrics.onTransactionRecycled(spanCount(6, 4, 1));
+        compressionMetrics.onTransactionRecycled(spanCount(2, 0, 0));
+        // transactions without compression-eligible spans don't contribute
+        compressionMetrics.onTransactionRecycled(spanCount(0, 0, 0));
+
+        reportAndCheckMetrics(metricSets -> assertThat(metricSets.get(Labels.EMPTY).getRawMetrics())
+            .containsEntry("agent.span_compression.eligible.count", 8.0)
+            .containsEntry("agent.span_compression.compressed.count", 4.0)
+            .containsEntry("agent.span_compression.contended.count", 1.0)
+            .containsEntry("agent.span_compression.ratio", 0.5));
+
+        // counts are reset after each report, the ratio is omitted if there were no eligible spans
+        reportAndCheckMetrics(metricSets -> assertThat(metricSets.get(Labels.EMPTY).getRawMetrics())
+            .containsEntry("agent.span_compression.eligible.count", 0.0)
+            .doesNotContainKey("agent.span_compression.ratio"));
+    }
+
+    @Test
+    void testDisabledMetrics() {
+        doReturn(List.of(WildcardMatcher.valueOf("agent.span_compression.*"))).when(mockReporterConfig).getDisableMetrics();
+        SpanCompressionMetrics compressionMetrics = new SpanCompressionMetrics(metricRegistry);
+
+        assertThat(compressionMetrics.isAnyMetricEnabled()).isFalse();
+    }
+
+    private static SpanCount spanCount(int eligible, int compressed, int contended) {
+        SpanCount spanCount = new SpanCount();
+        spanCount.getCompressionEligible().set(eligible);
+        spanCount.getCompressed().set(compressed);
+        spanCount.getCompressionContended().set(contended);
+        return spanCount;
+    }
+
+    private void reportAndCheckMetrics(Consumer<Map<Labels, MetricSet>> assertions) {
+        metricRegistry.flipPhaseAndReport(metrics -> assertions.accept(new HashMap<>(metrics)));
+    }
+}
@@ -80,6 +80,21 @@ public class BookkeeperObjectPool<T> implements ObservableObjectPool<T> {
         return pool.getGarbageCreated();
     }
 
+    @Override
+    public long getHits() {
+        return pool.getHits();
+    }
+
+    @Override
+    public long getSteals() {
+        return pool.getSteals();
+    }
+
+    @Override
+    public long getMisses() {
+        return pool.getMisses();
+    }
+
     @Override
     public void clear() {
         pool.clear();
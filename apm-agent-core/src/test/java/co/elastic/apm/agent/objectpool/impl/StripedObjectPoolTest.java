@@ -0,0 +1,128 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.objectpool.impl;
+
+import co.elastic.apm.agent.objectpool.ObjectPoolTest;
+import co.elastic.apm.agent.objectpool.Resetter;
+import co.elastic.apm.agent.objectpool.TestRecyclable;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StripedObjectPoolTest extends ObjectPoolTest<StripedObjectPool<TestRecyclable>> {
+
+    private static final int MAGAZINE_SIZE = 4;
+
+    @Override
+    protected StripedObjectPool<TestRecyclable> createObjectPool(int maxSize) {
+        // a single stripe and a depot with exact capacity, so that the overall capacity is exactly maxSize
+        return new StripedObjectPool<>(new ArrayBlockingQueue<>(maxSize - MAGAZINE_SIZE), 1, MAGAZINE_SIZE, TestRecyclable::new, Resetter.ForRecyclable.get());
+    }
+
+    @Test
+    void testHitsStealsAndMisses() {
+        StripedObjectPool<TestRecyclable> pool = getObjectPool();
+
+        List<TestRecyclable> instances = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            instances.add(pool.createInstance());
+        }
+        assertThat(pool.getMisses()).isEqualTo(8);
+        assertThat(pool.getHits()).isEqualTo(0);
+        assertThat(pool.getSteals()).isEqualTo(0);
+
+        // the first four go to the magazine, the fifth one moves two instances to the depot
+        instances.forEach(pool::recycle);
+        assertThat(pool.getObjectsInPool()).isEqualTo(8);
+
+        for (int i = 0; i < 8; i++) {
+            pool.createInstance();
+        }
+        assertThat(pool.getObjectsInPool()).isEqualTo(0);
+        assertThat(pool.getMisses()).isEqualTo(8);
+        // 4 hits, then 1 steal which refills 2 instances into the magazine, 2 hits, 1 last steal
+        assertThat(pool.getHits()).isEqualTo(6);
+        assertThat(pool.getSteals()).isEqualTo(2);
+    }
+
+    @Test
+    void testClear() {
+        StripedObjectPool<TestRecyclable> pool = getObjectPool();
+        List<TestRecyclable> instances = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            instances.add(pool.createInstance());
+        }
+        instances.forEach(pool::recycle);
+        assertThat(pool.getObjectsInPool()).isEqualTo(8);
+
+        pool.clear();
+        assertThat(pool.getObjectsInPool()).isEqualTo(0);
+    }
+
+    @Test
+    void testInvalidStripes() {
+        assertThatThrownBy(() -> new StripedObjectPool<>(new ArrayBlockingQueue<TestRecyclable>(4), 3, MAGAZINE_SIZE, TestRecyclable::new, Resetter.ForRecyclable.get()))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new StripedObjectPool<>(new ArrayBlockingQueue<TestRecyclable>(4), 2, 1, TestRecyclable::new, Resetter.ForRecyclable.get()))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testConcurrentUsageNeverHandsOutTheSameInstanceTwice() throws Exception {
+        final StripedObjectPool<TestRecyclable> pool = new StripedObjectPool<>(new ArrayBlockingQueue<>(64), 4, MAGAZINE_SIZE, TestRecyclable::new, Resetter.ForRecyclable.get());
+        final Set<TestRecyclable> inUse = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        int threads = 8;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < 10_000; i++) {
+                        TestRecyclable first = pool.createInstance();
+                        TestRecyclable second = pool.createInstance();
+                        assertThat(inUse.add(first)).isTrue();
+                        assertThat(inUse.add(second)).isTrue();
+                        inUse.remove(first);
+                        inUse.remove(second);
+                        pool.recycle(first);
+                        pool.recycle(second);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        assertThat(errors).isEmpty();
+        assertThat(pool.getObjectsInPool()).isLessThanOrEqualTo(64 + 4 * MAGAZINE_SIZE);
+        assertThat(pool.getHits() + pool.getSteals() + pool.getMisses()).isEqualTo(threads * 10_000 * 2);
+    }
+}
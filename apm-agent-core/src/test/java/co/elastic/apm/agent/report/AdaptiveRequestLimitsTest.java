@@ -0,0 +1,136 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.report;
+
+import co.elastic.apm.agent.configuration.SpyConfiguration;
+import co.elastic.apm.agent.tracer.configuration.TimeDuration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+class AdaptiveRequestLimitsTest {
+
+    private static final long KB = 1024;
+    private static final long MAX_SIZE = 4096 * KB;
+
+    private AdaptiveRequestLimits limits;
+
+    @BeforeEach
+    void setUp() {
+        ReporterConfigurationImpl config = SpyConfiguration.createSpyConfig().getConfig(ReporterConfigurationImpl.class);
+        doReturn(1024 * KB).when(config).getApiRequestSize();
+        doReturn(MAX_SIZE).when(config).getApiRequestMaxSize();
+        doReturn(TimeDuration.of("10s")).when(config).getApiRequestTime();
+        doReturn(TimeDuration.of("40s")).when(config).getApiRequestMaxTime();
+        limits = new AdaptiveRequestLimits(config);
+    }
+
+    @Test
+    void testStartsAtConfiguredLimits() {
+        assertThat(limits.getSizeLimit()).isEqualTo(1024 * KB);
+        assertThat(limits.getTimeLimitMillis()).isEqualTo(10_000);
+        assertThat(limits.getCompressionRatio()).isEqualTo(1.0);
+    }
+
+    @Test
+    void testSizeLimitGrowsWhenServerIsSlow() {
+        for (int i = 0; i < 5; i++) {
+            sizeLimitReached(seconds(1), TimeUnit.MILLISECONDS.toNanos(200), 0);
+        }
+        assertThat(limits.getSizeLimit()).isEqualTo(MAX_SIZE);
+        assertThat(limits.getTimeLimitMillis()).isEqualTo(10_000);
+    }
+
+    @Test
+    void testSizeLimitGrowsWhenQueueFillsUp() {
+        sizeLimitReached(seconds(1), 0, 0.6);
+        assertThat(limits.getSizeLimit()).isEqualTo(2048 * KB);
+    }
+
+    @Test
+    void testSizeLimitIsKeptWhenServerIsFast() {
+        sizeLimitReached(seconds(1), TimeUnit.MILLISECONDS.toNanos(10), 0);
+        assertThat(limits.getSizeLimit()).isEqualTo(1024 * KB);
+    }
+
+    @Test
+    void testTimeLimitGrowsWithFewEvents() {
+        timeLimitReached(seconds(10), KB);
+        assertThat(limits.getTimeLimitMillis()).isEqualTo(20_000);
+        // the request has been ended by a flush, before the time limit
+        limits.onRequestEnded(seconds(1), 0, KB, KB, false, 0, true);
+        assertThat(limits.getTimeLimitMillis()).isEqualTo(20_000);
+        timeLimitReached(seconds(20), KB);
+        timeLimitReached(seconds(40), KB);
+        assertThat(limits.getTimeLimitMillis()).isEqualTo(40_000);
+
+        timeLimitReached(seconds(40), 512 * KB);
+        assertThat(limits.getTimeLimitMillis()).isEqualTo(20_000);
+    }
+
+    @Test
+    void testLimitsShrinkWithLoad() {
+        sizeLimitReached(seconds(1), seconds(1), 0);
+        timeLimitReached(seconds(10), KB);
+        timeLimitReached(seconds(20), KB);
+        assertThat(limits.getSizeLimit()).isEqualTo(1024 * KB);
+        assertThat(limits.getTimeLimitMillis()).isEqualTo(40_000);
+
+        sizeLimitReached(seconds(1), seconds(1), 0);
+        assertThat(limits.getSizeLimit()).isEqualTo(2048 * KB);
+        assertThat(limits.getTimeLimitMillis()).isEqualTo(20_000);
+    }
+
+    @Test
+    void testFailedRequestResetsLimits() {
+        sizeLimitReached(seconds(1), seconds(1), 0);
+        timeLimitReached(seconds(10), KB);
+        limits.onRequestEnded(seconds(1), 0, KB, KB, true, 0, false);
+        assertThat(limits.getSizeLimit()).isEqualTo(1024 * KB);
+        assertThat(limits.getTimeLimitMillis()).isEqualTo(10_000);
+    }
+
+    @Test
+    void testEstimateCompressedSize() {
+        limits.onRequestEnded(seconds(1), 0, 100 * KB, 20 * KB, false, 0, true);
+        assertThat(limits.getCompressionRatio()).isEqualTo(0.6);
+        limits.onRequestEnded(seconds(1), 0, 100 * KB, 20 * KB, false, 0, true);
+        assertThat(limits.getCompressionRatio()).isEqualTo(0.4);
+
+        assertThat(limits.estimateCompressedSize(10 * KB, 50 * KB, 50 * KB)).isEqualTo(40 * KB);
+        // the compressed bytes which have already been written are a lower bound
+        assertThat(limits.estimateCompressedSize(50 * KB, 50 * KB, 0)).isEqualTo(50 * KB);
+    }
+
+    private void sizeLimitReached(long durationNanos, long responseNanos, double queueUtilization) {
+        limits.onRequestEnded(durationNanos, responseNanos, 1024 * KB, limits.getSizeLimit(), true, queueUtilization, true);
+    }
+
+    private void timeLimitReached(long durationNanos, long compressedBytes) {
+        limits.onRequestEnded(durationNanos, 0, compressedBytes, compressedBytes, false, 0, true);
+    }
+
+    private static long seconds(long seconds) {
+        return TimeUnit.SECONDS.toNanos(seconds);
+    }
+}
@@ -55,6 +55,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -66,6 +67,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.serviceUnavailable;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 
 class IntakeV2ReportingEventHandlerTest {
@@ -80,6 +82,7 @@ class IntakeV2ReportingEventHandlerTest {
     private IntakeV2ReportingEventHandler reportingEventHandler;
     private IntakeV2ReportingEventHandler nonConnectedReportingEventHandler;
     private ApmServerClient apmServerClient;
+    private ConfigurationRegistry configurationRegistry;
 
     @Nonnull
     private static JsonNode getReadTree(String s) {
@@ -101,7 +104,7 @@ class IntakeV2ReportingEventHandlerTest {
         mockApmServer1.start();
         mockApmServer2.start();
 
-        final ConfigurationRegistry configurationRegistry = SpyConfiguration.createSpyConfig();
+        configurationRegistry = SpyConfiguration.createSpyConfig();
         final ReporterConfigurationImpl reporterConfiguration = configurationRegistry.getConfig(ReporterConfigurationImpl.class);
         final CoreConfigurationImpl coreConfiguration = configurationRegistry.getConfig(CoreConfigurationImpl.class);
         SystemInfo system = new SystemInfo("x64", "localhost", null, "platform");
@@ -185,6 +188,83 @@ class IntakeV2ReportingEventHandlerTest {
         assertThat(ndJsonNodes.get(5).get("metrics")).isNotNull();
     }
 
+    @Test
+    void testGroupEventsByService() throws Exception {
+        ReporterConfigurationImpl reporterConfiguration = configurationRegistry.getConfig(ReporterConfigurationImpl.class);
+        doReturn(true).when(reporterConfiguration).isGroupEventsByService();
+        IntakeV2ReportingEventHandler groupingEventHandler = new IntakeV2ReportingEventHandler(
+            reporterConfiguration,
+            mock(ProcessorEventHandler.class),
+            new DslJsonSerializer(
+                SpyConfiguration.createSpyConfig(),
+                apmServerClient,
+                MetaDataMock.create(new ProcessInfo("title"), new ServiceImpl().withName("agent-service"),
+                    new SystemInfo("x64", "localhost", null, "platform"), null, Collections.emptyMap(), null)
+            ),
+            apmServerClient);
+
+        TransactionImpl otherServiceTransaction = new TransactionImpl(MockTracer.create());
+        otherServiceTransaction.getTraceContext().setServiceInfo("other-service", "1.0");
+        SpanImpl otherServiceSpan = new SpanImpl(MockTracer.create());
+        otherServiceSpan.getTraceContext().setServiceInfo("other-service", "1.0");
+
+        reportTransaction(groupingEventHandler);
+        reportEvent(groupingEventHandler, event -> event.setTransaction(otherServiceTransaction));
+        reportEvent(groupingEventHandler, event -> event.setSpan(otherServiceSpan));
+        reportEvent(groupingEventHandler, ReportingEvent::setEndRequestEvent);
+
+        List<List<JsonNode>> requests = getNdJsonRequests();
+        assertThat(requests).hasSize(2);
+
+        List<JsonNode> agentServiceRequest = requests.get(0);
+        assertThat(agentServiceRequest).hasSize(2);
+        assertThat(agentServiceRequest.get(0).get("metadata").get("service").get("name").textValue()).isEqualTo("agent-service");
+        assertThat(agentServiceRequest.get(1).get("transaction")).isNotNull();
+
+        List<JsonNode> otherServiceRequest = requests.get(1);
+        assertThat(otherServiceRequest).hasSize(3);
+        JsonNode otherServiceMetadata = otherServiceRequest.get(0).get("metadata").get("service");
+        assertThat(otherServiceMetadata.get("name").textValue()).isEqualTo("other-service");
+        assertThat(otherServiceMetadata.get("version").textValue()).isEqualTo("1.0");
+        assertThat(otherServiceRequest.get(0).get("metadata").get("system")).isNotNull();
+        JsonNode transaction = otherServiceRequest.get(1).get("transaction");
+        assertThat(transaction).isNotNull();
+        assertThat(transaction.path("context").path("service").path("name").isMissingNode()).isTrue();
+        JsonNode span = otherServiceRequest.get(2).get("span");
+        assertThat(span).isNotNull();
+        assertThat(span.path("context").path("service").path("name").isMissingNode()).isTrue();
+        assertThat(groupingEventHandler.getReported()).isEqualTo(3);
+    }
+
+    @Test
+    void testServiceEventsAreSentWhenRequestSizeIsExceeded() throws Exception {
+        ReporterConfigurationImpl reporterConfiguration = configurationRegistry.getConfig(ReporterConfigurationImpl.class);
+        doReturn(true).when(reporterConfiguration).isGroupEventsByService();
+        doReturn(true).when(reporterConfiguration).isAdaptiveRequestLimits();
+        doReturn(1L).when(reporterConfiguration).getApiRequestSize();
+        IntakeV2ReportingEventHandler groupingEventHandler = new IntakeV2ReportingEventHandler(
+            reporterConfiguration,
+            mock(ProcessorEventHandler.class),
+            new DslJsonSerializer(
+                SpyConfiguration.createSpyConfig(),
+                apmServerClient,
+                MetaDataMock.create(new ProcessInfo("title"), new ServiceImpl().withName("agent-service"),
+                    new SystemInfo("x64", "localhost", null, "platform"), null, Collections.emptyMap(), null)
+            ),
+            apmServerClient);
+
+        TransactionImpl otherServiceTransaction = new TransactionImpl(MockTracer.create());
+        otherServiceTransaction.getTraceContext().setServiceInfo("other-service", "1.0");
+        reportEvent(groupingEventHandler, event -> event.setTransaction(otherServiceTransaction));
+
+        // sent without waiting for the end of the request
+        List<List<JsonNode>> requests = getNdJsonRequests();
+        assertThat(requests).hasSize(1);
+        assertThat(requests.get(0)).hasSize(2);
+        assertThat(requests.get(0).get(0).get("metadata").get("service").get("name").textValue()).isEqualTo("other-service");
+        assertThat(requests.get(0).get(1).get("transaction")).isNotNull();
+    }
+
     @Test
     void testNoopWhenNotConnected() throws Exception {
         reportTransaction(nonConnectedReportingEventHandler);
@@ -276,6 +356,12 @@ class IntakeV2ReportingEventHandlerTest {
         reportingEventHandler.onEvent(reportingEvent, -1, true);
     }
 
+    private void reportEvent(IntakeV2ReportingEventHandler reportingEventHandler, Consumer<ReportingEvent> eventSetup) throws Exception {
+        final ReportingEvent reportingEvent = new ReportingEvent();
+        eventSetup.accept(reportingEvent);
+        reportingEventHandler.onEvent(reportingEvent, -1, true);
+    }
+
     private void sendShutdownEvent() throws Exception {
         final ReportingEvent reportingEvent = new ReportingEvent();
         reportingEvent.shutdownEvent();
@@ -293,4 +379,13 @@ class IntakeV2ReportingEventHandlerTest {
             .orElseThrow(() -> new IllegalStateException("No matching requests for POST " + INTAKE_V2_URL));
     }
 
+    private List<List<JsonNode>> getNdJsonRequests() {
+        return mockApmServer1.findAll(postRequestedFor(urlEqualTo(INTAKE_V2_URL))).stream()
+            .map(request -> new BufferedReader(new InputStreamReader(new ByteArrayInputStream(request.getBody())))
+                .lines()
+                .map(IntakeV2ReportingEventHandlerTest::getReadTree)
+                .collect(Collectors.toList()))
+            .collect(Collectors.toList());
+    }
+
 }
@@ -0,0 +1,151 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.report;
+
+import co.elastic.apm.agent.MockTracer;
+import co.elastic.apm.agent.configuration.CoreConfigurationImpl;
+import co.elastic.apm.agent.configuration.ServerlessConfigurationImpl;
+import co.elastic.apm.agent.configuration.SpyConfiguration;
+import co.elastic.apm.agent.impl.ElasticApmTracer;
+import co.elastic.apm.agent.impl.error.ErrorCaptureImpl;
+import co.elastic.apm.agent.impl.metadata.MetaDataMock;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import co.elastic.apm.agent.objectpool.TestObjectPoolFactory;
+import co.elastic.apm.agent.report.processor.ProcessorEventHandler;
+import co.elastic.apm.agent.report.serialize.DslJsonSerializer;
+import co.elastic.apm.agent.report.serialize.SerializationConstants;
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.stagemonitor.configuration.ConfigurationRegistry;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static co.elastic.apm.agent.report.IntakeV2ReportingEventHandler.INTAKE_V2_FLUSH_URL;
+import static co.elastic.apm.agent.report.IntakeV2ReportingEventHandler.INTAKE_V2_URL;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyUrl;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.serviceUnavailable;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static net.javacrumbs.jsonunit.assertj.JsonAssertions.assertThatJson;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+class SynchronousApmServerReporterTest {
+
+    @RegisterExtension
+    static WireMockExtension lambdaExtension = WireMockExtension.newInstance()
+        .options(wireMockConfig().dynamicPort())
+        .build();
+
+    private ConfigurationRegistry config;
+    private SynchronousApmServerReporter reporter;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        lambdaExtension.stubFor(post(anyUrl()).willReturn(ok()));
+        config = SpyConfiguration.createSpyConfig();
+        doReturn(true).when(config.getConfig(ServerlessConfigurationImpl.class)).isAwsLambdaFastStart();
+        SerializationConstants.init(config.getConfig(CoreConfigurationImpl.class));
+
+        ApmServerClient apmServerClient = new ApmServerClient(config);
+        apmServerClient.start(List.of(new URL(lambdaExtension.getRuntimeInfo().getHttpBaseUrl())));
+        DslJsonSerializer serializer = new DslJsonSerializer(config, apmServerClient, MetaDataMock.create());
+        reporter = new SynchronousApmServerReporter(
+            config.getConfig(ReporterConfigurationImpl.class),
+            config.getConfig(CoreConfigurationImpl.class),
+            ProcessorEventHandler.loadProcessors(config),
+            ReporterMonitor.NOOP,
+            apmServerClient,
+            serializer,
+            new TestObjectPoolFactory());
+        reporter.start();
+    }
+
+    @Test
+    void testSingleRequestOnFlush() {
+        ElasticApmTracer tracer = MockTracer.create();
+        reporter.report(new TransactionImpl(tracer));
+        reporter.report(new SpanImpl(tracer));
+        reporter.report(new ErrorCaptureImpl(tracer));
+        assertThat(lambdaExtension.findAll(anyRequestedFor(anyUrl()))).isEmpty();
+
+        assertThat(reporter.flush(1, TimeUnit.SECONDS, true)).isTrue();
+
+        List<LoggedRequest> requests = lambdaExtension.findAll(anyRequestedFor(anyUrl()));
+        assertThat(requests).hasSize(1);
+        LoggedRequest request = requests.get(0);
+        assertThat(request.getUrl()).isEqualTo(INTAKE_V2_FLUSH_URL);
+        String[] lines = request.getBodyAsString().split("\n");
+        assertThat(lines).hasSize(4);
+        assertThatJson(lines[0]).inPath("$.metadata.service").isObject();
+        assertThatJson(lines[1]).inPath("$.transaction").isObject();
+        assertThatJson(lines[2]).inPath("$.span").isObject();
+        assertThatJson(lines[3]).inPath("$.error").isObject();
+        assertThat(reporter.getReported()).isEqualTo(3);
+        assertThat(reporter.getDropped()).isEqualTo(0);
+
+        // the version of the APM Server is not queried
+        lambdaExtension.verify(0, getRequestedFor(urlEqualTo("/")));
+    }
+
+    @Test
+    void testFlushRequestWithoutEvents() {
+        assertThat(reporter.flush()).isTrue();
+        assertThat(lambdaExtension.findAll(anyRequestedFor(anyUrl()))).isEmpty();
+
+        assertThat(reporter.flush(1, TimeUnit.SECONDS, true)).isTrue();
+        List<LoggedRequest> requests = lambdaExtension.findAll(postRequestedFor(urlEqualTo(INTAKE_V2_FLUSH_URL)));
+        assertThat(requests).hasSize(1);
+        assertThat(requests.get(0).getBodyAsString().split("\n")).hasSize(1);
+    }
+
+    @Test
+    void testSendWhenRequestSizeIsExceeded() {
+        doReturn(1L).when(config.getConfig(ReporterConfigurationImpl.class)).getApiRequestSize();
+
+        reporter.report(new TransactionImpl(MockTracer.create()));
+
+        lambdaExtension.verify(1, postRequestedFor(urlEqualTo(INTAKE_V2_URL)));
+        assertThat(reporter.getReported()).isEqualTo(1);
+    }
+
+    @Test
+    void testDropEventsOnErrorWithoutBackoff() {
+        lambdaExtension.stubFor(post(anyUrl()).willReturn(serviceUnavailable()));
+        for (int i = 0; i < 3; i++) {
+            reporter.report(new TransactionImpl(MockTracer.create()));
+            long start = System.nanoTime();
+            assertThat(reporter.flush(1, TimeUnit.SECONDS, true)).isFalse();
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(1));
+        }
+        assertThat(reporter.getReported()).isEqualTo(0);
+        assertThat(reporter.getDropped()).isEqualTo(3);
+    }
+}
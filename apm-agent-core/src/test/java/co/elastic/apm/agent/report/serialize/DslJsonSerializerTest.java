@@ -470,6 +470,36 @@ class DslJsonSerializerTest {
         assertThat(longResult).isEqualTo(truncated);
     }
 
+    @Test
+    void testSpanHttpRequestBodyStreamingSerialization() throws UnsupportedEncodingException {
+        CoreConfigurationImpl coreConfiguration = tracer.getConfig(CoreConfigurationImpl.class);
+        doReturn(2500).when(coreConfiguration).getLongFieldMaxLength();
+        SerializationConstants.init(coreConfiguration);
+
+        // multi-byte characters spanning the 1kb segments of the body buffer
+        String multiSegment = "a" + generateStringOfLength(1500).replace(',', 'ü');
+        assertThat(extractRequestBodyJson(createSpanWithRequestBody(multiSegment.getBytes("utf-8"), "utf-8"))).isEqualTo(multiSegment);
+
+        String escaped = "{\"key\": \"line1\\nline2\"}\r\n\t\u0001";
+        assertThat(extractRequestBodyJson(createSpanWithRequestBody(escaped.getBytes("utf-8"), "utf-8"))).isEqualTo(escaped);
+
+        String supplementary = "emoji: \uD83D\uDE00";
+        assertThat(extractRequestBodyJson(createSpanWithRequestBody(supplementary.getBytes("utf-8"), "utf-8"))).isEqualTo(supplementary);
+
+        // a character which is truncated by the capture limit is dropped
+        byte[] truncatedCharacter = Arrays.copyOf("testü".getBytes("utf-8"), 5);
+        assertThat(extractRequestBodyJson(createSpanWithRequestBody(truncatedCharacter, "utf-8"))).isEqualTo("test");
+
+        // surrogate pairs are not split when truncating to LongFieldMaxLength
+        String longSupplementary = generateStringOfLength(2499) + "\uD83D\uDE00";
+        assertThat(extractRequestBodyJson(createSpanWithRequestBody(longSupplementary.getBytes("utf-8"), "utf-8"))).isEqualTo(generateStringOfLength(2499));
+
+        // the body can be serialized multiple times
+        SpanImpl span = createSpanWithRequestBody(multiSegment.getBytes("utf-8"), "utf-8");
+        assertThat(extractRequestBodyJson(span)).isEqualTo(multiSegment);
+        assertThat(extractRequestBodyJson(span)).isEqualTo(multiSegment);
+    }
+
     @Test
     void testSpanHttpRequestBodySerializationAsLabel() throws UnsupportedEncodingException {
         CoreConfigurationImpl coreConfiguration = tracer.getConfig(CoreConfigurationImpl.class);
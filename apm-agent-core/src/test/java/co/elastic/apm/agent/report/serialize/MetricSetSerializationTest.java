@@ -73,6 +73,38 @@ class MetricSetSerializationTest {
         assertThat(samples.get("bar.baz.count").get("value").doubleValue()).isEqualTo(2);
     }
 
+    @Test
+    void testSerializeHistograms() throws Exception {
+        final Labels.Mutable labels = Labels.Mutable.of("foo.bar", "baz");
+
+        registry.updateHistogram("foo.bar", labels, 50);
+        registry.updateHistogram("foo.bar", labels, 80);
+        registry.updateHistogram("foo.bar", labels, 2_000_000);
+        final JsonNode jsonNode = reportAsJson();
+        assertThat(jsonNode).isNotNull();
+        final JsonNode samples = jsonNode.get("metricset").get("samples");
+        assertThat(samples.get("foo.bar.count").get("value").doubleValue()).isEqualTo(3);
+        assertThat(samples.get("foo.bar.sum.us").get("value").doubleValue()).isEqualTo(2_000_130);
+        final JsonNode histogram = samples.get("foo.bar.histogram");
+        assertThat(histogram.get("type").textValue()).isEqualTo("histogram");
+        assertThat(histogram.get("values")).hasSize(2);
+        assertThat(histogram.get("values").get(0).longValue()).isEqualTo(100);
+        assertThat(histogram.get("values").get(1).longValue()).isEqualTo(2_000_000);
+        assertThat(histogram.get("counts")).hasSize(2);
+        assertThat(histogram.get("counts").get(0).longValue()).isEqualTo(2);
+        assertThat(histogram.get("counts").get(1).longValue()).isEqualTo(1);
+    }
+
+    @Test
+    void testEmptyHistogramIsNotSerialized() throws Exception {
+        final Labels.Mutable labels = Labels.Mutable.of("foo.bar", "baz");
+
+        registry.updateHistogram("foo.bar", labels, 42);
+        assertThat(reportAsJson()).isNotNull();
+        // the histogram has been reset after the previous report
+        assertThat(reportAsJson()).isNull();
+    }
+
     @Test
     void testSerializeRawMetrics() throws Exception {
         final Labels.Mutable labels = Labels.Mutable.of("foo.bar", "baz");
@@ -0,0 +1,194 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.util;
+
+import co.elastic.apm.agent.common.ThreadUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class AgentSchedulerTest {
+
+    private AgentScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new AgentScheduler(2, 16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testOneShotTask() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        long start = System.nanoTime();
+        scheduler.schedule("test", () -> {
+            thread.set(Thread.currentThread());
+            latch.countDown();
+        }, 30, TimeUnit.MILLISECONDS);
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+        assertThat(thread.get().getName()).startsWith(ThreadUtils.addElasticApmThreadPrefix(AgentScheduler.WORKER_THREAD_PURPOSE));
+        assertThat(thread.get().isDaemon()).isTrue();
+    }
+
+    @Test
+    void testPeriodicTasks() {
+        AtomicInteger fixedRate = new AtomicInteger();
+        AtomicInteger fixedDelay = new AtomicInteger();
+        scheduler.scheduleAtFixedRate("fixed-rate", fixedRate::incrementAndGet, 0, 5, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay("fixed-delay", fixedDelay::incrementAndGet, 0, 5, TimeUnit.MILLISECONDS);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> fixedRate.get() >= 5 && fixedDelay.get() >= 5);
+    }
+
+    @Test
+    void testCancel() throws InterruptedException {
+        AtomicInteger count = new AtomicInteger();
+        AgentScheduler.ScheduledTask task = scheduler.scheduleAtFixedRate("test", count::incrementAndGet, 0, 1, TimeUnit.MILLISECONDS);
+        await().atMost(Duration.ofSeconds(5)).until(() -> count.get() > 0);
+
+        task.cancel();
+        assertThat(task.isCancelled()).isTrue();
+        // an in-flight execution may still complete
+        Thread.sleep(20);
+        int countAfterCancel = count.get();
+        Thread.sleep(50);
+        assertThat(count.get()).isEqualTo(countAfterCancel);
+    }
+
+    @Test
+    void testCancelBeforeExecution() throws InterruptedException {
+        AtomicInteger count = new AtomicInteger();
+        scheduler.schedule("test", count::incrementAndGet, 20, TimeUnit.MILLISECONDS).cancel();
+        Thread.sleep(50);
+        assertThat(count.get()).isZero();
+    }
+
+    @Test
+    void testPeriodicTaskIsNotExecutedConcurrently() {
+        AtomicInteger concurrentExecutions = new AtomicInteger();
+        AtomicInteger maxConcurrentExecutions = new AtomicInteger();
+        AtomicInteger executions = new AtomicInteger();
+        scheduler.scheduleAtFixedRate("slow", () -> {
+            maxConcurrentExecutions.accumulateAndGet(concurrentExecutions.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrentExecutions.decrementAndGet();
+            executions.incrementAndGet();
+        }, 0, 1, TimeUnit.MILLISECONDS);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> executions.get() >= 5);
+        assertThat(maxConcurrentExecutions.get()).isEqualTo(1);
+    }
+
+    @Test
+    void testExceptionDoesNotStopPeriodicTask() {
+        AtomicInteger count = new AtomicInteger();
+        scheduler.scheduleWithFixedDelay("failing", () -> {
+            count.incrementAndGet();
+            throw new IllegalStateException("expected");
+        }, 0, 1, TimeUnit.MILLISECONDS);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> count.get() >= 3);
+    }
+
+    @Test
+    void testTaskCpuTime() {
+        scheduler.setTaskCpuTimeMeasurementEnabled(true);
+        AtomicInteger count = new AtomicInteger();
+        scheduler.scheduleWithFixedDelay("busy", () -> {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2);
+            while (System.nanoTime() < deadline) {
+                // consume some CPU
+            }
+            count.incrementAndGet();
+        }, 0, 1, TimeUnit.MILLISECONDS);
+        await().atMost(Duration.ofSeconds(5)).until(() -> count.get() >= 3);
+
+        Map<String, Long> cpuTime = new HashMap<>();
+        scheduler.drainTaskCpuTime(cpuTime);
+        assertThat(cpuTime).containsKey("busy");
+        assertThat(cpuTime.get("busy")).isPositive();
+    }
+
+    @Test
+    void testEarlierTaskWakesUpParkedTimer() throws InterruptedException {
+        scheduler.schedule("later", () -> {
+        }, 1, TimeUnit.HOURS);
+        await().atMost(Duration.ofSeconds(5)).until(() -> scheduler.getPendingTaskCount() == 0);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        scheduler.schedule("earlier", latch::countDown, 10, TimeUnit.MILLISECONDS);
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void testShutdownStopsThreads() {
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        scheduler.schedule("test", () -> worker.set(Thread.currentThread()), 0, TimeUnit.MILLISECONDS);
+        await().atMost(Duration.ofSeconds(5)).until(() -> worker.get() != null);
+        Thread timer = scheduler.getTimerThread();
+        assertThat(timer).isNotNull();
+
+        scheduler.shutdown();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> !timer.isAlive() && !worker.get().isAlive());
+    }
+
+    @Test
+    void testShutdownAgentSchedulerCreatesNewInstanceOnNextUse() {
+        AgentScheduler agentScheduler = ExecutorUtils.getAgentScheduler();
+        assertThat(ExecutorUtils.getAgentScheduler()).isSameAs(agentScheduler);
+
+        ExecutorUtils.shutdownAgentScheduler();
+
+        assertThatThrownBy(() -> agentScheduler.schedule("test", () -> {
+        }, 0, TimeUnit.MILLISECONDS)).isInstanceOf(RejectedExecutionException.class);
+        assertThat(ExecutorUtils.getAgentScheduler()).isNotSameAs(agentScheduler);
+    }
+
+    @Test
+    void testScheduleAfterShutdown() {
+        scheduler.shutdown();
+        assertThatThrownBy(() -> scheduler.schedule("test", () -> {
+        }, 0, TimeUnit.MILLISECONDS)).isInstanceOf(RejectedExecutionException.class);
+    }
+}
@@ -62,6 +62,14 @@ class DependencyInjectingServiceLoaderTest {
         assertThat(serviceImplementations.get(1)).isInstanceOf(ServiceImpl2.class);
     }
 
+    @Test
+    void testImplementationFilter() {
+        final List<Service> serviceImplementations = DependencyInjectingServiceLoader.load(Service.class,
+            List.of(getClass().getClassLoader()), implementationClassName -> !implementationClassName.equals(ServiceImpl.class.getName()), "foo");
+        assertThat(serviceImplementations).hasSize(1);
+        assertThat(serviceImplementations.get(0)).isInstanceOf(ServiceImpl2.class);
+    }
+
     public interface Service {
         String getString();
     }
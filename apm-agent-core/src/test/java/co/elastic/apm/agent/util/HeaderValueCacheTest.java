@@ -0,0 +1,67 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HeaderValueCacheTest {
+
+    @Test
+    void testGetAndPut() {
+        HeaderValueCache<Integer> cache = new HeaderValueCache<>(16, 100);
+        assertThat(cache.get("foo=bar")).isNull();
+
+        cache.put("foo=bar", 42);
+        assertThat(cache.get("foo=bar")).isEqualTo(42);
+        // lookups are not based on identity
+        assertThat(cache.get(new String("foo=bar"))).isEqualTo(42);
+        assertThat(cache.get("foo=baz")).isNull();
+
+        cache.clear();
+        assertThat(cache.get("foo=bar")).isNull();
+    }
+
+    @Test
+    void testCollidingValueReplacesPrevious() {
+        HeaderValueCache<Integer> cache = new HeaderValueCache<>(1, 100);
+        cache.put("foo=bar", 1);
+        cache.put("bar=baz", 2);
+
+        assertThat(cache.get("foo=bar")).isNull();
+        assertThat(cache.get("bar=baz")).isEqualTo(2);
+    }
+
+    @Test
+    void testLongValuesAreNotCached() {
+        HeaderValueCache<Integer> cache = new HeaderValueCache<>(16, 7);
+        cache.put("foo=bar", 1);
+        cache.put("foo=bar2", 2);
+
+        assertThat(cache.get("foo=bar")).isEqualTo(1);
+        assertThat(cache.get("foo=bar2")).isNull();
+    }
+
+    @Test
+    void testInvalidSize() {
+        assertThatThrownBy(() -> new HeaderValueCache<>(0, 100)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -18,6 +18,7 @@
  */
 package co.elastic.apm.agent.sdk;
 
+import co.elastic.apm.agent.sdk.virtualfield.VirtualFieldDeclaration;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.NamedElement;
 import net.bytebuddy.description.method.MethodDescription;
@@ -28,6 +29,7 @@ import net.bytebuddy.matcher.ElementMatchers;
 import javax.annotation.Nullable;
 import java.security.ProtectionDomain;
 import java.util.Collection;
+import java.util.Collections;
 
 import static net.bytebuddy.matcher.ElementMatchers.any;
 
@@ -81,6 +83,11 @@ import static net.bytebuddy.matcher.ElementMatchers.any;
  *         Use {@link co.elastic.apm.agent.sdk.weakconcurrent.DetachedThreadLocal} instead.
  *     </li>
  *     <li>
+ *         To associate state with instances of instrumented classes,
+ *         prefer a {@link co.elastic.apm.agent.sdk.virtualfield.VirtualField} over a {@link co.elastic.apm.agent.sdk.weakconcurrent.WeakMap}
+ *         and declare it via {@link #getVirtualFields()}.
+ *     </li>
+ *     <li>
  *         This applies to internal plugins only:
  *         Due to the automatic plugin classloader creation that is based on package scanning,
  *         plugins need to be in their own uniquely named package.
@@ -176,6 +183,20 @@ public abstract class ElasticApmInstrumentation {
         return null;
     }
 
+    /**
+     * Declares the {@linkplain co.elastic.apm.agent.sdk.virtualfield.VirtualField virtual fields} used by this instrumentation.
+     * <p>
+     * The agent injects the declared fields into classes when they are loaded,
+     * which requires the declaration to be known before the instrumented classes are loaded.
+     * Therefore, virtual fields can't be declared lazily by the advice.
+     * </p>
+     *
+     * @return the virtual fields used by this instrumentation
+     */
+    public Collection<VirtualFieldDeclaration> getVirtualFields() {
+        return Collections.emptyList();
+    }
+
     public void onTypeMatch(TypeDescription typeDescription, ClassLoader classLoader, ProtectionDomain protectionDomain, @Nullable Class<?> classBeingRedefined) {
     }
 
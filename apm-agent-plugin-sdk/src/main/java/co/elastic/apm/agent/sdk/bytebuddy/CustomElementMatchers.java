@@ -121,25 +121,41 @@ public class CustomElementMatchers {
      * @return a matcher which only matches class loaders which can load a certain class.
      */
     public static ElementMatcher.Junction<ClassLoader> classLoaderCanLoadClass(final String className) {
-        return new ElementMatcher.Junction.AbstractBase<ClassLoader>() {
+        return new ClassLoaderCanLoadClassMatcher(className);
+    }
 
-            private final boolean loadableByBootstrapClassLoader = canLoadClass(null, className);
-            private final WeakMap<ClassLoader, Boolean> cache = WeakConcurrent.buildMap();
+    /**
+     * See {@link #classLoaderCanLoadClass(String)}.
+     * The name of the class is exposed so that the plugin activation manifest can be derived from the class loader matchers.
+     */
+    public static class ClassLoaderCanLoadClassMatcher extends ElementMatcher.Junction.AbstractBase<ClassLoader> {
 
-            @Override
-            public boolean matches(@Nullable ClassLoader target) {
-                if (target == null) {
-                    return loadableByBootstrapClassLoader;
-                }
+        private final String className;
+        private final boolean loadableByBootstrapClassLoader;
+        private final WeakMap<ClassLoader, Boolean> cache = WeakConcurrent.buildMap();
 
-                Boolean result = cache.get(target);
-                if (result == null) {
-                    result = canLoadClass(target, className);
-                    cache.put(target, result);
-                }
-                return result;
+        private ClassLoaderCanLoadClassMatcher(String className) {
+            this.className = className;
+            this.loadableByBootstrapClassLoader = canLoadClass(null, className);
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        @Override
+        public boolean matches(@Nullable ClassLoader target) {
+            if (target == null) {
+                return loadableByBootstrapClassLoader;
             }
-        };
+
+            Boolean result = cache.get(target);
+            if (result == null) {
+                result = canLoadClass(target, className);
+                cache.put(target, result);
+            }
+            return result;
+        }
     }
 
     private static boolean canLoadClass(@Nullable ClassLoader target, String className) {
@@ -60,8 +60,15 @@ public class IOUtils {
 
     private static final String UTF8_CHARSET_NAME = StandardCharsets.UTF_8.name().toLowerCase();
 
+    /**
+     * Returns a pooled decoder for the given charset.
+     * The decoder has to be {@linkplain CharsetDecoder#reset() reset} before the handle is closed.
+     *
+     * @param charsetName the name of the charset
+     * @return a handle to a pooled decoder, or {@code null} if the charset is not known/supported
+     */
     @Nullable
-    private static ObjectHandle<CharsetDecoder> getPooledCharsetDecoder(String charsetName) {
+    public static ObjectHandle<CharsetDecoder> getPooledCharsetDecoder(String charsetName) {
         if (!isLowerCase(charsetName)) {
             charsetName = charsetName.toLowerCase();
         }
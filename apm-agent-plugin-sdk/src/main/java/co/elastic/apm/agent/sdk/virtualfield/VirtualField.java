@@ -0,0 +1,54 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.sdk.virtualfield;
+
+import javax.annotation.Nullable;
+
+/**
+ * Attaches a value of type {@code F} to instances of type {@code T}, as if {@code T} declared a field of type {@code F}.
+ * <p>
+ * If the field has been {@linkplain co.elastic.apm.agent.sdk.ElasticApmInstrumentation#getVirtualFields() declared} by an instrumentation,
+ * the agent injects a synthetic field into all classes implementing or extending {@code T} that are loaded after the agent has started.
+ * For instances of these classes, getting and setting the value is a plain field access.
+ * For instances of classes which have been loaded before the agent started, or which could not be transformed,
+ * the value is stored in a {@link co.elastic.apm.agent.sdk.weakconcurrent.WeakMap} instead.
+ * </p>
+ * <p>
+ * Compared to a {@link co.elastic.apm.agent.sdk.weakconcurrent.WeakMap} that is keyed by the instance,
+ * a virtual field does not allocate a {@link java.lang.ref.WeakReference} per entry and does not need to be cleaned up periodically,
+ * as the value is collected together with the instance.
+ * </p>
+ * <p>
+ * Values are published safely to other threads.
+ * However, compound operations like setting a value only if absent are not atomic.
+ * </p>
+ *
+ * @param <T> the type which holds the field
+ * @param <F> the type of the field
+ * @see VirtualFields#find(Class, Class)
+ */
+public interface VirtualField<T, F> {
+
+    @Nullable
+    F get(T object);
+
+    void set(T object, @Nullable F value);
+
+    void remove(T object);
+}
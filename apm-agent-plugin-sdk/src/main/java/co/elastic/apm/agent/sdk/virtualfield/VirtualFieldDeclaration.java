@@ -0,0 +1,77 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.sdk.virtualfield;
+
+/**
+ * Declares a {@link VirtualField}, so that the agent can inject the field into classes when they are loaded.
+ * <p>
+ * Types are referenced by name so that declaring a virtual field does not load the instrumented library.
+ * </p>
+ *
+ * @see co.elastic.apm.agent.sdk.ElasticApmInstrumentation#getVirtualFields()
+ */
+public final class VirtualFieldDeclaration {
+
+    private final String typeName;
+    private final String fieldTypeName;
+
+    private VirtualFieldDeclaration(String typeName, String fieldTypeName) {
+        this.typeName = typeName;
+        this.fieldTypeName = fieldTypeName;
+    }
+
+    /**
+     * @param typeName      the name of the type which should hold the field, usually an interface such as {@code java.sql.Statement}
+     * @param fieldTypeName the name of the type of the field
+     * @return a declaration for the virtual field that is returned by {@code VirtualFields.find(typeName, fieldTypeName)}
+     */
+    public static VirtualFieldDeclaration of(String typeName, String fieldTypeName) {
+        return new VirtualFieldDeclaration(typeName, fieldTypeName);
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public String getFieldTypeName() {
+        return fieldTypeName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof VirtualFieldDeclaration)) {
+            return false;
+        }
+        VirtualFieldDeclaration that = (VirtualFieldDeclaration) o;
+        return typeName.equals(that.typeName) && fieldTypeName.equals(that.fieldTypeName);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * typeName.hashCode() + fieldTypeName.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return typeName + "#" + fieldTypeName;
+    }
+}
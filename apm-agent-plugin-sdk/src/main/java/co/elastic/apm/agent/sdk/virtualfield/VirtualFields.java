@@ -0,0 +1,62 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.sdk.virtualfield;
+
+import co.elastic.apm.agent.sdk.internal.InternalUtil;
+
+public final class VirtualFields {
+
+    private static final VirtualFieldProvider provider;
+
+    static {
+        provider = InternalUtil.getServiceProvider(VirtualFieldProvider.class);
+    }
+
+    private VirtualFields() {
+    }
+
+    /**
+     * Returns the virtual field of the given type for instances of {@code type}.
+     * <p>
+     * The field should be declared via {@link co.elastic.apm.agent.sdk.ElasticApmInstrumentation#getVirtualFields()},
+     * otherwise, values are always stored in a weak map.
+     * Multiple invocations with the same arguments return a virtual field that is backed by the same storage,
+     * even if called from different plugin class loaders.
+     * As the lookup is not free, store the result in a static field.
+     * </p>
+     *
+     * @param type      the type which holds the field
+     * @param fieldType the type of the field
+     * @param <T>       the type which holds the field
+     * @param <F>       the type of the field
+     * @return the virtual field
+     */
+    public static <T, F> VirtualField<T, F> find(Class<T> type, Class<F> fieldType) {
+        return provider.find(type, fieldType);
+    }
+
+    /**
+     * This is an internal class.
+     * Provides the implementation for virtual fields.
+     */
+    public interface VirtualFieldProvider {
+
+        <T, F> VirtualField<T, F> find(Class<T> type, Class<F> fieldType);
+    }
+}
@@ -19,6 +19,7 @@
 package co.elastic.apm.agent.jdbc;
 
 import co.elastic.apm.agent.sdk.ElasticApmInstrumentation;
+import co.elastic.apm.agent.sdk.virtualfield.VirtualFieldDeclaration;
 import co.elastic.apm.agent.tracer.GlobalTracer;
 import co.elastic.apm.agent.tracer.Tracer;
 
@@ -31,9 +32,20 @@ public abstract class JdbcInstrumentation extends ElasticApmInstrumentation {
 
     private static final Collection<String> JDBC_GROUPS = Collections.singleton("jdbc");
 
+    /**
+     * Holds the SQL of prepared statements, see {@link co.elastic.apm.agent.jdbc.helper.JdbcGlobalState#statementSql}
+     */
+    private static final Collection<VirtualFieldDeclaration> VIRTUAL_FIELDS = Collections.singleton(
+        VirtualFieldDeclaration.of("java.sql.Statement", "java.lang.String"));
+
     @Override
     public final Collection<String> getInstrumentationGroupNames() {
         return JDBC_GROUPS;
     }
 
+    @Override
+    public Collection<VirtualFieldDeclaration> getVirtualFields() {
+        return VIRTUAL_FIELDS;
+    }
+
 }
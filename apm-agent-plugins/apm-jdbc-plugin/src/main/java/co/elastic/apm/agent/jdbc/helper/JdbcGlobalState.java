@@ -19,15 +19,18 @@
 package co.elastic.apm.agent.jdbc.helper;
 
 import co.elastic.apm.agent.sdk.state.GlobalState;
+import co.elastic.apm.agent.sdk.virtualfield.VirtualField;
+import co.elastic.apm.agent.sdk.virtualfield.VirtualFields;
 import co.elastic.apm.agent.sdk.weakconcurrent.WeakConcurrent;
 import co.elastic.apm.agent.sdk.weakconcurrent.WeakMap;
 
 import java.sql.Connection;
+import java.sql.Statement;
 
 @GlobalState
 public class JdbcGlobalState {
 
-    public static final WeakMap<Object, String> statementSqlMap = WeakConcurrent.buildMap();
+    public static final VirtualField<Statement, String> statementSql = VirtualFields.find(Statement.class, String.class);
     public static final WeakMap<Connection, ConnectionMetaData> metaDataMap = WeakConcurrent.buildMap();
     public static final WeakMap<Class<?>, Boolean> metadataSupported = WeakConcurrent.buildMap();
     public static final WeakMap<Class<?>, Boolean> catalogSupported = WeakConcurrent.buildMap();
@@ -39,7 +39,7 @@ import java.util.List;
 import java.util.concurrent.Callable;
 
 import static co.elastic.apm.agent.jdbc.helper.JdbcGlobalState.metaDataMap;
-import static co.elastic.apm.agent.jdbc.helper.JdbcGlobalState.statementSqlMap;
+import static co.elastic.apm.agent.jdbc.helper.JdbcGlobalState.statementSql;
 
 public class JdbcHelper {
 
@@ -72,7 +72,9 @@ public class JdbcHelper {
      * @param sql       query string
      */
     public void mapStatementToSql(Object statement, String sql) {
-        statementSqlMap.putIfAbsent(statement, sql);
+        if (statement instanceof Statement && statementSql.get((Statement) statement) == null) {
+            statementSql.set((Statement) statement, sql);
+        }
     }
 
     /**
@@ -85,7 +87,10 @@ public class JdbcHelper {
      */
     @Nullable
     public String retrieveSqlForStatement(Object statement) {
-        return statementSqlMap.get(statement);
+        if (!(statement instanceof Statement)) {
+            return null;
+        }
+        return statementSql.get((Statement) statement);
     }
 
 
@@ -277,7 +282,7 @@ public class JdbcHelper {
     }
 
     public void removeSqlForStatement(Statement statement) {
-        statementSqlMap.remove(statement);
+        statementSql.remove(statement);
     }
 
     /**
@@ -25,6 +25,7 @@ import co.elastic.apm.agent.impl.context.DestinationImpl;
 import co.elastic.apm.agent.impl.transaction.SpanImpl;
 import co.elastic.apm.agent.impl.transaction.TransactionImpl;
 import co.elastic.apm.agent.jdbc.helper.JdbcGlobalState;
+import co.elastic.apm.agent.jdbc.helper.JdbcHelper;
 import co.elastic.apm.agent.sdk.internal.db.signature.SignatureParser;
 import co.elastic.apm.agent.tracer.Outcome;
 import org.junit.After;
@@ -346,9 +347,9 @@ public abstract class AbstractJdbcInstrumentationTest extends AbstractInstrument
         reporter.reset();
         // unique key violation
         assertThatThrownBy(() -> statementConsumer.withStatement(statement)).isInstanceOf(SQLException.class);
-        int mappedStatements = JdbcGlobalState.statementSqlMap.approximateSize();
+        assertThat(JdbcHelper.get().retrieveSqlForStatement(statement)).isEqualTo(insert);
         statement.close();
-        assertThat(JdbcGlobalState.statementSqlMap.approximateSize()).isLessThan(mappedStatements);
+        assertThat(JdbcHelper.get().retrieveSqlForStatement(statement)).isNull();
         SpanImpl span = assertSpanRecorded(insert, false, -1);
         assertThat(span.getOutcome()).isEqualTo(Outcome.FAILURE);
     }
@@ -0,0 +1,61 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.httpserver;
+
+import co.elastic.apm.agent.tracer.metadata.HeaderSource;
+import co.elastic.apm.agent.tracer.metadata.PotentiallyMultiValuedMap;
+import com.sun.net.httpserver.Headers;
+
+import java.util.List;
+import java.util.Map;
+
+public class HeadersHeaderSource implements HeaderSource<Headers> {
+
+    /**
+     * Copies all headers except for the {@code Cookie} header, which is captured via {@link #COOKIES}
+     */
+    public static final HeadersHeaderSource HEADERS = new HeadersHeaderSource(false);
+
+    /**
+     * Copies the cookies parsed from the {@code Cookie} header
+     */
+    public static final HeadersHeaderSource COOKIES = new HeadersHeaderSource(true);
+
+    private final boolean cookies;
+
+    private HeadersHeaderSource(boolean cookies) {
+        this.cookies = cookies;
+    }
+
+    @Override
+    public void copyTo(Headers carrier, PotentiallyMultiValuedMap target) {
+        for (Map.Entry<String, List<String>> header : carrier.entrySet()) {
+            boolean isCookieHeader = "Cookie".equalsIgnoreCase(header.getKey());
+            if (cookies && isCookieHeader) {
+                for (String[] cookie : CookieHelper.getCookies(header.getValue())) {
+                    target.add(cookie[0], cookie[1]);
+                }
+            } else if (!cookies && !isCookieHeader) {
+                for (String value : header.getValue()) {
+                    target.add(header.getKey(), value);
+                }
+            }
+        }
+    }
+}
@@ -34,9 +34,7 @@ import com.sun.net.httpserver.HttpsExchange;
 import net.bytebuddy.asm.Advice;
 
 import javax.annotation.Nullable;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 public class HttpHandlerAdvice {
 
@@ -90,18 +88,11 @@ public class HttpHandlerAdvice {
             .withPathname(exchange.getRequestURI().getPath())
             .withSearch(exchange.getRequestURI().getQuery());
 
-        if (transaction.isSampled() && coreConfiguration.isCaptureHeaders()) {
+        if (coreConfiguration.isCaptureHeaders()) {
             Headers headers = exchange.getRequestHeaders();
             if (headers != null) {
-                for (Map.Entry<String, List<String>> header : headers.entrySet()) {
-                    if ("Cookie".equalsIgnoreCase(header.getKey())) {
-                        for (String[] cookie : CookieHelper.getCookies(header.getValue())) {
-                            request.addCookie(cookie[0], cookie[1]);
-                        }
-                    } else {
-                        request.addHeader(header.getKey(), Collections.enumeration(header.getValue()));
-                    }
-                }
+                request.withHeaderSource(headers, HeadersHeaderSource.HEADERS)
+                    .withCookieSource(headers, HeadersHeaderSource.COOKIES);
             }
         }
 
@@ -142,12 +133,10 @@ public class HttpHandlerAdvice {
             .withFinished(true)
             .withStatusCode(exchange.getResponseCode());
 
-        if (transaction.isSampled() && coreConfiguration.isCaptureHeaders()) {
+        if (coreConfiguration.isCaptureHeaders()) {
             Headers headers = exchange.getResponseHeaders();
             if (headers != null) {
-                for (Map.Entry<String, List<String>> header : headers.entrySet()) {
-                    response.addHeader(header.getKey(), header.getValue());
-                }
+                response.withHeaderSource(headers, HeadersHeaderSource.HEADERS);
             }
         }
 
@@ -0,0 +1,60 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.kafka;
+
+import co.elastic.apm.agent.kafka.helper.KafkaConsumerBatchTracker;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.matcher.ElementMatcher;
+
+import static net.bytebuddy.matcher.ElementMatchers.isPublic;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+
+/**
+ * Instruments the public {@link org.apache.kafka.clients.consumer.KafkaConsumer#close} methods in order to end the batch transaction
+ * of the consumer, as there will be no subsequent {@code poll} to end it.
+ * A {@code KafkaConsumer} is not thread safe, so it is closed on the thread which polls and owns the batch transaction.
+ */
+public class KafkaConsumerCloseInstrumentation extends BaseKafkaInstrumentation {
+
+    @Override
+    public ElementMatcher<? super TypeDescription> getTypeMatcher() {
+        return named("org.apache.kafka.clients.consumer.KafkaConsumer");
+    }
+
+    @Override
+    public ElementMatcher<? super MethodDescription> getMethodMatcher() {
+        return named("close").and(isPublic());
+    }
+
+    @Override
+    public String getAdviceClassName() {
+        return "co.elastic.apm.agent.kafka.KafkaConsumerCloseInstrumentation$KafkaCloseAdvice";
+    }
+
+    public static class KafkaCloseAdvice {
+
+        @SuppressWarnings("unused")
+        @Advice.OnMethodEnter(suppress = Throwable.class, inline = false)
+        public static void closeStart() {
+            KafkaConsumerBatchTracker.endBatchOfCurrentThread();
+        }
+    }
+}
@@ -18,6 +18,7 @@
  */
 package co.elastic.apm.agent.kafka;
 
+import co.elastic.apm.agent.kafka.helper.KafkaConsumerBatchTracker;
 import co.elastic.apm.agent.tracer.AbstractSpan;
 import co.elastic.apm.agent.tracer.TraceState;
 import co.elastic.apm.agent.tracer.GlobalTracer;
@@ -63,6 +64,10 @@ public class KafkaConsumerInstrumentation extends BaseKafkaInstrumentation {
         @SuppressWarnings("unused")
         @Advice.OnMethodEnter(suppress = Throwable.class, inline = false)
         public static void pollStart() {
+            if (KafkaConsumerBatchTracker.endBatchOfCurrentThread()) {
+                // the records of the previous poll have been processed as a batch, no need to trace the poll itself
+                return;
+            }
             final TraceState<?> activeContext = tracer.currentContext();
             final AbstractSpan<?> activeSpan = activeContext.getSpan();
             if (activeSpan == null) {
@@ -0,0 +1,290 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.kafka.helper;
+
+import co.elastic.apm.agent.sdk.logging.Logger;
+import co.elastic.apm.agent.sdk.logging.LoggerFactory;
+import co.elastic.apm.agent.sdk.state.GlobalState;
+import co.elastic.apm.agent.sdk.weakconcurrent.DetachedThreadLocal;
+import co.elastic.apm.agent.sdk.weakconcurrent.WeakConcurrent;
+import co.elastic.apm.agent.tracer.AbstractSpan;
+import co.elastic.apm.agent.tracer.GlobalTracer;
+import co.elastic.apm.agent.tracer.Tracer;
+import co.elastic.apm.agent.tracer.Transaction;
+import co.elastic.apm.agent.tracer.configuration.MessagingConfiguration;
+import co.elastic.apm.agent.tracer.metrics.DoubleSupplier;
+import co.elastic.apm.agent.tracer.metrics.Labels;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the transactions that span the processing of all records returned by a {@code KafkaConsumer#poll} call,
+ * see {@link co.elastic.apm.agent.tracer.configuration.MessagingConfiguration#isKafkaConsumerBatchTransactions()}.
+ * <p>
+ * A batch transaction is started when {@code poll} returns and ended when {@code poll} is invoked again on the same thread,
+ * or when the consumer is closed. Batches which are open for longer than
+ * {@link co.elastic.apm.agent.tracer.configuration.MessagingConfiguration#getKafkaConsumerBatchMaxDuration()} are ended the next
+ * time any batch starts or ends, or when the batch metrics are collected, whichever comes first.
+ * The thread which owns such a stale batch still deactivates it and releases it when it polls again.
+ * Instead of per-record transactions, the number of records per topic and partition and the batch processing duration
+ * are recorded as metrics.
+ * </p>
+ */
+@GlobalState
+public class KafkaConsumerBatchTracker {
+
+    static final String RECORDS_METRIC = "kafka.consumer.batch.records";
+    static final String DURATION_SUM_METRIC = "kafka.consumer.batch.duration.sum.us";
+    static final String COUNT_METRIC = "kafka.consumer.batch.count";
+
+    /**
+     * Limits the number of topic/partition metric sets, so that consumers of many topics don't exhaust the metric registry
+     */
+    static final int MAX_TOPIC_PARTITIONS = 512;
+
+    /**
+     * Bounds how often the open batches of all threads are checked for being stale
+     */
+    private static final long STALE_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Logger logger = LoggerFactory.getLogger(KafkaConsumerBatchTracker.class);
+
+    @Nullable
+    private static volatile KafkaConsumerBatchTracker instance;
+
+    private final Tracer tracer;
+    private final MessagingConfiguration messagingConfiguration;
+    private final DetachedThreadLocal<Batch> currentBatch = WeakConcurrent.buildThreadLocal();
+    private final Set<Batch> openBatches = Collections.newSetFromMap(new ConcurrentHashMap<Batch, Boolean>());
+    private final AtomicLong lastStaleCheckNanos = new AtomicLong(System.nanoTime());
+    private final ConcurrentMap<String, AtomicLong> recordsPerTopicPartition = new ConcurrentHashMap<>();
+    private final AtomicLong durationSumUs = new AtomicLong();
+    private final AtomicLong count = new AtomicLong();
+
+    KafkaConsumerBatchTracker(Tracer tracer) {
+        this.tracer = tracer;
+        this.messagingConfiguration = tracer.getConfig(MessagingConfiguration.class);
+        tracer.addGauge(DURATION_SUM_METRIC, Labels.EMPTY.immutableCopy(), new ResettingCounter(durationSumUs) {
+            @Override
+            public double get() {
+                // makes sure stale batches are ended even if no consumer polls anymore
+                endStaleBatches(System.nanoTime());
+                return super.get();
+            }
+        });
+        tracer.addGauge(COUNT_METRIC, Labels.EMPTY.immutableCopy(), new ResettingCounter(count));
+    }
+
+    /**
+     * Lazily creates the tracker so that the metrics are only registered if batch transactions are used.
+     */
+    public static KafkaConsumerBatchTracker get() {
+        KafkaConsumerBatchTracker tracker = instance;
+        if (tracker == null) {
+            synchronized (KafkaConsumerBatchTracker.class) {
+                tracker = instance;
+                if (tracker == null) {
+                    tracker = new KafkaConsumerBatchTracker(GlobalTracer.get());
+                    instance = tracker;
+                }
+            }
+        }
+        return tracker;
+    }
+
+    /**
+     * Ends the previous batch transaction of the current thread, if any,
+     * and activates the provided transaction as the batch transaction of the current thread.
+     */
+    public void startBatch(Transaction<?> transaction) {
+        Batch previous = currentBatch.getAndRemove();
+        if (previous != null) {
+            // the previous batch has to be deactivated before the new one is activated on top of it
+            endBatch(previous);
+        }
+        transaction.incrementReferences();
+        transaction.activate();
+        long now = System.nanoTime();
+        Batch batch = new Batch(transaction, now);
+        currentBatch.set(batch);
+        openBatches.add(batch);
+        maybeEndStaleBatches(now);
+    }
+
+    /**
+     * @return {@code true} if the provided span is the batch transaction of the current thread
+     */
+    public boolean isCurrentBatch(@Nullable AbstractSpan<?> span) {
+        if (span == null) {
+            return false;
+        }
+        Batch batch = currentBatch.get();
+        return batch != null && batch.transaction == span;
+    }
+
+    /**
+     * Does not register the batch metrics if batch transactions have never been used.
+     *
+     * @return {@code true} if the provided span is the batch transaction of the current thread
+     */
+    public static boolean isBatchOfCurrentThread(@Nullable AbstractSpan<?> span) {
+        KafkaConsumerBatchTracker tracker = instance;
+        return tracker != null && tracker.isCurrentBatch(span);
+    }
+
+    /**
+     * Ends the batch transaction of the current thread, if any.
+     * Does not register the batch metrics if batch transactions have never been used.
+     *
+     * @return {@code true} if there was a batch transaction
+     */
+    public static boolean endBatchOfCurrentThread() {
+        KafkaConsumerBatchTracker tracker = instance;
+        return tracker != null && tracker.endCurrentBatch();
+    }
+
+    /**
+     * Ends the batch transaction of the current thread, if any, and records the batch metrics.
+     *
+     * @return {@code true} if there was a batch transaction
+     */
+    public boolean endCurrentBatch() {
+        Batch batch = currentBatch.getAndRemove();
+        if (batch == null) {
+            return false;
+        }
+        endBatch(batch);
+        maybeEndStaleBatches(System.nanoTime());
+        return true;
+    }
+
+    /**
+     * Executed by the thread which owns the batch
+     */
+    private void endBatch(Batch batch) {
+        openBatches.remove(batch);
+        Transaction<?> transaction = batch.transaction;
+        try {
+            if (tracer.getActive() == transaction) {
+                transaction.deactivate();
+            }
+            if (batch.markEnded()) {
+                recordDuration(batch, System.nanoTime());
+                transaction.end();
+            }
+        } finally {
+            transaction.decrementReferences();
+        }
+    }
+
+    private void maybeEndStaleBatches(long now) {
+        long lastCheck = lastStaleCheckNanos.get();
+        if (now - lastCheck >= STALE_CHECK_INTERVAL_NANOS && lastStaleCheckNanos.compareAndSet(lastCheck, now)) {
+            endStaleBatches(now);
+        }
+    }
+
+    /**
+     * Ends the transactions of batches which are open for longer than the configured maximum duration.
+     * As this may be executed by any thread, the batch is neither deactivated nor released, which is up to the owning thread.
+     */
+    void endStaleBatches(long now) {
+        if (openBatches.isEmpty()) {
+            return;
+        }
+        long maxDurationNanos = TimeUnit.MILLISECONDS.toNanos(messagingConfiguration.getKafkaConsumerBatchMaxDuration().getMillis());
+        for (Batch batch : openBatches) {
+            if (now - batch.startNanos >= maxDurationNanos && batch.markEnded()) {
+                openBatches.remove(batch);
+                logger.debug("Ending Kafka batch transaction {} as it exceeds the maximum batch duration", batch.transaction);
+                recordDuration(batch, now);
+                batch.transaction.end();
+            }
+        }
+    }
+
+    private void recordDuration(Batch batch, long now) {
+        durationSumUs.addAndGet(TimeUnit.NANOSECONDS.toMicros(now - batch.startNanos));
+        count.incrementAndGet();
+    }
+
+    /**
+     * Adds the number of records that have been polled for the given topic and partition.
+     */
+    public void recordCount(String topic, int partition, int records) {
+        String key = topic + '/' + partition;
+        AtomicLong counter = recordsPerTopicPartition.get(key);
+        if (counter == null) {
+            if (recordsPerTopicPartition.size() >= MAX_TOPIC_PARTITIONS) {
+                logger.debug("Not recording Kafka batch metrics for {} as the limit of {} topic partitions is reached", key, MAX_TOPIC_PARTITIONS);
+                return;
+            }
+            AtomicLong newCounter = new AtomicLong();
+            counter = recordsPerTopicPartition.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+                Labels.Mutable labels = Labels.Mutable.of("topic", topic);
+                labels.add("partition", Integer.toString(partition));
+                tracer.addGauge(RECORDS_METRIC, labels.immutableCopy(), new ResettingCounter(counter));
+            }
+        }
+        counter.addAndGet(records);
+    }
+
+    private static class Batch {
+        private final Transaction<?> transaction;
+        private final long startNanos;
+        /**
+         * Makes sure the transaction is only ended once, as stale batches are ended by other threads than the owning one
+         */
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        private Batch(Transaction<?> transaction, long startNanos) {
+            this.transaction = transaction;
+            this.startNanos = startNanos;
+        }
+
+        private boolean markEnded() {
+            return ended.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * Reports the value accumulated since the last metrics report
+     */
+    private static class ResettingCounter implements DoubleSupplier {
+        private final AtomicLong counter;
+
+        private ResettingCounter(AtomicLong counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public double get() {
+            return counter.getAndSet(0);
+        }
+    }
+}
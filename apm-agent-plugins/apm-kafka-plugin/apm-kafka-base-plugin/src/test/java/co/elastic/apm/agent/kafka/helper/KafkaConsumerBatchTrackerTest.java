@@ -0,0 +1,117 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.kafka.helper;
+
+import co.elastic.apm.agent.AbstractInstrumentationTest;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import co.elastic.apm.agent.tracer.configuration.MessagingConfiguration;
+import co.elastic.apm.agent.tracer.configuration.TimeDuration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+class KafkaConsumerBatchTrackerTest extends AbstractInstrumentationTest {
+
+    private KafkaConsumerBatchTracker batchTracker;
+
+    @BeforeEach
+    void setUp() {
+        batchTracker = new KafkaConsumerBatchTracker(tracer);
+    }
+
+    @Test
+    void testBatchIsEndedByNextPoll() {
+        TransactionImpl first = startBatch();
+        assertThat(tracer.getActive()).isSameAs(first);
+        assertThat(batchTracker.isCurrentBatch(first)).isTrue();
+
+        // the next poll
+        assertThat(batchTracker.endCurrentBatch()).isTrue();
+        assertThat(tracer.getActive()).isNull();
+        assertThat(reporter.getTransactions()).containsExactly(first);
+
+        TransactionImpl second = startBatch();
+        assertThat(batchTracker.isCurrentBatch(first)).isFalse();
+        assertThat(batchTracker.isCurrentBatch(second)).isTrue();
+
+        // closing the consumer
+        assertThat(batchTracker.endCurrentBatch()).isTrue();
+        assertThat(tracer.getActive()).isNull();
+        assertThat(reporter.getTransactions()).containsExactly(first, second);
+    }
+
+    @Test
+    void testPollWithoutBatch() {
+        assertThat(batchTracker.endCurrentBatch()).isFalse();
+        assertThat(batchTracker.isCurrentBatch(null)).isFalse();
+        assertThat(reporter.getTransactions()).isEmpty();
+    }
+
+    @Test
+    void testStartingBatchEndsPreviousBatch() {
+        TransactionImpl first = startBatch();
+        TransactionImpl second = startBatch();
+
+        assertThat(reporter.getTransactions()).containsExactly(first);
+        assertThat(tracer.getActive()).isSameAs(second);
+
+        assertThat(batchTracker.endCurrentBatch()).isTrue();
+        assertThat(reporter.getTransactions()).containsExactly(first, second);
+    }
+
+    @Test
+    void testStaleBatchIsEndedByOtherThread() throws InterruptedException {
+        doReturn(TimeDuration.of("1s")).when(config.getConfig(MessagingConfiguration.class)).getKafkaConsumerBatchMaxDuration();
+        TransactionImpl transaction = startBatch();
+
+        Thread thread = new Thread(() -> batchTracker.endStaleBatches(System.nanoTime() + TimeUnit.SECONDS.toNanos(2)));
+        thread.start();
+        thread.join();
+
+        assertThat(reporter.getTransactions()).containsExactly(transaction);
+        // the owning thread deactivates the stale batch when it polls again, without ending it a second time
+        assertThat(tracer.getActive()).isSameAs(transaction);
+        assertThat(batchTracker.endCurrentBatch()).isTrue();
+        assertThat(tracer.getActive()).isNull();
+        assertThat(reporter.getTransactions()).containsExactly(transaction);
+    }
+
+    @Test
+    void testBatchWithinMaxDurationIsNotEnded() {
+        doReturn(TimeDuration.of("1m")).when(config.getConfig(MessagingConfiguration.class)).getKafkaConsumerBatchMaxDuration();
+        TransactionImpl transaction = startBatch();
+
+        batchTracker.endStaleBatches(System.nanoTime() + TimeUnit.SECONDS.toNanos(2));
+        assertThat(reporter.getTransactions()).isEmpty();
+
+        assertThat(batchTracker.endCurrentBatch()).isTrue();
+        assertThat(reporter.getTransactions()).containsExactly(transaction);
+    }
+
+    private TransactionImpl startBatch() {
+        TransactionImpl transaction = Objects.requireNonNull(tracer.startRootTransaction(null)).withType("messaging");
+        batchTracker.startBatch(transaction);
+        return transaction;
+    }
+}
@@ -18,6 +18,7 @@
  */
 package co.elastic.apm.agent.kafka;
 
+import co.elastic.apm.agent.sdk.internal.util.PrivilegedActionUtils;
 import co.elastic.apm.agent.tracer.AbstractSpan;
 import co.elastic.apm.agent.tracer.Span;
 import co.elastic.apm.agent.kafka.helper.KafkaInstrumentationHeadersHelper;
@@ -50,9 +51,14 @@ public class NewKafkaPollExitInstrumentation extends KafkaConsumerInstrumentatio
         @SuppressWarnings("unused")
         @Advice.OnMethodExit(onThrowable = Throwable.class, suppress = Throwable.class, inline = false)
         public static void pollEnd(@Advice.Thrown final Throwable throwable,
+                                   @Advice.This Object consumer,
                                    @Advice.Return @Nullable ConsumerRecords<?, ?> records) {
 
             AbstractSpan<?> active = tracer.getActive();
+            if (active == null && throwable == null && helper.isBatchTransactionsEnabled()) {
+                helper.startBatchTransaction(records, PrivilegedActionUtils.getClassLoader(consumer.getClass()));
+                return;
+            }
             if (!(active instanceof Span<?>)) {
                 return;
             }
@@ -18,16 +18,20 @@
  */
 package co.elastic.apm.agent.kafka.helper;
 
+import co.elastic.apm.agent.common.util.WildcardMatcher;
 import co.elastic.apm.agent.sdk.logging.Logger;
 import co.elastic.apm.agent.sdk.logging.LoggerFactory;
 import co.elastic.apm.agent.tracer.AbstractSpan;
 import co.elastic.apm.agent.tracer.TraceState;
 import co.elastic.apm.agent.tracer.GlobalTracer;
 import co.elastic.apm.agent.tracer.Tracer;
+import co.elastic.apm.agent.tracer.Transaction;
+import co.elastic.apm.agent.tracer.configuration.MessagingConfiguration;
 import co.elastic.apm.agent.tracer.dispatch.HeaderUtils;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
 
 import javax.annotation.Nullable;
 import java.util.Iterator;
@@ -46,6 +50,7 @@ public class KafkaInstrumentationHeadersHelper {
     };
 
     private final Tracer tracer;
+    private final MessagingConfiguration messagingConfiguration;
 
     public static KafkaInstrumentationHeadersHelper get() {
         return INSTANCE;
@@ -53,6 +58,7 @@ public class KafkaInstrumentationHeadersHelper {
 
     public KafkaInstrumentationHeadersHelper(Tracer tracer) {
         this.tracer = tracer;
+        this.messagingConfiguration = tracer.getConfig(MessagingConfiguration.class);
     }
 
     public Iterator<ConsumerRecord<?, ?>> wrapConsumerRecordIterator(Iterator<ConsumerRecord<?, ?>> consumerRecordIterator) {
@@ -96,6 +102,10 @@ public class KafkaInstrumentationHeadersHelper {
         }
         AbstractSpan<?> activeSpan = tracer.getActive();
         if (activeSpan != null) {
+            if (KafkaConsumerBatchTracker.isBatchOfCurrentThread(activeSpan)) {
+                // the batch transaction has already been linked to the records when it was started
+                return false;
+            }
             addSpanLinks(consumerRecords, activeSpan);
             return false;
         }
@@ -116,6 +126,76 @@ public class KafkaInstrumentationHeadersHelper {
         }
     }
 
+    public boolean isBatchTransactionsEnabled() {
+        return messagingConfiguration.isKafkaConsumerBatchTransactions();
+    }
+
+    /**
+     * Starts a transaction for processing all records returned by a single {@code poll} invocation, instead of one transaction per record.
+     * The transaction stays active until the next {@code poll} on the same thread, see {@link KafkaConsumerBatchTracker}.
+     *
+     * @param records              the polled records
+     * @param applicationClassLoader the class loader of the Kafka client
+     */
+    public void startBatchTransaction(@Nullable ConsumerRecords<?, ?> records, @Nullable ClassLoader applicationClassLoader) {
+        if (records == null || records.isEmpty() || !tracer.isRunning()) {
+            return;
+        }
+        // the records are accessed without being wrapped and without adding span links to the active span
+        wrappingDisabled.set(Boolean.TRUE);
+        try {
+            doStartBatchTransaction(records, applicationClassLoader);
+        } finally {
+            wrappingDisabled.set(Boolean.FALSE);
+        }
+    }
+
+    private void doStartBatchTransaction(ConsumerRecords<?, ?> records, @Nullable ClassLoader applicationClassLoader) {
+        KafkaConsumerBatchTracker batchTracker = KafkaConsumerBatchTracker.get();
+        String singleTopic = null;
+        boolean multipleTopics = false;
+        for (TopicPartition topicPartition : records.partitions()) {
+            String topic = topicPartition.topic();
+            if (WildcardMatcher.isAnyMatch(messagingConfiguration.getIgnoreMessageQueues(), topic)) {
+                continue;
+            }
+            batchTracker.recordCount(topic, topicPartition.partition(), records.records(topicPartition).size());
+            if (singleTopic == null) {
+                singleTopic = topic;
+            } else if (!singleTopic.equals(topic)) {
+                multipleTopics = true;
+            }
+        }
+        if (singleTopic == null) {
+            // all topics are ignored
+            return;
+        }
+
+        Transaction<?> transaction = tracer.startRootTransaction(applicationClassLoader);
+        if (transaction == null) {
+            return;
+        }
+        transaction.withType("messaging");
+        transaction.setFrameworkName(ConsumerRecordsIteratorWrapper.FRAMEWORK_NAME);
+        if (multipleTopics) {
+            transaction.withName("Kafka batch");
+        } else {
+            transaction.withName("Kafka batch from " + singleTopic);
+            transaction.getContext().getMessage().withQueue(singleTopic);
+        }
+        int maxLinks = messagingConfiguration.getKafkaConsumerBatchMaxSpanLinks();
+        int links = 0;
+        for (ConsumerRecord<?, ?> record : records) {
+            if (links >= maxLinks) {
+                break;
+            }
+            if (transaction.addLink(KafkaRecordHeaderAccessor.instance(), record)) {
+                links++;
+            }
+        }
+        batchTracker.startBatch(transaction);
+    }
+
     public void setOutgoingTraceContextHeaders(TraceState<?> toPropagate, ProducerRecord<?, ?> producerRecord) {
         toPropagate.propagateContext(producerRecord, KafkaRecordHeaderAccessor.instance(), null);
     }
@@ -101,9 +101,8 @@ public class KafkaRecordHeaderAccessor implements UTF8ByteHeaderGetter<ConsumerR
 
     @Override
     public void setHeader(String headerName, byte[] headerValue, ProducerRecord record) {
-        // TODO: this currently allocates! Prior to the removal of binary propagation,
-        // custom thread-local cached headers instances with cached byte arrays were used.
-        // we can't use ThreadLocals due to loom, but we could use a bounded LRU cache instead
+        // the traceparent and tracestate values are cached per span and shared across records,
+        // only the conversion to the legacy binary header and the Kafka header itself are allocated per record
         remove(headerName, record);
         if (headerName.equals(ELASTIC_TRACE_PARENT_TEXTUAL_HEADER_NAME)) {
             record.headers().add(LEGACY_BINARY_TRACEPARENT, convertTextHeaderToLegacyBinaryTraceparent(headerValue));
@@ -0,0 +1,229 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.kafka;
+
+import co.elastic.apm.agent.AbstractInstrumentationTest;
+import co.elastic.apm.agent.impl.transaction.SpanImpl;
+import co.elastic.apm.agent.impl.transaction.TransactionImpl;
+import co.elastic.apm.agent.testutils.TestContainersUtils;
+import co.elastic.apm.agent.tracer.configuration.MessagingConfiguration;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.shaded.com.google.common.collect.ImmutableMap;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.UUID;
+
+import static co.elastic.apm.agent.testutils.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+/**
+ * Covers {@link MessagingConfiguration#isKafkaConsumerBatchTransactions()}: the consumer polls on the test thread without an active
+ * transaction, so that each non-empty poll starts a batch transaction.
+ */
+@SuppressWarnings("NotNullFieldNotInitialized")
+public class KafkaBatchTransactionsIT extends AbstractInstrumentationTest {
+
+    private static KafkaContainer kafka;
+    private static KafkaProducer<String, String> producer;
+
+    private String topic;
+    private KafkaConsumer<String, String> consumer;
+
+    @BeforeClass
+    public static void setup() {
+        kafka = new KafkaContainer(DockerImageName.parse("confluentinc/cp-kafka").withTag("7.1.0"));
+        kafka.withCreateContainerCmdModifier(TestContainersUtils.withMemoryLimit(4096));
+        kafka.start();
+        producer = new KafkaProducer<>(
+            ImmutableMap.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafka.getBootstrapServers(),
+                ProducerConfig.CLIENT_ID_CONFIG, UUID.randomUUID().toString()
+            ),
+            new StringSerializer(),
+            new StringSerializer()
+        );
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        producer.close();
+        kafka.stop();
+    }
+
+    @Before
+    public void setUp() {
+        doReturn(true).when(config.getConfig(MessagingConfiguration.class)).isKafkaConsumerBatchTransactions();
+        topic = "batch-" + UUID.randomUUID();
+        consumer = new KafkaConsumer<>(
+            ImmutableMap.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafka.getBootstrapServers(),
+                ConsumerConfig.GROUP_ID_CONFIG, "tc-" + UUID.randomUUID(),
+                ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest"
+            ),
+            new StringDeserializer(),
+            new StringDeserializer()
+        );
+        consumer.subscribe(Collections.singletonList(topic));
+    }
+
+    @After
+    public void closeConsumer() {
+        // ends a batch that may still be open
+        consumer.close();
+    }
+
+    @Test
+    public void testBatchTransactionStartedAndEndedAcrossPolls() throws Exception {
+        sendRecords(2);
+
+        ConsumerRecords<String, String> records = pollRecords();
+        TransactionImpl batch = (TransactionImpl) Objects.requireNonNull(tracer.getActive());
+        assertThat(batch.getType()).isEqualTo("messaging");
+        assertThat(batch.getNameAsString()).isEqualTo("Kafka batch from " + topic);
+        assertThat(batch.getContext().getMessage().getQueueName()).isEqualTo(topic);
+        assertThat(batch.getSpanLinks()).hasSize(records.count());
+        assertThat(reporter.getTransactions()).isEmpty();
+
+        // the poll span of the next poll is not created, as there is no active transaction anymore
+        consumer.poll(Duration.ofMillis(100));
+        assertThat(reporter.getTransactions()).containsExactly(batch);
+        assertThat(reporter.getSpans()).isEmpty();
+        assertThat(tracer.getActive()).isNull();
+    }
+
+    @Test
+    public void testEmptyPollDoesNotStartBatch() {
+        ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(100));
+
+        assertThat(records.isEmpty()).isTrue();
+        assertThat(tracer.getActive()).isNull();
+        assertThat(reporter.getTransactions()).isEmpty();
+        assertThat(reporter.getSpans()).isEmpty();
+    }
+
+    @Test
+    public void testCloseEndsOpenBatch() throws Exception {
+        sendRecords(1);
+        pollRecords();
+        TransactionImpl batch = (TransactionImpl) Objects.requireNonNull(tracer.getActive());
+
+        consumer.close();
+
+        assertThat(tracer.getActive()).isNull();
+        assertThat(reporter.getTransactions()).containsExactly(batch);
+    }
+
+    @Test
+    public void testNoPerRecordTransactionsWithinBatch() throws Exception {
+        sendRecords(2);
+        ConsumerRecords<String, String> records = pollRecords();
+        TransactionImpl batch = (TransactionImpl) Objects.requireNonNull(tracer.getActive());
+        int links = batch.getSpanLinks().size();
+
+        for (ConsumerRecord<String, String> record : records) {
+            assertThat(tracer.getActive()).isSameAs(batch);
+        }
+        for (ConsumerRecord<String, String> record : records.records(topic)) {
+            assertThat(tracer.getActive()).isSameAs(batch);
+        }
+
+        // iterating the records neither starts per-record transactions nor adds more links
+        assertThat(batch.getSpanLinks()).hasSize(links);
+        consumer.poll(Duration.ofMillis(100));
+        assertThat(reporter.getTransactions()).containsExactly(batch);
+    }
+
+    @Test
+    public void testPerRecordTransactionsWhenBatchTransactionsAreDisabled() throws Exception {
+        doReturn(false).when(config.getConfig(MessagingConfiguration.class)).isKafkaConsumerBatchTransactions();
+        sendRecords(2);
+        ConsumerRecords<String, String> records = pollRecords();
+        assertThat(tracer.getActive()).isNull();
+
+        for (ConsumerRecord<String, String> record : records) {
+            assertThat(tracer.currentTransaction()).isNotNull();
+            assertThat(tracer.currentTransaction().getNameAsString()).isEqualTo("Kafka record from " + topic);
+        }
+
+        assertThat(tracer.getActive()).isNull();
+        assertThat(reporter.getTransactions()).hasSize(records.count());
+    }
+
+    @Test
+    public void testPollWithinActiveTransactionDoesNotStartBatch() throws Exception {
+        sendRecords(1);
+        TransactionImpl transaction = startTestRootTransaction("Kafka-Test Transaction");
+        try {
+            pollRecords();
+            assertThat(tracer.getActive()).isSameAs(transaction);
+        } finally {
+            transaction.deactivate().end();
+        }
+
+        assertThat(reporter.getTransactions()).containsExactly(transaction);
+        assertThat(reporter.getSpans()).isNotEmpty();
+        for (SpanImpl span : reporter.getSpans()) {
+            assertThat(span.getNameAsString()).isEqualTo("KafkaConsumer#poll");
+        }
+    }
+
+    private void sendRecords(int count) throws Exception {
+        TransactionImpl transaction = startTestRootTransaction("Kafka-Producer Transaction");
+        try {
+            for (int i = 0; i < count; i++) {
+                producer.send(new ProducerRecord<>(topic, "key", "value-" + i)).get();
+            }
+        } finally {
+            transaction.deactivate().end();
+        }
+        reporter.reset();
+    }
+
+    /**
+     * Polls until records are returned.
+     * Empty polls neither start nor end a batch.
+     */
+    private ConsumerRecords<String, String> pollRecords() {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(100));
+            if (!records.isEmpty()) {
+                return records;
+            }
+        }
+        throw new AssertionError("No records received within 10 seconds");
+    }
+}
@@ -18,8 +18,10 @@
  */
 package co.elastic.apm.agent.opentelemetry.tracing;
 
+import co.elastic.apm.agent.impl.context.DbImpl;
 import co.elastic.apm.agent.impl.context.UrlImpl;
 import co.elastic.apm.agent.impl.transaction.AbstractSpanImpl;
+import co.elastic.apm.agent.impl.transaction.OTelAttributes;
 import co.elastic.apm.agent.impl.transaction.OTelSpanKind;
 import co.elastic.apm.agent.impl.transaction.SpanImpl;
 import co.elastic.apm.agent.tracer.Outcome;
@@ -39,7 +41,6 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 public class OTelSpan implements Span {
@@ -49,29 +50,119 @@ public class OTelSpan implements Span {
 
     private final AbstractSpanImpl<?> span;
 
+    /**
+     * {@literal true} if the span has been started through {@link OTelSpanBuilder}, {@literal false} when an agent span is
+     * wrapped, for example for {@link Span#current()}.
+     */
+    private final boolean startedByBuilder;
+
     public OTelSpan(AbstractSpanImpl<?> span) {
+        this(span, false);
+    }
+
+    OTelSpan(AbstractSpanImpl<?> span, boolean startedByBuilder) {
         this.span = span;
+        this.startedByBuilder = startedByBuilder;
         span.incrementReferences();
     }
 
     @Override
     public <T> Span setAttribute(AttributeKey<T> key, @Nonnull T value) {
-        boolean behavioralAttribute = false;
-        if (BehavioralAttributes.DISCARDABLE.equals(key.getKey())) {
+        String name = key.getKey();
+        if (BehavioralAttributes.DISCARDABLE.equals(name)) {
             if (!(value instanceof Boolean)) {
                 throw new IllegalArgumentException(String.format(ILLEGAL_ATTRIBUTE_VALUE_TYPE_MESSAGE_FORMAT, BehavioralAttributes.DISCARDABLE, value));
             }
-            if (!(Boolean) value) {
-                span.setNonDiscardable();
+            setDiscardable((Boolean) value);
+        } else {
+            span.withOtelAttribute(name, value);
+            if (value instanceof String) {
+                mapToContext(name, (String) value);
             }
-            behavioralAttribute = true;
         }
-        if (!behavioralAttribute) {
-            span.withOtelAttribute(key.getKey(), value);
+        return this;
+    }
+
+    @Override
+    public Span setAttribute(String key, @Nullable String value) {
+        if (value != null) {
+            if (BehavioralAttributes.DISCARDABLE.equals(key)) {
+                throw new IllegalArgumentException(String.format(ILLEGAL_ATTRIBUTE_VALUE_TYPE_MESSAGE_FORMAT, BehavioralAttributes.DISCARDABLE, value));
+            }
+            span.withOtelAttribute(key, value);
+            mapToContext(key, value);
+        }
+        return this;
+    }
+
+    // the default implementations of the primitive variants box the value, we store them in primitive slots instead
+
+    @Override
+    public Span setAttribute(String key, long value) {
+        if (BehavioralAttributes.DISCARDABLE.equals(key)) {
+            throw new IllegalArgumentException(String.format(ILLEGAL_ATTRIBUTE_VALUE_TYPE_MESSAGE_FORMAT, BehavioralAttributes.DISCARDABLE, value));
         }
+        span.getOtelAttributes().putLong(key, value);
         return this;
     }
 
+    @Override
+    public Span setAttribute(AttributeKey<Long> key, int value) {
+        return setAttribute(key.getKey(), (long) value);
+    }
+
+    @Override
+    public Span setAttribute(String key, double value) {
+        if (BehavioralAttributes.DISCARDABLE.equals(key)) {
+            throw new IllegalArgumentException(String.format(ILLEGAL_ATTRIBUTE_VALUE_TYPE_MESSAGE_FORMAT, BehavioralAttributes.DISCARDABLE, value));
+        }
+        span.getOtelAttributes().putDouble(key, value);
+        return this;
+    }
+
+    @Override
+    public Span setAttribute(String key, boolean value) {
+        if (BehavioralAttributes.DISCARDABLE.equals(key)) {
+            setDiscardable(value);
+        } else {
+            span.getOtelAttributes().putBoolean(key, value);
+        }
+        return this;
+    }
+
+    private void setDiscardable(boolean discardable) {
+        if (!discardable) {
+            span.setNonDiscardable();
+        }
+    }
+
+    /**
+     * Maps the attributes that directly correspond to a field of the span context when they are set,
+     * so that they don't need to be looked up when the span ends.
+     * Attributes that depend on other attributes, like the span type, are still resolved on end.
+     * Only applies to spans started through the bridge, the context of wrapped agent spans is owned by their instrumentation.
+     */
+    private void mapToContext(String key, String value) {
+        if (!startedByBuilder || !(span instanceof SpanImpl) || !key.startsWith("db.")) {
+            return;
+        }
+        DbImpl db = ((SpanImpl) span).getContext().getDb();
+        switch (key) {
+            case "db.system":
+                db.withType(value);
+                break;
+            case "db.name":
+                db.withInstance(value);
+                break;
+            case "db.statement":
+                db.withStatement(value);
+                break;
+            case "db.user":
+                db.withUser(value);
+                break;
+        }
+    }
+
     @Override
     public Span addEvent(String name, Attributes attributes) {
         eventLogger.warn("The addEvent API is not supported at the moment");
@@ -126,7 +217,7 @@ public class OTelSpan implements Span {
 
     private void onTransactionEnd(TransactionImpl t) {
 
-        Map<String, Object> attributes = span.getOtelAttributes();
+        OTelAttributes attributes = span.getOtelAttributes();
         boolean isRpc = attributes.containsKey("rpc.system");
         boolean isHttp = attributes.containsKey("http.url") || attributes.containsKey("http.scheme");
         boolean isMessaging = attributes.containsKey("messaging.system");
@@ -145,47 +236,47 @@ public class OTelSpan implements Span {
 
     private void onSpanEnd(SpanImpl s) {
 
-        Map<String, Object> attributes = s.getOtelAttributes();
+        OTelAttributes attributes = s.getOtelAttributes();
 
         String type = null;
         String subType = null;
 
-        String netPeerIp = (String) attributes.get("net.peer.ip");
-        String netPeerName = (String) attributes.get("net.peer.name");
-        Long netPortLong = (Long) attributes.get("net.peer.port");
+        String netPeerIp = attributes.getString("net.peer.ip");
+        String netPeerName = attributes.getString("net.peer.name");
+        long netPortLong = attributes.getLong("net.peer.port", -1L);
         int netPort = -1;
-        if (null != netPortLong && netPortLong > 0L) {
-            netPort = netPortLong.intValue();
+        if (netPortLong > 0L) {
+            netPort = (int) netPortLong;
         }
 
         String netPeer = netPeerName != null ? netPeerName : netPeerIp;
 
-        String httpUrl = (String) attributes.get("http.url");
-        String httpScheme = (String) attributes.get("http.scheme");
-        String dbSystem = (String) attributes.get("db.system");
-        String messagingSystem = (String) attributes.get("messaging.system");
-        String rpcSystem = (String) attributes.get("rpc.system");
+        String httpUrl = attributes.getString("http.url");
+        String httpScheme = attributes.getString("http.scheme");
+        String dbSystem = attributes.getString("db.system");
+        String messagingSystem = attributes.getString("messaging.system");
+        String rpcSystem = attributes.getString("rpc.system");
 
         if (null != dbSystem) {
             type = "db";
             subType = dbSystem;
-            String dbName = (String) attributes.get("db.name");
-            String dbStatement = (String) attributes.get("db.statement");
-            String dbUser = (String) attributes.get("db.user");
-            s.getContext().getDb()
-                .withType(subType)
-                .withInstance(dbName)
-                .withStatement(dbStatement)
-                .withUser(dbUser);
+            if (!startedByBuilder) {
+                // the db context is only populated when the attributes are set for spans started through the bridge
+                s.getContext().getDb()
+                    .withType(subType)
+                    .withInstance(attributes.getString("db.name"))
+                    .withStatement(attributes.getString("db.statement"))
+                    .withUser(attributes.getString("db.user"));
+            }
             s.getContext().getServiceTarget()
                 .withType(subType)
-                .withName(dbName);
+                .withName(attributes.getString("db.name"));
 
         } else if (messagingSystem != null) {
             type = "messaging";
             subType = messagingSystem;
-            String messagingDestination = (String) attributes.get("messaging.destination");
-            URI messagingUri = parseURI((String) attributes.get("messaging.url"));
+            String messagingDestination = attributes.getString("messaging.destination");
+            URI messagingUri = parseURI(attributes.getString("messaging.url"));
 
             if (netPeer == null && messagingUri != null) {
                 netPeer = messagingUri.getHost();
@@ -198,7 +289,7 @@ public class OTelSpan implements Span {
         } else if (rpcSystem != null) {
             type = "external";
             subType = rpcSystem;
-            String service = (String) attributes.get("rpc.service");
+            String service = attributes.getString("rpc.service");
 
             s.getContext().getServiceTarget()
                 .withType(subType)
@@ -212,7 +303,7 @@ public class OTelSpan implements Span {
             type = "external";
             subType = "http";
 
-            String httpHost = (String) attributes.get("http.host");
+            String httpHost = attributes.getString("http.host");
             if (null == httpHost) {
                 httpHost = netPeer;
             }
@@ -233,6 +324,11 @@ public class OTelSpan implements Span {
                 .withNameOnlyDestinationResource();
         }
 
+        if (startedByBuilder && dbSystem == null && (attributes.containsKey("db.name") || attributes.containsKey("db.statement") || attributes.containsKey("db.user"))) {
+            // db attributes without db.system don't make this a db span
+            s.getContext().getDb().resetState();
+        }
+
         if (type == null) {
             type = "unknown";
             if (s.getOtelKind() == OTelSpanKind.INTERNAL) {
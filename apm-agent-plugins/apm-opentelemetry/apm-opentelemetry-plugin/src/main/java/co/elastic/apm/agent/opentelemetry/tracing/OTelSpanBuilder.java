@@ -211,7 +211,7 @@ class OTelSpanBuilder implements SpanBuilder {
 
         }
 
-        OTelSpan otelSpan = new OTelSpan(span);
+        OTelSpan otelSpan = new OTelSpan(span, true);
         attributes.forEach((AttributeKey<?> k, Object v) -> otelSpan.setAttribute((AttributeKey<? super Object>) k, (Object) v));
         return otelSpan;
     }
@@ -602,6 +602,72 @@ public class ElasticOpenTelemetryTest extends AbstractOpenTelemetryTest {
         ));
     }
 
+    @Test
+    public void testDbAttributesMappedToSpanContext() {
+        Span transaction = otelTracer.spanBuilder("transaction").startSpan();
+        try (Scope scope = transaction.makeCurrent()) {
+            otelTracer.spanBuilder("db")
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute("db.system", "postgresql")
+                .startSpan()
+                .setAttribute("db.name", "shop")
+                .setAttribute("db.statement", "SELECT 1")
+                .setAttribute("db.user", "app")
+                .setAttribute("net.peer.name", "db.example.com")
+                .setAttribute("net.peer.port", 5432L)
+                .end();
+            otelTracer.spanBuilder("not-db")
+                .startSpan()
+                .setAttribute("db.statement", "SELECT 1")
+                .end();
+        } finally {
+            transaction.end();
+        }
+
+        assertThat(reporter.getSpans()).hasSize(2);
+        SpanImpl dbSpan = reporter.getSpanByName("db");
+        assertThat(dbSpan.getType()).isEqualTo("db");
+        assertThat(dbSpan.getContext().getDb().getType()).isEqualTo("postgresql");
+        assertThat(dbSpan.getContext().getDb().getInstance()).isEqualTo("shop");
+        assertThat(dbSpan.getContext().getDb().getStatement()).isEqualTo("SELECT 1");
+        assertThat(dbSpan.getContext().getDb().getUser()).isEqualTo("app");
+        assertThat(dbSpan.getOtelAttributes().get("net.peer.port")).isEqualTo(5432L);
+
+        SpanImpl notDbSpan = reporter.getSpanByName("not-db");
+        assertThat(notDbSpan.getContext().getDb().hasContent()).isFalse();
+        assertThat(notDbSpan.getOtelAttributes()).containsEntry("db.statement", "SELECT 1");
+    }
+
+    @Test
+    public void testDbAttributesOnAgentSpanDontOverwriteSpanContext() {
+        TransactionImpl transaction = tracer.startRootTransaction(null).activate();
+        try {
+            SpanImpl jdbcSpan = transaction.createSpan().withName("jdbc").withType("db").withSubtype("postgresql");
+            jdbcSpan.getContext().getDb().withType("sql").withStatement("SELECT * FROM orders");
+            SpanImpl otherSpan = transaction.createSpan().withName("other");
+            try (co.elastic.apm.agent.tracer.Scope scope = jdbcSpan.activateInScope()) {
+                Span.current().setAttribute("db.statement", "SELECT 1");
+            } finally {
+                jdbcSpan.end();
+            }
+            try (co.elastic.apm.agent.tracer.Scope scope = otherSpan.activateInScope()) {
+                Span.current().setAttribute("db.statement", "SELECT 1");
+            } finally {
+                otherSpan.end();
+            }
+        } finally {
+            transaction.deactivate().end();
+        }
+
+        SpanImpl jdbcSpan = reporter.getSpanByName("jdbc");
+        assertThat(jdbcSpan.getContext().getDb().getStatement()).isEqualTo("SELECT * FROM orders");
+        assertThat(jdbcSpan.getOtelAttributes()).containsEntry("db.statement", "SELECT 1");
+
+        SpanImpl otherSpan = reporter.getSpanByName("other");
+        assertThat(otherSpan.getContext().getDb().hasContent()).isFalse();
+        assertThat(otherSpan.getOtelAttributes()).containsEntry("db.statement", "SELECT 1");
+    }
+
     private static void checkOTelAttributes(AbstractSpanImpl<?> context, Map<String, Object> expected) {
         assertThat(context.getOtelAttributes())
             .containsAllEntriesOf(expected)
@@ -42,6 +42,11 @@ public class ProfilingFactory extends AbstractLifecycleListener {
         elasticApmTracer.registerSpanListener(new ProfilingActivationListener(elasticApmTracer, profiler));
     }
 
+    @Override
+    public void beforeCheckpoint() throws Exception {
+        profiler.closeActivationEventsFile();
+    }
+
     @Override
     public void stop() throws Exception {
         profiler.stop();
@@ -60,8 +60,11 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.LockSupport;
 
 import static java.nio.file.StandardOpenOption.READ;
@@ -720,6 +723,35 @@ public class SamplingProfiler extends AbstractLifecycleListener implements Runna
         }
     }
 
+    /**
+     * Closes the activation events file, so that it's not open when a checkpoint of the JVM is taken.
+     * <p>
+     * The file is closed on the profiler thread after the current profiling session has ended,
+     * and it's reopened when the next profiling session starts.
+     * </p>
+     */
+    void closeActivationEventsFile() throws Exception {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        Future<?> closed = scheduler.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                synchronized (SamplingProfiler.this) {
+                    if (activationEventsFileChannel != null) {
+                        activationEventsFileChannel.close();
+                    }
+                }
+                return null;
+            }
+        });
+        try {
+            closed.get(config.getProfilingDuration().getMillis() + 1000, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("The activation events file has not been closed before the checkpoint, as the profiling session did not end in time");
+        }
+    }
+
     void setProfilingSessionOngoing(boolean profilingSessionOngoing) {
         this.profilingSessionOngoing = profilingSessionOngoing;
         if (!profilingSessionOngoing) {
@@ -24,46 +24,82 @@ import co.elastic.apm.agent.sdk.state.GlobalVariables;
 import co.elastic.apm.agent.sdk.weakconcurrent.WeakConcurrent;
 import co.elastic.apm.agent.sdk.weakconcurrent.WeakMap;
 import co.elastic.apm.agent.tracer.TraceState;
-import co.elastic.apm.agent.tracer.GlobalTracer;
 import co.elastic.apm.agent.tracer.Tracer;
-import co.elastic.apm.agent.tracer.reference.ReferenceCountedMap;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 import reactor.core.CoreSubscriber;
 import reactor.core.Fuseable;
+import reactor.core.Scannable;
 import reactor.core.publisher.Hooks;
 import reactor.core.publisher.Operators;
 import reactor.util.context.Context;
 
 import javax.annotation.Nullable;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.function.BiFunction;
 import java.util.function.Function;
-
-public class TracedSubscriber<T> implements CoreSubscriber<T> {
+import java.util.function.Predicate;
+
+/**
+ * Propagates the span/transaction that was active when subscribing to the threads that signal the subscriber.
+ * <p>
+ * The context is held directly by the subscriber, which holds a reference on it until the subscription is terminated
+ * or cancelled. In asynchronous fusion mode, the downstream subscriber keeps polling queued items after the upstream
+ * terminated, thus the reference is only released once the queue is drained or cleared.
+ * To preserve operator fusion, the subscriber acts as a {@link Fuseable.QueueSubscription} towards the downstream subscriber,
+ * delegating to the upstream subscription if it supports fusion.
+ * </p>
+ */
+public class TracedSubscriber<T> implements CoreSubscriber<T>, Fuseable.QueueSubscription<T>, Scannable {
 
     private static final Logger log = LoggerFactory.getLogger(TracedSubscriber.class);
 
     private static final AtomicBoolean isRegistered = GlobalVariables.get(ReactorInstrumentation.class, "reactor-hook-enabled", new AtomicBoolean(false));
 
-    private static final ReferenceCountedMap<TracedSubscriber<?>, TraceState<?>> contextMap = GlobalTracer.get().newReferenceCountedMap();
-
     private static final String HOOK_KEY = "elastic-apm";
 
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<TracedSubscriber> DISCARDED = AtomicIntegerFieldUpdater.newUpdater(TracedSubscriber.class, "discarded");
+
     private final CoreSubscriber<? super T> subscriber;
 
     private final Tracer tracer;
 
+    private final TraceState<?> traceState;
+
     private final Context context;
 
-    TracedSubscriber(CoreSubscriber<? super T> subscriber, Tracer tracer, TraceState<?> context) {
+    @Nullable
+    private Subscription subscription;
+
+    @Nullable
+    private Fuseable.QueueSubscription<T> queueSubscription;
+
+    private int fusionMode = Fuseable.NONE;
+
+    /**
+     * Set when the upstream terminated, in {@link Fuseable#ASYNC} fusion mode items might still be queued at that point
+     */
+    private volatile boolean terminated;
+
+    private volatile int discarded;
+
+    TracedSubscriber(CoreSubscriber<? super T> subscriber, Tracer tracer, TraceState<?> traceState) {
         this.subscriber = subscriber;
         this.tracer = tracer;
-        contextMap.put(this, context);
+        this.traceState = traceState;
+        traceState.incrementReferences();
 
         // store our span/transaction into reactor context for later lookup without relying on active tracer state
-        this.context = subscriber.currentContext().put(TraceState.class, context);
+        // within an operator chain, the downstream subscriber usually already carries the same span/transaction
+        Context downstreamContext = subscriber.currentContext();
+        if (downstreamContext.getOrDefault(TraceState.class, null) == traceState) {
+            this.context = downstreamContext;
+        } else {
+            this.context = downstreamContext.put(TraceState.class, traceState);
+        }
     }
 
     @Override
@@ -77,12 +113,17 @@ public class TracedSubscriber<T> implements CoreSubscriber<T> {
      * @param s subscription
      */
     @Override
+    @SuppressWarnings("unchecked")
     public void onSubscribe(Subscription s) {
+        if (s instanceof Fuseable.QueueSubscription) {
+            queueSubscription = (Fuseable.QueueSubscription<T>) s;
+        }
+        subscription = s;
         TraceState<?> context = getContext();
         boolean hasActivated = doEnter("onSubscribe", context);
         Throwable thrown = null;
         try {
-            subscriber.onSubscribe(s);
+            subscriber.onSubscribe(this);
         } catch (Throwable e) {
             thrown = e;
             throw e;
@@ -122,11 +163,13 @@ public class TracedSubscriber<T> implements CoreSubscriber<T> {
     public void onError(Throwable t) {
         TraceState<?> context = getContext();
         boolean hasActivated = doEnter("onError", context);
+        // must be set before signalling, the downstream subscriber might drain the queue within the signal
+        terminated = true;
         try {
             subscriber.onError(t);
         } finally {
             doExit(hasActivated, "onError", context);
-            discardIf(true);
+            discardIf(fusionMode != Fuseable.ASYNC);
         }
     }
 
@@ -137,14 +180,110 @@ public class TracedSubscriber<T> implements CoreSubscriber<T> {
     public void onComplete() {
         TraceState<?> context = getContext();
         boolean hasActivated = doEnter("onComplete", context);
+        // must be set before signalling, the downstream subscriber might drain the queue within the signal
+        terminated = true;
         try {
             subscriber.onComplete();
         } finally {
             doExit(hasActivated, "onComplete", context);
+            discardIf(fusionMode != Fuseable.ASYNC);
+        }
+    }
+
+    @Override
+    public void request(long n) {
+        if (subscription != null) {
+            subscription.request(n);
+        }
+    }
+
+    @Override
+    public void cancel() {
+        try {
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        } finally {
+            discardIf(true);
+        }
+    }
+
+    /**
+     * Negotiates fusion with the upstream subscription, the downstream subscriber will then {@link #poll()} this subscriber.
+     * Fusion is rejected when the upstream subscription does not support it.
+     */
+    @Override
+    public int requestFusion(int requestedMode) {
+        if (queueSubscription == null) {
+            return Fuseable.NONE;
+        }
+        fusionMode = queueSubscription.requestFusion(requestedMode);
+        return fusionMode;
+    }
+
+    /**
+     * Wraps {@link Fuseable.QueueSubscription#poll()} for context propagation, executed in the thread of the downstream subscriber
+     * which also executes the upstream fused operators, like {@code map}.
+     */
+    @Nullable
+    @Override
+    public T poll() {
+        if (queueSubscription == null) {
+            return null;
+        }
+        // must be read before polling, items queued before termination would be missed otherwise
+        boolean wasTerminated = terminated;
+        TraceState<?> context = getContext();
+        boolean hasActivated = doEnter("poll", context);
+        T next = null;
+        try {
+            next = queueSubscription.poll();
+        } finally {
+            doExit(hasActivated, "poll", context);
+            // in synchronous fusion mode, the end of the sequence is signalled by returning null instead of onComplete
+            // in asynchronous fusion mode, the queue is drained once it returns null after the upstream terminated
+            discardIf(next == null && (fusionMode == Fuseable.SYNC || wasTerminated));
+        }
+        return next;
+    }
+
+    @Override
+    public int size() {
+        return queueSubscription != null ? queueSubscription.size() : 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        boolean wasTerminated = terminated;
+        boolean empty = queueSubscription == null || queueSubscription.isEmpty();
+        // the downstream subscriber might complete without polling when the queue is empty
+        discardIf(empty && wasTerminated);
+        return empty;
+    }
+
+    @Override
+    public void clear() {
+        try {
+            if (queueSubscription != null) {
+                queueSubscription.clear();
+            }
+        } finally {
             discardIf(true);
         }
     }
 
+    @Nullable
+    @Override
+    public Object scanUnsafe(Attr key) {
+        if (key == Attr.PARENT) {
+            return subscription;
+        }
+        if (key == Attr.ACTUAL) {
+            return subscriber;
+        }
+        return null;
+    }
+
     /**
      * Wrapped method entry
      *
@@ -187,11 +326,15 @@ public class TracedSubscriber<T> implements CoreSubscriber<T> {
         context.deactivate();
     }
 
+    /**
+     * Releases the reference on the span/transaction once the subscription is terminated or cancelled.
+     * Any subsequent (racy) signals won't activate the span/transaction as it might have been recycled already.
+     */
     private void discardIf(boolean condition) {
-        if (!condition) {
+        if (!condition || !DISCARDED.compareAndSet(this, 0, 1)) {
             return;
         }
-        contextMap.remove(this);
+        traceState.decrementReferences();
     }
 
     private void debugTrace(boolean isEnter, String method, @Nullable TraceState<?> context) {
@@ -206,7 +349,7 @@ public class TracedSubscriber<T> implements CoreSubscriber<T> {
      */
     @Nullable
     private TraceState<?> getContext() {
-        return contextMap.get(this);
+        return discarded == 0 ? traceState : null;
     }
 
     /**
@@ -240,17 +383,16 @@ public class TracedSubscriber<T> implements CoreSubscriber<T> {
 
     private static <X> Function<? super Publisher<X>, ? extends Publisher<X>> wrapOperators(final Tracer tracer) {
         //noinspection Convert2Lambda,rawtypes,Convert2Diamond
-        return Operators.liftPublisher(new BiFunction<Publisher, CoreSubscriber<? super X>, CoreSubscriber<? super X>>() {
+        return Operators.liftPublisher(new Predicate<Publisher>() {
             @Override
-            public CoreSubscriber<? super X> apply(Publisher publisher, CoreSubscriber<? super X> subscriber) {
+            public boolean test(Publisher publisher) {
                 // don't wrap known #error #just #empty as they have instantaneous execution
-                if (publisher instanceof Fuseable.ScalarCallable) {
-                    if (log.isTraceEnabled()) {
-                        log.trace("skip wrapping {}", safeToString(subscriber));
-                    }
-                    return subscriber;
-                }
-
+                // skipping them at assembly time also preserves their scalar optimizations
+                return !(publisher instanceof Fuseable.ScalarCallable);
+            }
+        }, new BiFunction<Publisher, CoreSubscriber<? super X>, CoreSubscriber<? super X>>() {
+            @Override
+            public CoreSubscriber<? super X> apply(Publisher publisher, CoreSubscriber<? super X> subscriber) {
                 // use active span/transaction if directly active
                 TraceState<?> active = tracer.currentContext();
 
@@ -27,6 +27,10 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.Disposable;
+import reactor.core.Fuseable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Hooks;
 import reactor.core.publisher.Mono;
@@ -35,9 +39,14 @@ import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
 
 class TracedSubscriberTest extends AbstractInstrumentationTest {
 
@@ -235,6 +244,93 @@ class TracedSubscriberTest extends AbstractInstrumentationTest {
             .verifyComplete();
     }
 
+    @Test
+    void fusionIsPreserved() {
+        transaction = startTestRootTransaction("root");
+
+        Flux<TestObservation> flux = Flux.range(1, 3)
+            .map(TestObservation::capture);
+
+        StepVerifier.create(flux)
+            .expectFusion(Fuseable.SYNC)
+            .expectNextMatches(inMainThread(transaction, 1))
+            .expectNextMatches(inMainThread(transaction, 2))
+            .expectNextMatches(inMainThread(transaction, 3))
+            .verifyComplete();
+    }
+
+    @Test
+    void contextPropagation_Fused_DifferentThreads() {
+        transaction = startTestRootTransaction("root");
+
+        // the map operator is executed within poll by the thread that drains the async-fused publishOn queue
+        Flux<TestObservation> flux = Flux.range(1, 3)
+            .publishOn(PUBLISH_SCHEDULER)
+            .map(TestObservation::capture);
+
+        StepVerifier.create(flux)
+            .expectFusion(Fuseable.ASYNC)
+            .expectNextMatches(inOtherThread(transaction, 1))
+            .expectNextMatches(inOtherThread(transaction, 2))
+            .expectNextMatches(inOtherThread(transaction, 3))
+            .verifyComplete();
+    }
+
+    @Test
+    void contextPropagation_AsyncFused_DrainedAfterCompletion() throws Exception {
+        transaction = startTestRootTransaction("root");
+        int references = transaction.getReferenceCount();
+
+        // the map operator is executed within poll, which an async-fused subscriber might call after the upstream completed
+        Flux<TestObservation> flux = Flux.range(1, 3)
+            .publishOn(PUBLISH_SCHEDULER)
+            .map(TestObservation::capture);
+
+        DrainOnCompleteSubscriber<TestObservation> subscriber = new DrainOnCompleteSubscriber<>();
+        flux.subscribe(subscriber);
+        assertThat(subscriber.fusionMode).isEqualTo(Fuseable.ASYNC);
+
+        List<TestObservation> observations = subscriber.drain();
+        assertThat(observations).hasSize(3);
+        for (int i = 0; i < observations.size(); i++) {
+            inOtherThread(transaction, i + 1).test(observations.get(i));
+        }
+
+        await().untilAsserted(() -> assertThat(transaction.getReferenceCount()).isEqualTo(references));
+    }
+
+    @Test
+    void referencesAreReleasedOnCompletion() {
+        transaction = startTestRootTransaction("root");
+        int references = transaction.getReferenceCount();
+
+        Flux<Integer> flux = Flux.just(1, 2, 3)
+            .subscribeOn(SUBSCRIBE_SCHEDULER)
+            .publishOn(PUBLISH_SCHEDULER)
+            .map(i -> i * 2);
+
+        StepVerifier.create(flux)
+            .expectNext(2, 4, 6)
+            .verifyComplete();
+
+        await().untilAsserted(() -> assertThat(transaction.getReferenceCount()).isEqualTo(references));
+    }
+
+    @Test
+    void referencesAreReleasedOnCancel() {
+        transaction = startTestRootTransaction("root");
+        int references = transaction.getReferenceCount();
+
+        Disposable disposable = Flux.never()
+            .subscribeOn(SUBSCRIBE_SCHEDULER)
+            .publishOn(PUBLISH_SCHEDULER)
+            .subscribe();
+        assertThat(transaction.getReferenceCount()).isGreaterThan(references);
+
+        disposable.dispose();
+        await().untilAsserted(() -> assertThat(transaction.getReferenceCount()).isEqualTo(references));
+    }
+
     private static long currentThreadId() {
         return Thread.currentThread().getId();
     }
@@ -267,6 +363,56 @@ class TracedSubscriberTest extends AbstractInstrumentationTest {
         };
     }
 
+    /**
+     * Async-fused subscriber that only drains the queue once the upstream completed, from a thread without active context
+     */
+    private static class DrainOnCompleteSubscriber<T> implements CoreSubscriber<T> {
+
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        @Nullable
+        private Fuseable.QueueSubscription<T> queueSubscription;
+
+        private int fusionMode = Fuseable.NONE;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSubscribe(Subscription s) {
+            queueSubscription = (Fuseable.QueueSubscription<T>) s;
+            fusionMode = queueSubscription.requestFusion(Fuseable.ASYNC);
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T t) {
+            // items are only polled after completion
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            throw new IllegalStateException(t);
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        List<T> drain() throws Exception {
+            assertThat(completed.await(1, TimeUnit.SECONDS)).isTrue();
+            List<T> items = new ArrayList<>();
+            Thread thread = new Thread(() -> {
+                T item;
+                while ((item = queueSubscription.poll()) != null) {
+                    items.add(item);
+                }
+            });
+            thread.start();
+            thread.join();
+            return items;
+        }
+    }
+
     /**
      * Capture an 'observation' of current reactor state for testing:
      *
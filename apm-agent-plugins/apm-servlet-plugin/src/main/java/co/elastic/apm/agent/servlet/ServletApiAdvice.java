@@ -31,13 +31,10 @@ import co.elastic.apm.agent.sdk.weakconcurrent.DetachedThreadLocal;
 import co.elastic.apm.agent.sdk.weakconcurrent.WeakConcurrent;
 import co.elastic.apm.agent.servlet.adapter.ServletApiAdapter;
 import co.elastic.apm.agent.tracer.configuration.CoreConfiguration;
-import co.elastic.apm.agent.tracer.metadata.Request;
-import co.elastic.apm.agent.tracer.metadata.Response;
 import co.elastic.apm.agent.tracer.util.TransactionNameUtils;
 
 import javax.annotation.Nullable;
 import java.util.Arrays;
-import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 
@@ -107,17 +104,11 @@ public abstract class ServletApiAdvice {
                 return null;
             }
 
-            final Request req = transaction.getContext().getRequest();
-            if (transaction.isSampled() && coreConfig.isCaptureHeaders()) {
-                adapter.handleCookies(req, httpServletRequest);
-
-                final Enumeration<String> headerNames = adapter.getRequestHeaderNames(httpServletRequest);
-                if (headerNames != null) {
-                    while (headerNames.hasMoreElements()) {
-                        final String headerName = headerNames.nextElement();
-                        req.addHeader(headerName, adapter.getRequestHeaders(httpServletRequest, headerName));
-                    }
-                }
+            if (coreConfig.isCaptureHeaders()) {
+                // the headers are only copied when the transaction ends, and only if it is going to be reported
+                transaction.getContext().getRequest()
+                    .withHeaderSource(httpServletRequest, adapter.getRequestHeaderSource())
+                    .withCookieSource(httpServletRequest, adapter.getRequestCookieSource());
             }
             transaction.setFrameworkName(FRAMEWORK_NAME);
 
@@ -216,11 +207,8 @@ public abstract class ServletApiAdvice {
                 transaction.deactivate();
             } else {
                 // this is not an async httpServletRequest, so we can end the transaction immediately
-                if (transaction.isSampled() && tracer.getConfig(CoreConfiguration.class).isCaptureHeaders()) {
-                    final Response resp = transaction.getContext().getResponse();
-                    for (String headerName : adapter.getHeaderNames(httpServletResponse)) {
-                        resp.addHeader(headerName, adapter.getHeaders(httpServletResponse, headerName));
-                    }
+                if (tracer.getConfig(CoreConfiguration.class).isCaptureHeaders()) {
+                    transaction.getContext().getResponse().withHeaderSource(httpServletResponse, adapter.getResponseHeaderSource());
                 }
                 // httpServletRequest.getParameterMap() may allocate a new map, depending on the servlet container implementation
                 // so only call this method if necessary
@@ -18,16 +18,16 @@
  */
 package co.elastic.apm.agent.servlet.adapter;
 
+import co.elastic.apm.agent.servlet.helper.JakartaServletHeaderSources;
 import co.elastic.apm.agent.servlet.helper.JakartaServletRequestHeaderGetter;
 import co.elastic.apm.agent.tracer.dispatch.TextHeaderGetter;
-import co.elastic.apm.agent.tracer.metadata.Request;
+import co.elastic.apm.agent.tracer.metadata.HeaderSource;
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.FilterConfig;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletConfig;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletContextEvent;
-import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -35,8 +35,6 @@ import jakarta.servlet.http.HttpServletResponse;
 import javax.annotation.Nullable;
 import java.io.InputStream;
 import java.security.Principal;
-import java.util.Collection;
-import java.util.Enumeration;
 import java.util.Map;
 
 public class JakartaServletApiAdapter implements ServletApiAdapter<HttpServletRequest, HttpServletResponse, ServletContext, ServletContextEvent, FilterConfig, ServletConfig> {
@@ -121,25 +119,6 @@ public class JakartaServletApiAdapter implements ServletApiAdapter<HttpServletRe
         return servletContext.getContextPath();
     }
 
-    @Override
-    public void handleCookies(Request request, HttpServletRequest servletRequest) {
-        if (servletRequest.getCookies() != null) {
-            for (Cookie cookie : servletRequest.getCookies()) {
-                request.addCookie(cookie.getName(), cookie.getValue());
-            }
-        }
-    }
-
-    @Override
-    public Enumeration<String> getRequestHeaderNames(HttpServletRequest servletRequest) {
-        return servletRequest.getHeaderNames();
-    }
-
-    @Override
-    public Enumeration<String> getRequestHeaders(HttpServletRequest servletRequest, String name) {
-        return servletRequest.getHeaders(name);
-    }
-
     @Override
     public String getHeader(HttpServletRequest httpServletRequest, String name) {
         return httpServletRequest.getHeader(name);
@@ -247,16 +226,6 @@ public class JakartaServletApiAdapter implements ServletApiAdapter<HttpServletRe
         httpServletRequest.removeAttribute(attributeName);
     }
 
-    @Override
-    public Collection<String> getHeaderNames(HttpServletResponse httpServletResponse) {
-        return httpServletResponse.getHeaderNames();
-    }
-
-    @Override
-    public Collection<String> getHeaders(HttpServletResponse httpServletResponse, String headerName) {
-        return httpServletResponse.getHeaders(headerName);
-    }
-
     @Override
     public Map<String, String[]> getParameterMap(HttpServletRequest httpServletRequest) {
         return httpServletRequest.getParameterMap();
@@ -288,6 +257,21 @@ public class JakartaServletApiAdapter implements ServletApiAdapter<HttpServletRe
         return JakartaServletRequestHeaderGetter.getInstance();
     }
 
+    @Override
+    public HeaderSource<HttpServletRequest> getRequestHeaderSource() {
+        return JakartaServletHeaderSources.REQUEST_HEADERS;
+    }
+
+    @Override
+    public HeaderSource<HttpServletRequest> getRequestCookieSource() {
+        return JakartaServletHeaderSources.REQUEST_COOKIES;
+    }
+
+    @Override
+    public HeaderSource<HttpServletResponse> getResponseHeaderSource() {
+        return JakartaServletHeaderSources.RESPONSE_HEADERS;
+    }
+
     @Override
     public ServletContext getServletContextFromFilterConfig(FilterConfig filterConfig) {
         return filterConfig.getServletContext();
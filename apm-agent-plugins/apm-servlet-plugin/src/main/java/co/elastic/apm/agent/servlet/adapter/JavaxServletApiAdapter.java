@@ -18,9 +18,10 @@
  */
 package co.elastic.apm.agent.servlet.adapter;
 
+import co.elastic.apm.agent.servlet.helper.JavaxServletHeaderSources;
 import co.elastic.apm.agent.servlet.helper.JavaxServletRequestHeaderGetter;
 import co.elastic.apm.agent.tracer.dispatch.TextHeaderGetter;
-import co.elastic.apm.agent.tracer.metadata.Request;
+import co.elastic.apm.agent.tracer.metadata.HeaderSource;
 
 import javax.annotation.Nullable;
 import javax.servlet.DispatcherType;
@@ -29,14 +30,11 @@ import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
-import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.InputStream;
 import java.security.Principal;
-import java.util.Collection;
-import java.util.Enumeration;
 import java.util.Map;
 
 public class JavaxServletApiAdapter implements ServletApiAdapter<HttpServletRequest, HttpServletResponse, ServletContext, ServletContextEvent, FilterConfig, ServletConfig> {
@@ -135,25 +133,6 @@ public class JavaxServletApiAdapter implements ServletApiAdapter<HttpServletRequ
         return servletContext.getContextPath();
     }
 
-    @Override
-    public void handleCookies(Request request, HttpServletRequest servletRequest) {
-        if (servletRequest.getCookies() != null) {
-            for (Cookie cookie : servletRequest.getCookies()) {
-                request.addCookie(cookie.getName(), cookie.getValue());
-            }
-        }
-    }
-
-    @Override
-    public Enumeration<String> getRequestHeaderNames(HttpServletRequest servletRequest) {
-        return servletRequest.getHeaderNames();
-    }
-
-    @Override
-    public Enumeration<String> getRequestHeaders(HttpServletRequest servletRequest, String name) {
-        return servletRequest.getHeaders(name);
-    }
-
     @Override
     public String getHeader(HttpServletRequest httpServletRequest, String name) {
         return httpServletRequest.getHeader(name);
@@ -261,16 +240,6 @@ public class JavaxServletApiAdapter implements ServletApiAdapter<HttpServletRequ
         servletRequest.removeAttribute(attributeName);
     }
 
-    @Override
-    public Collection<String> getHeaderNames(HttpServletResponse httpServletResponse) {
-        return httpServletResponse.getHeaderNames();
-    }
-
-    @Override
-    public Collection<String> getHeaders(HttpServletResponse httpServletResponse, String headerName) {
-        return httpServletResponse.getHeaders(headerName);
-    }
-
     @Override
     public Map<String, String[]> getParameterMap(HttpServletRequest httpServletRequest) {
         return httpServletRequest.getParameterMap();
@@ -302,6 +271,21 @@ public class JavaxServletApiAdapter implements ServletApiAdapter<HttpServletRequ
         return JavaxServletRequestHeaderGetter.getInstance();
     }
 
+    @Override
+    public HeaderSource<HttpServletRequest> getRequestHeaderSource() {
+        return JavaxServletHeaderSources.REQUEST_HEADERS;
+    }
+
+    @Override
+    public HeaderSource<HttpServletRequest> getRequestCookieSource() {
+        return JavaxServletHeaderSources.REQUEST_COOKIES;
+    }
+
+    @Override
+    public HeaderSource<HttpServletResponse> getResponseHeaderSource() {
+        return JavaxServletHeaderSources.RESPONSE_HEADERS;
+    }
+
     @Override
     public ServletContext getServletContextFromFilterConfig(FilterConfig filterConfig) {
         return filterConfig.getServletContext();
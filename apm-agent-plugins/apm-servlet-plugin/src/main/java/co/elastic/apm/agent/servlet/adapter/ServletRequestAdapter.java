@@ -20,11 +20,10 @@ package co.elastic.apm.agent.servlet.adapter;
 
 import co.elastic.apm.agent.sdk.state.GlobalState;
 import co.elastic.apm.agent.tracer.dispatch.TextHeaderGetter;
-import co.elastic.apm.agent.tracer.metadata.Request;
+import co.elastic.apm.agent.tracer.metadata.HeaderSource;
 
 import javax.annotation.Nullable;
 import java.security.Principal;
-import java.util.Enumeration;
 import java.util.Map;
 
 @GlobalState
@@ -45,13 +44,6 @@ public interface ServletRequestAdapter<HttpServletRequest, ServletContext> {
     @Nullable
     ServletContext getServletContext(HttpServletRequest servletRequest);
 
-    void handleCookies(Request request, HttpServletRequest httpServletRequest);
-
-    @Nullable
-    Enumeration<String> getRequestHeaderNames(HttpServletRequest httpServletRequest);
-
-    Enumeration<String> getRequestHeaders(HttpServletRequest httpServletRequest, String name);
-
     String getHeader(HttpServletRequest httpServletRequest, String name);
 
     String getProtocol(HttpServletRequest httpServletRequest);
@@ -95,4 +87,8 @@ public interface ServletRequestAdapter<HttpServletRequest, ServletContext> {
     Map<String, String[]> getParameterMap(HttpServletRequest httpServletRequest);
 
     TextHeaderGetter<HttpServletRequest> getRequestHeaderGetter();
+
+    HeaderSource<HttpServletRequest> getRequestHeaderSource();
+
+    HeaderSource<HttpServletRequest> getRequestCookieSource();
 }
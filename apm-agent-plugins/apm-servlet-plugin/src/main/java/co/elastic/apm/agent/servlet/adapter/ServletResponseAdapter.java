@@ -19,9 +19,9 @@
 package co.elastic.apm.agent.servlet.adapter;
 
 import co.elastic.apm.agent.sdk.state.GlobalState;
+import co.elastic.apm.agent.tracer.metadata.HeaderSource;
 
 import javax.annotation.Nullable;
-import java.util.Collection;
 
 @GlobalState
 public interface ServletResponseAdapter<HttpServletResponse> {
@@ -29,12 +29,10 @@ public interface ServletResponseAdapter<HttpServletResponse> {
     @Nullable
     HttpServletResponse asHttpServletResponse(Object servletResponse);
 
-    Collection<String> getHeaderNames(HttpServletResponse httpServletResponse);
-
-    Collection<String> getHeaders(HttpServletResponse httpServletResponse, String headerName);
-
     boolean isCommitted(HttpServletResponse httpServletResponse);
 
     int getStatus(HttpServletResponse httpServletResponse);
 
+    HeaderSource<HttpServletResponse> getResponseHeaderSource();
+
 }
@@ -23,7 +23,6 @@ import co.elastic.apm.agent.servlet.ServletTransactionHelper;
 
 import javax.annotation.Nullable;
 
-import co.elastic.apm.agent.tracer.metadata.Response;
 import co.elastic.apm.agent.tracer.pooling.Recyclable;
 import jakarta.servlet.AsyncContext;
 import jakarta.servlet.AsyncEvent;
@@ -146,11 +145,8 @@ public class JakartaApmAsyncListener implements AsyncListener, Recyclable {
             request.removeAttribute(TRANSACTION_ATTRIBUTE);
 
             HttpServletResponse response = (HttpServletResponse) event.getSuppliedResponse();
-            final Response resp = transaction.getContext().getResponse();
-            if (transaction.isSampled() && servletTransactionHelper.isCaptureHeaders()) {
-                for (String headerName : response.getHeaderNames()) {
-                    resp.addHeader(headerName, response.getHeaders(headerName));
-                }
+            if (servletTransactionHelper.isCaptureHeaders()) {
+                transaction.getContext().getResponse().withHeaderSource(response, JakartaServletHeaderSources.RESPONSE_HEADERS);
             }
             // request.getParameterMap() may allocate a new map, depending on the servlet container implementation
             // so only call this method if necessary
@@ -0,0 +1,81 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.servlet.helper;
+
+import co.elastic.apm.agent.tracer.metadata.HeaderSource;
+import co.elastic.apm.agent.tracer.metadata.PotentiallyMultiValuedMap;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.Collection;
+import java.util.Enumeration;
+
+public class JakartaServletHeaderSources {
+
+    public static final HeaderSource<HttpServletRequest> REQUEST_HEADERS = new HeaderSource<HttpServletRequest>() {
+        @Override
+        public void copyTo(HttpServletRequest request, PotentiallyMultiValuedMap target) {
+            Enumeration<String> headerNames = request.getHeaderNames();
+            if (headerNames == null) {
+                return;
+            }
+            while (headerNames.hasMoreElements()) {
+                String headerName = headerNames.nextElement();
+                // cookies are captured separately
+                if ("Cookie".equalsIgnoreCase(headerName)) {
+                    continue;
+                }
+                Enumeration<String> values = request.getHeaders(headerName);
+                while (values != null && values.hasMoreElements()) {
+                    target.add(headerName, values.nextElement());
+                }
+            }
+        }
+    };
+
+    public static final HeaderSource<HttpServletRequest> REQUEST_COOKIES = new HeaderSource<HttpServletRequest>() {
+        @Override
+        public void copyTo(HttpServletRequest request, PotentiallyMultiValuedMap target) {
+            Cookie[] cookies = request.getCookies();
+            if (cookies != null) {
+                for (Cookie cookie : cookies) {
+                    target.add(cookie.getName(), cookie.getValue());
+                }
+            }
+        }
+    };
+
+    public static final HeaderSource<HttpServletResponse> RESPONSE_HEADERS = new HeaderSource<HttpServletResponse>() {
+        @Override
+        public void copyTo(HttpServletResponse response, PotentiallyMultiValuedMap target) {
+            for (String headerName : response.getHeaderNames()) {
+                Collection<String> values = response.getHeaders(headerName);
+                if (values != null) {
+                    for (String value : values) {
+                        target.add(headerName, value);
+                    }
+                }
+            }
+        }
+    };
+
+    private JakartaServletHeaderSources() {
+    }
+}
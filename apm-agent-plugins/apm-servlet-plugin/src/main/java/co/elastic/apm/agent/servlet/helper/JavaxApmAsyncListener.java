@@ -20,7 +20,6 @@ package co.elastic.apm.agent.servlet.helper;
 
 import co.elastic.apm.agent.tracer.Transaction;
 import co.elastic.apm.agent.servlet.ServletTransactionHelper;
-import co.elastic.apm.agent.tracer.metadata.Response;
 import co.elastic.apm.agent.tracer.pooling.Recyclable;
 
 import javax.annotation.Nullable;
@@ -145,11 +144,8 @@ public class JavaxApmAsyncListener implements AsyncListener, Recyclable {
             request.removeAttribute(TRANSACTION_ATTRIBUTE);
 
             HttpServletResponse response = (HttpServletResponse) event.getSuppliedResponse();
-            final Response resp = transaction.getContext().getResponse();
-            if (transaction.isSampled() && servletTransactionHelper.isCaptureHeaders()) {
-                for (String headerName : response.getHeaderNames()) {
-                    resp.addHeader(headerName, response.getHeaders(headerName));
-                }
+            if (servletTransactionHelper.isCaptureHeaders()) {
+                transaction.getContext().getResponse().withHeaderSource(response, JavaxServletHeaderSources.RESPONSE_HEADERS);
             }
             // request.getParameterMap() may allocate a new map, depending on the servlet container implementation
             // so only call this method if necessary
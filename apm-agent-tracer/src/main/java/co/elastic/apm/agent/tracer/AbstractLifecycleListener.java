@@ -35,6 +35,14 @@ public abstract class AbstractLifecycleListener implements LifecycleListener {
     public void resume() throws Exception {
     }
 
+    @Override
+    public void beforeCheckpoint() throws Exception {
+    }
+
+    @Override
+    public void afterRestore() throws Exception {
+    }
+
     @Override
     public void stop() throws Exception {
     }
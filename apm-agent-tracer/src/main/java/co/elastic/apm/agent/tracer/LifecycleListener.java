@@ -75,6 +75,37 @@ public interface LifecycleListener {
      */
     void resume() throws Exception;
 
+    /**
+     * Callback for before a checkpoint of the JVM is taken, for example with CRaC (Coordinated Restore at Checkpoint).
+     * <p>
+     * When this method is called, the {@link Tracer} has already been {@linkplain #pause() paused}.
+     * Implementations should close resources which can't be part of a checkpoint, like open files and network connections,
+     * and stop the threads that use them.
+     * </p>
+     * <p>
+     * Exceptions thrown from this method are caught and handled so that they don't prevent further cleanup actions.
+     * </p>
+     *
+     * @throws Exception When something goes wrong performing the cleanup.
+     */
+    void beforeCheckpoint() throws Exception;
+
+    /**
+     * Callback for when the JVM has been restored from a checkpoint.
+     * <p>
+     * Typically, used in order to revert the actions taken by the {@link LifecycleListener#beforeCheckpoint()} method.
+     * As multiple JVMs may be restored from the same checkpoint, state which identifies the instance or the host should be
+     * discovered again.
+     * The {@link Tracer} is resumed after this method has been called on all listeners.
+     * </p>
+     * <p>
+     * Exceptions thrown from this method are caught and handled so that they don't prevent further restore actions.
+     * </p>
+     *
+     * @throws Exception When something goes wrong while attempting to restore.
+     */
+    void afterRestore() throws Exception;
+
     /**
      * Callback for when the {@link Tracer} is stopped.
      * <p>
@@ -108,6 +108,46 @@ public class MessagingConfiguration extends ConfigurationOptionProvider {
         .dynamic(false)
         .buildWithDefault(Collections.<String>emptyList());
 
+    private final ConfigurationOption<Boolean> kafkaConsumerBatchTransactions = ConfigurationOption.booleanOption()
+        .key("kafka_consumer_batch_transactions")
+        .configurationCategory(MESSAGING_CATEGORY)
+        .tags("performance", "added[1.57.0]")
+        .description("When enabled, the agent creates a single transaction for all records returned by a `KafkaConsumer#poll` call,\n" +
+            "instead of one transaction per record.\n" +
+            "The batch transaction is linked to the trace contexts of the first records, see `kafka_consumer_batch_max_span_links`,\n" +
+            "and ends when `poll` is invoked again on the same thread or when the consumer is closed,\n" +
+            "but not later than `kafka_consumer_batch_max_duration`.\n" +
+            "The number of records per topic and partition and the batch processing duration are reported as metrics.\n" +
+            "\n" +
+            "This reduces the overhead for consumers with a high record throughput,\n" +
+            "at the cost of not having a transaction for the processing of each record.\n" +
+            "This option is only relevant for Kafka clients 0.11.0 or newer.")
+        .dynamic(true)
+        .buildWithDefault(false);
+
+    private final ConfigurationOption<Integer> kafkaConsumerBatchMaxSpanLinks = ConfigurationOption.integerOption()
+        .key("kafka_consumer_batch_max_span_links")
+        .configurationCategory(MESSAGING_CATEGORY)
+        .tags("performance", "added[1.57.0]")
+        .description("The maximum number of span links that are added to a Kafka batch transaction,\n" +
+            "see `kafka_consumer_batch_transactions`.\n" +
+            "The links point to the trace contexts of the first records of the batch.")
+        .addValidator(RangeValidator.min(0))
+        .dynamic(true)
+        .buildWithDefault(100);
+
+    private final ConfigurationOption<TimeDuration> kafkaConsumerBatchMaxDuration = TimeDurationValueConverter.durationOption("s")
+        .key("kafka_consumer_batch_max_duration")
+        .configurationCategory(MESSAGING_CATEGORY)
+        .tags("performance", "added[1.57.0]")
+        .description("The maximum duration of a Kafka batch transaction, see `kafka_consumer_batch_transactions`.\n" +
+            "Batch transactions which have not been ended by a subsequent `poll` or by closing the consumer within this duration,\n" +
+            "for example because the consumer thread stopped polling, are ended the next time a batch starts or ends,\n" +
+            "or when the metrics are collected.")
+        .addValidator(RangeValidator.min(TimeDuration.of("1s")))
+        .dynamic(true)
+        .buildWithDefault(TimeDuration.of("1m"));
+
     private final ConfigurationOption<RabbitMQNamingMode> rabbitMQNamingMode = ConfigurationOption.enumOption(RabbitMQNamingMode.class)
         .key("rabbitmq_naming_mode")
         .configurationCategory(MESSAGING_CATEGORY)
@@ -142,6 +182,18 @@ public class MessagingConfiguration extends ConfigurationOptionProvider {
         return jmsListenerPackages.get();
     }
 
+    public boolean isKafkaConsumerBatchTransactions() {
+        return kafkaConsumerBatchTransactions.get();
+    }
+
+    public int getKafkaConsumerBatchMaxSpanLinks() {
+        return kafkaConsumerBatchMaxSpanLinks.get();
+    }
+
+    public TimeDuration getKafkaConsumerBatchMaxDuration() {
+        return kafkaConsumerBatchMaxDuration.get();
+    }
+
     public RabbitMQNamingMode getRabbitMQNamingMode() {
         return rabbitMQNamingMode.get();
     }
@@ -135,6 +135,18 @@ public class WebConfiguration extends ConfigurationOptionProvider {
         .dynamic(true)
         .buildWithDefault(0);
 
+    private final ConfigurationOption<Integer> captureClientRequestBytesPerTransaction = ConfigurationOption.integerOption()
+        .addValidator(isInRange(0, Integer.MAX_VALUE))
+        .key("capture_http_client_request_body_size_per_transaction")
+        .configurationCategory(HTTP_CATEGORY)
+        .tags("performance", "added[1.57.0]")
+        .description("The maximum total number of http-client request body bytes captured for all spans of a single transaction. " +
+                     "Once the limit is reached, the request bodies of further http-client spans of the transaction are truncated or not captured. " +
+                     "This bounds the memory used for body capturing of transactions which make a large number of outgoing requests.\n\n" +
+                     "Only has an effect if <<config-capture-http-client-request-body-size, `capture_http_client_request_body_size`>> is greater than 0.")
+        .dynamic(true)
+        .buildWithDefault(65536);
+
     private final ConfigurationOption<Boolean> captureClientRequestBodyAsLabel = ConfigurationOption.booleanOption()
         .key("capture_http_client_request_body_as_label")
         .configurationCategory(HTTP_CATEGORY)
@@ -170,6 +182,10 @@ public class WebConfiguration extends ConfigurationOptionProvider {
         return captureClientRequestBytes.get();
     }
 
+    public int getCaptureClientRequestBytesPerTransaction() {
+        return captureClientRequestBytesPerTransaction.get();
+    }
+
     public boolean isCaptureClientRequestBodyAsLabel() {
         return captureClientRequestBodyAsLabel.get();
     }
@@ -0,0 +1,47 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.apm.agent.tracer.metadata;
+
+/**
+ * Copies headers or cookies from a framework-specific request or response object.
+ * <p>
+ * Registering a header source instead of eagerly adding each header defers the copy until the end of the transaction,
+ * so that headers are only captured for transactions which are actually reported.
+ * See {@link Request#withHeaderSource(Object, HeaderSource)} and {@link Response#withHeaderSource(Object, HeaderSource)}.
+ * </p>
+ * <p>
+ * Implementations should be stateless singletons so that registering them does not allocate.
+ * </p>
+ *
+ * @param <C> the type of the request or response object
+ */
+public interface HeaderSource<C> {
+
+    /**
+     * Copies the headers (or cookies) of the carrier into the provided map.
+     * <p>
+     * This method is invoked when the transaction ends or when an error is captured in the context of the transaction,
+     * which means before the request is completed and the carrier may be recycled by the container.
+     * </p>
+     *
+     * @param carrier the request or response object
+     * @param target  the map to add the headers to
+     */
+    void copyTo(C carrier, PotentiallyMultiValuedMap target);
+}
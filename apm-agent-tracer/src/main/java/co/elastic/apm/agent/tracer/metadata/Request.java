@@ -88,6 +88,29 @@ public interface Request {
 
     Request addCookie(String cookieName, String cookieValue);
 
+    /**
+     * Registers a source for the request headers which is only read when the transaction ends, and only if the
+     * transaction is going to be reported. This avoids copying the headers of transactions which are discarded.
+     *
+     * @param carrier      the framework-specific request object
+     * @param headerSource copies the headers of the carrier, excluding the {@code Cookie} header
+     * @param <C>          the type of the request object
+     * @return {@code this}, for fluent method chaining
+     */
+    <C> Request withHeaderSource(C carrier, HeaderSource<C> headerSource);
+
+    /**
+     * Registers a source for the request cookies which is only read when the transaction ends, and only if the
+     * transaction is going to be reported.
+     *
+     * @param carrier      the framework-specific request object
+     * @param cookieSource copies the cookies of the carrier as name-value pairs
+     * @param <C>          the type of the request object
+     * @return {@code this}, for fluent method chaining
+     * @see #withHeaderSource(Object, HeaderSource)
+     */
+    <C> Request withCookieSource(C carrier, HeaderSource<C> cookieSource);
+
     /**
      * Returns the associated pooled {@link CharBuffer} to record the request body.
      * <p>
@@ -43,4 +43,16 @@ public interface Response {
     Response addHeader(String headerName, @Nullable String headerValue);
 
     Response addHeader(String headerName, @Nullable Collection<String> headerValues);
+
+    /**
+     * Registers a source for the response headers which is only read when the transaction ends, and only if the
+     * transaction is going to be reported.
+     *
+     * @param carrier      the framework-specific response object
+     * @param headerSource copies the headers of the carrier
+     * @param <C>          the type of the response object
+     * @return {@code this}, for fluent method chaining
+     * @see Request#withHeaderSource(Object, HeaderSource)
+     */
+    <C> Response withHeaderSource(C carrier, HeaderSource<C> headerSource);
 }
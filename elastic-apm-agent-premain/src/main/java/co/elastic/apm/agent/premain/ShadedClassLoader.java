@@ -19,10 +19,12 @@
 package co.elastic.apm.agent.premain;
 
 import javax.annotation.Nullable;
+import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.security.AccessController;
@@ -32,6 +34,7 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
@@ -57,11 +60,26 @@ import java.util.jar.Manifest;
  * This class loader is working as a child-first, meaning it would first lookup classes locally in their shaded form and only if not found,
  * will delegate lookup to parent in the normal form.
  * </p>
+ * <p>
+ * If the jar contains a {@link #SHADED_CLASS_INDEX class index} for the custom prefix, which is generated when building the agent jar,
+ * the index is the authoritative list of the shaded classes.
+ * Classes that are not in the index are directly delegated to the parent, without a resource lookup in the agent jar and without
+ * creating a {@link ClassNotFoundException}, which otherwise happens for every JDK or application class the agent references.
+ * The bytes of the indexed classes are read directly from a {@link JarFile} that is kept open for the lifetime of the class loader,
+ * instead of creating a {@link URL} and a connection for every class.
+ * </p>
  */
 public class ShadedClassLoader extends URLClassLoader {
 
     public static final String SHADED_CLASS_EXTENSION = ".esclazz";
+    /**
+     * The name of the class index, relative to the custom prefix.
+     * The index lists the jar entries of all shaded classes, one per line, for example
+     * {@code agent/org/example/MyClass.esclazz} or {@code META-INF/versions/9/agent/org/example/MyClass.esclazz}.
+     */
+    public static final String SHADED_CLASS_INDEX = "esclazz.idx";
     private static final String CLASS_EXTENSION = ".class";
+    private static final String VERSIONED_ENTRY_PREFIX = "META-INF/versions/";
 
     private static final ProtectionDomain PROTECTION_DOMAIN;
 
@@ -83,6 +101,17 @@ public class ShadedClassLoader extends URLClassLoader {
     private final String customPrefix;
     private final Manifest manifest;
     private final URL jarUrl;
+    private final JarFile jarFile;
+    /**
+     * The names of the shaded classes that are only read from the class index, or {@code null} if the jar has no index.
+     */
+    @Nullable
+    private final Set<String> indexedClasses;
+    /**
+     * The names of the indexed classes that have a version-specific entry in this multi-release jar.
+     * The bytes of those classes are looked up via {@link URLClassLoader}, which resolves the entry for the current Java version.
+     */
+    private final Set<String> versionedClasses;
     private final ThreadLocal<Set<String>> locallyNonAvailableResources = new ThreadLocal<Set<String>>() {
         @Override
         protected Set<String> initialValue() {
@@ -94,11 +123,51 @@ public class ShadedClassLoader extends URLClassLoader {
         super(new URL[]{jar.toURI().toURL()}, parent);
         this.customPrefix = customPrefix;
         this.jarUrl = jar.toURI().toURL();
-        try (JarFile jarFile = new JarFile(jar, false)) {
+        this.jarFile = new JarFile(jar, false);
+        try {
             this.manifest = jarFile.getManifest();
+            this.versionedClasses = new HashSet<>();
+            this.indexedClasses = readClassIndex(jarFile, customPrefix, versionedClasses);
+        } catch (IOException e) {
+            jarFile.close();
+            throw e;
         }
     }
 
+    @Nullable
+    private static Set<String> readClassIndex(JarFile jarFile, String customPrefix, Set<String> versionedClasses) throws IOException {
+        JarEntry indexEntry = jarFile.getJarEntry(customPrefix + SHADED_CLASS_INDEX);
+        if (indexEntry == null) {
+            return null;
+        }
+        Set<String> indexedClasses = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(jarFile.getInputStream(indexEntry), "UTF-8"))) {
+            String entryName;
+            while ((entryName = reader.readLine()) != null) {
+                entryName = entryName.trim();
+                boolean versioned = false;
+                if (entryName.startsWith(VERSIONED_ENTRY_PREFIX)) {
+                    // META-INF/versions/<version>/<prefix>/org/example/MyClass.esclazz
+                    int versionEnd = entryName.indexOf('/', VERSIONED_ENTRY_PREFIX.length());
+                    if (versionEnd == -1) {
+                        continue;
+                    }
+                    entryName = entryName.substring(versionEnd + 1);
+                    versioned = true;
+                }
+                if (!entryName.startsWith(customPrefix) || !entryName.endsWith(SHADED_CLASS_EXTENSION)) {
+                    continue;
+                }
+                String className = entryName.substring(customPrefix.length(), entryName.length() - SHADED_CLASS_EXTENSION.length()).replace('/', '.');
+                indexedClasses.add(className);
+                if (versioned) {
+                    versionedClasses.add(className);
+                }
+            }
+        }
+        return indexedClasses;
+    }
+
     /**
      * A child-first implementation for class loading by searching for classes in the following order:
      *
@@ -129,6 +198,10 @@ public class ShadedClassLoader extends URLClassLoader {
             try {
                 // First, check if the class has already been loaded
                 Class<?> c = findLoadedClass(name);
+                if (c == null && indexedClasses != null && !indexedClasses.contains(name)) {
+                    // not a shaded class, no need to look it up locally
+                    return super.loadClass(name, resolve);
+                }
                 if (c == null) {
                     c = findClass(name);
                     if (resolve) {
@@ -190,16 +263,19 @@ public class ShadedClassLoader extends URLClassLoader {
         return null;
     }
 
+    @Nullable
     private byte[] getShadedClassBytes(String name) throws ClassNotFoundException {
+        if (indexedClasses != null) {
+            if (!indexedClasses.contains(name)) {
+                return null;
+            }
+            if (!versionedClasses.contains(name)) {
+                return getIndexedClassBytes(name);
+            }
+        }
         try (InputStream is = getPrivilegedResourceAsStream(customPrefix + name.replace('.', '/') + SHADED_CLASS_EXTENSION)) {
             if (is != null) {
-                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-                int n;
-                byte[] data = new byte[1024];
-                while ((n = is.read(data, 0, data.length)) != -1) {
-                    buffer.write(data, 0, n);
-                }
-                return buffer.toByteArray();
+                return readFully(is);
             }
         } catch (IOException e) {
             throw new ClassNotFoundException(name, e);
@@ -207,6 +283,55 @@ public class ShadedClassLoader extends URLClassLoader {
         return null;
     }
 
+    @Nullable
+    private byte[] getIndexedClassBytes(String name) throws ClassNotFoundException {
+        try {
+            JarEntry entry = jarFile.getJarEntry(customPrefix + name.replace('.', '/') + SHADED_CLASS_EXTENSION);
+            if (entry == null) {
+                return null;
+            }
+            try (InputStream is = jarFile.getInputStream(entry)) {
+                long size = entry.getSize();
+                if (size < 0 || size > Integer.MAX_VALUE) {
+                    return readFully(is);
+                }
+                // the size is known from the central directory, no need for intermediate buffers
+                byte[] bytes = new byte[(int) size];
+                int offset = 0;
+                int n;
+                while (offset < bytes.length && (n = is.read(bytes, offset, bytes.length - offset)) != -1) {
+                    offset += n;
+                }
+                if (offset != bytes.length) {
+                    throw new IOException("Unexpected end of " + entry.getName());
+                }
+                return bytes;
+            }
+        } catch (IOException | IllegalStateException e) {
+            // IllegalStateException is thrown when the jar file has been closed
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int n;
+        byte[] data = new byte[1024];
+        while ((n = is.read(data, 0, data.length)) != -1) {
+            buffer.write(data, 0, n);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            jarFile.close();
+        }
+    }
+
     private InputStream getPrivilegedResourceAsStream(final String name) {
         if (System.getSecurityManager() == null) {
             return getResourceAsStreamInternal(name);
@@ -26,12 +26,17 @@ import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Objects;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
 
 import static co.elastic.apm.agent.premain.ShadedClassLoader.SHADED_CLASS_EXTENSION;
+import static co.elastic.apm.agent.premain.ShadedClassLoader.SHADED_CLASS_INDEX;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
@@ -76,6 +81,41 @@ class ShadedClassLoaderTest {
             .isInstanceOf(ClassNotFoundException.class);
     }
 
+    @Test
+    void testLoadIndexedClass(@TempDir File tmp) throws Exception {
+        File jar = createJar(tmp, List.of(ShadedClassLoaderTest.class), "agent/", SHADED_CLASS_EXTENSION, List.of(ShadedClassLoaderTest.class), false);
+        cl = new ShadedClassLoader(jar, ShadedClassLoaderTest.class.getClassLoader(), "agent/");
+        Class<?> clazz = cl.loadClass(ShadedClassLoaderTest.class.getName());
+        assertThat(clazz).isNotSameAs(ShadedClassLoaderTest.class);
+        assertThat(clazz.getClassLoader()).isEqualTo(cl);
+        assertThat(cl.loadClass(String.class.getName())).isSameAs(String.class);
+    }
+
+    @Test
+    void testLoadIndexedUncompressedClass(@TempDir File tmp) throws Exception {
+        File jar = createJar(tmp, List.of(ShadedClassLoaderTest.class), "agent/", SHADED_CLASS_EXTENSION, List.of(ShadedClassLoaderTest.class), true);
+        cl = new ShadedClassLoader(jar, null, "agent/");
+        Class<?> clazz = cl.loadClass(ShadedClassLoaderTest.class.getName());
+        assertThat(clazz).isNotSameAs(ShadedClassLoaderTest.class);
+        assertThat(clazz.getClassLoader()).isEqualTo(cl);
+    }
+
+    @Test
+    void testClassIndexIsAuthoritative(@TempDir File tmp) throws Exception {
+        File jar = createJar(tmp, List.of(ShadedClassLoaderTest.class), "agent/", SHADED_CLASS_EXTENSION, List.of(), false);
+        cl = new ShadedClassLoader(jar, ShadedClassLoaderTest.class.getClassLoader(), "agent/");
+        // the shaded class is not in the index, so the lookup is delegated to the parent
+        assertThat(cl.loadClass(ShadedClassLoaderTest.class.getName())).isSameAs(ShadedClassLoaderTest.class);
+    }
+
+    @Test
+    void testClassIndexOfOtherPrefixIsIgnored(@TempDir File tmp) throws Exception {
+        File jar = createJar(tmp, List.of(ShadedClassLoaderTest.class), "agent/", SHADED_CLASS_EXTENSION, List.of(ShadedClassLoaderTest.class), false);
+        cl = new ShadedClassLoader(jar, null, "cached-lookup-key/");
+        assertThatThrownBy(() -> cl.loadClass(ShadedClassLoaderTest.class.getName()))
+            .isInstanceOf(ClassNotFoundException.class);
+    }
+
     @Test
     void testGetShadedResource(@TempDir File tmp) throws Exception {
         File jar = createJar(tmp, List.of(ShadedClassLoaderTest.class), "agent/", ".resource");
@@ -118,15 +158,40 @@ class ShadedClassLoaderTest {
     }
 
     private File createJar(File folder, List<Class<?>> classes, String classNamePrefix, String classNameExtension) throws IOException {
+        return createJar(folder, classes, classNamePrefix, classNameExtension, null, false);
+    }
+
+    private File createJar(File folder, List<Class<?>> classes, String classNamePrefix, String classNameExtension,
+                           @Nullable List<Class<?>> indexedClasses, boolean uncompressed) throws IOException {
         File file = new File(folder, "test.jar");
         assertThat(file.createNewFile()).isTrue();
         try (JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(file))) {
+            if (indexedClasses != null) {
+                String index = indexedClasses.stream()
+                    .map(clazz -> classNamePrefix + clazz.getName().replace('.', '/') + classNameExtension + "\n")
+                    .collect(Collectors.joining());
+                putEntry(jarOutputStream, classNamePrefix + SHADED_CLASS_INDEX, index.getBytes(StandardCharsets.UTF_8), uncompressed);
+            }
             for (Class<?> clazz : classes) {
-                jarOutputStream.putNextEntry(new JarEntry(classNamePrefix + clazz.getName().replace('.', '/') + classNameExtension));
-                jarOutputStream.write(clazz.getResourceAsStream(clazz.getSimpleName() + ".class").readAllBytes());
+                byte[] bytes = clazz.getResourceAsStream(clazz.getSimpleName() + ".class").readAllBytes();
+                putEntry(jarOutputStream, classNamePrefix + clazz.getName().replace('.', '/') + classNameExtension, bytes, uncompressed);
             }
         }
         return file;
     }
 
+    private static void putEntry(JarOutputStream jarOutputStream, String name, byte[] bytes, boolean uncompressed) throws IOException {
+        JarEntry entry = new JarEntry(name);
+        if (uncompressed) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCompressedSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        jarOutputStream.putNextEntry(entry);
+        jarOutputStream.write(bytes);
+    }
+
 }